@@ -0,0 +1,557 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Scheduler backed by a hashed timing wheel.
+ *
+ * Scheduling a runnable is a constant time, lock-free operation: the runnable
+ * is hashed into one of the buckets of the wheel according to its deadline, and
+ * a single thread advances the wheel one tick at a time, handing the expired
+ * runnables over to a small pool of worker threads. Runnables are never fired
+ * before their deadline, but may be fired up to one tick after it.
+ *
+ * {@link AsyncReadyRunnable}s are started with {@link AsyncReadyRunnable#runAsync(java.util.concurrent.Executor)}
+ * and only hold a worker thread while they are doing actual work. If such a
+ * runnable comes due while a previous run is still in flight, the run is
+ * skipped, counted as an overrun, and the runnable is re-armed with the same
+ * delay. The number of runnables in flight is bounded: runnables that come due
+ * while the limit is reached wait, in order, for a previous run to complete.
+ */
+public class HashedWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelScheduler.class);
+
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /**
+     * Delay after which a runnable that was not ready is checked again.
+     */
+    private static final long NOT_READY_DELAY = 1000;
+
+    private final String m_name;
+
+    private final long m_tickDuration;
+
+    /**
+     * The buckets of the wheel, only accessed by the worker thread.
+     */
+    private final Queue<Entry>[] m_wheel;
+
+    private final int m_mask;
+
+    /**
+     * Runnables that were scheduled since the last tick and still need to be
+     * placed in the wheel.
+     */
+    private final Queue<Entry> m_pending = new ConcurrentLinkedQueue<>();
+
+    private final ExecutorService m_runner;
+
+    private final Set<ReadyRunnable> m_inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Permits for the asynchronous runs, one per run in flight.
+     */
+    private final Semaphore m_inFlightPermits;
+
+    /**
+     * Asynchronous runnables that are due, but could not be started because
+     * too many runs were already in flight.
+     */
+    private final Queue<Entry> m_waiting = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong();
+
+    private final AtomicLong m_numTasksCompleted = new AtomicLong();
+
+    private final AtomicLong m_numOverruns = new AtomicLong();
+
+    private final AtomicLong m_totalLag = new AtomicLong();
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private final long m_startTime = System.nanoTime();
+
+    private long m_tick;
+
+    /**
+     * Constructs a new scheduler with the default tick duration and wheel size.
+     *
+     * @param parent
+     *            String used to name the threads of the scheduler
+     * @param maxSize
+     *            The size of the worker thread pool.
+     */
+    public HashedWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param parent
+     *            String used to name the threads of the scheduler
+     * @param maxSize
+     *            The size of the worker thread pool.
+     * @param tickDuration
+     *            The duration of a tick, in milliseconds.
+     * @param ticksPerWheel
+     *            The number of buckets in the wheel, rounded up to the next power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelScheduler(final String parent, final int maxSize, final long tickDuration, final int ticksPerWheel) {
+        this(parent, maxSize, maxSize, tickDuration, ticksPerWheel);
+    }
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param parent
+     *            String used to name the threads of the scheduler
+     * @param maxSize
+     *            The size of the worker thread pool.
+     * @param maxInFlight
+     *            The maximum number of asynchronous runs in flight.
+     * @param tickDuration
+     *            The duration of a tick, in milliseconds.
+     * @param ticksPerWheel
+     *            The number of buckets in the wheel, rounded up to the next power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelScheduler(final String parent, final int maxSize, final int maxInFlight, final long tickDuration, final int ticksPerWheel) {
+        Assert.isTrue(maxInFlight > 0, "maxInFlight must be positive");
+        Assert.isTrue(tickDuration > 0, "tickDuration must be positive");
+        Assert.isTrue(ticksPerWheel > 0 && ticksPerWheel <= (1 << 30), "ticksPerWheel must be between 1 and 2^30");
+
+        m_name = parent + "-Scheduler";
+        m_tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        m_wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            m_wheel[i] = new ArrayDeque<>();
+        }
+        m_mask = size - 1;
+
+        m_inFlightPermits = new Semaphore(maxInFlight);
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_status = START_PENDING;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+        final long deadline = System.nanoTime() - m_startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, interval));
+        m_scheduled.incrementAndGet();
+        m_pending.add(new Entry(runnable, interval, deadline, deadline));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /**
+     * Returns the number of runnables that finished running, including
+     * asynchronous runnables whose future completed.
+     *
+     * @return a long.
+     */
+    public long getNumTasksCompleted() {
+        return m_numTasksCompleted.get();
+    }
+
+    /**
+     * Returns the total number of elements currently scheduled.
+     *
+     * @return an int.
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /**
+     * Returns the number of asynchronous runnables that were started and have
+     * not completed yet.
+     *
+     * @return an int.
+     */
+    public int getInFlight() {
+        return m_inFlight.size();
+    }
+
+    /**
+     * Returns the number of asynchronous runnables that are due and waiting
+     * for a previous run to complete because too many runs are in flight.
+     *
+     * @return an int.
+     */
+    public int getWaiting() {
+        return m_waiting.size();
+    }
+
+    /**
+     * Returns the number of runs that were skipped because the previous run
+     * of the same runnable was still in flight.
+     *
+     * @return a long.
+     */
+    public long getNumOverruns() {
+        return m_numOverruns.get();
+    }
+
+    /**
+     * Returns the sum, in milliseconds, of the delays between the deadline of
+     * every executed runnable and the time it was actually started.
+     *
+     * Divide by {@link #getNumTasksExecuted()} to get the average scheduling lag.
+     *
+     * @return a long.
+     */
+    public long getTotalSchedulingLag() {
+        return m_totalLag.get();
+    }
+
+    /**
+     * The main method of the scheduler. Advances the wheel one tick at a time
+     * and fires the expired runnables.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        try {
+            for (;;) {
+                synchronized (this) {
+                    if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                        LOG.debug("run: status = {}, time to exit", m_status);
+                        break;
+                    }
+
+                    // if paused or pause pending then block
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+
+                    if (m_status == RESUME_PENDING) {
+                        LOG.debug("run: resuming.");
+                        m_status = RUNNING;
+                    }
+                }
+
+                final long now = waitForNextTick();
+                transferPending();
+                expire(m_wheel[(int) (m_tick & m_mask)], now);
+                m_tick++;
+            }
+        } catch (InterruptedException e) {
+            // exit
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     *
+     * @return the current time, relative to the start time of the scheduler
+     */
+    private long waitForNextTick() throws InterruptedException {
+        final long deadline = m_tickDuration * (m_tick + 1);
+        for (;;) {
+            final long now = System.nanoTime() - m_startTime;
+            final long sleepTime = TimeUnit.NANOSECONDS.toMillis(deadline - now + 999999);
+            if (sleepTime <= 0) {
+                return now;
+            }
+            Thread.sleep(sleepTime);
+        }
+    }
+
+    private void transferPending() {
+        Entry entry;
+        while ((entry = m_pending.poll()) != null) {
+            // The bucket of a tick is expired at the end of the tick, so the deadline is reached by then.
+            // Runnables that should already have run are placed in the current bucket.
+            final long ticks = Math.max(entry.deadline / m_tickDuration, m_tick);
+            entry.remainingRounds = (ticks - m_tick) / m_wheel.length;
+            m_wheel[(int) (ticks & m_mask)].add(entry);
+        }
+    }
+
+    private void expire(final Queue<Entry> bucket, final long now) {
+        final Iterator<Entry> it = bucket.iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+                continue;
+            }
+            it.remove();
+            if (entry.deadline > now) {
+                // Never fire early, place the runnable again if the deadline has not been reached yet
+                m_pending.add(entry);
+                continue;
+            }
+            fire(entry, now);
+        }
+    }
+
+    private void fire(final Entry entry, final long now) {
+        final ReadyRunnable runnable = entry.runnable;
+        if (m_inFlight.contains(runnable)) {
+            LOG.warn("run: {} is still in flight, skipping this run", runnable);
+            m_numOverruns.incrementAndGet();
+            final long deadline = now + TimeUnit.MILLISECONDS.toNanos(Math.max(entry.interval, NOT_READY_DELAY));
+            m_pending.add(new Entry(runnable, entry.interval, deadline, deadline));
+            return;
+        }
+        if (!runnable.isReady()) {
+            // Keep the original due time so that the lag accounts for the time spent waiting
+            m_pending.add(new Entry(runnable, entry.interval, entry.due, now + TimeUnit.MILLISECONDS.toNanos(NOT_READY_DELAY)));
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", runnable);
+        if (runnable instanceof AsyncReadyRunnable) {
+            m_waiting.add(entry);
+            startWaiting();
+            return;
+        }
+
+        started(entry, now);
+        try {
+            m_runner.execute(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    m_numTasksCompleted.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool only rejects tasks once it is shut down
+            LOG.debug("run: scheduler is stopping, dropping {}", runnable);
+        }
+    }
+
+    /**
+     * Starts waiting asynchronous runnables for as long as there are permits
+     * available. Called whenever a runnable is queued or a permit is released,
+     * so that no runnable is left waiting while a permit is available.
+     */
+    private void startWaiting() {
+        while (!m_waiting.isEmpty() && m_inFlightPermits.tryAcquire()) {
+            final Entry entry = m_waiting.poll();
+            if (entry == null) {
+                // Taken by another thread in the meantime
+                m_inFlightPermits.release();
+                continue;
+            }
+
+            final AsyncReadyRunnable runnable = (AsyncReadyRunnable) entry.runnable;
+            started(entry, System.nanoTime() - m_startTime);
+            m_inFlight.add(runnable);
+            try {
+                m_runner.execute(() -> runAsync(runnable));
+            } catch (RejectedExecutionException e) {
+                // The pool only rejects tasks once it is shut down
+                m_inFlight.remove(runnable);
+                m_inFlightPermits.release();
+                LOG.debug("run: scheduler is stopping, dropping {}", runnable);
+            }
+        }
+    }
+
+    private void started(final Entry entry, final long now) {
+        m_scheduled.decrementAndGet();
+        m_numTasksExecuted.incrementAndGet();
+        m_totalLag.addAndGet(TimeUnit.NANOSECONDS.toMillis(now - entry.due));
+    }
+
+    private void runAsync(final AsyncReadyRunnable runnable) {
+        CompletableFuture<Void> future;
+        try {
+            future = runnable.runAsync(m_runner);
+        } catch (Throwable t) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+        }
+        future.whenComplete((v, t) -> {
+            m_inFlight.remove(runnable);
+            m_numTasksCompleted.incrementAndGet();
+            if (t != null) {
+                LOG.warn("run: asynchronous run of {} failed", runnable, t);
+            }
+            m_inFlightPermits.release();
+            startWaiting();
+        });
+    }
+
+    private static final class Entry {
+        private final ReadyRunnable runnable;
+        private final long interval;
+        private final long due;
+        private final long deadline;
+        private long remainingRounds;
+
+        private Entry(final ReadyRunnable runnable, final long interval, final long due, final long deadline) {
+            this.runnable = runnable;
+            this.interval = interval;
+            this.due = due;
+            this.deadline = deadline;
+        }
+    }
+}
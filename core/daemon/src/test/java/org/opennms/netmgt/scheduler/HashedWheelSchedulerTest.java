@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelSchedulerTest {
+
+    private HashedWheelScheduler m_scheduler;
+
+    @Before
+    public void setUp() {
+        m_scheduler = new HashedWheelScheduler("Test", 2, 10, 8);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void neverFiresBeforeTheDeadline() throws InterruptedException {
+        // Use delays spanning more than one revolution of the wheel
+        final long[] delays = new long[] { 0, 5, 25, 75, 160, 330 };
+        final CountDownLatch latch = new CountDownLatch(delays.length);
+        final AtomicInteger early = new AtomicInteger();
+        for (final long delay : delays) {
+            final long scheduled = System.nanoTime();
+            m_scheduler.schedule(delay, new Task(() -> {
+                if (System.nanoTime() - scheduled < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    early.incrementAndGet();
+                }
+                latch.countDown();
+            }));
+        }
+
+        latch.await();
+        assertEquals(0, early.get());
+        assertEquals(delays.length, m_scheduler.getNumTasksExecuted());
+    }
+
+    @Test(timeout = 10000)
+    public void retriesRunnablesThatAreNotReady() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger checks = new AtomicInteger();
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return checks.incrementAndGet() > 1;
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+        assertEquals(2, checks.get());
+        // The time spent waiting for the runnable to become ready counts as lag
+        assertTrue(m_scheduler.getTotalSchedulingLag() >= 1000);
+    }
+
+    @Test(timeout = 10000)
+    public void skipsRunsWhileInFlight() throws InterruptedException {
+        final CompletableFuture<Void> response = new CompletableFuture<>();
+        final AtomicInteger runs = new AtomicInteger();
+        final AsyncReadyRunnable runnable = new AsyncReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<Void> runAsync(final Executor executor) {
+                runs.incrementAndGet();
+                // Reschedule before the work is done, like a fixed rate task
+                m_scheduler.schedule(20, this);
+                return response;
+            }
+        };
+
+        m_scheduler.schedule(0, runnable);
+        while (m_scheduler.getNumOverruns() == 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, runs.get());
+        assertEquals(1, m_scheduler.getInFlight());
+
+        response.complete(null);
+        while (m_scheduler.getNumTasksCompleted() == 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, m_scheduler.getInFlight());
+    }
+
+    @Test(timeout = 10000)
+    public void boundsRunsInFlight() throws InterruptedException {
+        // The scheduler allows as many runs in flight as it has threads
+        final List<CompletableFuture<Void>> responses = new ArrayList<>();
+        final AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            final CompletableFuture<Void> response = new CompletableFuture<>();
+            responses.add(response);
+            m_scheduler.schedule(0, new AsyncReadyRunnable() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void run() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public CompletableFuture<Void> runAsync(final Executor executor) {
+                    runs.incrementAndGet();
+                    return response;
+                }
+            });
+        }
+
+        while (runs.get() < 2 || m_scheduler.getWaiting() == 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, runs.get());
+        assertEquals(2, m_scheduler.getInFlight());
+        assertEquals(1, m_scheduler.getWaiting());
+        assertEquals(2, m_scheduler.getNumTasksExecuted());
+
+        // Completing a run starts the waiting one
+        responses.get(0).complete(null);
+        while (runs.get() < 3) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, m_scheduler.getWaiting());
+
+        responses.forEach(response -> response.complete(null));
+        while (m_scheduler.getInFlight() > 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, m_scheduler.getWaiting());
+        assertEquals(3, m_scheduler.getNumTasksExecuted());
+    }
+
+    private static class Task implements ReadyRunnable {
+        private final Runnable m_runnable;
+
+        private Task(final Runnable runnable) {
+            m_runnable = runnable;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_runnable.run();
+        }
+    }
+}
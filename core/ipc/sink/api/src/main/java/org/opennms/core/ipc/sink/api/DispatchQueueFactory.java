@@ -35,4 +35,15 @@ public interface DispatchQueueFactory {
     <T> DispatchQueue<T> getQueue(AsyncPolicy asyncPolicy, String moduleName, Function<T, byte[]> serializer,
                                   Function<byte[], T> deserializer);
 
+    /**
+     * Retrieves the queue for the given module.
+     *
+     * Factories that can write the messages straight into their storage, or that return a
+     * {@link ZeroCopyDispatchQueue}, should override this method to make use of the module.
+     */
+    default <S extends Message, T extends Message> DispatchQueue<S> getQueue(AsyncPolicy asyncPolicy,
+                                                                            SinkModule<S, T> module) {
+        return getQueue(asyncPolicy, module.getId(), module::marshalSingleMessage, module::unmarshalSingleMessage);
+    }
+
 }
@@ -28,6 +28,7 @@
 
 package org.opennms.core.ipc.sink.api;
 
+import java.nio.ByteBuffer;
 import java.util.Optional;
 
 /**
@@ -71,9 +72,25 @@ public interface SinkModule<S extends Message, T extends Message> {
 
     /**
      * Marshals single message to a byte array.
+     *
+     * The result must be the marshaled form of the aggregated message holding only this message, so that it
+     * can be dispatched as is once it has been queued off-heap.
      */
     byte[]  marshalSingleMessage(S message);
 
+    /**
+     * Marshals single message into the given buffer, starting at its current position, and advances the
+     * position past the written bytes.
+     *
+     * Used by off-heap queues to write the message straight into their storage. Modules that can serialize
+     * their messages without going through an intermediate byte array should override this method.
+     *
+     * @throws java.nio.BufferOverflowException if there is not enough room left in the buffer
+     */
+    default void marshalSingleMessage(S message, ByteBuffer buffer) {
+        buffer.put(marshalSingleMessage(message));
+    }
+
     /**
      * Unmarshals single message from a byte array.
      */
@@ -107,4 +124,27 @@ public interface SinkModule<S extends Message, T extends Message> {
     default Optional<String> getRoutingKey(T message) {
         return Optional.empty();
     }
+
+    /**
+     * The routing key of the aggregated message holding only the given message.
+     *
+     * Stored along with the messages that are queued off-heap, so they can be dispatched without
+     * being unmarshaled.
+     *
+     * @param message the message to generate the routing key from
+     * @return the routing key or, {@code Optional.empty()} if no routing is required
+     */
+    @SuppressWarnings("unchecked")
+    default Optional<String> getSingleMessageRoutingKey(S message) {
+        final AggregationPolicy<S, T, ?> aggregationPolicy = getAggregationPolicy();
+        if (aggregationPolicy == null) {
+            // Without aggregation the producers and consumers share the same message type
+            return getRoutingKey((T) message);
+        }
+        return getRoutingKey(aggregateSingleMessage(aggregationPolicy, message));
+    }
+
+    private static <S, T, U> T aggregateSingleMessage(AggregationPolicy<S, T, U> aggregationPolicy, S message) {
+        return aggregationPolicy.build(aggregationPolicy.aggregate(null, message));
+    }
 }
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.api;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * A {@link DispatchQueue} that keeps the entries it stores off-heap in their serialized form, and can hand them out
+ * without copying or unmarshaling them.
+ *
+ * @param <T> the type being queued
+ */
+public interface ZeroCopyDispatchQueue<T> extends DispatchQueue<T> {
+
+    /**
+     * Retrieves and removes the head of this queue, waiting if necessary until an element becomes available.
+     * <p>
+     * The returned entry must be closed once it has been dispatched, its serialized message is only valid until then.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Entry<T> take() throws InterruptedException;
+
+    interface Entry<T> extends AutoCloseable {
+
+        /**
+         * @return the key the message was queued with, or null if the message is not tracked
+         */
+        String getKey();
+
+        /**
+         * @return the message, or null if the message is only available in its serialized form
+         */
+        T getMessage();
+
+        /**
+         * @return a read-only buffer holding the message as marshaled by {@link SinkModule#marshalSingleMessage},
+         * or null if the message was queued on the heap
+         */
+        ByteBuffer getSerializedMessage();
+
+        /**
+         * @return the routing key stored along with the serialized message
+         */
+        Optional<String> getRoutingKey();
+
+        /**
+         * Releases the storage backing the serialized message.
+         */
+        @Override
+        void close();
+    }
+}
@@ -28,9 +28,11 @@
 
 package org.opennms.core.ipc.sink.common;
 
+import java.nio.ByteBuffer;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Objects;
+import java.util.Optional;
 
 import org.opennms.core.ipc.sink.aggregation.AggregatingSinkMessageProducer;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
@@ -38,6 +40,7 @@ import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.MessageDispatcherFactory;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.api.SyncDispatcher;
+import org.opennms.core.ipc.sink.api.ZeroCopyDispatchQueue;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 
@@ -87,6 +90,44 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         }
     }
 
+    /**
+     * Invokes dispatchSerialized within a timer context.
+     */
+    <S extends Message, T extends Message> void timedDispatchSerialized(DispatcherState<W, S,T> state,
+                                                                        ByteBuffer message,
+                                                                        Optional<String> routingKey) {
+        try (Context ctx = state.getDispatchTimer().time();
+             Scope scope = getTracer().buildSpan(state.getModule().getId()).startActive(true)) {
+            dispatchSerialized(state.getModule(), state.getMetaData(), message, routingKey);
+        }
+    }
+
+    /**
+     * Dispatches a message that was queued off-heap by a {@link ZeroCopyDispatchQueue}, in the form
+     * returned by {@link SinkModule#marshalSingleMessage}.
+     *
+     * The default implementation unmarshals the message before dispatching it. Implementations that
+     * can send the buffer as is should override this method along with {@link #canDispatchSerialized()}.
+     *
+     * @param message the marshaled message, only valid for the duration of the call
+     * @param routingKey the routing key of the message
+     */
+    public <S extends Message, T extends Message> void dispatchSerialized(SinkModule<S, T> module, W metadata,
+                                                                          ByteBuffer message,
+                                                                          Optional<String> routingKey) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes);
+        dispatch(module, metadata, module.unmarshal(bytes));
+    }
+
+    /**
+     * @return true if {@link #dispatchSerialized} sends the messages without unmarshaling them, in which case
+     * the asynchronous dispatchers hand the messages queued off-heap to it directly
+     */
+    public boolean canDispatchSerialized() {
+        return false;
+    }
+
     /**
      * Optionally build meta-data or state information for the module which will
      * be passed on all the calls to {@link #dispatch}.
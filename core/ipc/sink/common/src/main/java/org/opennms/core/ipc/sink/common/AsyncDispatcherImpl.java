@@ -54,6 +54,7 @@ import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.api.SyncDispatcher;
 import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.opennms.core.ipc.sink.api.ZeroCopyDispatchQueue;
 import org.opennms.core.ipc.sink.offheap.DispatchQueueServiceLoader;
 import org.opennms.core.utils.SystemInfoUtils;
 import org.slf4j.Logger;
@@ -68,12 +69,14 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
 public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implements AsyncDispatcher<S> {
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncDispatcherImpl.class);
+    private final DispatcherState<W, S, T> state;
     private final SyncDispatcher<S> syncDispatcher;
     private final AsyncPolicy asyncPolicy;
     private final Counter droppedCounter;
 
     private final Map<String, CompletableFuture<DispatchStatus>> futureMap = new ConcurrentHashMap<>();
     private final AtomicResultQueue<S> atomicResultQueue;
+    private final boolean dispatchSerialized;
     private final AtomicLong missedFutures = new AtomicLong(0);
     private final AtomicInteger activeDispatchers = new AtomicInteger(0);
     
@@ -89,6 +92,7 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         Objects.requireNonNull(state);
         Objects.requireNonNull(asyncPolicy);
         Objects.requireNonNull(syncDispatcher);
+        this.state = state;
         this.syncDispatcher = syncDispatcher;
         this.asyncPolicy = asyncPolicy;
         SinkModule<S, T> sinkModule = state.getModule();
@@ -97,14 +101,18 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         DispatchQueue<S> dispatchQueue;
         if (factory.isPresent()) {
             LOG.debug("Using queue from factory");
-            dispatchQueue = factory.get().getQueue(asyncPolicy, sinkModule.getId(),
-                    sinkModule::marshalSingleMessage, sinkModule::unmarshalSingleMessage);
+            dispatchQueue = factory.get().getQueue(asyncPolicy, sinkModule);
         } else {
             int size = asyncPolicy.getQueueSize();
             LOG.debug("Using default in memory queue of size {}", size);
             dispatchQueue = new DefaultQueue<>(size);
         }
         atomicResultQueue = new AtomicResultQueue<>(dispatchQueue);
+        // Messages queued off-heap are dispatched in their serialized form, bypassing the aggregation, when both the
+        // queue and the dispatcher support it
+        dispatchSerialized = dispatchQueue instanceof ZeroCopyDispatchQueue
+                && state.getDispatcherFactory().canDispatchSerialized();
+        LOG.debug("Dispatching serialized messages: {}", dispatchSerialized);
 
         state.getMetrics().register(MetricRegistry.name(state.getModule().getId(), "queue-size"),
                 (Gauge<Integer>) activeDispatchers::get);
@@ -121,26 +129,29 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         while (true) {
             try {
                 LOG.trace("Asking dispatch queue for the next entry...");
-                Map.Entry<String, S> messageEntry = atomicResultQueue.dequeue();
-                LOG.trace("Received message entry from dispatch queue {}", messageEntry);
-                activeDispatchers.incrementAndGet();
-                LOG.trace("Sending message {} via sync dispatcher", messageEntry);
-                syncDispatcher.send(messageEntry.getValue());
-                LOG.trace("Successfully sent message {}", messageEntry);
-
-                if (messageEntry.getKey() != null) {
-                    LOG.trace("Attempting to complete future for message {}", messageEntry);
-                    CompletableFuture<DispatchStatus> messageFuture = futureMap.remove(messageEntry.getKey());
-
-                    if (messageFuture != null) {
-                        messageFuture.complete(DispatchStatus.DISPATCHED);
-                        LOG.trace("Completed future for message {}", messageEntry);
-                    } else {
-                        RATE_LIMITED_LOGGER.warn("No future found for message {}", messageEntry);
-                        missedFutures.incrementAndGet();
+                if (dispatchSerialized) {
+                    try (ZeroCopyDispatchQueue.Entry<S> entry = atomicResultQueue.take()) {
+                        LOG.trace("Received entry from dispatch queue {}", entry);
+                        activeDispatchers.incrementAndGet();
+                        if (entry.getSerializedMessage() != null) {
+                            LOG.trace("Sending {} via dispatcher factory", entry);
+                            state.getDispatcherFactory().timedDispatchSerialized(state, entry.getSerializedMessage(),
+                                    entry.getRoutingKey());
+                        } else {
+                            LOG.trace("Sending message {} via sync dispatcher", entry);
+                            syncDispatcher.send(entry.getMessage());
+                        }
+                        LOG.trace("Successfully sent {}", entry);
+                        completeFuture(entry.getKey(), entry);
                     }
                 } else {
-                    LOG.trace("Dequeued an entry with a null key");
+                    Map.Entry<String, S> messageEntry = atomicResultQueue.dequeue();
+                    LOG.trace("Received message entry from dispatch queue {}", messageEntry);
+                    activeDispatchers.incrementAndGet();
+                    LOG.trace("Sending message {} via sync dispatcher", messageEntry);
+                    syncDispatcher.send(messageEntry.getValue());
+                    LOG.trace("Successfully sent message {}", messageEntry);
+                    completeFuture(messageEntry.getKey(), messageEntry);
                 }
 
                 activeDispatchers.decrementAndGet();
@@ -152,6 +163,23 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
     }
 
+    private void completeFuture(String key, Object messageEntry) {
+        if (key != null) {
+            LOG.trace("Attempting to complete future for message {}", messageEntry);
+            CompletableFuture<DispatchStatus> messageFuture = futureMap.remove(key);
+
+            if (messageFuture != null) {
+                messageFuture.complete(DispatchStatus.DISPATCHED);
+                LOG.trace("Completed future for message {}", messageEntry);
+            } else {
+                RATE_LIMITED_LOGGER.warn("No future found for message {}", messageEntry);
+                missedFutures.incrementAndGet();
+            }
+        } else {
+            LOG.trace("Dequeued an entry with a null key");
+        }
+    }
+
     private void startDrainingQueue() {
         for (int i = 0; i < asyncPolicy.getNumThreads(); i++) {
             executor.execute(this::dispatchFromQueue);
@@ -219,17 +247,30 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
 
         Map.Entry<String, T> dequeue() throws InterruptedException {
             Map.Entry<String, T> messageEntry = dispatchQueue.dequeue();
+            awaitResultRecorded(messageEntry.getKey());
+            return messageEntry;
+        }
 
+        ZeroCopyDispatchQueue.Entry<T> take() throws InterruptedException {
+            ZeroCopyDispatchQueue.Entry<T> entry = ((ZeroCopyDispatchQueue<T>) dispatchQueue).take();
+            try {
+                awaitResultRecorded(entry.getKey());
+            } catch (InterruptedException e) {
+                entry.close();
+                throw e;
+            }
+            return entry;
+        }
+
+        private void awaitResultRecorded(String key) throws InterruptedException {
             // If the key is null, we weren't tracking it so we don't need to synchronize
-            if (messageEntry.getKey() == null) {
-                return messageEntry;
+            if (key == null) {
+                return;
             }
-            CountDownLatch resultRecorded = resultRecordedMap.remove(messageEntry.getKey());
+            CountDownLatch resultRecorded = resultRecordedMap.remove(key);
             if(resultRecorded != null) {
                 resultRecorded.await();
             }
-
-            return messageEntry;
         }
 
         boolean isFull() {
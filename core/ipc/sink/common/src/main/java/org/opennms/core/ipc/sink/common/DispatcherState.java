@@ -49,6 +49,8 @@ public class DispatcherState<W, S extends Message, T extends Message> implements
 
     private static final Logger LOG = LoggerFactory.getLogger(DispatcherState.class);
 
+    private final AbstractMessageDispatcherFactory<W> dispatcherFactory;
+
     private final SinkModule<S, T> module;
 
     private final W metadata;
@@ -58,6 +60,7 @@ public class DispatcherState<W, S extends Message, T extends Message> implements
     private final Timer dispatchTimer;
 
     public DispatcherState(AbstractMessageDispatcherFactory<W> dispatcherFactory, SinkModule<S, T> module) {
+        this.dispatcherFactory = dispatcherFactory;
         this.module = module;
         metadata = dispatcherFactory.getModuleMetadata(module);
         metrics = dispatcherFactory.getMetrics();
@@ -84,6 +87,10 @@ public class DispatcherState<W, S extends Message, T extends Message> implements
         }
     }
 
+    public AbstractMessageDispatcherFactory<W> getDispatcherFactory() {
+        return dispatcherFactory;
+    }
+
     public SinkModule<S, T> getModule() {
         return module;
     }
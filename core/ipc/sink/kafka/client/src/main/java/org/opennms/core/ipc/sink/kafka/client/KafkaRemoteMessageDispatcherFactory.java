@@ -35,6 +35,8 @@ import static org.opennms.core.ipc.sink.api.Message.SINK_METRIC_PRODUCER_DOMAIN;
 
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
@@ -70,6 +72,7 @@ import org.slf4j.LoggerFactory;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.math.IntMath;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
@@ -112,12 +115,39 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
             // Send this message to Kafka, If partition changed in between sending chunks of a larger message,
             // try to send message again.
             boolean partitionChanged = false;
+            do {
+                partitionChanged = sendMessage(topic, messageId, messageKey,
+                        UnsafeByteOperations.unsafeWrap(sinkMessageContent));
+            } while (partitionChanged);
+        }
+    }
+
+    /**
+     * Sends the message as it was stored by the off-heap queue. The chunks reference the buffer instead of
+     * copying it, so the content is only copied once, when the records are serialized.
+     */
+    @Override
+    public <S extends Message, T extends Message> void dispatchSerialized(SinkModule<S, T> module, String topic,
+                                                                          ByteBuffer message,
+                                                                          Optional<String> routingKey) {
+        try (MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
+            LOG.trace("dispatchSerialized({}): sending message of {} bytes", topic, message.remaining());
+            // The buffer remains valid until we return, sendMessage() blocks until all of the chunks were sent
+            final ByteString sinkMessageContent = UnsafeByteOperations.unsafeWrap(message);
+            String messageId = UUID.randomUUID().toString();
+            final String messageKey = routingKey.orElse(messageId);
+            boolean partitionChanged = false;
             do {
                 partitionChanged = sendMessage(topic, messageId, messageKey, sinkMessageContent);
             } while (partitionChanged);
         }
     }
 
+    @Override
+    public boolean canDispatchSerialized() {
+        return true;
+    }
+
     /**
      * This method will divide message into chunks and send each chunk to kafka.
      * This will return false by default. If this is large buffer (total chunks > 1) and if different chunks have
@@ -128,10 +158,10 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
      * @param sinkMessageContent  The sink message
      * @return partitionChanged  return true if partition changed in between else return false by default.
      */
-    private boolean sendMessage(String topic, String messageId, String messageKey, byte[] sinkMessageContent) {
+    private boolean sendMessage(String topic, String messageId, String messageKey, ByteString sinkMessageContent) {
         int partitionNum = INVALID_PARTITION;
         boolean partitionChanged = false;
-        int totalChunks = IntMath.divide(sinkMessageContent.length, maxBufferSize, RoundingMode.UP);
+        int totalChunks = IntMath.divide(sinkMessageContent.size(), maxBufferSize, RoundingMode.UP);
         for (int chunk = 0; chunk < totalChunks; chunk++) {
             byte[] messageInBytes = wrapMessageToProto(messageId, chunk, totalChunks, sinkMessageContent);
             final ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, messageKey, messageInBytes);
@@ -139,7 +169,7 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
             Span activeSpan = getTracer().activeSpan();
             if (activeSpan != null && (chunk + 1 == totalChunks)) {
                 activeSpan.setTag(TracerConstants.TAG_TOPIC, topic);
-                activeSpan.setTag(TracerConstants.TAG_MESSAGE_SIZE, sinkMessageContent.length);
+                activeSpan.setTag(TracerConstants.TAG_MESSAGE_SIZE, sinkMessageContent.size());
                 activeSpan.setTag(TracerConstants.TAG_THREAD, Thread.currentThread().getName());
             }
             // Keep sending record till it delivers successfully.
@@ -187,10 +217,11 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
       return INVALID_PARTITION;
     }
 
-    private byte[] wrapMessageToProto(String messageId, int chunk, int totalChunks, byte[] sinkMessageContent) {
+    private byte[] wrapMessageToProto(String messageId, int chunk, int totalChunks, ByteString sinkMessageContent) {
         // Calculate remaining bufferSize for each chunk.
-        int bufferSize = getRemainingBufferSize(sinkMessageContent.length, chunk);
-        ByteString byteString = ByteString.copyFrom(sinkMessageContent, chunk * maxBufferSize, bufferSize);
+        int bufferSize = getRemainingBufferSize(sinkMessageContent.size(), chunk);
+        // Does not copy the content, it is copied once when the message is serialized
+        ByteString byteString = sinkMessageContent.substring(chunk * maxBufferSize, chunk * maxBufferSize + bufferSize);
         SinkMessage.Builder sinkMessageBuilder = SinkMessage.newBuilder()
                 .setMessageId(messageId)
                 .setCurrentChunkNumber(chunk)
@@ -0,0 +1,819 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.opennms.core.ipc.sink.api.DispatchQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.opennms.core.ipc.sink.api.ZeroCopyDispatchQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.swrve.ratelimitedlogger.RateLimitedLog;
+
+/**
+ * A {@link DispatchQueue} that first attempts to queue items in memory and upon overflowing the allocated in-memory
+ * queue writes items "off heap" into a set of fixed size memory-mapped segment files.
+ * <p>
+ * Unlike {@link QueueFileOffHeapDispatchQueue}, items are not accumulated in batches and re-serialized before being
+ * written: producers serialize every item straight into the mapped segment. Consumers using {@link #take()} are
+ * handed a read-only slice of the segment holding the serialized item, which can be dispatched without being copied
+ * onto the heap or deserialized. The segment is only reused once all of its slices have been released. Consumers
+ * using {@link #dequeue()} get the deserialized item instead.
+ * <p>
+ * The segments are allocated up front and recycled once they have been fully consumed, so buffering for long periods
+ * of time does not create and delete files, nor does it generate garbage.
+ * <p>
+ * Each segment starts with a header holding its sequence number and the position of the next record to be read,
+ * followed by length prefixed records. Every record holds the length prefixed routing key of the item followed by the
+ * serialized item. A record of length 0 marks the end of the written data. The contents of the segments survive a
+ * crash of the process and are reloaded in sequence order when the queue is created.
+ * <p>
+ * This queue can be configured to only queue to memory by specifying the maximum off-heap size of 0.
+ *
+ * @param <T> the type being queued
+ */
+public class MappedSegmentOffHeapDispatchQueue<T> implements ZeroCopyDispatchQueue<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedSegmentOffHeapDispatchQueue.class);
+    private final RateLimitedLog RATE_LIMITED_LOGGER = RateLimitedLog
+            .withRateLimit(LOG)
+            .maxRate(5)
+            .every(Duration.ofSeconds(30))
+            .build();
+
+    private static final int MAGIC = 0x4f4e4d53;
+    // magic (int) + read position (int) + sequence number (long)
+    private static final int HEADER_SIZE_IN_BYTES = 16;
+    private static final int READ_POSITION_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE_IN_BYTES = 4;
+    private static final int ROUTING_KEY_HEADER_SIZE_IN_BYTES = 2;
+    private static final int MAX_ROUTING_KEY_SIZE_IN_BYTES = 0xffff;
+    private static final byte[] NO_ROUTING_KEY = new byte[0];
+    private static final String DIRECTORY_EXTENSION = ".segments";
+    private static final String FILE_EXTENSION = ".seg";
+
+    /**
+     * Maximum number of entries moved from the segments to the in-memory queue on every call to {@link #dequeue()}.
+     */
+    private static final int MAX_ENTRIES_MOVED_PER_DEQUEUE = 100;
+
+    private final BiConsumer<T, ByteBuffer> serializer;
+    private final Function<T, Optional<String>> routingKeyProvider;
+    private final Function<byte[], T> deserializer;
+    private final String moduleName;
+    private final BlockingQueue<Entry<T>> inMemoryQueue;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // Segments holding entries, the first one is read from and the last one is written to
+    private final Deque<Segment> activeSegments = new ArrayDeque<>();
+    // Segments that have been fully consumed and can be reused
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+    // Number of segments, including the ones that were consumed but are still referenced by slices
+    private int allocatedSegments = 0;
+    private long nextSequence = 0;
+    private int offHeapSize = 0;
+
+    // Used to guard access to the segments
+    private final Lock offHeapLock = new ReentrantLock(true);
+    private final Condition segmentFreed = offHeapLock.newCondition();
+    // Used to ensure only one thread can be enqueing at a time
+    private final Lock enqueueLock = new ReentrantLock(true);
+
+    public MappedSegmentOffHeapDispatchQueue(Function<T, byte[]> serializer, Function<byte[], T> deserializer,
+                                             String moduleName, Path filePath, int inMemoryQueueSize,
+                                             int segmentSize, long maxFileSizeInBytes) throws IOException {
+        this(toBufferSerializer(serializer), message -> Optional.empty(), deserializer, moduleName, filePath,
+                inMemoryQueueSize, segmentSize, maxFileSizeInBytes);
+    }
+
+    /**
+     * @param serializer serializes the item into the given buffer, throwing a {@link BufferOverflowException} if
+     *                   there is not enough room left
+     * @param routingKeyProvider provides the routing key stored along with the serialized item
+     */
+    public MappedSegmentOffHeapDispatchQueue(BiConsumer<T, ByteBuffer> serializer,
+                                             Function<T, Optional<String>> routingKeyProvider,
+                                             Function<byte[], T> deserializer, String moduleName, Path filePath,
+                                             int inMemoryQueueSize, int segmentSize,
+                                             long maxFileSizeInBytes) throws IOException {
+        Objects.requireNonNull(serializer);
+        Objects.requireNonNull(routingKeyProvider);
+        Objects.requireNonNull(deserializer);
+        Objects.requireNonNull(moduleName);
+
+        if (inMemoryQueueSize < 1) {
+            throw new IllegalArgumentException("In memory queue size must be greater than 0");
+        }
+
+        if (maxFileSizeInBytes < 0) {
+            throw new IllegalArgumentException("Max file size must be either 0 or a positive integer");
+        }
+
+        if (maxFileSizeInBytes > 0 && segmentSize <= HEADER_SIZE_IN_BYTES + RECORD_HEADER_SIZE_IN_BYTES
+                + ROUTING_KEY_HEADER_SIZE_IN_BYTES) {
+            throw new IllegalArgumentException("Segment size must be greater than " +
+                    (HEADER_SIZE_IN_BYTES + RECORD_HEADER_SIZE_IN_BYTES + ROUTING_KEY_HEADER_SIZE_IN_BYTES) +
+                    " bytes");
+        }
+
+        this.serializer = serializer;
+        this.routingKeyProvider = routingKeyProvider;
+        this.deserializer = deserializer;
+        this.moduleName = moduleName;
+        this.segmentSize = segmentSize;
+
+        inMemoryQueue = new ArrayBlockingQueue<>(inMemoryQueueSize, true);
+
+        // Setting the max file size to 0 or less will disable the off-heap portion of this queue
+        if (maxFileSizeInBytes > 0) {
+            Objects.requireNonNull(filePath);
+            maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxFileSizeInBytes / segmentSize));
+            directory = Paths.get(filePath.toString(), moduleName + DIRECTORY_EXTENSION).toFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create segment directory " + directory.getAbsolutePath());
+            }
+            loadSegments();
+        } else {
+            maxSegments = 0;
+            directory = null;
+        }
+    }
+
+    private static <T> BiConsumer<T, ByteBuffer> toBufferSerializer(Function<T, byte[]> serializer) {
+        Objects.requireNonNull(serializer);
+        return (message, buffer) -> buffer.put(serializer.apply(message));
+    }
+
+    private void loadSegments() throws IOException {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            throw new IOException("Could not list segment directory " + directory.getAbsolutePath());
+        }
+
+        final List<Segment> loaded = new ArrayList<>(files.length);
+        for (File file : files) {
+            try {
+                final Segment segment = Segment.load(file);
+                if (segment == null) {
+                    LOG.warn("Deleting corrupted segment {} of module {}", file, moduleName);
+                    deleteSegmentFile(file);
+                } else {
+                    loaded.add(segment);
+                }
+            } catch (IOException e) {
+                LOG.warn("Exception while loading segment {} of module {}", file, moduleName, e);
+                deleteSegmentFile(file);
+            }
+        }
+        loaded.sort(Comparator.comparingLong(s -> s.sequence));
+
+        for (Segment segment : loaded) {
+            nextSequence = Math.max(nextSequence, segment.sequence + 1);
+            if (segment.hasRemaining()) {
+                activeSegments.addLast(segment);
+                offHeapSize += segment.countRemaining();
+            } else if (segment.capacity() == segmentSize
+                    && activeSegments.size() + freeSegments.size() < maxSegments) {
+                freeSegments.addLast(segment);
+            } else {
+                // Either the segment size was changed or there are more segments than allowed
+                deleteSegmentFile(segment.file);
+            }
+        }
+
+        allocatedSegments = activeSegments.size() + freeSegments.size();
+
+        // Make sure nothing gets appended after a segment that may have a different size
+        for (Segment segment : freeSegments) {
+            segment.reset(nextSequence++);
+        }
+
+        LOG.debug("Loaded {} entries in {} segments for module {}", offHeapSize, activeSegments.size(), moduleName);
+    }
+
+    private void deleteSegmentFile(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete segment file " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * When enqueueing we prefer the in-memory queue unless the segments are already utilized. If that fails (because
+     * it is full) we then serialize the item straight into the last segment, moving to a free segment when the last
+     * one is full. If all the segments are in use we block and wait for one to be freed.
+     */
+    @Override
+    public EnqueueResult enqueue(T message, String key) throws WriteFailedException {
+        enqueueLock.lock();
+        try {
+            final Entry<T> entry = new QueuedEntry(key, message);
+
+            LOG.trace("Attempting to enqueue {} with key {} into queue with current size {}", message, key, getSize());
+
+            // Off-heap queueing is not enabled so queue directly to memory
+            if (maxSegments == 0) {
+                try {
+                    inMemoryQueue.put(entry);
+                } catch (InterruptedException e) {
+                    throw new WriteFailedException(e);
+                }
+
+                return EnqueueResult.IMMEDIATE;
+            }
+
+            offHeapLock.lock();
+            try {
+                if (offHeapSize <= 0 && inMemoryQueue.offer(entry)) {
+                    LOG.trace("Enqueueing {} with key {} in-memory", message, key);
+
+                    return EnqueueResult.IMMEDIATE;
+                }
+            } finally {
+                offHeapLock.unlock();
+            }
+
+            final byte[] routingKey = getRoutingKey(message);
+            LOG.trace("Enqueueing {} with key {} off-heap", message, key);
+            write(buffer -> serializer.accept(message, buffer), routingKey);
+
+            return EnqueueResult.DEFERRED;
+        } catch (InterruptedException e) {
+            throw new WriteFailedException(e);
+        } finally {
+            enqueueLock.unlock();
+        }
+    }
+
+    private byte[] getRoutingKey(T message) throws WriteFailedException {
+        final byte[] routingKey;
+        try {
+            routingKey = routingKeyProvider.apply(message)
+                    .map(k -> k.getBytes(StandardCharsets.UTF_8))
+                    .orElse(NO_ROUTING_KEY);
+        } catch (Exception e) {
+            RATE_LIMITED_LOGGER.warn("Failed to compute the routing key of a message for module {}", moduleName, e);
+            throw new WriteFailedException(e);
+        }
+        if (routingKey.length > MAX_ROUTING_KEY_SIZE_IN_BYTES) {
+            throw new WriteFailedException(new IOException("Routing key of " + routingKey.length
+                    + " bytes is too long"));
+        }
+        return routingKey;
+    }
+
+    /**
+     * Serializes the item into the last segment. The serialization happens outside of the off-heap lock so we don't
+     * hold up the consumers, the enqueue lock guarantees that no other producer can write to the segment in the
+     * meantime and the segment is flagged so that it is not reset while we write past its end.
+     */
+    private void write(Consumer<ByteBuffer> content, byte[] routingKey) throws WriteFailedException,
+            InterruptedException {
+        Segment tail;
+        offHeapLock.lockInterruptibly();
+        try {
+            tail = activeSegments.peekLast();
+            if (tail == null) {
+                tail = nextTail(null);
+            }
+            tail.writing = true;
+        } catch (IOException e) {
+            throw new WriteFailedException(e);
+        } finally {
+            offHeapLock.unlock();
+        }
+
+        while (true) {
+            int length = -1;
+            boolean tooLarge = false;
+            try {
+                length = tail.write(content, routingKey);
+            } catch (RuntimeException e) {
+                RATE_LIMITED_LOGGER.warn("Failed to serialize message for module {}", moduleName, e);
+                throw new WriteFailedException(e);
+            } finally {
+                offHeapLock.lock();
+                try {
+                    tail.writing = false;
+                    if (length >= 0) {
+                        tail.commit(length);
+                        offHeapSize++;
+
+                        // The consumers may have drained the in-memory queue while we were serializing, in which
+                        // case they are waiting on it and would never look at the segments again
+                        if (inMemoryQueue.isEmpty()) {
+                            moveToMemory();
+                        }
+                    } else {
+                        // No point in moving to the next segment if the message did not fit in an empty one
+                        tooLarge = tail.isEmpty();
+                    }
+                } finally {
+                    offHeapLock.unlock();
+                }
+            }
+
+            if (length >= 0) {
+                return;
+            } else if (tooLarge) {
+                throw new WriteFailedException(new IOException("Message does not fit in a segment of "
+                        + segmentSize + " bytes"));
+            }
+
+            offHeapLock.lockInterruptibly();
+            try {
+                // The segment is sealed, make sure its content reaches the disk
+                tail.force();
+                tail = nextTail(tail);
+                tail.writing = true;
+            } catch (IOException e) {
+                throw new WriteFailedException(e);
+            } finally {
+                offHeapLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Finds the segment to write to once the given one is full, waiting for a segment to be freed if all of them are
+     * in use. Must be called with the off-heap lock held.
+     */
+    private Segment nextTail(Segment full) throws IOException, InterruptedException {
+        while (true) {
+            final Segment tail = activeSegments.peekLast();
+            if (tail != null && tail == full && tail.isEmpty()) {
+                // The consumers caught up and reset the segment while we were waiting
+                return tail;
+            }
+
+            final Segment segment = nextFreeSegment();
+            if (segment != null) {
+                activeSegments.addLast(segment);
+                return segment;
+            }
+
+            LOG.trace("All segments are in use, waiting for one to be freed");
+            segmentFreed.await();
+        }
+    }
+
+    private Segment nextFreeSegment() throws IOException {
+        final Segment free = freeSegments.pollFirst();
+        if (free != null) {
+            free.reset(nextSequence++);
+            return free;
+        }
+        if (allocatedSegments < maxSegments) {
+            final long sequence = nextSequence++;
+            final Segment segment = Segment.create(new File(directory, String.format("%020d%s", sequence,
+                    FILE_EXTENSION)), segmentSize, sequence);
+            allocatedSegments++;
+            return segment;
+        }
+        return null;
+    }
+
+    /**
+     * On every call to dequeue, if the off-heap queue is configured, we move as many entries as there is room for from
+     * the segments to the in-memory queue. We then take exclusively from the head of the in-memory queue which ensures
+     * ordering with respect to the two discrete queues.
+     * <p>
+     * Entries taken from the segments are deserialized, use {@link #take()} to avoid it.
+     */
+    @Override
+    public Map.Entry<String, T> dequeue() throws InterruptedException {
+        while (true) {
+            try (Entry<T> entry = take()) {
+                if (entry.getSerializedMessage() == null) {
+                    return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getMessage());
+                }
+
+                final ByteBuffer serialized = entry.getSerializedMessage();
+                final byte[] bytes = new byte[serialized.remaining()];
+                serialized.duplicate().get(bytes);
+                try {
+                    return new AbstractMap.SimpleImmutableEntry<>(null, deserializer.apply(bytes));
+                } catch (Exception e) {
+                    RATE_LIMITED_LOGGER.warn("Exception while deserializing entry of module {}, dropping it",
+                            moduleName, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Entry<T> take() throws InterruptedException {
+        LOG.debug("Dequeueing an entry from queue with current size {}", getSize());
+
+        if (maxSegments > 0) {
+            offHeapLock.lock();
+            try {
+                moveToMemory();
+            } finally {
+                offHeapLock.unlock();
+            }
+        }
+
+        LOG.trace("Waiting for an entry from in-memory queue...");
+
+        return inMemoryQueue.take();
+    }
+
+    /**
+     * Moves entries from the segments to the in-memory queue, provided there is room. The entries reference the
+     * segment they were read from until they are closed. Must be called with the off-heap lock held.
+     */
+    private void moveToMemory() {
+        int moved = 0;
+        while (offHeapSize > 0 && inMemoryQueue.remainingCapacity() > 0 && moved < MAX_ENTRIES_MOVED_PER_DEQUEUE) {
+            final Segment head = activeSegments.peekFirst();
+            final ByteBuffer record = head.read();
+            if (record == null) {
+                retire(head);
+                continue;
+            }
+            offHeapSize--;
+            moved++;
+
+            String routingKey = null;
+            final int routingKeyLength = Short.toUnsignedInt(record.getShort());
+            if (routingKeyLength > 0) {
+                final byte[] routingKeyBytes = new byte[routingKeyLength];
+                record.get(routingKeyBytes);
+                routingKey = new String(routingKeyBytes, StandardCharsets.UTF_8);
+            }
+            head.references++;
+            inMemoryQueue.add(new QueuedEntry(record.slice().asReadOnlyBuffer(), routingKey, head));
+
+            if (!head.hasRemaining()) {
+                retire(head);
+            }
+        }
+    }
+
+    /**
+     * Called once all the records of the segment have been read. Must be called with the off-heap lock held.
+     */
+    private void retire(Segment segment) {
+        if (activeSegments.size() == 1) {
+            // This is also the segment we are writing to, just start over from the beginning if nothing uses it
+            if (segment.references == 0 && !segment.writing) {
+                segment.reset(nextSequence++);
+                segmentFreed.signalAll();
+            }
+        } else {
+            activeSegments.remove(segment);
+            segment.retired = true;
+            if (segment.references == 0) {
+                free(segment);
+            }
+        }
+    }
+
+    /**
+     * Must be called with the off-heap lock held.
+     */
+    private void free(Segment segment) {
+        segment.retired = false;
+        segment.reset(nextSequence++);
+        freeSegments.addLast(segment);
+        segmentFreed.signalAll();
+    }
+
+    private void release(Segment segment) {
+        offHeapLock.lock();
+        try {
+            segment.references--;
+            if (segment.references > 0) {
+                return;
+            }
+            if (segment.retired) {
+                free(segment);
+            } else if (!segment.hasRemaining() && activeSegments.size() == 1) {
+                retire(segment);
+            }
+        } finally {
+            offHeapLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        if (maxSegments == 0) {
+            int remaining = inMemoryQueue.remainingCapacity();
+            LOG.trace("Checked if full and remaining capacity is {}", remaining);
+
+            return remaining <= 0;
+        }
+
+        offHeapLock.lock();
+        try {
+            return freeSegments.isEmpty() && allocatedSegments >= maxSegments;
+        } finally {
+            offHeapLock.unlock();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        if (maxSegments == 0) {
+            return inMemoryQueue.size();
+        }
+
+        offHeapLock.lock();
+        try {
+            return inMemoryQueue.size() + offHeapSize;
+        } finally {
+            offHeapLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    int getNumSegmentFiles() {
+        offHeapLock.lock();
+        try {
+            return allocatedSegments;
+        } finally {
+            offHeapLock.unlock();
+        }
+    }
+
+    /**
+     * An entry of the in-memory queue, holding either the item itself or a slice of the segment it was stored in.
+     */
+    private final class QueuedEntry implements Entry<T> {
+        private final String key;
+        private final T message;
+        private final ByteBuffer serializedMessage;
+        private final String routingKey;
+        private Segment segment;
+
+        private QueuedEntry(String key, T message) {
+            this.key = key;
+            this.message = message;
+            this.serializedMessage = null;
+            this.routingKey = null;
+        }
+
+        private QueuedEntry(ByteBuffer serializedMessage, String routingKey, Segment segment) {
+            this.key = null;
+            this.message = null;
+            this.serializedMessage = serializedMessage;
+            this.routingKey = routingKey;
+            this.segment = segment;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public T getMessage() {
+            return message;
+        }
+
+        @Override
+        public ByteBuffer getSerializedMessage() {
+            return serializedMessage;
+        }
+
+        @Override
+        public Optional<String> getRoutingKey() {
+            return Optional.ofNullable(routingKey);
+        }
+
+        @Override
+        public void close() {
+            // Entries are consumed by a single thread, no need to synchronize
+            if (segment != null) {
+                release(segment);
+                segment = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return serializedMessage != null ? "serialized entry of " + serializedMessage.remaining() + " bytes"
+                    : key + "=" + message;
+        }
+    }
+
+    /**
+     * A memory-mapped segment file. Segments are not thread safe, access must be guarded by the off-heap lock, with
+     * the exception of {@link #write} which is guarded by the writing flag.
+     */
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private long sequence;
+        private int readPosition;
+        private int writePosition;
+        // Number of entries of the in-memory queue still referencing the segment
+        private int references;
+        // Set when the segment has been consumed and is waiting for its references to be released
+        private boolean retired;
+        // Set while a producer is writing past the end of the segment
+        private boolean writing;
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private static MappedByteBuffer map(File file, long size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                // The mapping remains valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private static Segment create(File file, int size, long sequence) throws IOException {
+            final Segment segment = new Segment(file, map(file, size));
+            segment.reset(sequence);
+            return segment;
+        }
+
+        /**
+         * @return the segment, or null if the file does not hold a valid segment
+         */
+        private static Segment load(File file) throws IOException {
+            final long length = file.length();
+            if (length <= HEADER_SIZE_IN_BYTES || length > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            final Segment segment = new Segment(file, map(file, length));
+            final ByteBuffer buffer = segment.buffer;
+            if (buffer.getInt(0) != MAGIC) {
+                return null;
+            }
+            segment.sequence = buffer.getLong(SEQUENCE_OFFSET);
+            segment.readPosition = buffer.getInt(READ_POSITION_OFFSET);
+            if (segment.readPosition < HEADER_SIZE_IN_BYTES || segment.readPosition > buffer.capacity()) {
+                return null;
+            }
+
+            // Find the end of the written data
+            int position = segment.readPosition;
+            while (position + RECORD_HEADER_SIZE_IN_BYTES <= buffer.capacity()) {
+                final int recordLength = buffer.getInt(position);
+                if (recordLength <= 0 || recordLength > buffer.capacity() - position - RECORD_HEADER_SIZE_IN_BYTES) {
+                    break;
+                }
+                position += RECORD_HEADER_SIZE_IN_BYTES + recordLength;
+            }
+            segment.writePosition = position;
+            return segment;
+        }
+
+        private int capacity() {
+            return buffer.capacity();
+        }
+
+        private void reset(long sequence) {
+            this.sequence = sequence;
+            readPosition = HEADER_SIZE_IN_BYTES;
+            writePosition = HEADER_SIZE_IN_BYTES;
+            buffer.putInt(HEADER_SIZE_IN_BYTES, 0);
+            buffer.putLong(SEQUENCE_OFFSET, sequence);
+            buffer.putInt(READ_POSITION_OFFSET, readPosition);
+            buffer.putInt(0, MAGIC);
+        }
+
+        private boolean isEmpty() {
+            return writePosition == HEADER_SIZE_IN_BYTES;
+        }
+
+        /**
+         * Writes the routing key and the content of a record past the end of the segment. The record only becomes
+         * visible once it is committed.
+         *
+         * @return the length of the record, or -1 if there is no room left for it
+         */
+        private int write(Consumer<ByteBuffer> content, byte[] routingKey) {
+            final int start = writePosition + RECORD_HEADER_SIZE_IN_BYTES;
+            if (start + ROUTING_KEY_HEADER_SIZE_IN_BYTES + routingKey.length > buffer.capacity()) {
+                return -1;
+            }
+
+            final ByteBuffer target = buffer.duplicate();
+            target.position(start);
+
+            target.putShort((short) routingKey.length);
+            target.put(routingKey);
+            try {
+                content.accept(target);
+            } catch (BufferOverflowException e) {
+                return -1;
+            }
+            return target.position() - start;
+        }
+
+        private void commit(int length) {
+            final int end = writePosition + RECORD_HEADER_SIZE_IN_BYTES + length;
+            if (end + RECORD_HEADER_SIZE_IN_BYTES <= buffer.capacity()) {
+                // Terminate the data so that stale records from a previous use of the segment are never read back
+                buffer.putInt(end, 0);
+            }
+            // Write the length last, the record only becomes visible once it is set
+            buffer.putInt(writePosition, length);
+            writePosition = end;
+        }
+
+        /**
+         * @return a slice holding the next record, or null if all the records have been read
+         */
+        private ByteBuffer read() {
+            if (!hasRemaining()) {
+                return null;
+            }
+
+            final int length = buffer.getInt(readPosition);
+            final ByteBuffer record = buffer.duplicate();
+            record.position(readPosition + RECORD_HEADER_SIZE_IN_BYTES);
+            record.limit(readPosition + RECORD_HEADER_SIZE_IN_BYTES + length);
+            readPosition += RECORD_HEADER_SIZE_IN_BYTES + length;
+            buffer.putInt(READ_POSITION_OFFSET, readPosition);
+            return record;
+        }
+
+        private boolean hasRemaining() {
+            return readPosition < writePosition;
+        }
+
+        private int countRemaining() {
+            int count = 0;
+            int position = readPosition;
+            while (position < writePosition) {
+                position += RECORD_HEADER_SIZE_IN_BYTES + buffer.getInt(position);
+                count++;
+            }
+            return count;
+        }
+
+        private void force() {
+            buffer.force();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import org.opennms.core.ipc.sink.api.DispatchQueueFactory;
+
+/**
+ * Creates the {@link DispatchQueueFactory} matching the configured off-heap queue type.
+ */
+public abstract class OffHeapDispatchQueueFactories {
+
+    public static final String QUEUE_FILE = "queue-file";
+    public static final String MAPPED_SEGMENTS = "mapped-segments";
+
+    public static DispatchQueueFactory newDispatchQueueFactory(String queueType, int inMemoryEntrySize, int batchSize,
+                                                               String offHeapSize, String segmentSize,
+                                                               String baseFilePath) {
+        if (queueType == null || queueType.length() == 0 || QUEUE_FILE.equalsIgnoreCase(queueType)) {
+            return new QueueFileOffHeapDispatchQueueFactory(inMemoryEntrySize, batchSize, offHeapSize, baseFilePath);
+        } else if (MAPPED_SEGMENTS.equalsIgnoreCase(queueType)) {
+            return new MappedSegmentOffHeapDispatchQueueFactory(inMemoryEntrySize, segmentSize, offHeapSize,
+                    baseFilePath);
+        }
+        throw new IllegalArgumentException("Invalid off-heap queue type " + queueType + ". Must be one of "
+                + QUEUE_FILE + " or " + MAPPED_SEGMENTS);
+    }
+}
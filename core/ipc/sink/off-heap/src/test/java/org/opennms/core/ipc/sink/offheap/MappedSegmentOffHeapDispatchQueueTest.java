@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.DispatchQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.opennms.core.ipc.sink.api.ZeroCopyDispatchQueue;
+
+import com.jayway.awaitility.core.ConditionTimeoutException;
+
+public class MappedSegmentOffHeapDispatchQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void canQueueAndDequeue() throws IOException, WriteFailedException, InterruptedException {
+        DispatchQueue<String> queue = new MappedSegmentOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "canQueueAndDequeue", Paths.get(folder.newFolder().toURI()), 1, 1024, 10240);
+
+        // Since size is 1, the first entry should be in-memory and the second entry should be off-heap
+        assertThat(queue.enqueue("msg1", "key1"), equalTo(DispatchQueue.EnqueueResult.IMMEDIATE));
+        assertThat(queue.enqueue("msg2", "key2"), equalTo(DispatchQueue.EnqueueResult.DEFERRED));
+
+        assertThat(queue.getSize(), equalTo(2));
+
+        assertThat(queue.dequeue().getValue(), equalTo("msg1"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg2"));
+    }
+
+    @Test
+    public void dequeuesInOrderAndRecyclesSegments() throws IOException, WriteFailedException, InterruptedException {
+        MappedSegmentOffHeapDispatchQueue<String> queue = new MappedSegmentOffHeapDispatchQueue<>(String::getBytes,
+                String::new, "dequeuesInOrderAndRecyclesSegments", Paths.get(folder.newFolder().toURI()), 10, 1024,
+                4096);
+
+        List<String> dequeued = new ArrayList<>();
+        List<String> toQueue = new ArrayList<>();
+        // Go through the segments several times over
+        for (int round = 0; round < 10; round++) {
+            List<String> roundEntries = IntStream.range(round * 300, (round + 1) * 300)
+                    .boxed()
+                    .map(Object::toString)
+                    .collect(Collectors.toList());
+            toQueue.addAll(roundEntries);
+            for (String s : roundEntries) {
+                queue.enqueue(s, "key" + s);
+            }
+            while (queue.getSize() > 0) {
+                dequeued.add(queue.dequeue().getValue());
+            }
+            assertThat(queue.getNumSegmentFiles() <= 4, equalTo(true));
+        }
+
+        assertThat(dequeued, equalTo(toQueue));
+    }
+
+    @Test
+    public void canQueueAndDequeueInParallel() throws IOException {
+        DispatchQueue<String> queue = new MappedSegmentOffHeapDispatchQueue<>(String::getBytes, String::new,
+                "canQueueAndDequeueInParallel", Paths.get(folder.newFolder().toURI()), 20, 4096, 16384);
+
+        int numEntries = 111_111;
+        List<String> toQueue = IntStream.range(0, numEntries)
+                .boxed()
+                .map(Object::toString)
+                .collect(Collectors.toList());
+
+        CompletableFuture.runAsync(() -> {
+            for (String s : toQueue) {
+                try {
+                    queue.enqueue(s, "key");
+                } catch (WriteFailedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        List<String> dequeued = new CopyOnWriteArrayList<>();
+        CompletableFuture.runAsync(() -> {
+            while (true) {
+                try {
+                    dequeued.add(queue.dequeue().getValue());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        await().atMost(1, TimeUnit.MINUTES).until(() -> dequeued.size() == numEntries);
+        assertThat(dequeued, equalTo(toQueue));
+    }
+
+    @Test
+    public void blocksWhenFull() throws WriteFailedException, IOException, InterruptedException {
+        MappedSegmentOffHeapDispatchQueue<byte[]> queue = new MappedSegmentOffHeapDispatchQueue<>(b -> b, b -> b,
+                "blocksWhenFull", Paths.get(folder.newFolder().toURI()), 1, 128, 256);
+
+        // Fill the in-memory queue and both segments
+        queue.enqueue(new byte[0], "key1");
+        queue.enqueue(new byte[100], "key2");
+        queue.enqueue(new byte[100], "key3");
+        assertThat(queue.isFull(), equalTo(true));
+
+        AtomicBoolean didQueue = new AtomicBoolean(false);
+
+        CompletableFuture.runAsync(() -> {
+            // Now try to queue again and verify that we block
+            try {
+                queue.enqueue(new byte[1], "key4");
+                didQueue.set(true);
+            } catch (WriteFailedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        try {
+            await().pollDelay(10, TimeUnit.MILLISECONDS)
+                    .atMost(100, TimeUnit.MILLISECONDS)
+                    .until(didQueue::get);
+            fail("Enqueue happened but we should have been blocking");
+        } catch (ConditionTimeoutException expected) {
+        }
+
+        // Dequeueing moves the first segment to the in-memory queue which frees it up
+        queue.dequeue();
+        queue.dequeue();
+
+        await().atMost(1, TimeUnit.SECONDS).until(didQueue::get);
+    }
+
+    @Test
+    public void canTakeSerializedEntries() throws IOException, WriteFailedException, InterruptedException {
+        MappedSegmentOffHeapDispatchQueue<String> queue = new MappedSegmentOffHeapDispatchQueue<>(
+                (s, buffer) -> buffer.put(s.getBytes(StandardCharsets.UTF_8)), s -> Optional.of("route-" + s),
+                String::new, "canTakeSerializedEntries", Paths.get(folder.newFolder().toURI()), 1, 1024, 10240);
+
+        queue.enqueue("msg1", "key1");
+        queue.enqueue("msg2", "key2");
+
+        // The first entry was queued in-memory
+        try (ZeroCopyDispatchQueue.Entry<String> entry = queue.take()) {
+            assertThat(entry.getKey(), equalTo("key1"));
+            assertThat(entry.getMessage(), equalTo("msg1"));
+            assertThat(entry.getSerializedMessage(), nullValue());
+        }
+
+        // The second one is handed out as it was written in the segment
+        try (ZeroCopyDispatchQueue.Entry<String> entry = queue.take()) {
+            assertThat(entry.getKey(), nullValue());
+            assertThat(entry.getMessage(), nullValue());
+            assertThat(entry.getRoutingKey(), equalTo(Optional.of("route-msg2")));
+            assertThat(toString(entry.getSerializedMessage()), equalTo("msg2"));
+        }
+    }
+
+    @Test
+    public void recyclesSegmentsOnlyOnceReleased() throws IOException, WriteFailedException, InterruptedException {
+        MappedSegmentOffHeapDispatchQueue<byte[]> queue = new MappedSegmentOffHeapDispatchQueue<>(b -> b, b -> b,
+                "recyclesSegmentsOnlyOnceReleased", Paths.get(folder.newFolder().toURI()), 1, 128, 256);
+
+        // Fill the in-memory queue and both segments
+        queue.enqueue(new byte[0], "key1");
+        queue.enqueue(new byte[100], "key2");
+        queue.enqueue(new byte[100], "key3");
+
+        queue.take().close();
+        ZeroCopyDispatchQueue.Entry<byte[]> entry = queue.take();
+        assertThat(entry.getSerializedMessage().remaining(), equalTo(100));
+
+        AtomicBoolean didQueue = new AtomicBoolean(false);
+        CompletableFuture.runAsync(() -> {
+            try {
+                queue.enqueue(new byte[1], "key4");
+                didQueue.set(true);
+            } catch (WriteFailedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // The first segment was consumed, but is still referenced by the entry
+        try {
+            await().pollDelay(10, TimeUnit.MILLISECONDS)
+                    .atMost(100, TimeUnit.MILLISECONDS)
+                    .until(didQueue::get);
+            fail("Enqueue happened but we should have been blocking");
+        } catch (ConditionTimeoutException expected) {
+        }
+
+        entry.close();
+        await().atMost(1, TimeUnit.SECONDS).until(didQueue::get);
+    }
+
+    @Test(expected = WriteFailedException.class)
+    public void rejectsEntriesLargerThanASegment() throws IOException, WriteFailedException {
+        DispatchQueue<byte[]> queue = new MappedSegmentOffHeapDispatchQueue<>(b -> b, b -> b,
+                "rejectsEntriesLargerThanASegment", Paths.get(folder.newFolder().toURI()), 1, 128, 1024);
+
+        queue.enqueue(new byte[0], "key1");
+        queue.enqueue(new byte[128], "key2");
+    }
+
+    @Test
+    public void canDequeueOffHeapAfterRestart() throws IOException, WriteFailedException, InterruptedException {
+        Path path = Paths.get(folder.newFolder().toURI());
+        String moduleName = "canDequeueOffHeapAfterRestart";
+        DispatchQueue<String> queue = new MappedSegmentOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, path, 1, 64, 1024);
+
+        List<String> toQueue = IntStream.range(0, 50)
+                .boxed()
+                .map(i -> "msg" + i)
+                .collect(Collectors.toList());
+        for (String s : toQueue) {
+            queue.enqueue(s, "key");
+        }
+
+        // Consume part of the entries, spanning a few segments
+        assertThat(queue.dequeue().getValue(), equalTo("msg0"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg1"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg2"));
+
+        // Reinitialize to simulate coming back up after restart
+        queue = new MappedSegmentOffHeapDispatchQueue<>(String::getBytes, String::new, moduleName, path, 1, 64, 1024);
+
+        // We will have lost the in-memory portion of the queue
+        assertThat(queue.getSize(), equalTo(47));
+        List<String> dequeued = new ArrayList<>();
+        while (queue.getSize() > 0) {
+            dequeued.add(queue.dequeue().getValue());
+        }
+        assertThat(dequeued, equalTo(toQueue.subList(3, toQueue.size())));
+    }
+
+    @Test
+    public void recoversFromCorruptSegment() throws IOException, WriteFailedException, InterruptedException {
+        String moduleName = "recoversFromCorruptSegment";
+        File tmpFolder = folder.newFolder();
+        File segmentFolder = Paths.get(tmpFolder.getAbsolutePath(), moduleName + ".segments").toFile();
+        segmentFolder.mkdirs();
+        Files.write(new File(segmentFolder, "00000000000000000000.seg").toPath(), "corrupt!".getBytes());
+        DispatchQueue<String> queue = new MappedSegmentOffHeapDispatchQueue<>(String::getBytes, String::new,
+                moduleName, Paths.get(tmpFolder.toURI()), 1, 128, 1024);
+
+        queue.enqueue("msg1", "key1");
+        queue.enqueue("msg2", "key2");
+
+        assertThat(queue.dequeue().getValue(), equalTo("msg1"));
+        assertThat(queue.dequeue().getValue(), equalTo("msg2"));
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
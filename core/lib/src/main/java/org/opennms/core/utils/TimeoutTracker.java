@@ -149,6 +149,19 @@ public class TimeoutTracker {
 
     }
 
+    /**
+     * <p>Returns how long {@link #startAttempt()} would block before starting the next
+     * attempt, allowing callers that must not block to schedule the attempt instead.</p>
+     *
+     * @return the delay in nanoseconds, 0 unless strict timeouts are enabled
+     */
+    public long getStartDelayNanos() {
+        if (!m_strictTimeouts) {
+            return 0L;
+        }
+        return Math.max(0L, m_nextRetryTimeNanos - System.nanoTime());
+    }
+
     private void sleep(long nanos) {
         long millis = nanos / 1000000L;
         int remainingNanos = (int)(nanos % 1000000L);
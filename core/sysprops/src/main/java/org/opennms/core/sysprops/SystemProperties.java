@@ -70,6 +70,11 @@ public class SystemProperties {
         return getProperty(propertyName, defaultValue, resolver);
     }
 
+    public static boolean getBoolean(String propertyName, boolean defaultValue) {
+        Function<String, Boolean> resolver = (propertyValue) -> (Boolean.parseBoolean(propertyValue));
+        return getProperty(propertyName, defaultValue, resolver);
+    }
+
     private static <T> T getProperty(String propertyName, T defaultValue, Function<String, T> transformer) {
         String valueAsString = System.getProperty(propertyName);
         if (valueAsString == null) {
@@ -64,4 +64,16 @@ public class SystemPropertiesTest {
         assertEquals(Integer.valueOf(42), SystemProperties.getInteger(KEY));
         assertEquals(Integer.valueOf(42), SystemProperties.getInteger(KEY, defaultValue));
     }
+
+    @Test
+    public void shouldResolveBooleanValues(){
+        System.clearProperty(KEY);
+        assertEquals(false, SystemProperties.getBoolean(KEY, false));
+        assertEquals(true, SystemProperties.getBoolean(KEY, true));
+
+        System.setProperty(KEY, "true");
+        assertEquals(true, SystemProperties.getBoolean(KEY, false));
+        System.setProperty(KEY, "false");
+        assertEquals(false, SystemProperties.getBoolean(KEY, true));
+    }
 }
@@ -34,17 +34,21 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -73,8 +77,14 @@ import org.opennms.netmgt.bsm.service.model.graph.internal.BusinessServiceGraphI
 import org.opennms.netmgt.bsm.service.model.graph.internal.GraphAlgorithms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -83,9 +93,18 @@ import edu.uci.ics.jung.algorithms.layout.KKLayout;
 import edu.uci.ics.jung.algorithms.layout.Layout;
 import edu.uci.ics.jung.visualization.VisualizationImageServer;
 
-public class DefaultBusinessServiceStateMachine implements BusinessServiceStateMachine {
+/**
+ * Maintains the status of the business service graph.
+ *
+ * Status changes are propagated in batches: the vertices whose children changed are marked as dirty and
+ * reduced once per batch, level by level starting from the deepest level, so that a vertex shared by many
+ * paths is only reduced once all of its children are up to date. After each batch an immutable snapshot of
+ * the statuses is published, which is used to answer the operational status lookups without locking.
+ */
+public class DefaultBusinessServiceStateMachine implements BusinessServiceStateMachine, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultBusinessServiceStateMachine.class);
     public static final Status MIN_SEVERITY = Status.NORMAL;
+    private static final String JMX_DOMAIN = "org.opennms.netmgt.bsm";
 
     @Autowired
     private AlarmProvider m_alarmProvider;
@@ -93,6 +112,13 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     private final List<BusinessServiceStateChangeHandler> m_handlers = Lists.newArrayList();
     private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
     private BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+    private volatile StatusSnapshot m_snapshot = StatusSnapshot.of(m_g);
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private final Timer m_propagationTimer = m_metrics.timer(MetricRegistry.name("propagation", "latency"));
+    private final Histogram m_reducedVertices = m_metrics.histogram(MetricRegistry.name("propagation", "reduced"));
+    private final Histogram m_updatedVertices = m_metrics.histogram(MetricRegistry.name("propagation", "updated"));
+    private JmxReporter m_metricsReporter;
 
     @Override
     public void setBusinessServices(List<BusinessService> businessServices) {
@@ -103,11 +129,12 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
             // Prime the graph with the state from the previous graph and
             // keep track of the new reductions keys
+            final Propagation propagation = new Propagation(g);
             Set<String> reductionsKeysToLookup = Sets.newHashSet();
             for (String reductionKey : g.getReductionKeys()) {
                 GraphVertex reductionKeyVertex = m_g.getVertexByReductionKey(reductionKey);
                 if (reductionKeyVertex != null) {
-                    updateAndPropagateVertex(g, g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
+                    propagation.update(g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
                 } else {
                     reductionsKeysToLookup.add(reductionKey);
                 }
@@ -122,11 +149,14 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 if (reductionsKeysToLookup.size() > 0) {
                     final Map<String, AlarmWrapper> lookup = m_alarmProvider.lookup(reductionsKeysToLookup);
                     for (Entry<String, AlarmWrapper> eachEntry : lookup.entrySet()) {
-                        updateAndPropagateVertex(g, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
+                        propagation.update(g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
                     }
                 }
             }
+            propagation.run();
             m_g = g;
+            m_snapshot = StatusSnapshot.of(g);
+            propagation.publish();
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -136,8 +166,11 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     public void handleNewOrUpdatedAlarm(AlarmWrapper alarm) {
         m_rwLock.writeLock().lock();
         try {
-            // Recursively propagate the status
-            updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            // Propagate the status
+            final Propagation propagation = new Propagation(m_g);
+            propagation.update(m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            propagation.run();
+            propagation.publish();
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -148,9 +181,10 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         final Set<String> reductionKeysFromGivenAlarms = new HashSet<>(alarms.size());
         m_rwLock.writeLock().lock();
         try {
+            // Apply all of the given alarms and propagate the statuses in a single pass
+            final Propagation propagation = new Propagation(m_g);
             for (AlarmWrapper alarm : alarms) {
-                // Recursively propagate the status for all of the given alarms
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+                propagation.update(m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
                 // Keep track of the reduction keys that have been processed
                 reductionKeysFromGivenAlarms.add(alarm.getReductionKey());
             }
@@ -158,81 +192,167 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             for (String missingReductionKey : Sets.difference(m_g.getReductionKeys(), reductionKeysFromGivenAlarms)) {
                 // There is a vertex on the graph that corresponds to this reduction key
                 // but no alarm with this reduction key exists
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
+                propagation.update(m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
             }
+            propagation.run();
+            propagation.publish();
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
-    private void updateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
+    /**
+     * A batch of status updates on a graph.
+     *
+     * Updated vertices map their status onto their incoming edges right away and mark the parents as dirty.
+     * Since a parent always has a lower level than all of its children, reducing the dirty vertices
+     * from the deepest level up guarantees that every vertex is reduced at most once per batch.
+     */
+    private class Propagation {
+        private final BusinessServiceGraph m_graph;
+        private final TreeMap<Integer, Set<GraphVertex>> m_dirtyByLevel = new TreeMap<>();
+        private final Set<GraphVertex> m_updated = new LinkedHashSet<>();
+        private final Timer.Context m_timerContext = m_propagationTimer.time();
+        private int m_reduced = 0;
+
+        private Propagation(BusinessServiceGraph graph) {
+            m_graph = Objects.requireNonNull(graph);
         }
 
-        // Apply lower bound
-        newStatus = newStatus.isLessThan(MIN_SEVERITY) ? MIN_SEVERITY : newStatus;
+        private void update(GraphVertex vertex, Status newStatus) {
+            if (vertex == null) {
+                // Nothing to do here
+                return;
+            }
 
-        // Update the status if necessary
-        Status previousStatus = vertex.getStatus();
-        if (previousStatus.equals(newStatus)) {
-            // The status hasn't changed, there's nothing to propagate
-            return;
+            // Apply lower bound
+            newStatus = newStatus.isLessThan(MIN_SEVERITY) ? MIN_SEVERITY : newStatus;
+
+            // Update the status if necessary
+            Status previousStatus = vertex.getStatus();
+            if (previousStatus.equals(newStatus)) {
+                // The status hasn't changed, there's nothing to propagate
+                return;
+            }
+            vertex.setStatus(newStatus);
+            m_updated.add(vertex);
+
+            // Notify the listeners
+            onStatusUpdated(m_graph, vertex, previousStatus);
+
+            // Update the edges with the mapped status
+            for (GraphEdge edge : m_graph.getInEdges(vertex)) {
+                Status mappedStatus = newStatus;
+                if (newStatus.isGreaterThan(MIN_SEVERITY)) {
+                    // Only apply the map function when the status is > the minimum
+                    mappedStatus = edge.getMapFunction().map(newStatus).orElse(MIN_SEVERITY);
+                } else {
+                    mappedStatus = newStatus;
+                }
+
+                if (mappedStatus.equals(edge.getStatus())) {
+                    // The status hasn't changed
+                    continue;
+                }
+
+                // Update the status and mark the parent for reduction
+                edge.setStatus(mappedStatus);
+                final GraphVertex parent = m_graph.getOpposite(vertex, edge);
+                if (parent != null) {
+                    m_dirtyByLevel.computeIfAbsent(parent.getLevel(), level -> new LinkedHashSet<>()).add(parent);
+                }
+            }
         }
-        vertex.setStatus(newStatus);
-
-        // Notify the listeners
-        onStatusUpdated(graph, vertex, previousStatus);
-
-        // Update the edges with the mapped status
-        List<GraphEdge> updatedEges = Lists.newArrayList();
-        for (GraphEdge edge : graph.getInEdges(vertex)) {
-            Status mappedStatus = newStatus;
-            if (newStatus.isGreaterThan(MIN_SEVERITY)) {
-                // Only apply the map function when the status is > the minimum
-                mappedStatus = edge.getMapFunction().map(newStatus).orElse(MIN_SEVERITY);
-            } else {
-                mappedStatus = newStatus;
+
+        private void run() {
+            Entry<Integer, Set<GraphVertex>> deepest;
+            while ((deepest = m_dirtyByLevel.pollLastEntry()) != null) {
+                for (GraphVertex vertex : deepest.getValue()) {
+                    reduce(vertex);
+                }
             }
+        }
+
+        private void reduce(GraphVertex vertex) {
+            m_reduced++;
 
-            if (mappedStatus.equals(edge.getStatus())) {
-                // The status hasn't changed
-                continue;
+            // Calculate the weighed statuses from the child edges
+            List<StatusWithIndex> statuses = weighEdges(m_graph.getOutEdges(vertex));
+
+            // Reduce
+            Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
+
+            Status newStatus;
+            if (reducedStatus.isPresent()) {
+                newStatus = reducedStatus.get().getStatus();
+            } else {
+                newStatus = MIN_SEVERITY;
             }
 
-            // Update the status and add it to the list of edges to propagate
-            edge.setStatus(mappedStatus);
-            updatedEges.add(edge);
+            // Update and mark the parents
+            update(vertex, newStatus);
         }
 
-        // Propagate once all of the edges have been updated
-        for (GraphEdge edge : updatedEges) {
-            reduceUpdateAndPropagateVertex(graph, graph.getOpposite(vertex, edge));
+        /**
+         * Publishes the statuses of the updated vertices and records the metrics for this batch.
+         */
+        private void publish() {
+            if (!m_updated.isEmpty()) {
+                m_snapshot = m_snapshot.with(m_updated);
+            }
+            m_reducedVertices.update(m_reduced);
+            m_updatedVertices.update(m_updated.size());
+            m_timerContext.stop();
         }
     }
 
-    private void reduceUpdateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
+    /**
+     * Immutable view of the statuses of all the vertices in a graph.
+     */
+    private static final class StatusSnapshot {
+        private final BusinessServiceGraph m_graph;
+        private final Map<GraphVertex, Integer> m_indices;
+        private final Status[] m_statuses;
+
+        private StatusSnapshot(BusinessServiceGraph graph, Map<GraphVertex, Integer> indices, Status[] statuses) {
+            m_graph = graph;
+            m_indices = indices;
+            m_statuses = statuses;
         }
 
-        // Calculate the weighed statuses from the child edges
-        List<StatusWithIndex> statuses = weighEdges(graph.getOutEdges(vertex));
+        private static StatusSnapshot of(BusinessServiceGraph graph) {
+            final List<GraphVertex> vertices = new ArrayList<>(graph.getVertices());
+            final Map<GraphVertex, Integer> indices = new IdentityHashMap<>(vertices.size());
+            final Status[] statuses = new Status[vertices.size()];
+            for (int i = 0; i < statuses.length; i++) {
+                indices.put(vertices.get(i), i);
+                statuses[i] = vertices.get(i).getStatus();
+            }
+            return new StatusSnapshot(graph, Collections.unmodifiableMap(indices), statuses);
+        }
 
-        // Reduce
-        Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
+        private StatusSnapshot with(Collection<GraphVertex> updated) {
+            final Status[] statuses = m_statuses.clone();
+            for (GraphVertex vertex : updated) {
+                final Integer index = m_indices.get(vertex);
+                if (index != null) {
+                    statuses[index] = vertex.getStatus();
+                }
+            }
+            return new StatusSnapshot(m_graph, m_indices, statuses);
+        }
 
-        Status newStatus;
-        if (reducedStatus.isPresent()) {
-            newStatus = reducedStatus.get().getStatus();
-        } else {
-            newStatus = MIN_SEVERITY;
+        private BusinessServiceGraph getGraph() {
+            return m_graph;
         }
 
-        // Update and propagate
-        updateAndPropagateVertex(graph, vertex, newStatus);
+        private Status getStatus(GraphVertex vertex) {
+            if (vertex == null) {
+                return null;
+            }
+            final Integer index = m_indices.get(vertex);
+            return index != null ? m_statuses[index] : null;
+        }
     }
 
     public static List<StatusWithIndex> weighEdges(Collection<GraphEdge> edges) {
@@ -297,58 +417,26 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     @Override
     public Status getOperationalStatus(BusinessService businessService) {
         Objects.requireNonNull(businessService);
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByBusinessServiceId(businessService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(IpService ipService) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByIpServiceId(ipService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(String reductionKey) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByReductionKey(reductionKey));
     }
 
     @Override
     public Status getOperationalStatus(Edge edge) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByEdgeId(edge.getId()));
     }
 
     public void setAlarmProvider(AlarmProvider alarmProvider) {
@@ -458,11 +546,12 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList()));
 
-            // Prime the state
+            // Prime the state in a single batch
             if (preserveState) {
+                final List<AlarmWrapper> alarms = new ArrayList<>(graph.getReductionKeys().size());
                 for (String reductionKey : graph.getReductionKeys()) {
                     GraphVertex reductionKeyVertex = graph.getVertexByReductionKey(reductionKey);
-                    sm.handleNewOrUpdatedAlarm(new AlarmWrapper() {
+                    alarms.add(new AlarmWrapper() {
                         @Override
                         public String getReductionKey() {
                             return reductionKey;
@@ -474,6 +563,7 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                         }
                     });
                 }
+                sm.handleAllAlarms(alarms);
             }
             return sm;
         } finally {
@@ -573,4 +663,28 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     private List<GraphVertex> calculateImpact(GraphVertex vertex) {
         return GraphAlgorithms.calculateImpact(m_g, vertex);
     }
+
+    public MetricRegistry getMetrics() {
+        return m_metrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        m_metricsReporter = JmxReporter.forRegistry(m_metrics)
+                .inDomain(JMX_DOMAIN)
+                .build();
+        try {
+            m_metricsReporter.start();
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Failed to start metrics reporter. JMX metrics may not be available for the business service state machine.");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (m_metricsReporter != null) {
+            m_metricsReporter.close();
+            m_metricsReporter = null;
+        }
+    }
 }
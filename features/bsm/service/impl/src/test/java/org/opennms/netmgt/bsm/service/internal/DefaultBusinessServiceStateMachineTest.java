@@ -56,6 +56,7 @@ import org.opennms.netmgt.bsm.service.model.graph.GraphVertex;
 import org.opennms.netmgt.bsm.test.LoggingStateChangeHandler;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class DefaultBusinessServiceStateMachineTest {
@@ -156,6 +157,43 @@ public class DefaultBusinessServiceStateMachineTest {
         assertEquals(1, stateChangeHandler.getStateChanges().size());
     }
 
+    @Test
+    public void reducesSharedVerticesOncePerBatch() {
+        // b4 is reachable from b1 through both b2 and b3
+        MockBusinessServiceHierarchy h = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1)
+                    .withBusinessService(2)
+                        .withBusinessService(4)
+                            .withReductionKey(41, "a1")
+                            .withReductionKey(42, "a2")
+                            .withReductionKey(43, "a3")
+                        .commit()
+                    .commit()
+                    .withBusinessService(3)
+                        .withBusinessService(4)
+                        .commit()
+                    .commit()
+                .commit()
+                .build();
+
+        DefaultBusinessServiceStateMachine stateMachine = new DefaultBusinessServiceStateMachine();
+        LoggingStateChangeHandler stateChangeHandler = new LoggingStateChangeHandler();
+        stateMachine.addHandler(stateChangeHandler, Maps.newHashMap());
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        stateMachine.handleAllAlarms(Lists.newArrayList(
+                new MockAlarmWrapper("a1", Status.MINOR),
+                new MockAlarmWrapper("a2", Status.CRITICAL),
+                new MockAlarmWrapper("a3", Status.MAJOR)));
+
+        for (long id = 1; id <= 4; id++) {
+            assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus(h.getBusinessServiceById(id)));
+        }
+        // Every business service was reduced and changed state exactly once
+        assertEquals(4, stateMachine.getMetrics().histogram("propagation.reduced").getSnapshot().getMax());
+        assertEquals(4, stateChangeHandler.getStateChanges().size());
+    }
+
     @Test
     public void canPerformRootCauseAndImpactAnalysis() {
         // Create a hierarchy using all of the available reduction functions
@@ -33,6 +33,8 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 import org.opennms.core.rpc.api.RpcExceptionHandler;
@@ -275,55 +277,98 @@ public class CollectionSpecification {
     public CollectionSet collect(CollectionAgent agent) throws CollectionException {
         m_instrumentation.beginCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
         try {
-            CollectorRequestBuilder requestBuilder = m_locationAwareCollectorClient.collect();
-            requestBuilder.withAgent(agent)
-                    .withAttributes(getPropertyMap())
-                    .withTimeToLive(getService().getInterval());
-            if(!getCollector().getClass().getCanonicalName().equals(collectorImplClassName)) {
-                requestBuilder.withCollectorClassName(collectorImplClassName);
-            } else {
-                requestBuilder.withCollector(getCollector());
+            final CollectionSet set = buildRequest(agent).execute().get();
+            return checkCollectionSet(agent, set);
+        } catch (InterruptedException|ExecutionException e) {
+            final CollectionException ce = toCollectionException(e);
+            m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, ce);
+            throw ce;
+        } finally {
+            m_instrumentation.endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #collect(CollectionAgent)}: no thread is
+     * blocked while the collector request is in flight.
+     *
+     * @param agent a {@link org.opennms.netmgt.collection.api.CollectionAgent} object.
+     * @return a future completed with the {@link org.opennms.netmgt.collection.api.CollectionSet}, or
+     *         completed exceptionally with a {@link java.util.concurrent.CompletionException} wrapping
+     *         a {@link org.opennms.netmgt.collection.api.CollectionException}
+     */
+    public CompletableFuture<CollectionSet> collectAsync(CollectionAgent agent) {
+        m_instrumentation.beginCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+        CompletableFuture<CollectionSet> future;
+        try {
+            future = buildRequest(agent).execute();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((set, t) -> {
+            try {
+                if (t != null) {
+                    final CollectionException ce = toCollectionException(t);
+                    m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, ce);
+                    throw new CompletionException(ce);
+                }
+                return checkCollectionSet(agent, set);
+            } finally {
+                m_instrumentation.endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
             }
-            final CollectionSet set = requestBuilder.execute().get();
+        });
+    }
 
-            // There are collector implementations that never throw an exception just return a collection failed
-            if (CollectionStatus.FAILED.equals(set.getStatus())) {
-                m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, new CollectionFailed(CollectionStatus.FAILED));
+    private CollectorRequestBuilder buildRequest(CollectionAgent agent) {
+        CollectorRequestBuilder requestBuilder = m_locationAwareCollectorClient.collect();
+        requestBuilder.withAgent(agent)
+                .withAttributes(getPropertyMap())
+                .withTimeToLive(getService().getInterval());
+        if(!getCollector().getClass().getCanonicalName().equals(collectorImplClassName)) {
+            requestBuilder.withCollectorClassName(collectorImplClassName);
+        } else {
+            requestBuilder.withCollector(getCollector());
+        }
+        return requestBuilder;
+    }
+
+    private CollectionSet checkCollectionSet(CollectionAgent agent, CollectionSet set) {
+        // There are collector implementations that never throw an exception just return a collection failed
+        if (CollectionStatus.FAILED.equals(set.getStatus())) {
+            m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, new CollectionFailed(CollectionStatus.FAILED));
+        }
+        return set;
+    }
+
+    private static CollectionException toCollectionException(final Throwable e) {
+        return RpcExceptionUtils.handleException(e, new RpcExceptionHandler<CollectionException>() {
+            @Override
+            public CollectionException onInterrupted(Throwable t) {
+                return new CollectionUnknown("Interrupted.", t);
             }
-            return set;
-        } catch (InterruptedException|ExecutionException e) {
-            final CollectionException ce = RpcExceptionUtils.handleException(e, new RpcExceptionHandler<CollectionException>() {
-                @Override
-                public CollectionException onInterrupted(Throwable t) {
-                    return new CollectionUnknown("Interrupted.", t);
-                }
 
-                @Override
-                public CollectionException onTimedOut(Throwable t) {
-                    return new CollectionUnknown("Request timed out.", t);
-                }
+            @Override
+            public CollectionException onTimedOut(Throwable t) {
+                return new CollectionUnknown("Request timed out.", t);
+            }
 
-                @Override
-                public CollectionException onRejected(Throwable t) {
-                    return new CollectionUnknown("Request rejected.", e);
-                }
+            @Override
+            public CollectionException onRejected(Throwable t) {
+                return new CollectionUnknown("Request rejected.", e);
+            }
 
-                @Override
-                public CollectionException onUnknown(Throwable t) {
-                    if (t instanceof CollectionException) {
-                        return (CollectionException)t;
-                    } else if (t.getCause() != null && t.getCause() instanceof CollectionException) {
-                        return (CollectionException)t.getCause();
-                    }
-                    return new CollectionException("Collection failed : " + t.getClass().getName() +
-                            ": " + t.getMessage(), t);
+            @Override
+            public CollectionException onUnknown(Throwable t) {
+                if (t instanceof CollectionException) {
+                    return (CollectionException)t;
+                } else if (t.getCause() != null && t.getCause() instanceof CollectionException) {
+                    return (CollectionException)t.getCause();
                 }
-            });
-            m_instrumentation.reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, ce);
-            throw ce;
-        } finally {
-            m_instrumentation.endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
-        }
+                return new CollectionException("Collection failed : " + t.getClass().getName() +
+                        ": " + t.getMessage(), t);
+            }
+        });
     }
 
     /**
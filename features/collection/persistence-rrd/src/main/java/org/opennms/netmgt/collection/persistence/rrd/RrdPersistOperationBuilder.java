@@ -50,8 +50,10 @@ import org.opennms.netmgt.collection.api.PersistOperationBuilder;
 import org.opennms.netmgt.collection.api.ResourceIdentifier;
 import org.opennms.netmgt.collection.api.TimeKeeper;
 import org.opennms.netmgt.collection.support.DefaultTimeKeeper;
+import org.opennms.netmgt.dao.api.ResourceStorageDao;
 import org.opennms.netmgt.rrd.RrdAttributeType;
 import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
@@ -77,6 +79,7 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
     private final Map<CollectionAttributeType, Number> m_declarations;
     private final Map<String, String> m_metaData = new LinkedHashMap<String, String>();
     private TimeKeeper m_timeKeeper = new DefaultTimeKeeper();
+    private ResourceStorageDao m_resourceStorageDao;
 
     /** Constant <code>MAX_DS_NAME_LENGTH=19</code> */
     public static final int MAX_DS_NAME_LENGTH = 19;
@@ -214,6 +217,9 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
                 createRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList());
+                if (m_resourceStorageDao != null) {
+                    m_resourceStorageDao.metricsPersisted(ResourceTypeUtils.getResourcePathWithRepository(getRepository(), m_resource.getPath()), m_rrdName);
+                }
                 updateRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
             }
         } catch (FileNotFoundException e) {
@@ -368,4 +374,13 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
     public void setTimeKeeper(TimeKeeper timeKeeper) {
         m_timeKeeper = timeKeeper;
     }
+
+    /**
+     * <p>setResourceStorageDao</p>
+     *
+     * @param resourceStorageDao a {@link org.opennms.netmgt.dao.api.ResourceStorageDao} notified of the persisted resources.
+     */
+    public void setResourceStorageDao(ResourceStorageDao resourceStorageDao) {
+        m_resourceStorageDao = resourceStorageDao;
+    }
 }
@@ -93,6 +93,12 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
 
     private boolean isStateDirty;
 
+    /**
+     * Incremented every time the state is marked dirty, used to tell whether the state changed while it was being
+     * written behind.
+     */
+    private long dirtyVersion;
+
     private String key;
 
     private final SerializingBlobStore<T> kvStore;
@@ -103,7 +109,7 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
     
     static final String THRESHOLDING_KV_CONTEXT = "thresholding";
 
-    private final int stateTTL = SystemProperties.getInteger("org.opennms.netmgt.threshd.state_ttl",
+    static final int STATE_TTL = SystemProperties.getInteger("org.opennms.netmgt.threshd.state_ttl",
             (int) TimeUnit.SECONDS.convert(24, TimeUnit.HOURS));
     
     private Long sequenceNumber;
@@ -231,8 +237,13 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
 
     private void persistStateIfNeeded() {
         if (shouldPersist()) {
+            // When a whole collection set is being evaluated, the state is persisted along with the others once done
+            if (ThresholdStateWriteBehind.defer(this)) {
+                return;
+            }
+
             try {
-                long newTimestamp = kvStore.put(key, state, THRESHOLDING_KV_CONTEXT, stateTTL);
+                long newTimestamp = kvStore.put(key, state, THRESHOLDING_KV_CONTEXT, STATE_TTL);
                 lastUpdatedCache.put(key, newTimestamp);
 
                 // If we successfully stored the state we will mark that the persisted state is up to date and no longer
@@ -283,6 +294,29 @@ public abstract class AbstractThresholdEvaluatorState<T extends AbstractThreshol
      */
     protected void markDirty() {
         isStateDirty = true;
+        dirtyVersion++;
+    }
+
+    /**
+     * @return a snapshot of the serialized state if it is dirty, or null otherwise
+     */
+    synchronized ThresholdStateWriteBehind.PendingWrite getPendingWrite() {
+        if (!shouldPersist()) {
+            return null;
+        }
+        return new ThresholdStateWriteBehind.PendingWrite(this, key, fst.asByteArray(state), dirtyVersion);
+    }
+
+    /**
+     * Called by the write-behind once the snapshot taken by {@link #getPendingWrite()} was persisted.
+     */
+    synchronized void persisted(long version, long timestamp) {
+        lastUpdatedCache.put(key, timestamp);
+
+        // The state may have changed again since the snapshot was taken, in which case it is still dirty
+        if (version == dirtyVersion) {
+            isStateDirty = false;
+        }
     }
 
     @Override
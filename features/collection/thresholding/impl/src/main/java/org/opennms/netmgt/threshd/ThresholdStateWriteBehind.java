@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.features.distributed.kvstore.api.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.swrve.ratelimitedlogger.RateLimitedLog;
+
+/**
+ * Defers the persistence of the threshold states that are evaluated while a collection set is being visited on the
+ * current thread, so that all of the dirty states can be written to the {@link BlobStore} with a single
+ * {@link BlobStore#putAll(Map, String, Integer)} once the whole collection set was evaluated.
+ * <p>
+ * States that fail to be written remain dirty and are written along with the next collection set.
+ */
+final class ThresholdStateWriteBehind implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdStateWriteBehind.class);
+    private static final RateLimitedLog RATE_LIMITED_LOGGER = RateLimitedLog
+            .withRateLimit(LOG)
+            .maxRate(5).every(Duration.ofSeconds(30))
+            .build();
+
+    /**
+     * Set to false to persist the state of every threshold as soon as it is evaluated.
+     */
+    static final String WRITE_BEHIND_SYS_PROP = "org.opennms.netmgt.threshd.state_write_behind";
+
+    private static final ThreadLocal<ThresholdStateWriteBehind> CURRENT = new ThreadLocal<>();
+
+    private final BlobStore blobStore;
+
+    private final Set<AbstractThresholdEvaluatorState<?>> pendingStates = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private ThresholdStateWriteBehind(BlobStore blobStore) {
+        this.blobStore = Objects.requireNonNull(blobStore);
+    }
+
+    /**
+     * Starts deferring the persistence of the states evaluated on the current thread.
+     *
+     * @return the write-behind to close once the collection set was evaluated, or null if it is disabled or if one is
+     * already in progress on the current thread
+     */
+    static ThresholdStateWriteBehind begin(BlobStore blobStore) {
+        if (blobStore == null || !SystemProperties.getBooleanWithDefaultAsTrue(WRITE_BEHIND_SYS_PROP) || CURRENT.get() != null) {
+            return null;
+        }
+        final ThresholdStateWriteBehind writeBehind = new ThresholdStateWriteBehind(blobStore);
+        CURRENT.set(writeBehind);
+        return writeBehind;
+    }
+
+    /**
+     * @return true if the state will be persisted by the write-behind in progress on the current thread, false if it
+     * must be persisted right away
+     */
+    static boolean defer(AbstractThresholdEvaluatorState<?> state) {
+        final ThresholdStateWriteBehind writeBehind = CURRENT.get();
+        if (writeBehind == null) {
+            return false;
+        }
+        writeBehind.pendingStates.add(state);
+        return true;
+    }
+
+    /**
+     * Stops deferring and writes all of the pending states.
+     */
+    @Override
+    public void close() {
+        CURRENT.remove();
+
+        final List<PendingWrite> pendingWrites = new ArrayList<>(pendingStates.size());
+        final Map<String, byte[]> values = new HashMap<>();
+        for (AbstractThresholdEvaluatorState<?> state : pendingStates) {
+            final PendingWrite pendingWrite = state.getPendingWrite();
+            if (pendingWrite != null) {
+                pendingWrites.add(pendingWrite);
+                values.put(pendingWrite.key, pendingWrite.value);
+            }
+        }
+        pendingStates.clear();
+
+        if (values.isEmpty()) {
+            return;
+        }
+
+        try {
+            final long timestamp = blobStore.putAll(values, AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT,
+                    AbstractThresholdEvaluatorState.STATE_TTL);
+            pendingWrites.forEach(pendingWrite -> pendingWrite.state.persisted(pendingWrite.version, timestamp));
+            LOG.debug("Stored the state of {} thresholds", values.size());
+        } catch (RuntimeException e) {
+            RATE_LIMITED_LOGGER.warn("Failed to store the state of {} thresholds", values.size(), e);
+        }
+    }
+
+    static final class PendingWrite {
+        private final AbstractThresholdEvaluatorState<?> state;
+        private final String key;
+        private final byte[] value;
+        private final long version;
+
+        PendingWrite(AbstractThresholdEvaluatorState<?> state, String key, byte[] value, long version) {
+            this.state = state;
+            this.key = key;
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
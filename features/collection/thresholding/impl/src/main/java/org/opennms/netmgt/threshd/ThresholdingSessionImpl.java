@@ -104,7 +104,10 @@ public class ThresholdingSessionImpl implements ThresholdingSession {
         } else if (thresholdingVisitor.hasThresholds()) {
             thresholdingVisitor.setCounterReset(collectionSet.ignorePersist()); // Required to reinitialize the counters.
 
-            collectionSet.visit(thresholdingVisitor);
+            // Write the states that changed while evaluating the collection set in a single batch
+            try (ThresholdStateWriteBehind writeBehind = ThresholdStateWriteBehind.begin(blobStore)) {
+                collectionSet.visit(thresholdingVisitor);
+            }
         }
     }
 
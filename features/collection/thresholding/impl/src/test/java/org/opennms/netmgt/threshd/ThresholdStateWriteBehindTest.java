@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.features.distributed.kvstore.api.BlobStore;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.opennms.netmgt.config.threshd.ThresholdType;
+import org.opennms.netmgt.threshd.ThresholdEvaluatorHighLow.ThresholdEvaluatorStateHighLow;
+import org.opennms.netmgt.threshd.api.ThresholdingSession;
+import org.opennms.netmgt.threshd.api.ThresholdingSessionKey;
+
+public class ThresholdStateWriteBehindTest {
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final ThresholdingSession thresholdingSession = mock(ThresholdingSession.class);
+
+    @Before
+    public void setUp() {
+        ThresholdingSessionKey sessionKey = mock(ThresholdingSessionKey.class);
+        when(sessionKey.getNodeId()).thenReturn(1);
+        when(sessionKey.getLocation()).thenReturn("Default");
+        when(thresholdingSession.getKey()).thenReturn(sessionKey);
+        when(thresholdingSession.getBlobStore()).thenReturn(blobStore);
+        when(thresholdingSession.getThresholdStateMonitor()).thenReturn(new BlobStoreAwareMonitor(blobStore));
+        // The serdes are cached by type, make sure they are built with our blob store
+        AbstractThresholdEvaluatorState.clearSerdesMap();
+    }
+
+    @After
+    public void tearDown() {
+        AbstractThresholdEvaluatorState.clearSerdesMap();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void canWriteDirtyStatesInOneBatch() {
+        ThresholdEvaluatorState high = new ThresholdEvaluatorStateHighLow(getWrapper(ThresholdType.HIGH, 99.0), thresholdingSession);
+        ThresholdEvaluatorState low = new ThresholdEvaluatorStateHighLow(getWrapper(ThresholdType.LOW, 1.0), thresholdingSession);
+        ThresholdEvaluatorState unchanged = new ThresholdEvaluatorStateHighLow(getWrapper(ThresholdType.HIGH, 200.0), thresholdingSession);
+
+        try (ThresholdStateWriteBehind writeBehind = ThresholdStateWriteBehind.begin(blobStore)) {
+            high.evaluate(100.0);
+            low.evaluate(0.0);
+            unchanged.evaluate(100.0);
+            verify(blobStore, never()).putAll(anyMap(), anyString(), any());
+        }
+
+        ArgumentCaptor<Map<String, byte[]>> values = ArgumentCaptor.forClass(Map.class);
+        verify(blobStore, times(1)).putAll(values.capture(), eq(AbstractThresholdEvaluatorState.THRESHOLDING_KV_CONTEXT),
+                eq(AbstractThresholdEvaluatorState.STATE_TTL));
+        assertEquals(2, values.getValue().size());
+        verify(blobStore, never()).put(anyString(), any(), anyString(), any());
+        assertNull(((AbstractThresholdEvaluatorState<?>) high).getPendingWrite());
+
+        // The states are no longer dirty and there is nothing left to write
+        try (ThresholdStateWriteBehind writeBehind = ThresholdStateWriteBehind.begin(blobStore)) {
+            unchanged.evaluate(100.0);
+        }
+        verify(blobStore, times(1)).putAll(anyMap(), anyString(), any());
+
+        // Outside of a write-behind the states are written right away
+        high.evaluate(100.0);
+        verify(blobStore, times(1)).put(anyString(), any(), anyString(), any());
+    }
+
+    @Test
+    public void keepsStatesDirtyAfterFailure() {
+        when(blobStore.putAll(anyMap(), anyString(), any())).thenThrow(new RuntimeException("failed"));
+        ThresholdEvaluatorState high = new ThresholdEvaluatorStateHighLow(getWrapper(ThresholdType.HIGH, 99.0), thresholdingSession);
+
+        try (ThresholdStateWriteBehind writeBehind = ThresholdStateWriteBehind.begin(blobStore)) {
+            high.evaluate(100.0);
+        }
+        verify(blobStore, times(1)).putAll(anyMap(), anyString(), any());
+
+        // The state is still dirty so it will be written along with the next collection set
+        assertNotNull(((AbstractThresholdEvaluatorState<?>) high).getPendingWrite());
+    }
+
+    private static ThresholdConfigWrapper getWrapper(ThresholdType type, double value) {
+        Threshold threshold = new Threshold();
+        threshold.setType(type);
+        threshold.setDsName("ds-name");
+        threshold.setDsType("node");
+        threshold.setDoubleValue(value);
+        threshold.setRearmValue(50.0);
+        threshold.setTriggerValue(2);
+        return new ThresholdConfigWrapper(threshold);
+    }
+}
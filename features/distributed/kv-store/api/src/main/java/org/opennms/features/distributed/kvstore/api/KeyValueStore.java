@@ -28,6 +28,8 @@
 
 package org.opennms.features.distributed.kvstore.api;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalLong;
@@ -74,6 +76,51 @@ public interface KeyValueStore<T> {
      */
     Optional<T> get(String key, String context);
 
+    /**
+     * Put all of the given values under the same context.
+     * <p>
+     * Implementations should override this to write the values in as few round trips to the backing store as
+     * possible, the default implementation puts the values one at a time.
+     *
+     * @param values       the values to put keyed by their key
+     * @param context      a context used to differentiate between keys with the same name (forms a compound key)
+     * @param ttlInSeconds the time to live in seconds for these keys or no ttl if null
+     * @return the timestamp the values were persisted with
+     */
+    default long putAll(Map<String, T> values, String context, Integer ttlInSeconds) {
+        long timestamp = System.currentTimeMillis();
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            timestamp = put(entry.getKey(), entry.getValue(), context, ttlInSeconds);
+        }
+        return timestamp;
+    }
+
+    /**
+     * @param context a context used to differentiate between keys with the same name (forms a compound key)
+     * @return the timestamp the values were persisted with
+     * @see #putAll(Map, String, Integer)
+     */
+    default long putAll(Map<String, T> values, String context) {
+        return putAll(values, context, null);
+    }
+
+    /**
+     * Get the values of all of the given keys under the same context.
+     * <p>
+     * Implementations should override this to read the values in as few round trips to the backing store as
+     * possible, the default implementation gets the values one at a time.
+     *
+     * @param context a context used to differentiate between keys with the same name (forms a compound key)
+     * @return a map containing the keys that were found and their values
+     */
+    default Map<String, T> getAll(Collection<String> keys, String context) {
+        Map<String, T> resultMap = new HashMap<>();
+        for (String key : keys) {
+            get(key, context).ifPresent(value -> resultMap.put(key, value));
+        }
+        return resultMap;
+    }
+
     /**
      * @param context   a context used to differentiate between keys with the same name (forms a compound key)
      * @param timestamp the timestamp of the last known state such that if an record with a more recent timestamp is
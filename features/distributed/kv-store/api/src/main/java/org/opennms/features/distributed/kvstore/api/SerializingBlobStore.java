@@ -28,7 +28,9 @@
 
 package org.opennms.features.distributed.kvstore.api;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -60,10 +62,20 @@ public final class SerializingBlobStore<V> {
         return blobStore.put(key, serializer.serialize(value), context, ttlInSeconds);
     }
 
+    public long putAll(Map<String, V> values, String context, Integer ttlInSeconds) {
+        Map<String, byte[]> serializedValues = new HashMap<>();
+        values.forEach((key, value) -> serializedValues.put(key, serializer.serialize(value)));
+        return blobStore.putAll(serializedValues, context, ttlInSeconds);
+    }
+
     public Optional<V> get(String key, String context) {
         return blobStore.get(key, context).map(deserializer::deserialize);
     }
 
+    public Map<String, V> getAll(Collection<String> keys, String context) {
+        return deserializeMap(blobStore.getAll(keys, context));
+    }
+
     public Optional<Optional<V>> getIfStale(String key, String context, long timestamp) {
         return blobStore.getIfStale(key, context, timestamp).map(o -> o.map(deserializer::deserialize));
     }
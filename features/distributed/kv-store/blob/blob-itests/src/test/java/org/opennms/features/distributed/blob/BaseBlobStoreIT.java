@@ -37,6 +37,7 @@ import static org.junit.Assert.fail;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -72,6 +73,24 @@ public abstract class BaseBlobStoreIT {
         assertThat(value.get(), equalTo(state));
     }
 
+    @Test
+    public void canPersistAndRetrieveAll() {
+        String context = "canPersistAndRetrieveAll";
+        Map<String, String> states = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            states.put(Integer.toString(i), "state" + i);
+        }
+
+        long timestamp = serializingBlobStore.putAll(states, context, null);
+        assertThat(blobStore.getLastUpdated("0", context).getAsLong(), equalTo(timestamp));
+        assertThat(blobStore.getLastUpdated("99", context).getAsLong(), equalTo(timestamp));
+
+        // Keys that do not exist are left out of the result
+        List<String> keys = new ArrayList<>(states.keySet());
+        keys.add("missing");
+        assertThat(serializingBlobStore.getAll(keys, context), equalTo(states));
+    }
+
     @Test
     public void emptyWhenKeyDoesNotExist() {
         // If Cassandra is available, but the key does not exist we should get an empty optional back
@@ -30,7 +30,9 @@ package org.opennms.features.distributed.kvstore.blob.shell;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -73,6 +75,10 @@ public class BlobStoreBenchmark implements Action {
     @Option(name = "-a", aliases = "--async", description = "Whether or not to use async")
     private boolean async = false;
 
+    @Option(name = "-b", aliases = "--batch-size", description = "The number of records to write/read at once with " +
+            "putAll/getAll, the recorded times are then per batch")
+    private int batchSize = 1;
+
     private static final String CONTEXT = "benchmark";
 
     private static final String KEY = "test";
@@ -96,8 +102,8 @@ public class BlobStoreBenchmark implements Action {
         System.out.println(String.format("BlobStore implementation in use: %s", blobStore.getName()));
         writePayload = new byte[payloadSize];
         StringBuilder throughputResultsBuilder = new StringBuilder();
-        throughputResultsBuilder.append(benchmark("write", this::writeAsync, this::write));
-        String readThroughput = benchmark("read", this::readAsync, this::read);
+        throughputResultsBuilder.append(benchmark("write", this::writeAsync, this::write, this::writeBatch));
+        String readThroughput = benchmark("read", this::readAsync, this::read, this::readBatch);
 
         // The read throughput is only really meaningful if we are doing a full fetch of the value
         if (!readJustTimestamp) {
@@ -148,9 +154,21 @@ public class BlobStoreBenchmark implements Action {
                 () -> blobStore.get(key, CONTEXT));
     }
 
+    private void writeBatch(List<String> keys, Histogram results) {
+        Map<String, byte[]> values = new HashMap<>();
+        keys.forEach(key -> values.put(key, writePayload));
+        timeOperation(results, () -> blobStore.putAll(values, CONTEXT, (int) TimeUnit.SECONDS.convert(1,
+                TimeUnit.HOURS)));
+    }
+
+    private void readBatch(List<String> keys, Histogram results) {
+        timeOperation(results, () -> blobStore.getAll(keys, CONTEXT));
+    }
+
     private String benchmark(String methodType,
                              BiFunction<String, Histogram, CompletableFuture<?>> asyncFunction,
-                             BiConsumer<String, Histogram> syncFunction) throws InterruptedException {
+                             BiConsumer<String, Histogram> syncFunction,
+                             BiConsumer<List<String>, Histogram> batchFunction) throws InterruptedException {
         System.out.print(String.format("Benchmarking %s performance...", methodType));
 
         Histogram results = metrics.histogram(String.format("%s times", methodType));
@@ -161,13 +179,31 @@ public class BlobStoreBenchmark implements Action {
             List<CompletableFuture<?>> futures = new ArrayList<>();
             long start = System.currentTimeMillis();
 
-            for (int i = 0; i < numberOfRecords; i++) {
-                String key = String.format("%s-%d", KEY, i);
-
-                if (this.async) {
-                    futures.add(asyncFunction.apply(key, results));
-                } else {
-                    syncFunction.accept(key, results);
+            if (batchSize > 1) {
+                List<String> keys = new ArrayList<>(batchSize);
+                for (int i = 0; i < numberOfRecords; i++) {
+                    keys.add(String.format("%s-%d", KEY, i));
+
+                    if (keys.size() == batchSize || i == numberOfRecords - 1) {
+                        if (this.async) {
+                            List<String> batch = keys;
+                            futures.add(CompletableFuture.runAsync(() -> batchFunction.accept(batch, results),
+                                    executorService));
+                        } else {
+                            batchFunction.accept(keys, results);
+                        }
+                        keys = new ArrayList<>(batchSize);
+                    }
+                }
+            } else {
+                for (int i = 0; i < numberOfRecords; i++) {
+                    String key = String.format("%s-%d", KEY, i);
+
+                    if (this.async) {
+                        futures.add(asyncFunction.apply(key, results));
+                    } else {
+                        syncFunction.accept(key, results);
+                    }
                 }
             }
 
@@ -31,10 +31,13 @@ package org.opennms.features.distributed.kvstore.blob.cassandra;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -138,6 +141,50 @@ public class CassandraBlobStore extends AbstractKeyValueStore<byte[]> implements
         return Optional.of(serializedValue);
     }
 
+    /**
+     * Every key lives in its own partition so rather than using a multi-partition batch, which would put the burden
+     * on the coordinator, the inserts are all sent asynchronously and then awaited.
+     */
+    @Override
+    public long putAll(Map<String, byte[]> values, String context, Integer ttlInSeconds) {
+        Objects.requireNonNull(values);
+        Objects.requireNonNull(context);
+
+        long timestamp = System.currentTimeMillis();
+        List<ResultSetFuture> futures = new ArrayList<>(values.size());
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            futures.add(session.executeAsync(getStatementForInsert(entry.getKey(), context,
+                    ByteBuffer.wrap(entry.getValue()), timestamp, ttlInSeconds)));
+        }
+        // Cassandra will throw a runtime exception here if any of the executions failed
+        futures.forEach(ResultSetFuture::getUninterruptibly);
+        return timestamp;
+    }
+
+    /**
+     * The selects are all sent asynchronously and then awaited.
+     */
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys, String context) {
+        Objects.requireNonNull(keys);
+        Objects.requireNonNull(context);
+
+        Map<String, ResultSetFuture> futures = new HashMap<>();
+        for (String key : keys) {
+            futures.put(key, session.executeAsync(selectStmt.bind(key, context)));
+        }
+
+        Map<String, byte[]> resultMap = new HashMap<>();
+        futures.forEach((key, future) -> {
+            // Cassandra will throw a runtime exception here if the execution failed
+            Row row = future.getUninterruptibly().one();
+            if (row != null) {
+                resultMap.put(key, row.getBytes(VALUE_COLUMN).array());
+            }
+        });
+        return resultMap;
+    }
+
     @Override
     public CompletableFuture<Long> putAsync(String key, byte[] value, String context, Integer ttlInSeconds) {
         CompletableFuture<Long> putFuture = new CompletableFuture<>();
@@ -29,6 +29,7 @@
 package org.opennms.features.distributed.kvstore.blob.inmemory;
 
 import java.util.AbstractMap;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -76,6 +77,30 @@ public class InMemoryMapBlobStore extends AbstractAsyncKeyValueStore<byte[]> imp
         return Optional.of(valueEntry.getKey());
     }
 
+    @Override
+    public long putAll(Map<String, byte[]> values, String context, Integer ttlInSeconds) {
+        long timestamp = timestampGenerator.now();
+
+        values.forEach((key, value) -> inMemoryStore.put(new AbstractMap.SimpleImmutableEntry<>(key, context),
+                new AbstractMap.SimpleImmutableEntry<>(value, timestamp)));
+
+        return timestamp;
+    }
+
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys, String context) {
+        Map<String, byte[]> resultMap = new HashMap<>();
+
+        for (String key : keys) {
+            Map.Entry<byte[], Long> valueEntry = inMemoryStore.get(new AbstractMap.SimpleImmutableEntry<>(key, context));
+            if (valueEntry != null) {
+                resultMap.put(key, valueEntry.getKey());
+            }
+        }
+
+        return resultMap;
+    }
+
     @Override
     public Optional<Optional<byte[]>> getIfStale(String key, String context, long timestamp) {
         OptionalLong lastUpdated = getLastUpdated(key, context);
@@ -34,6 +34,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -82,6 +83,11 @@ public abstract class AbstractPostgresKeyValueStore<T, S> extends AbstractAsyncK
                 VALUE_COLUMN, EXPIRES_AT_COLUMN, getTableName(), KEY_COLUMN, CONTEXT_COLUMN));
     }
 
+    private PreparedStatement getSelectAllStatement(Connection connection) throws SQLException {
+        return connection.prepareStatement(String.format("SELECT %s, %s, %s FROM %s WHERE %s = ? AND %s = ANY(?)",
+                KEY_COLUMN, VALUE_COLUMN, EXPIRES_AT_COLUMN, getTableName(), CONTEXT_COLUMN, KEY_COLUMN));
+    }
+
     private PreparedStatement getUpsertStatement(Connection connection) throws SQLException {
         return connection.prepareStatement(String.format(
                 "INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, " + getValueStatementPlaceholder() + ") ON " +
@@ -119,30 +125,61 @@ public abstract class AbstractPostgresKeyValueStore<T, S> extends AbstractAsyncK
         long now = System.currentTimeMillis();
 
         withStatement(this::getUpsertStatement, upsertStatement -> {
-            // The below sets the prepared values for both the INSERT and UPDATE cases hence some values being 
-            // repeated
-            upsertStatement.setString(1, key);
-            upsertStatement.setString(2, context);
-            upsertStatement.setTimestamp(3, new java.sql.Timestamp(now));
-            upsertStatement.setTimestamp(6, new java.sql.Timestamp(now));
-
-            if (ttlInSeconds != null) {
-                long expireTime = now + TimeUnit.MILLISECONDS.convert(ttlInSeconds, TimeUnit.SECONDS);
-                upsertStatement.setTimestamp(4, new java.sql.Timestamp(expireTime));
-                upsertStatement.setTimestamp(7, new java.sql.Timestamp(expireTime));
-            } else {
-                upsertStatement.setNull(4, Types.DATE);
-                upsertStatement.setNull(7, Types.DATE);
-            }
-
-            upsertStatement.setObject(5, getSQLTypeFromValueType(value));
-            upsertStatement.setObject(8, getSQLTypeFromValueType(value));
+            setUpsertValues(upsertStatement, key, value, context, now, ttlInSeconds);
             return upsertStatement.execute();
         });
 
         return now;
     }
 
+    /**
+     * Upserts all of the values with a single batch of statements.
+     */
+    @Override
+    public long putAll(Map<String, T> values, String context, Integer ttlInSeconds) {
+        Objects.requireNonNull(values);
+        Objects.requireNonNull(context);
+
+        long now = System.currentTimeMillis();
+
+        if (values.isEmpty()) {
+            return now;
+        }
+
+        withStatement(this::getUpsertStatement, upsertStatement -> {
+            for (Map.Entry<String, T> entry : values.entrySet()) {
+                setUpsertValues(upsertStatement, Objects.requireNonNull(entry.getKey()),
+                        Objects.requireNonNull(entry.getValue()), context, now, ttlInSeconds);
+                upsertStatement.addBatch();
+            }
+            return upsertStatement.executeBatch();
+        });
+
+        return now;
+    }
+
+    private void setUpsertValues(PreparedStatement upsertStatement, String key, T value, String context, long now,
+                                 Integer ttlInSeconds) throws SQLException {
+        // The below sets the prepared values for both the INSERT and UPDATE cases hence some values being 
+        // repeated
+        upsertStatement.setString(1, key);
+        upsertStatement.setString(2, context);
+        upsertStatement.setTimestamp(3, new java.sql.Timestamp(now));
+        upsertStatement.setTimestamp(6, new java.sql.Timestamp(now));
+
+        if (ttlInSeconds != null) {
+            long expireTime = now + TimeUnit.MILLISECONDS.convert(ttlInSeconds, TimeUnit.SECONDS);
+            upsertStatement.setTimestamp(4, new java.sql.Timestamp(expireTime));
+            upsertStatement.setTimestamp(7, new java.sql.Timestamp(expireTime));
+        } else {
+            upsertStatement.setNull(4, Types.DATE);
+            upsertStatement.setNull(7, Types.DATE);
+        }
+
+        upsertStatement.setObject(5, getSQLTypeFromValueType(value));
+        upsertStatement.setObject(8, getSQLTypeFromValueType(value));
+    }
+
     @Override
     public Optional<T> get(String key, String context) {
         Objects.requireNonNull(key);
@@ -167,6 +204,37 @@ public abstract class AbstractPostgresKeyValueStore<T, S> extends AbstractAsyncK
         });
     }
 
+    /**
+     * Selects all of the values with a single query.
+     */
+    @Override
+    public Map<String, T> getAll(Collection<String> keys, String context) {
+        Objects.requireNonNull(keys);
+        Objects.requireNonNull(context);
+
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        return withStatement(this::getSelectAllStatement, selectAllStatement -> {
+            Map<String, T> resultMap = new HashMap<>();
+            selectAllStatement.setString(1, context);
+            selectAllStatement.setArray(2, selectAllStatement.getConnection().createArrayOf("text",
+                    keys.toArray(new String[0])));
+
+            try (ResultSet resultSet = selectAllStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    // Ignore results that are already expired
+                    if (!isExpired(resultSet)) {
+                        resultMap.put(resultSet.getString(KEY_COLUMN), getValueTypeFromSQLType(resultSet, VALUE_COLUMN));
+                    }
+                }
+            }
+
+            return resultMap;
+        });
+    }
+
     @Override
     public Optional<Optional<T>> getIfStale(String key, String context, long timestamp) {
         Objects.requireNonNull(key);
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.events.api;
 
+import java.util.List;
+
 import org.opennms.netmgt.events.api.model.IEvent;
 
 /**
@@ -50,4 +52,18 @@ public interface EventListener {
      * @param e a {@link org.opennms.netmgt.events.api.model.IEvent} object.
      */
     void onEvent(IEvent e);
+
+    /**
+     * Process a batch of sent events, in the order in which they were sent.
+     *
+     * This is only invoked when the events are delivered through the ring buffers,
+     * listeners that can handle bursts more efficiently in bulk should override it.
+     *
+     * @param events a {@link java.util.List} of {@link org.opennms.netmgt.events.api.model.IEvent} objects.
+     */
+    default void onEvents(List<IEvent> events) {
+        for (IEvent e : events) {
+            onEvent(e);
+        }
+    }
 }
@@ -32,12 +32,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -115,6 +116,23 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      */
     private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
 
+    /**
+     * Upper bound on the number of distinct UEIs for which the listeners are cached.
+     */
+    private static final int MAX_DISPATCH_TABLE_SIZE = Integer.getInteger("org.opennms.eventd.dispatchTable.maxSize", 10000);
+
+    /**
+     * Cache of the listeners to which the events with a given UEI are dispatched. The table
+     * is replaced with an empty one whenever the listeners change, and is filled lazily as
+     * new UEIs are broadcast.
+     */
+    private volatile Map<String, Dispatch> m_dispatchTable = new ConcurrentHashMap<>();
+
+    /**
+     * Listeners to which the events without a UEI are dispatched.
+     */
+    private volatile Dispatch m_matchAllDispatch = Dispatch.EMPTY;
+
     /**
      * The thread pool handling the events
      */
@@ -128,13 +146,40 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     private final MetricRegistry m_registry;
 
+    /**
+     * Immutable set of listeners to which an event is dispatched.
+     */
+    private static class Dispatch {
+        private static final Dispatch EMPTY = new Dispatch(new EventListenerExecutor[0], 0);
+
+        /**
+         * Listeners interested in all events first, followed by the listeners interested in the UEI.
+         */
+        private final EventListenerExecutor[] m_executors;
+
+        /**
+         * Number of listeners that registered for the UEI (or one of its wildcards).
+         */
+        private final int m_numUeiListeners;
+
+        private Dispatch(EventListenerExecutor[] executors, int numUeiListeners) {
+            m_executors = executors;
+            m_numUeiListeners = numUeiListeners;
+        }
+    }
+
+    /**
+     * Deliver the events to the listeners through ring buffers instead of thread pools
+     */
+    private boolean m_useRingBuffers = Boolean.getBoolean("org.opennms.eventd.listener.ringBuffer.enabled");
+
     /**
      * A thread dedicated to each listener. The events meant for each listener
      * is added to an execution queue when the 'sendNow()' is called. The
      * ListenerThread reads events off of this queue and sends them to the
      * appropriate listener.
      */
-    private static class EventListenerExecutor {
+    private static class ThreadPoolEventListenerExecutor implements EventListenerExecutor {
         /**
          * Listener to which this thread is dedicated
          */
@@ -148,7 +193,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         /**
          * Constructor
          */
-        EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
+        ThreadPoolEventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
             m_listener = listener;
 
             int numThreads = 1;
@@ -176,8 +221,18 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             );
         }
 
+        @Override
         public CompletableFuture<Void> addEvent(final IEvent event) {
-            return CompletableFuture.runAsync(new Runnable() {
+            return CompletableFuture.runAsync(newTask(event), m_delegateThread);
+        }
+
+        @Override
+        public void execute(final IEvent event) {
+            m_delegateThread.execute(newTask(event));
+        }
+
+        private Runnable newTask(final IEvent event) {
+            return new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -194,12 +249,10 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                         LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
                     }
                 }
-            }, m_delegateThread);
+            };
         }
 
-        /**
-         * Stops the execution of this listener.
-         */
+        @Override
         public void stop() {
             m_delegateThread.shutdown();
         }
@@ -296,67 +349,101 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
         }
 
-        if (LOG.isDebugEnabled() && m_listeners.isEmpty()) {
+        final Dispatch dispatch;
+        if (event.getUei() == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Event ID {} does not have a UEI, so skipping UEI matching", event.getDbid());
+            }
+            dispatch = m_matchAllDispatch;
+        } else {
+            dispatch = getDispatch(event.getUei());
+            if (dispatch.m_numUeiListeners == 0 && LOG.isDebugEnabled()) {
+                LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
+            }
+        }
+
+        if (LOG.isDebugEnabled() && dispatch.m_executors.length == dispatch.m_numUeiListeners) {
             LOG.debug("No listeners interested in all events");
         }
 
-        List<CompletableFuture<Void>> listenerFutures = new ArrayList<>();
+        final EventListenerExecutor[] executors = dispatch.m_executors;
+        if (executors.length == 0) {
+            return;
+        }
 
-        IEvent immutableEvent = ImmutableMapper.fromMutableEvent(event);
+        final IEvent immutableEvent = ImmutableMapper.fromMutableEvent(event);
 
-        // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            listenerFutures.add(queueEventToListener(immutableEvent, listener));
+        if (synchronous) {
+            // Wait for all of the listeners to complete before returning
+            final CompletableFuture<?>[] listenerFutures = new CompletableFuture<?>[executors.length];
+            for (int i = 0; i < executors.length; i++) {
+                listenerFutures[i] = executors[i].addEvent(immutableEvent);
+            }
+            CompletableFuture.allOf(listenerFutures).join();
+        } else {
+            // Nobody waits on the result, so don't bother tracking the completion
+            for (final EventListenerExecutor executor : executors) {
+                executor.execute(immutableEvent);
+            }
         }
+    }
 
-        if (event.getUei() == null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Event ID {} does not have a UEI, so skipping UEI matching", immutableEvent.getDbid());
+    private Dispatch getDispatch(String uei) {
+        final Map<String, Dispatch> dispatchTable = m_dispatchTable;
+        Dispatch dispatch = dispatchTable.get(uei);
+        if (dispatch == null) {
+            dispatch = computeDispatch(uei);
+            // If the listeners changed in the meantime, the entry is added to a table that was already discarded
+            if (dispatchTable.size() < MAX_DISPATCH_TABLE_SIZE) {
+                dispatchTable.put(uei, dispatch);
             }
-            return;
         }
+        return dispatch;
+    }
 
-        /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
-         */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        listenerFutures.add(queueEventToListener(immutableEvent, listener));
-                        sentToListeners.add(listener);
-                    }
-                }
+    /**
+     * Determines the listeners interested in the given UEI, including the ones that
+     * registered for partial wild card "directory" matches.
+     */
+    private synchronized Dispatch computeDispatch(String uei) {
+        final Set<EventListener> ueiListeners = new LinkedHashSet<>();
+        for (String prefix = uei; prefix.length() > 0; ) {
+            final List<EventListener> listeners = m_ueiListeners.get(prefix);
+            if (listeners != null) {
+                ueiListeners.addAll(listeners);
             }
-            
+
             // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
+            int i = prefix.lastIndexOf("/", prefix.length() - 2);
             if (i > 0) {
                 // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
+                prefix = prefix.substring (0, i + 1);
             } else {
                 // No more wild cards to match
                 break;
             }
         }
-        
-        if (sentToListeners.isEmpty()) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
-            }
-        }
 
-        // If synchronous...
-        if (synchronous) {
-            // Wait for all of the listeners to complete before returning
-            CompletableFuture.allOf(listenerFutures.toArray(new CompletableFuture[0])).join();
+        final List<EventListenerExecutor> executors = new ArrayList<>(m_listeners.size() + ueiListeners.size());
+        for (EventListener listener : m_listeners) {
+            executors.add(m_listenerThreads.get(listener.getName()));
         }
+        for (EventListener listener : ueiListeners) {
+            executors.add(m_listenerThreads.get(listener.getName()));
+        }
+        return new Dispatch(executors.toArray(new EventListenerExecutor[0]), ueiListeners.size());
     }
 
-    private CompletableFuture<Void> queueEventToListener(IEvent event, EventListener listener) {
-        return m_listenerThreads.get(listener.getName()).addEvent(event);
+    /**
+     * Discards the cached dispatches, must be called whenever the listeners change.
+     */
+    private void invalidateDispatchTable() {
+        final List<EventListenerExecutor> executors = new ArrayList<>(m_listeners.size());
+        for (EventListener listener : m_listeners) {
+            executors.add(m_listenerThreads.get(listener.getName()));
+        }
+        m_matchAllDispatch = new Dispatch(executors.toArray(new EventListenerExecutor[0]), 0);
+        m_dispatchTable = new ConcurrentHashMap<>();
     }
 
     /**
@@ -377,6 +464,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        invalidateDispatchTable();
     }
 
     /**
@@ -406,6 +495,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        invalidateDispatchTable();
     }
 
     /**
@@ -440,6 +531,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        invalidateDispatchTable();
     }
 
     /**
@@ -459,6 +552,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        invalidateDispatchTable();
     }
 
     /**
@@ -485,6 +580,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
             m_listenerThreads.remove(listener.getName());
         }
+
+        invalidateDispatchTable();
     }
 
     /**
@@ -496,7 +593,12 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        final EventListenerExecutor listenerThread;
+        if (m_useRingBuffers) {
+            listenerThread = new RingBufferEventListenerExecutor(listener, m_handlerQueueLength, m_registry);
+        } else {
+            listenerThread = new ThreadPoolEventListenerExecutor(listener, m_handlerQueueLength);
+        }
         m_listenerThreads.put(listener.getName(), listenerThread);
     }
 
@@ -636,6 +738,17 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         m_handlerQueueLength = size;
     }
 
+    /**
+     * <p>setUseRingBuffers</p>
+     *
+     * Only applies to the listeners that are added afterwards.
+     *
+     * @param useRingBuffers a boolean.
+     */
+    public void setUseRingBuffers(boolean useRingBuffers) {
+        m_useRingBuffers = useRingBuffers;
+    }
+
     @Override
     public boolean hasEventListener(final String uei) {
         if (this.m_ueiListeners.containsKey(uei)) {
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.netmgt.events.api.model.IEvent;
+
+/**
+ * Delivers the events to a single listener, using one or more threads
+ * dedicated to that listener.
+ */
+interface EventListenerExecutor {
+
+    /**
+     * Queues the event.
+     *
+     * @return a future that completes once the listener has processed the event
+     */
+    CompletableFuture<Void> addEvent(IEvent event);
+
+    /**
+     * Queues the event without tracking its completion.
+     */
+    void execute(IEvent event);
+
+    /**
+     * Stops the execution of this listener once the queued events are processed.
+     */
+    void stop();
+
+}
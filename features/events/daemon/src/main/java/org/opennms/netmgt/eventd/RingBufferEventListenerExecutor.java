@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.ThreadAwareEventListener;
+import org.opennms.netmgt.events.api.model.IEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.FatalExceptionHandler;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+
+/**
+ * Delivers the events to a listener through a multi-producer ring buffer.
+ *
+ * The consumer threads drain the ring buffer in batches and hand them over
+ * to {@link EventListener#onEvents(List)}, so that the listeners can process
+ * bursts in bulk. When the listener requests multiple threads, each thread
+ * handles a disjoint subset of the sequences.
+ *
+ * Events are dropped when the ring buffer is full.
+ *
+ * The futures of synchronous broadcasts are tracked until their batch has been
+ * handled, so that the ones that can no longer be handled once the consumers
+ * have halted are completed, and their callers released, rather than left
+ * pending forever.
+ */
+class RingBufferEventListenerExecutor implements EventListenerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferEventListenerExecutor.class);
+
+    /**
+     * Upper bound on the ring buffer size, the configured queue length defaults to {@link Integer#MAX_VALUE}.
+     */
+    private static final int MAX_RING_BUFFER_SIZE = Integer.getInteger("org.opennms.eventd.listener.ringBuffer.maxSize", 16384);
+
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("org.opennms.eventd.listener.ringBuffer.batchSize", 256);
+
+    private static final EventTranslatorTwoArg<Slot, IEvent, CompletableFuture<Void>> TRANSLATOR = (slot, sequence, event, future) -> {
+        slot.event = event;
+        slot.future = future;
+        slot.stop = false;
+    };
+
+    private static final EventTranslatorTwoArg<Slot, IEvent, CompletableFuture<Void>> STOP_TRANSLATOR = (slot, sequence, event, future) -> {
+        slot.event = null;
+        slot.future = null;
+        slot.stop = true;
+    };
+
+    private final EventListener m_listener;
+
+    private final MetricRegistry m_registry;
+
+    private final String m_metricPrefix;
+
+    private final RingBuffer<Slot> m_ringBuffer;
+
+    private final List<BatchEventProcessor<Slot>> m_processors = new ArrayList<>();
+
+    private final Meter m_droppedEvents;
+
+    private final Histogram m_batchSizes;
+
+    private final Set<CompletableFuture<Void>> m_pendingFutures = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger m_runningHandlers = new AtomicInteger();
+
+    private volatile boolean m_halted = false;
+
+    /**
+     * Entry of the ring buffer.
+     */
+    private static class Slot {
+        private IEvent event;
+        private CompletableFuture<Void> future;
+        private boolean stop;
+    }
+
+    RingBufferEventListenerExecutor(EventListener listener, Integer handlerQueueLength, MetricRegistry registry) {
+        m_listener = listener;
+        m_registry = registry;
+
+        int numThreads = 1;
+        if (m_listener instanceof ThreadAwareEventListener) {
+            numThreads = Math.max(1, ((ThreadAwareEventListener)m_listener).getNumThreads());
+        }
+
+        m_ringBuffer = RingBuffer.createMultiProducer(Slot::new, getRingBufferSize(handlerQueueLength));
+
+        m_metricPrefix = MetricRegistry.name("eventlisteners", m_listener.getName());
+        m_registry.removeMatching((name, metric) -> name.startsWith(m_metricPrefix + "."));
+        m_registry.register(MetricRegistry.name(m_metricPrefix, "queue-depth"),
+                (Gauge<Long>) () -> m_ringBuffer.getBufferSize() - m_ringBuffer.remainingCapacity());
+        m_registry.register(MetricRegistry.name(m_metricPrefix, "queue-size"),
+                (Gauge<Integer>) m_ringBuffer::getBufferSize);
+        m_droppedEvents = m_registry.meter(MetricRegistry.name(m_metricPrefix, "dropped"));
+        m_batchSizes = m_registry.histogram(MetricRegistry.name(m_metricPrefix, "batch-size"));
+
+        // This ThreadFactory will ensure that the log prefix of the calling thread
+        // is used for all events that this listener handles, as for the thread pools.
+        final ThreadFactory threadFactory = new LogPreservingThreadFactory(m_listener.getName(), numThreads);
+        final Sequence[] sequences = new Sequence[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final BatchingHandler handler = new BatchingHandler(i, numThreads);
+            final BatchEventProcessor<Slot> processor = new BatchEventProcessor<>(m_ringBuffer, m_ringBuffer.newBarrier(), handler);
+            processor.setExceptionHandler(new FatalExceptionHandler());
+            handler.m_processor = processor;
+            m_processors.add(processor);
+            sequences[i] = processor.getSequence();
+        }
+        m_ringBuffer.addGatingSequences(sequences);
+        m_runningHandlers.set(numThreads);
+
+        for (BatchEventProcessor<Slot> processor : m_processors) {
+            threadFactory.newThread(processor).start();
+        }
+    }
+
+    static int getRingBufferSize(Integer handlerQueueLength) {
+        final int length = handlerQueueLength == null ? MAX_RING_BUFFER_SIZE : Math.max(1, Math.min(handlerQueueLength, MAX_RING_BUFFER_SIZE));
+        // The ring buffer size must be a power of two
+        return Integer.highestOneBit(length) == length ? length : Integer.highestOneBit(length) << 1;
+    }
+
+    @Override
+    public CompletableFuture<Void> addEvent(IEvent event) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        m_pendingFutures.add(future);
+        if (m_halted || !publish(event, future)) {
+            // Nobody will ever process it
+            complete(future);
+        } else if (m_halted) {
+            // The consumers halted while we were publishing
+            completePendingFutures();
+        }
+        return future;
+    }
+
+    private void complete(CompletableFuture<Void> future) {
+        m_pendingFutures.remove(future);
+        future.complete(null);
+    }
+
+    private void completePendingFutures() {
+        for (CompletableFuture<Void> future : m_pendingFutures) {
+            complete(future);
+        }
+    }
+
+    @Override
+    public void execute(IEvent event) {
+        publish(event, null);
+    }
+
+    private boolean publish(IEvent event, CompletableFuture<Void> future) {
+        if (m_ringBuffer.tryPublishEvent(TRANSLATOR, event, future)) {
+            return true;
+        }
+        LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+        m_droppedEvents.mark();
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        // The consumers halt when they reach the marker, after having processed the events queued before it
+        if (!m_ringBuffer.tryPublishEvent(STOP_TRANSLATOR, null, null)) {
+            LOG.warn("Listener {}'s event queue is full, discarding the queued events", m_listener.getName());
+            m_processors.forEach(BatchEventProcessor::halt);
+        }
+        m_registry.removeMatching((name, metric) -> name.startsWith(m_metricPrefix + "."));
+    }
+
+    /**
+     * Accumulates the events until the end of the batch made available by the ring buffer, or
+     * until the maximum batch size is reached.
+     */
+    private class BatchingHandler implements EventHandler<Slot>, LifecycleAware {
+        private final int m_ordinal;
+        private final int m_numHandlers;
+        private final List<IEvent> m_events = new ArrayList<>(MAX_BATCH_SIZE);
+        private final List<CompletableFuture<Void>> m_futures = new ArrayList<>();
+        private BatchEventProcessor<Slot> m_processor;
+        /**
+         * Set once the stop marker was seen, the processor only halts at the end of the current batch.
+         */
+        private boolean m_stopped = false;
+
+        private BatchingHandler(int ordinal, int numHandlers) {
+            m_ordinal = ordinal;
+            m_numHandlers = numHandlers;
+        }
+
+        @Override
+        public void onStart() {
+            // pass
+        }
+
+        @Override
+        public void onShutdown() {
+            if (m_runningHandlers.decrementAndGet() == 0) {
+                // Release the callers waiting on events that were queued after the stop marker,
+                // or that were discarded when the consumers were halted
+                m_halted = true;
+                if (!m_pendingFutures.isEmpty()) {
+                    LOG.info("Listener {} stopped with {} pending synchronous events, releasing their callers", m_listener.getName(), m_pendingFutures.size());
+                }
+                completePendingFutures();
+            }
+        }
+
+        @Override
+        public void onEvent(Slot slot, long sequence, boolean endOfBatch) {
+            if (slot.stop) {
+                flush();
+                m_stopped = true;
+                m_processor.halt();
+                return;
+            }
+
+            if (m_stopped) {
+                // Published after the stop marker, release the caller without dispatching the event
+                if (sequence % m_numHandlers == m_ordinal && slot.future != null) {
+                    complete(slot.future);
+                }
+                return;
+            }
+
+            if (sequence % m_numHandlers == m_ordinal) {
+                m_events.add(slot.event);
+                if (slot.future != null) {
+                    m_futures.add(slot.future);
+                }
+                // Don't hold on to the event until the slot is reused
+                slot.event = null;
+                slot.future = null;
+            }
+
+            if (endOfBatch || m_events.size() >= MAX_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (m_events.isEmpty()) {
+                return;
+            }
+            try {
+                if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvents on {} for {} events", m_listener.getName(), m_events.size());
+
+                // Make sure we restore our log4j logging prefix after onEvents is called
+                Map<String,String> mdc = Logging.getCopyOfContextMap();
+                try {
+                    m_listener.onEvents(new ArrayList<>(m_events));
+                } finally {
+                    Logging.setContextMap(mdc);
+                }
+            } catch (Throwable t) {
+                LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+            } finally {
+                m_batchSizes.update(m_events.size());
+                m_events.clear();
+                m_futures.forEach(RingBufferEventListenerExecutor.this::complete);
+                m_futures.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Creates the {@link EventWriter} selected with the <code>org.opennms.eventd.writer</code>
+ * system property: <code>hibernate</code> (the default) or <code>jdbc</code>.
+ */
+public abstract class EventWriterFactory {
+
+    public static final String WRITER_PROPERTY = "org.opennms.eventd.writer";
+
+    public static EventWriter createEventWriter(MetricRegistry registry) {
+        final String writer = System.getProperty(WRITER_PROPERTY, "hibernate");
+        if ("jdbc".equalsIgnoreCase(writer)) {
+            return new JdbcEventWriter(registry);
+        }
+        return new HibernateEventWriter(registry);
+    }
+
+}
@@ -49,6 +49,9 @@ import org.opennms.netmgt.eventd.EventUtil;
 import org.opennms.netmgt.events.api.EventDatabaseConstants;
 import org.opennms.netmgt.events.api.EventProcessorException;
 import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsMonitoringSystem;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsServiceType;
 import org.opennms.netmgt.model.OnmsSeverity;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Header;
@@ -132,7 +135,7 @@ public class HibernateEventWriter implements EventWriter {
      * @param logPrefix a {@link java.lang.String} object.
      * @return a boolean.
      */
-    private static boolean checkEventSanityAndDoWeProcess(Event event, String logPrefix) {
+    protected static boolean checkEventSanityAndDoWeProcess(Event event, String logPrefix) {
         Assert.notNull(event, "event argument must not be null");
 
         /*
@@ -232,7 +235,7 @@ public class HibernateEventWriter implements EventWriter {
      *                Thrown if a required resource cannot be found in the
      *                properties file.
      */
-    private OnmsEvent createOnmsEvent(final Header eventHeader, final Event event) {
+    protected OnmsEvent createOnmsEvent(final Header eventHeader, final Event event) {
 
         OnmsEvent ovent = new OnmsEvent();
 
@@ -244,7 +247,7 @@ public class HibernateEventWriter implements EventWriter {
 
         // nodeID
         if (event.hasNodeid()) {
-            ovent.setNode(nodeDao.get(event.getNodeid().intValue()));
+            ovent.setNode(getNode(event.getNodeid().intValue()));
         }
 
         // eventTime
@@ -272,22 +275,22 @@ public class HibernateEventWriter implements EventWriter {
         // If available, use the header's distPoller
         if (eventHeader != null && eventHeader.getDpName() != null && !"".equals(eventHeader.getDpName().trim())) {
             // TODO: Should we also try a look up the value in the MinionDao and LocationMonitorDao here?
-            ovent.setDistPoller(distPollerDao.get(eventHeader.getDpName()));
+            ovent.setDistPoller(getDistPoller(eventHeader.getDpName()));
         }
         // Otherwise, use the event's distPoller
         if (ovent.getDistPoller() == null && event.getDistPoller() != null && !"".equals(event.getDistPoller().trim())) {
-            ovent.setDistPoller(monitoringSystemDao.get(event.getDistPoller()));
+            ovent.setDistPoller(getMonitoringSystem(event.getDistPoller()));
         }
         // And if both are unavailable, use the local system as the event's source system
         if (ovent.getDistPoller() == null) {
-            ovent.setDistPoller(distPollerDao.whoami());
+            ovent.setDistPoller(getLocalSystem());
         }
 
         // eventSnmpHost
         ovent.setEventSnmpHost(EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
         // service
-        ovent.setServiceType(serviceTypeDao.findByName(event.getService()));
+        ovent.setServiceType(getServiceType(event.getService()));
 
         // eventSnmp
         ovent.setEventSnmp(event.getSnmp() == null ? null : SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
@@ -402,6 +405,30 @@ public class HibernateEventWriter implements EventWriter {
         return ovent;
     }
 
+    protected OnmsNode getNode(int nodeId) {
+        return nodeDao.get(nodeId);
+    }
+
+    protected OnmsMonitoringSystem getDistPoller(String id) {
+        return distPollerDao.get(id);
+    }
+
+    protected OnmsMonitoringSystem getMonitoringSystem(String id) {
+        return monitoringSystemDao.get(id);
+    }
+
+    protected OnmsMonitoringSystem getLocalSystem() {
+        return distPollerDao.whoami();
+    }
+
+    protected OnmsServiceType getServiceType(String name) {
+        return serviceTypeDao.findByName(name);
+    }
+
+    protected TransactionOperations getTransactionManager() {
+        return m_transactionManager;
+    }
+
     public void setTransactionManager(TransactionOperations transactionManager) {
         m_transactionManager = transactionManager;
     }
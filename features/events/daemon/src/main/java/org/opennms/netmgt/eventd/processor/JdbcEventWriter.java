@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsEventParameter;
+import org.opennms.netmgt.model.OnmsMonitoringSystem;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * EventWriter that persists the events in micro-batches using JDBC batch inserts
+ * instead of saving them one at a time through Hibernate.
+ *
+ * The event logs handed over by the concurrent callers are queued and written by a
+ * single thread, all the events that are waiting when a write begins are written
+ * in the same transaction. The callers block until the transaction has been committed,
+ * so the events are only broadcast once they are durable. Since the event IDs are
+ * allocated in the order in which the event logs were queued, events that were
+ * sent in order keep increasing IDs.
+ *
+ * The nodes, services and monitoring systems referenced by the events are resolved
+ * through caches. Only the existing entities are cached so that newly created ones are
+ * picked up immediately. Deleted nodes are evicted when their nodeDeleted event goes
+ * through, and the caches are flushed whenever a write fails.
+ */
+public class JdbcEventWriter extends HibernateEventWriter implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    private static final String INSERT_EVENT = "INSERT INTO events (eventId, eventUei, nodeId, eventTime, eventHost, eventSource, ipAddr, ifIndex, systemId, " +
+            "eventSnmpHost, serviceId, eventSnmp, eventCreateTime, eventDescr, eventLogGroup, eventLogMsg, eventSeverity, eventPathOutage, eventCorrelation, " +
+            "eventSuppressedCount, eventOperInstruct, eventAutoAction, eventOperAction, eventOperActionMenuText, eventNotification, eventTTicket, eventTTicketState, " +
+            "eventForward, eventMouseOverText, eventLog, eventDisplay, eventAckUser, eventAckTime) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EVENT_PARAMETER = "INSERT INTO event_parameters (eventID, name, value, type, position) VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * Maximum number of events written in the same transaction.
+     */
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("org.opennms.eventd.jdbcWriter.batchSize", 500);
+
+    /**
+     * How long to wait for more events before starting a write, by default only the
+     * events that accumulated during the previous write are grouped.
+     */
+    private static final long BATCH_WINDOW_MS = Long.getLong("org.opennms.eventd.jdbcWriter.batchWindow", 0L);
+
+    private static final int QUEUE_SIZE = Integer.getInteger("org.opennms.eventd.jdbcWriter.queueSize", 10000);
+
+    private static final long CACHE_TTL_MS = Long.getLong("org.opennms.eventd.jdbcWriter.cacheTtl", TimeUnit.MINUTES.toMillis(5));
+
+    private static final long CACHE_MAX_SIZE = Long.getLong("org.opennms.eventd.jdbcWriter.cacheSize", 10000L);
+
+    @Autowired
+    private DataSource m_dataSource;
+
+    @Autowired
+    private SessionFactory m_sessionFactory;
+
+    private JdbcTemplate m_jdbcTemplate;
+
+    private final BlockingQueue<PendingLog> m_queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
+
+    private Thread m_writerThread;
+
+    private volatile boolean m_running;
+
+    private final Cache<Integer, Boolean> m_nodes = newCache();
+
+    private final Cache<String, Boolean> m_distPollers = newCache();
+
+    private final Cache<String, Boolean> m_monitoringSystems = newCache();
+
+    private final Cache<String, Integer> m_serviceTypes = newCache();
+
+    private volatile String m_localSystemId;
+
+    private final Timer m_writeTimer;
+
+    private final Histogram m_batchSizes;
+
+    /**
+     * Events of a single log waiting to be written.
+     */
+    private static class PendingLog {
+        private final Header header;
+        private final List<Event> events;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingLog(Header header, List<Event> events) {
+            this.header = header;
+            this.events = events;
+        }
+    }
+
+    public JdbcEventWriter(MetricRegistry registry) {
+        super(registry);
+        m_writeTimer = registry.timer("eventlogs.process.write");
+        m_batchSizes = registry.histogram("eventlogs.process.write.batch-size");
+        registry.remove("eventlogs.process.write.queued");
+        registry.register("eventlogs.process.write.queued", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return m_queue.size();
+            }
+        });
+    }
+
+    private static <K, V> Cache<K, V> newCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(CACHE_TTL_MS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        m_jdbcTemplate = new JdbcTemplate(m_dataSource);
+        m_running = true;
+        m_writerThread = new ThreadFactoryBuilder()
+                .setNameFormat("JdbcEventWriter")
+                .setDaemon(true)
+                .build()
+                .newThread(this::writeBatches);
+        m_writerThread.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        m_running = false;
+        if (m_writerThread != null) {
+            m_writerThread.interrupt();
+            m_writerThread.join();
+        }
+        // Don't leave any callers hanging
+        final List<PendingLog> remaining = new ArrayList<>();
+        m_queue.drainTo(remaining);
+        remaining.forEach(p -> p.future.completeExceptionally(new EventProcessorException("JdbcEventWriter was stopped before the events were written")));
+    }
+
+    @Override
+    public void process(Log eventLog) throws EventProcessorException {
+        if (eventLog == null || eventLog.getEvents() == null || eventLog.getEvents().getEventCollection() == null) {
+            return;
+        }
+
+        // Find the events in the log that need to be persisted
+        final List<Event> eventsToPersist = eventLog.getEvents().getEventCollection().stream()
+                .filter(e -> checkEventSanityAndDoWeProcess(e, "JdbcEventWriter"))
+                .collect(Collectors.toList());
+        if (eventsToPersist.isEmpty()) {
+            return;
+        }
+
+        for (Event event : eventsToPersist) {
+            if (EventConstants.NODE_DELETED_EVENT_UEI.equals(event.getUei()) && event.hasNodeid()) {
+                m_nodes.invalidate(event.getNodeid().intValue());
+            }
+        }
+
+        final PendingLog pending = new PendingLog(eventLog.getHeader(), eventsToPersist);
+        try {
+            m_queue.put(pending);
+            pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for the events to be written", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException) {
+                throw (EventProcessorException)e.getCause();
+            }
+            throw new EventProcessorException("Unexpected exception while storing events", e.getCause());
+        }
+    }
+
+    private void writeBatches() {
+        final List<PendingLog> batch = new ArrayList<>();
+        while (m_running) {
+            try {
+                batch.add(m_queue.take());
+                int numEvents = batch.get(0).events.size();
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+                while (numEvents < MAX_BATCH_SIZE) {
+                    final PendingLog next = m_queue.poll(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    numEvents += next.events.size();
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                LOG.debug("JdbcEventWriter was interrupted.");
+                batch.forEach(p -> p.future.completeExceptionally(new EventProcessorException("JdbcEventWriter was stopped before the events were written")));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                LOG.error("Unexpected exception while writing events.", t);
+                batch.forEach(p -> p.future.completeExceptionally(new EventProcessorException("Unexpected exception while storing events", t)));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingLog> batch) {
+        try {
+            writeInTransaction(batch);
+            batch.forEach(p -> p.future.complete(null));
+            return;
+        } catch (Throwable t) {
+            // A referenced entity may have been deleted since it was cached
+            invalidateCaches();
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(toEventProcessorException(batch.get(0), t));
+                return;
+            }
+            LOG.warn("Failed to write {} event logs in a single transaction, retrying them one at a time.", batch.size(), t);
+        }
+
+        // Isolate the event logs that can't be written
+        for (PendingLog pending : batch) {
+            try {
+                writeInTransaction(Collections.singletonList(pending));
+                pending.future.complete(null);
+            } catch (Throwable t) {
+                pending.future.completeExceptionally(toEventProcessorException(pending, t));
+            }
+        }
+    }
+
+    private void writeInTransaction(List<PendingLog> batch) {
+        final List<Event> events = new ArrayList<>();
+        final List<OnmsEvent> ovents = new ArrayList<>();
+        try (Context context = m_writeTimer.time()) {
+            getTransactionManager().execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (PendingLog pending : batch) {
+                        for (Event event : pending.events) {
+                            LOG.debug("JdbcEventWriter: processing {}, nodeid: {}, ipaddr: {}, serviceid: {}, time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
+                            final OnmsEvent ovent = createOnmsEvent(pending.header, event);
+                            ovent.setId(nextEventId());
+                            events.add(event);
+                            ovents.add(ovent);
+                        }
+                    }
+                    insertEvents(ovents);
+                    insertEventParameters(ovents);
+                }
+            });
+        }
+        m_batchSizes.update(ovents.size());
+
+        // Update the events with the database ID of the events stored in the database
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setDbid(ovents.get(i).getId());
+        }
+    }
+
+    /**
+     * Uses the identifier generator of {@link OnmsEvent} so that the IDs never collide with
+     * the ones assigned by Hibernate, and are allocated in blocks when it uses a hi/lo algorithm.
+     */
+    private Integer nextEventId() {
+        final IdentifierGenerator generator = ((SessionFactoryImplementor)m_sessionFactory).getIdentifierGenerator(OnmsEvent.class.getName());
+        return (Integer)generator.generate((SessionImplementor)m_sessionFactory.getCurrentSession(), null);
+    }
+
+    private void insertEvents(List<OnmsEvent> ovents) {
+        m_jdbcTemplate.batchUpdate(INSERT_EVENT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                final OnmsEvent ovent = ovents.get(i);
+                int k = 1;
+                ps.setInt(k++, ovent.getId());
+                ps.setString(k++, ovent.getEventUei());
+                setInteger(ps, k++, ovent.getNode() == null ? null : ovent.getNode().getId());
+                setTimestamp(ps, k++, ovent.getEventTime());
+                ps.setString(k++, ovent.getEventHost());
+                ps.setString(k++, ovent.getEventSource());
+                ps.setString(k++, ovent.getIpAddr() == null ? null : InetAddressUtils.str(ovent.getIpAddr()));
+                setInteger(ps, k++, ovent.getIfIndex());
+                ps.setString(k++, ovent.getDistPoller().getId());
+                ps.setString(k++, ovent.getEventSnmpHost());
+                setInteger(ps, k++, ovent.getServiceType() == null ? null : ovent.getServiceType().getId());
+                ps.setString(k++, ovent.getEventSnmp());
+                setTimestamp(ps, k++, ovent.getEventCreateTime());
+                ps.setString(k++, ovent.getEventDescr());
+                ps.setString(k++, ovent.getEventLogGroup());
+                ps.setString(k++, ovent.getEventLogMsg());
+                setInteger(ps, k++, ovent.getEventSeverity());
+                ps.setString(k++, ovent.getEventPathOutage());
+                ps.setString(k++, ovent.getEventCorrelation());
+                setInteger(ps, k++, ovent.getEventSuppressedCount());
+                ps.setString(k++, ovent.getEventOperInstruct());
+                ps.setString(k++, ovent.getEventAutoAction());
+                ps.setString(k++, ovent.getEventOperAction());
+                ps.setString(k++, ovent.getEventOperActionMenuText());
+                ps.setString(k++, ovent.getEventNotification());
+                ps.setString(k++, ovent.getEventTTicket());
+                setInteger(ps, k++, ovent.getEventTTicketState());
+                ps.setString(k++, ovent.getEventForward());
+                ps.setString(k++, ovent.getEventMouseOverText());
+                ps.setString(k++, ovent.getEventLog());
+                ps.setString(k++, ovent.getEventDisplay());
+                ps.setString(k++, ovent.getEventAckUser());
+                setTimestamp(ps, k++, ovent.getEventAckTime());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ovents.size();
+            }
+        });
+    }
+
+    private void insertEventParameters(List<OnmsEvent> ovents) {
+        final List<OnmsEventParameter> parameters = new ArrayList<>();
+        final List<Integer> positions = new ArrayList<>();
+        for (OnmsEvent ovent : ovents) {
+            final List<OnmsEventParameter> eventParameters = ovent.getEventParameters();
+            if (eventParameters == null) {
+                continue;
+            }
+            // The parameters are sorted by position
+            for (int i = 0; i < eventParameters.size(); i++) {
+                parameters.add(eventParameters.get(i));
+                positions.add(i);
+            }
+        }
+        if (parameters.isEmpty()) {
+            return;
+        }
+
+        m_jdbcTemplate.batchUpdate(INSERT_EVENT_PARAMETER, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                final OnmsEventParameter parameter = parameters.get(i);
+                ps.setInt(1, parameter.getEvent().getId());
+                ps.setString(2, parameter.getName());
+                ps.setString(3, parameter.getValue());
+                ps.setString(4, parameter.getType());
+                ps.setInt(5, positions.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return parameters.size();
+            }
+        });
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement ps, int index, Date value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+        } else {
+            ps.setTimestamp(index, new Timestamp(value.getTime()));
+        }
+    }
+
+    private static EventProcessorException toEventProcessorException(PendingLog pending, Throwable t) {
+        if (t instanceof DeadlockLoserDataAccessException) {
+            return new EventProcessorException("Encountered deadlock when inserting events: " + pending.events, t);
+        }
+        return new EventProcessorException("Unexpected exception while storing events: " + pending.events, t);
+    }
+
+    private void invalidateCaches() {
+        m_nodes.invalidateAll();
+        m_distPollers.invalidateAll();
+        m_monitoringSystems.invalidateAll();
+        m_serviceTypes.invalidateAll();
+        m_localSystemId = null;
+    }
+
+    /*
+     * The entities returned by the resolvers below only carry their ID, they are never
+     * handed over to Hibernate.
+     */
+
+    @Override
+    protected OnmsNode getNode(int nodeId) {
+        if (m_nodes.getIfPresent(nodeId) == null) {
+            if (super.getNode(nodeId) == null) {
+                return null;
+            }
+            m_nodes.put(nodeId, Boolean.TRUE);
+        }
+        final OnmsNode node = new OnmsNode();
+        node.setId(nodeId);
+        return node;
+    }
+
+    @Override
+    protected OnmsMonitoringSystem getDistPoller(String id) {
+        if (m_distPollers.getIfPresent(id) == null) {
+            if (super.getDistPoller(id) == null) {
+                return null;
+            }
+            m_distPollers.put(id, Boolean.TRUE);
+        }
+        return new OnmsDistPoller(id);
+    }
+
+    @Override
+    protected OnmsMonitoringSystem getMonitoringSystem(String id) {
+        if (m_monitoringSystems.getIfPresent(id) == null) {
+            if (super.getMonitoringSystem(id) == null) {
+                return null;
+            }
+            m_monitoringSystems.put(id, Boolean.TRUE);
+        }
+        final OnmsMonitoringSystem monitoringSystem = new OnmsMonitoringSystem();
+        monitoringSystem.setId(id);
+        return monitoringSystem;
+    }
+
+    @Override
+    protected OnmsMonitoringSystem getLocalSystem() {
+        if (m_localSystemId == null) {
+            m_localSystemId = super.getLocalSystem().getId();
+        }
+        return new OnmsDistPoller(m_localSystemId);
+    }
+
+    @Override
+    protected OnmsServiceType getServiceType(String name) {
+        if (name == null) {
+            return null;
+        }
+        Integer id = m_serviceTypes.getIfPresent(name);
+        if (id == null) {
+            final OnmsServiceType serviceType = super.getServiceType(name);
+            if (serviceType == null) {
+                return null;
+            }
+            id = serviceType.getId();
+            m_serviceTypes.put(name, id);
+        }
+        return new OnmsServiceType(id, name);
+    }
+}
@@ -324,6 +324,25 @@ public class EventIpcManagerDefaultImplTest {
         }});
     }
 
+    @Test
+    public void testAddAndRemoveEventListenerAfterBroadcast() throws Exception {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testAddAndRemoveEventListenerAfterBroadcast");
+        Event e = bldr.getEvent();
+
+        // Nobody is interested yet, but the dispatch for the UEI is now known
+        m_manager.broadcastNow(e, true);
+        assertEquals("received events", 0, m_listener.getEvents().size());
+
+        m_manager.addEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e, true);
+        assertTrue("could not remove broadcasted event--did it make it?",
+                   m_listener.getEvents().remove(ImmutableMapper.fromMutableEvent(e)));
+
+        m_manager.removeEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e, true);
+        assertEquals("received events", 0, m_listener.getEvents().size());
+    }
+
     @Test
     public void testAddEventListenerTwoArgumentStringNullListener() throws Exception {
         ThrowableAnticipator ta = new ThrowableAnticipator();
@@ -825,4 +844,107 @@ public class EventIpcManagerDefaultImplTest {
         // Release
         locker.release();
     }
+
+    /**
+     * Verify that the events delivered through the ring buffers are handed over
+     * in batches, in order, and that the queues are exposed in the metrics.
+     */
+    @Test
+    public void testRingBufferBatchedDelivery() throws Exception {
+        final List<IEvent> received = new ArrayList<>();
+        final AtomicInteger numBatches = new AtomicInteger();
+        final EventListener batchListener = new EventListener() {
+            @Override
+            public String getName() {
+                return "testRingBufferBatchedDelivery";
+            }
+
+            @Override
+            public void onEvent(IEvent e) {
+                throw new UnsupportedOperationException("events should be delivered in batches");
+            }
+
+            @Override
+            public void onEvents(List<IEvent> events) {
+                numBatches.incrementAndGet();
+                synchronized (received) {
+                    received.addAll(events);
+                }
+            }
+        };
+
+        m_manager.setUseRingBuffers(true);
+        m_manager.addEventListener(batchListener);
+        assertTrue(m_registry.getGauges().containsKey("eventlisteners.testRingBufferBatchedDelivery.queue-depth"));
+
+        final int N = 100;
+        final List<IEvent> sent = new ArrayList<>();
+        for (int k = 0; k < N; k++) {
+            Event e = new EventBuilder("uei.opennms.org/foo", "testRingBufferBatchedDelivery").setParam("k", k).getEvent();
+            sent.add(ImmutableMapper.fromMutableEvent(e));
+            m_manager.broadcastNow(e, k == N - 1);
+        }
+
+        // The last broadcast was synchronous, so everything should have been processed
+        synchronized (received) {
+            assertEquals(sent, received);
+        }
+        assertThat(numBatches.get() <= N, is(true));
+
+        m_manager.removeEventListener(batchListener);
+        assertThat(m_registry.getGauges().containsKey("eventlisteners.testRingBufferBatchedDelivery.queue-depth"), is(false));
+    }
+
+    /**
+     * Verify that stopping a ring buffer releases the callers of synchronous
+     * broadcasts whose events will never be handled.
+     */
+    @Test(timeout=30000)
+    public void testRingBufferStopReleasesSynchronousBroadcasts() throws Exception {
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EventListener blockingListener = new EventListener() {
+            @Override
+            public String getName() {
+                return "testRingBufferStopReleasesSynchronousBroadcasts";
+            }
+
+            @Override
+            public void onEvent(IEvent e) {
+                throw new UnsupportedOperationException("events should be delivered in batches");
+            }
+
+            @Override
+            public void onEvents(List<IEvent> events) {
+                processing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        final RingBufferEventListenerExecutor executor = new RingBufferEventListenerExecutor(blockingListener, 2, m_registry);
+        final IEvent event = ImmutableMapper.fromMutableEvent(new EventBuilder("uei.opennms.org/foo", "testRingBufferStopReleasesSynchronousBroadcasts").getEvent());
+
+        final CompletableFuture<Void> first = executor.addEvent(event);
+        processing.await();
+        // Fills the ring buffer, so the stop marker cannot be queued and the consumer is halted
+        final CompletableFuture<Void> second = executor.addEvent(event);
+        executor.stop();
+        final CompletableFuture<Void> third = executor.addEvent(event);
+
+        release.countDown();
+        CompletableFuture.allOf(first, second, third).get(20, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRingBufferSize() {
+        assertEquals(16384, RingBufferEventListenerExecutor.getRingBufferSize(null));
+        assertEquals(16384, RingBufferEventListenerExecutor.getRingBufferSize(Integer.MAX_VALUE));
+        assertEquals(1024, RingBufferEventListenerExecutor.getRingBufferSize(1000));
+        assertEquals(1024, RingBufferEventListenerExecutor.getRingBufferSize(1024));
+        assertEquals(1, RingBufferEventListenerExecutor.getRingBufferSize(0));
+    }
 }
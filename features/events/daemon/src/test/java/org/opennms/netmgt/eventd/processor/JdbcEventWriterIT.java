@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-mockConfigManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath*:/META-INF/opennms/component-service.xml",
+        "classpath:/META-INF/opennms/applicationContext-daemon.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-eventDaemon.xml",
+        "classpath:/META-INF/opennms/mockSinkConsumerManager.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(reuseDatabase=false)
+public class JdbcEventWriterIT {
+
+    @Autowired
+    private ApplicationContext m_context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcEventWriter m_eventWriter;
+
+    @Before
+    public void setUp() {
+        m_eventWriter = new JdbcEventWriter(new MetricRegistry());
+        m_context.getAutowireCapableBeanFactory().autowireBean(m_eventWriter);
+        m_eventWriter.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_eventWriter.destroy();
+    }
+
+    @Test
+    public void testWriteEventWithParameters() throws Exception {
+        final EventBuilder builder = new EventBuilder("testUei", "testSource");
+        builder.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        builder.setService("ICMP");
+        builder.addParam("param2", "value2");
+        builder.addParam("param1", "value1");
+        builder.addParam("param1", "value1b"); // Test for duplicated values - last should win
+
+        m_eventWriter.process(builder.getLog());
+
+        final Event event = builder.getEvent();
+        assertTrue(event.getDbid() > 0);
+
+        final Map<String, Object> row = jdbcTemplate.queryForMap("SELECT eventUei, eventSource, eventLog, eventDisplay, serviceId, systemId FROM events WHERE eventId = ?", event.getDbid());
+        assertEquals("testUei", row.get("eventUei"));
+        assertEquals("testSource", row.get("eventSource"));
+        assertEquals("Y", row.get("eventLog"));
+        assertEquals("Y", row.get("eventDisplay"));
+        assertEquals(jdbcTemplate.queryForObject("SELECT serviceId FROM service WHERE serviceName = 'ICMP'", Integer.class), row.get("serviceId"));
+
+        final List<Map<String, Object>> parameters = jdbcTemplate.queryForList("SELECT name, value FROM event_parameters WHERE eventID = ? ORDER BY position", event.getDbid());
+        assertEquals(2, parameters.size());
+        assertEquals("param2", parameters.get(0).get("name"));
+        assertEquals("value2", parameters.get(0).get("value"));
+        assertEquals("param1", parameters.get(1).get("name"));
+        assertEquals("value1b", parameters.get(1).get("value"));
+    }
+
+    @Test
+    public void testEventIdsFollowLogOrder() throws Exception {
+        final Log log = new Log();
+        log.setEvents(new Events());
+        for (int i = 0; i < 10; i++) {
+            final EventBuilder builder = new EventBuilder("testUei", "testSource");
+            builder.setLogMessage("test");
+            log.getEvents().addEvent(builder.getEvent());
+        }
+
+        m_eventWriter.process(log);
+
+        int previousId = 0;
+        for (Event event : log.getEvents().getEventCollection()) {
+            assertTrue(event.getDbid() > previousId);
+            previousId = event.getDbid();
+        }
+        assertEquals(Integer.valueOf(10), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class));
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<CompletableFuture<Event>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    final EventBuilder builder = new EventBuilder("testUei", "testSource");
+                    builder.setLogMessage("test");
+                    try {
+                        m_eventWriter.process(builder.getLog());
+                    } catch (EventProcessorException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return builder.getEvent();
+                }, executor));
+            }
+            for (CompletableFuture<Event> future : futures) {
+                assertTrue(future.get(30, TimeUnit.SECONDS).getDbid() > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(Integer.valueOf(100), jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT eventId) FROM events", Integer.class));
+    }
+
+    /**
+     * The node is cached by the first write, and evicted by the nodeDeleted event.
+     */
+    @Test
+    public void testWriteEventForDeletedNode() throws Exception {
+        jdbcTemplate.update("INSERT INTO node (location, nodeId, nodeCreateTime, nodeLabel) VALUES ('" + MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID + "', nextVal('nodeNxtId'), now(), 'test')");
+        final int nodeId = jdbcTemplate.queryForObject("SELECT nodeId FROM node LIMIT 1", Integer.class);
+
+        final EventBuilder builder = new EventBuilder("testUei", "testSource");
+        builder.setLogMessage("test");
+        builder.setNodeid(nodeId);
+        m_eventWriter.process(builder.getLog());
+        assertEquals(Integer.valueOf(nodeId), jdbcTemplate.queryForObject("SELECT nodeId FROM events WHERE eventId = ?", Integer.class, builder.getEvent().getDbid()));
+
+        jdbcTemplate.update("DELETE FROM node WHERE nodeId = ?", nodeId);
+        final EventBuilder nodeDeleted = new EventBuilder(EventConstants.NODE_DELETED_EVENT_UEI, "testSource");
+        nodeDeleted.setLogMessage("test");
+        nodeDeleted.setNodeid(nodeId);
+        m_eventWriter.process(nodeDeleted.getLog());
+
+        m_eventWriter.process(builder.getLog());
+        assertNull(jdbcTemplate.queryForObject("SELECT nodeId FROM events WHERE eventId = ?", Integer.class, builder.getEvent().getDbid()));
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.events.commands;
+
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.netmgt.alarmd.api.ReductionKeyCache;
+
+@Command(scope = "opennms", name = "alarmd-reduction-key-cache", description = "Shows the state of the reduction key cache used by alarmd, and optionally verifies it against the database")
+@Service
+public class ReductionKeyCacheCommand implements Action {
+
+    @Reference
+    ReductionKeyCache reductionKeyCache;
+
+    @Option(name = "-v", aliases = "--verify", description = "Compare the cache with the alarms table and invalidate inconsistent entries.")
+    boolean verify = false;
+
+    @Override
+    public Object execute() {
+        System.out.printf("Size: %d%n", reductionKeyCache.size());
+        System.out.printf("Complete: %s%n", reductionKeyCache.isComplete());
+        System.out.printf("Hits: %d%n", reductionKeyCache.getHitCount());
+        System.out.printf("Misses: %d%n", reductionKeyCache.getMissCount());
+        System.out.printf("Evictions: %d%n", reductionKeyCache.getEvictionCount());
+
+        if (verify) {
+            final List<String> problems = reductionKeyCache.verify();
+            if (problems.isEmpty()) {
+                System.out.println("The cache is consistent with the database.");
+            } else {
+                System.out.printf("Found %d inconsistencies:%n", problems.size());
+                problems.forEach(System.out::println);
+            }
+        }
+        return null;
+    }
+}
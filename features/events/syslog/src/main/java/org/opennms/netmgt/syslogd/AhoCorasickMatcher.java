@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds all of the occurrences of a fixed set of keywords in a single pass
+ * over the input, using the Aho-Corasick algorithm.
+ *
+ * The automaton is immutable once built and can be shared between threads.
+ */
+class AhoCorasickMatcher {
+
+    private final int m_keywordCount;
+
+    /**
+     * Transitions of every state, sorted by character.
+     */
+    private final char[][] m_chars;
+    private final int[][] m_next;
+
+    private final int[] m_fail;
+
+    /**
+     * Keywords ending at every state, including the ones reached through the failure links.
+     */
+    private final int[][] m_outputs;
+
+    /**
+     * @param keywords the keywords, identified by their index in the list
+     */
+    AhoCorasickMatcher(final List<String> keywords) {
+        m_keywordCount = keywords.size();
+
+        // Build the trie
+        final List<Map<Character, Integer>> transitions = new ArrayList<>();
+        final List<List<Integer>> outputs = new ArrayList<>();
+        transitions.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int k = 0; k < keywords.size(); k++) {
+            int state = 0;
+            for (final char c : keywords.get(k).toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(k);
+        }
+
+        final int stateCount = transitions.size();
+        m_chars = new char[stateCount][];
+        m_next = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            final Map<Character, Integer> t = transitions.get(s);
+            m_chars[s] = new char[t.size()];
+            m_next[s] = new int[t.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Integer> e : t.entrySet()) {
+                m_chars[s][i] = e.getKey();
+                m_next[s][i] = e.getValue();
+                i++;
+            }
+        }
+
+        // Compute the failure links breadth first, so that the links of the shorter prefixes are known
+        m_fail = new int[stateCount];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (final int child : m_next[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            for (int i = 0; i < m_chars[state].length; i++) {
+                final char c = m_chars[state][i];
+                final int child = m_next[state][i];
+                int fail = m_fail[state];
+                int next;
+                while ((next = transition(fail, c)) < 0 && fail != 0) {
+                    fail = m_fail[fail];
+                }
+                m_fail[child] = next < 0 ? 0 : next;
+                outputs.get(child).addAll(outputs.get(m_fail[child]));
+                queue.add(child);
+            }
+        }
+
+        m_outputs = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            m_outputs[s] = outputs.get(s).stream().distinct().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    int getKeywordCount() {
+        return m_keywordCount;
+    }
+
+    /**
+     * Returns the keywords found in the input.
+     *
+     * @return an array indexed by keyword, true if the keyword was found
+     */
+    boolean[] match(final CharSequence input) {
+        final boolean[] found = new boolean[m_keywordCount];
+        if (m_keywordCount == 0 || input == null) {
+            return found;
+        }
+        int state = 0;
+        for (int i = 0; i < input.length(); i++) {
+            final char c = input.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = m_fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (final int keyword : m_outputs[state]) {
+                found[keyword] = true;
+            }
+        }
+        return found;
+    }
+
+    private int transition(final int state, final char c) {
+        final int i = Arrays.binarySearch(m_chars[state], c);
+        return i < 0 ? -1 : m_next[state][i];
+    }
+}
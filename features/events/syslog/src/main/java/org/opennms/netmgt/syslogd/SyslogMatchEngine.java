@@ -0,0 +1,541 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled form of the uei-match and hide-match entries of the {@link SyslogdConfig}.
+ *
+ * Rather than evaluating every entry against every message, the engine:
+ * <ul>
+ * <li>finds all of the substring expressions contained in the message with a single
+ * pass of an Aho-Corasick automaton,</li>
+ * <li>extracts the literal text that must be present in a message for a regular expression
+ * to match, and only runs the expression when these literals were found by the same pass
+ * (and, for anchored expressions, when the message starts with the first one),</li>
+ * <li>compiles the regular expressions, and the facility and severity filters, once.</li>
+ * </ul>
+ * The entries are still evaluated in order, and the first one that matches wins.
+ *
+ * An engine is compiled for every version of the configuration, see {@link #forConfig(SyslogdConfig)}.
+ */
+public class SyslogMatchEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogMatchEngine.class);
+
+    /**
+     * Don't bother pre-filtering on literals shorter than this.
+     */
+    private static final int MIN_LITERAL_LENGTH = 3;
+
+    private static final String REGEX_METACHARACTERS = ".^$*+?";
+
+    private static volatile SyslogMatchEngine s_engine;
+
+    private final List<UeiMatch> m_ueiMatches;
+    private final List<HideMatch> m_hideMatches;
+    private final int m_ueiMatchCount;
+    private final int m_hideMatchCount;
+    private final String m_discardUei;
+
+    private final UeiRule[] m_ueiRules;
+    private final AhoCorasickMatcher m_ueiKeywords;
+
+    private final HideRule[] m_hideRules;
+    private final AhoCorasickMatcher m_hideKeywords;
+
+    /**
+     * Returns the engine for the current configuration, compiling it if the
+     * configuration was reloaded since the last call.
+     */
+    public static SyslogMatchEngine forConfig(final SyslogdConfig config) {
+        final List<UeiMatch> ueiMatches = config.getUeiList() == null ? Collections.emptyList() : config.getUeiList();
+        final List<HideMatch> hideMatches = config.getHideMessages() == null ? Collections.emptyList() : config.getHideMessages();
+        final String discardUei = config.getDiscardUei();
+
+        SyslogMatchEngine engine = s_engine;
+        if (engine == null || !engine.isCompiledFrom(ueiMatches, hideMatches, discardUei)) {
+            engine = new SyslogMatchEngine(ueiMatches, hideMatches, discardUei);
+            s_engine = engine;
+        }
+        return engine;
+    }
+
+    public SyslogMatchEngine(final List<UeiMatch> ueiMatches, final List<HideMatch> hideMatches, final String discardUei) {
+        m_ueiMatches = ueiMatches;
+        m_hideMatches = hideMatches;
+        m_ueiMatchCount = ueiMatches.size();
+        m_hideMatchCount = hideMatches.size();
+        m_discardUei = discardUei;
+
+        final long start = System.currentTimeMillis();
+        final Map<String, Pattern> patterns = new HashMap<>();
+
+        final Map<String, Integer> ueiKeywords = new LinkedHashMap<>();
+        final List<UeiRule> ueiRules = new ArrayList<>(ueiMatches.size());
+        for (final UeiMatch ueiMatch : ueiMatches) {
+            ueiRules.add(new UeiRule(ueiMatch, discardUei, patterns, ueiKeywords));
+        }
+        m_ueiRules = ueiRules.toArray(new UeiRule[0]);
+        m_ueiKeywords = new AhoCorasickMatcher(new ArrayList<>(ueiKeywords.keySet()));
+
+        final Map<String, Integer> hideKeywords = new LinkedHashMap<>();
+        final List<HideRule> hideRules = new ArrayList<>(hideMatches.size());
+        for (final HideMatch hideMatch : hideMatches) {
+            hideRules.add(new HideRule(hideMatch, patterns, hideKeywords));
+        }
+        m_hideRules = hideRules.toArray(new HideRule[0]);
+        m_hideKeywords = new AhoCorasickMatcher(new ArrayList<>(hideKeywords.keySet()));
+
+        LOG.debug("Compiled {} uei-match and {} hide-match entries in {}ms.", m_ueiRules.length, m_hideRules.length, System.currentTimeMillis() - start);
+    }
+
+    private boolean isCompiledFrom(final List<UeiMatch> ueiMatches, final List<HideMatch> hideMatches, final String discardUei) {
+        // The lists are replaced when the configuration is reloaded
+        return m_ueiMatches == ueiMatches && m_ueiMatchCount == ueiMatches.size()
+                && m_hideMatches == hideMatches && m_hideMatchCount == hideMatches.size()
+                && Objects.equals(m_discardUei, discardUei);
+    }
+
+    /**
+     * Applies the first uei-match entry that matches the message to the event.
+     *
+     * @throws MessageDiscardedException if the matching entry uses the discard UEI
+     */
+    public void applyUeiMatches(final SyslogMessage message, final EventBuilder bldr) throws MessageDiscardedException {
+        if (m_ueiRules.length == 0) {
+            return;
+        }
+
+        final String text = message.getMessage();
+        if (text == null) {
+            return;
+        }
+        final boolean[] keywords = m_ueiKeywords.match(text);
+        final boolean multiline = hasLineTerminator(text);
+        final MessageSource source = new MessageSource(message);
+
+        for (final UeiRule rule : m_ueiRules) {
+            if (rule.matchesSource(source) && rule.apply(text, keywords, multiline, bldr)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given message should be hidden.
+     *
+     * @param fullText the full text of the message, as returned by {@link SyslogMessage#asRfc3164Message()}
+     */
+    public boolean shouldHide(final String fullText) {
+        if (m_hideRules.length == 0) {
+            return false;
+        }
+        final boolean[] keywords = m_hideKeywords.match(fullText);
+        for (final HideRule rule : m_hideRules) {
+            if (rule.matches(fullText, keywords)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasHideMatches() {
+        return m_hideRules.length > 0;
+    }
+
+    /**
+     * Extracts the literal text that any match of the given regular expression must contain.
+     *
+     * These are the runs of literal characters found outside of any group, character class
+     * or optional part of the expression. The extraction is conservative: nothing is returned
+     * for expressions using top-level alternations, inline flags, quoting or nested character
+     * classes.
+     */
+    protected static RegexLiterals extractLiterals(final String regex) {
+        final RegexLiterals literals = new RegexLiterals();
+        final StringBuilder run = new StringBuilder();
+        boolean runIsPrefix = false;
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            final int runStart = i;
+            char literal = 0;
+            if (c == '\\') {
+                if (i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    literal = regex.charAt(i + 1);
+                } else if (regex.startsWith("\\Q", i)) {
+                    return RegexLiterals.NONE;
+                }
+                i += 2;
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                if (i < 0) {
+                    return RegexLiterals.NONE;
+                }
+            } else if (c == '(') {
+                if (regex.startsWith("(?", i) && i + 2 < regex.length()
+                        && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                    // Inline flags may make the rest of the expression case insensitive
+                    return RegexLiterals.NONE;
+                }
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (c == '|') {
+                if (depth == 0) {
+                    return RegexLiterals.NONE;
+                }
+                i++;
+            } else if (c == '{') {
+                final int end = regex.indexOf('}', i);
+                i = end < 0 ? regex.length() : end + 1;
+            } else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                i++;
+            } else {
+                literal = c;
+                i++;
+            }
+
+            final boolean optional = i < regex.length() && "?*{".indexOf(regex.charAt(i)) >= 0;
+            if (literal != 0 && depth == 0 && !optional) {
+                if (run.length() == 0) {
+                    runIsPrefix = runStart == 1 && regex.charAt(0) == '^';
+                }
+                run.append(literal);
+            } else {
+                literals.add(run, runIsPrefix);
+                runIsPrefix = false;
+            }
+        }
+        literals.add(run, runIsPrefix);
+        return depth == 0 ? literals : RegexLiterals.NONE;
+    }
+
+    /**
+     * Returns the index following the character class starting at the given index, or -1 if
+     * the class is too complex to be skipped safely.
+     */
+    private static int skipCharacterClass(final String regex, int i) {
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == ']') {
+                return i + 1;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == '\\') {
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasLineTerminator(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+            case '\n':
+            case '\r':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                return true;
+            default:
+            }
+        }
+        return false;
+    }
+
+    private static Pattern compile(final String expression, final String context, final Map<String, Pattern> patterns) {
+        if (expression == null) {
+            return null;
+        }
+        return patterns.computeIfAbsent(expression, e -> {
+            try {
+                return Pattern.compile(e, Pattern.MULTILINE);
+            } catch (final PatternSyntaxException ex) {
+                LOG.warn("Failed to compile {} regex pattern '{}'. The entry will never match.", context, e, ex);
+                return null;
+            }
+        });
+    }
+
+    private static int keyword(final String keyword, final Map<String, Integer> keywords) {
+        return keywords.computeIfAbsent(keyword, k -> keywords.size());
+    }
+
+    /**
+     * Pre-computes a case-insensitive filter over the values of an enum, an empty list matches everything.
+     */
+    private static boolean[] valueFilter(final List<String> names, final Enum<?>[] values) {
+        final boolean[] filter = new boolean[values.length];
+        for (final Enum<?> value : values) {
+            filter[value.ordinal()] = names.isEmpty() || names.stream().anyMatch(name -> name.equalsIgnoreCase(value.toString()));
+        }
+        return filter;
+    }
+
+    /**
+     * The message being matched, resolving its host address only if an entry needs it.
+     */
+    private static final class MessageSource {
+        private final SyslogMessage m_message;
+        private boolean m_resolved = false;
+        private String m_hostAddress;
+
+        private MessageSource(final SyslogMessage message) {
+            m_message = message;
+        }
+
+        private String getHostAddress() {
+            if (!m_resolved) {
+                m_hostAddress = str(m_message.getHostAddress());
+                m_resolved = true;
+            }
+            return m_hostAddress;
+        }
+    }
+
+    protected static final class RegexLiterals {
+        private static final RegexLiterals NONE = new RegexLiterals();
+
+        private final List<String> m_required = new ArrayList<>();
+        private String m_prefix;
+
+        private void add(final StringBuilder run, final boolean prefix) {
+            if (run.length() >= MIN_LITERAL_LENGTH) {
+                m_required.add(run.toString());
+                if (prefix) {
+                    m_prefix = run.toString();
+                }
+            }
+            run.setLength(0);
+        }
+
+        /**
+         * The literals that any match must contain.
+         */
+        public List<String> getRequired() {
+            return Collections.unmodifiableList(m_required);
+        }
+
+        /**
+         * The literal that any match must start with, if the expression is anchored.
+         */
+        public String getPrefix() {
+            return m_prefix;
+        }
+    }
+
+    private static final class UeiRule {
+        private final String m_uei;
+        private final boolean m_discard;
+        private final boolean[] m_facilities;
+        private final boolean[] m_severities;
+
+        private final boolean m_hasProcessMatch;
+        private final Pattern m_processPattern;
+        private final boolean m_hasHostnameMatch;
+        private final Pattern m_hostnamePattern;
+        private final boolean m_hasHostaddrMatch;
+        private final Pattern m_hostaddrPattern;
+
+        private final boolean m_substring;
+        private final boolean m_regex;
+        private final Pattern m_pattern;
+        private final String m_expression;
+        private final int[] m_keywords;
+        private final String m_anchoredPrefix;
+
+        private final boolean m_defaultParameterMapping;
+        private final List<ParameterAssignment> m_parameterAssignments;
+
+        private UeiRule(final UeiMatch ueiMatch, final String discardUei, final Map<String, Pattern> patterns, final Map<String, Integer> keywords) {
+            m_uei = ueiMatch.getUei();
+            m_discard = Objects.equals(discardUei, m_uei);
+            m_facilities = valueFilter(ueiMatch.getFacilities(), SyslogFacility.values());
+            m_severities = valueFilter(ueiMatch.getSeverities(), SyslogSeverity.values());
+
+            m_hasProcessMatch = ueiMatch.getProcessMatch().isPresent();
+            m_processPattern = compile(ueiMatch.getProcessMatch().map(m -> m.getExpression()).orElse(null), "process-match", patterns);
+            m_hasHostnameMatch = ueiMatch.getHostnameMatch().isPresent();
+            m_hostnamePattern = compile(ueiMatch.getHostnameMatch().map(m -> m.getExpression()).orElse(null), "hostname-match", patterns);
+            m_hasHostaddrMatch = ueiMatch.getHostaddrMatch().isPresent();
+            m_hostaddrPattern = compile(ueiMatch.getHostaddrMatch().map(m -> m.getExpression()).orElse(null), "hostaddr-match", patterns);
+
+            final String type = ueiMatch.getMatch().getType();
+            m_expression = ueiMatch.getMatch().getExpression();
+            m_substring = "substr".equals(type);
+            m_regex = type.startsWith("regex");
+            if (m_substring) {
+                m_pattern = null;
+                m_keywords = new int[] { keyword(m_expression, keywords) };
+                m_anchoredPrefix = null;
+            } else if (m_regex) {
+                m_pattern = compile(m_expression, "uei-match", patterns);
+                final RegexLiterals literals = extractLiterals(m_expression);
+                m_keywords = literals.getRequired().stream().mapToInt(l -> keyword(l, keywords)).toArray();
+                m_anchoredPrefix = literals.getPrefix();
+            } else {
+                m_pattern = null;
+                m_keywords = new int[0];
+                m_anchoredPrefix = null;
+            }
+
+            m_defaultParameterMapping = ueiMatch.getMatch().getDefaultParameterMapping();
+            m_parameterAssignments = ueiMatch.getParameterAssignments();
+        }
+
+        private boolean matchesSource(final MessageSource source) {
+            final SyslogMessage message = source.m_message;
+            return m_facilities[message.getFacility().ordinal()]
+                    && m_severities[message.getSeverity().ordinal()]
+                    && find(m_hasProcessMatch, m_processPattern, message.getProcessName())
+                    && find(m_hasHostnameMatch, m_hostnamePattern, message.getHostName())
+                    && (!m_hasHostaddrMatch || find(true, m_hostaddrPattern, source.getHostAddress()));
+        }
+
+        private static boolean find(final boolean present, final Pattern pattern, final String input) {
+            if (!present) {
+                return true;
+            }
+            return pattern != null && input != null && pattern.matcher(input).find();
+        }
+
+        private boolean apply(final String text, final boolean[] keywords, final boolean multiline, final EventBuilder bldr) throws MessageDiscardedException {
+            if (m_substring) {
+                if (!keywords[m_keywords[0]]) {
+                    return false;
+                }
+                // Parameter assignments are NOT performed for substring matches
+                setUei(bldr, "substring");
+                return true;
+            }
+            if (!m_regex || m_pattern == null) {
+                return false;
+            }
+            for (final int keyword : m_keywords) {
+                if (!keywords[keyword]) {
+                    // A literal part of the expression is not in the message
+                    return false;
+                }
+            }
+            if (m_anchoredPrefix != null && !multiline && !text.startsWith(m_anchoredPrefix)) {
+                return false;
+            }
+
+            final Matcher matcher = m_pattern.matcher(text);
+            if (!matcher.find()) {
+                LOG.trace("Message portion '{}' did not regex-match pattern '{}'", text, m_expression);
+                return false;
+            }
+            setUei(bldr, "regex");
+
+            if (matcher.groupCount() > 0) {
+                if (m_defaultParameterMapping) {
+                    for (int groupNum = 1; groupNum <= matcher.groupCount(); groupNum++) {
+                        bldr.addParam("group" + groupNum, matcher.group(groupNum));
+                    }
+                }
+                for (final ParameterAssignment assignment : m_parameterAssignments) {
+                    final String parmValue = matcher.group(assignment.getMatchingGroup());
+                    bldr.addParam(assignment.getParameterName(), parmValue == null ? "" : parmValue);
+                }
+            }
+            return true;
+        }
+
+        private void setUei(final EventBuilder bldr, final String context) throws MessageDiscardedException {
+            if (m_discard) {
+                LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", m_uei);
+                throw new MessageDiscardedException();
+            }
+            LOG.trace("Changed the UEI of a Syslogd event, based on {} match, to : {}", context, m_uei);
+            bldr.setUei(m_uei);
+        }
+    }
+
+    private static final class HideRule {
+        private final int m_keyword;
+        private final Pattern m_pattern;
+
+        private HideRule(final HideMatch hideMatch, final Map<String, Pattern> patterns, final Map<String, Integer> keywords) {
+            final String type = hideMatch.getMatch().getType();
+            final String expression = hideMatch.getMatch().getExpression();
+            if ("substr".equals(type)) {
+                m_keyword = keyword(expression, keywords);
+                m_pattern = null;
+            } else if ("regex".equals(type)) {
+                m_keyword = -1;
+                m_pattern = compile(expression, "hide-match", patterns);
+            } else {
+                m_keyword = -1;
+                m_pattern = null;
+            }
+        }
+
+        private boolean matches(final String fullText, final boolean[] keywords) {
+            if (m_keyword >= 0) {
+                return keywords[m_keyword];
+            }
+            return m_pattern != null && m_pattern.matcher(fullText).find();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to compare the {@link SyslogMatchEngine} with
+ * a linear evaluation of the uei-match entries, as previously done by {@link ConvertToEvent}.
+ * <p>
+ * The entries are the 10,000 regular expressions of the load test configuration, and the
+ * messages are drawn from a corpus of load test messages, a fifth of which match no entry.
+ */
+public class SyslogMatchEngineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @State(Scope.Benchmark)
+    public static class BState {
+
+        @Param({"linear", "engine"})
+        public String matcher;
+
+        @Param({"1000000"})
+        public int corpusSize;
+
+        private SyslogdConfig config;
+        private SyslogMatchEngine engine;
+        private final Map<String, Pattern> patterns = new HashMap<>();
+        private SyslogMessage[] corpus;
+        private int next = 0;
+
+        @Setup
+        public void setup() throws Exception {
+            try (InputStream is = SyslogMatchEngineBenchmark.class.getResourceAsStream("/etc/syslogd-loadtest-configuration.xml")) {
+                config = new SyslogdConfigFactory(is);
+            }
+            engine = SyslogMatchEngine.forConfig(config);
+            for (final UeiMatch ueiMatch : config.getUeiList()) {
+                patterns.put(ueiMatch.getMatch().getExpression(), Pattern.compile(ueiMatch.getMatch().getExpression(), Pattern.MULTILINE));
+            }
+
+            final Random random = new Random(123456L);
+            corpus = new SyslogMessage[corpusSize];
+            for (int i = 0; i < corpus.length; i++) {
+                final SyslogMessage message = new SyslogMessage();
+                message.setFacility(SyslogFacility.AUTH);
+                message.setSeverity(SyslogSeverity.CRITICAL);
+                message.setHostName("192.168.0.1");
+                message.setProcessName("foo" + random.nextInt(10000));
+                if (random.nextInt(5) == 0) {
+                    message.setMessage(message.getProcessName() + "[" + i + "]: session opened for user root by (uid=0)");
+                } else {
+                    message.setMessage(message.getProcessName() + ": load test " + i + " on tty" + random.nextInt(8));
+                }
+                corpus[i] = message;
+            }
+        }
+
+        private SyslogMessage nextMessage() {
+            final SyslogMessage message = corpus[next];
+            next = (next + 1) % corpus.length;
+            return message;
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 2)
+    public void applyUeiMatches(BState state, Blackhole blackhole) throws Exception {
+        final SyslogMessage message = state.nextMessage();
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/auth/critical", "syslogd");
+        if ("engine".equals(state.matcher)) {
+            state.engine.applyUeiMatches(message, bldr);
+        } else {
+            applyLinearly(state.config.getUeiList(), state.patterns, message, bldr);
+        }
+        blackhole.consume(bldr);
+    }
+
+    private static void applyLinearly(List<UeiMatch> ueiMatches, Map<String, Pattern> patterns, SyslogMessage message, EventBuilder bldr) {
+        for (final UeiMatch ueiMatch : ueiMatches) {
+            if ("substr".equals(ueiMatch.getMatch().getType())) {
+                if (message.getMessage().contains(ueiMatch.getMatch().getExpression())) {
+                    bldr.setUei(ueiMatch.getUei());
+                    return;
+                }
+            } else {
+                final Matcher matcher = patterns.get(ueiMatch.getMatch().getExpression()).matcher(message.getMessage());
+                if (matcher.find()) {
+                    bldr.setUei(ueiMatch.getUei());
+                    for (int groupNum = 1; groupNum <= matcher.groupCount(); groupNum++) {
+                        bldr.addParam("group" + groupNum, matcher.group(groupNum));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
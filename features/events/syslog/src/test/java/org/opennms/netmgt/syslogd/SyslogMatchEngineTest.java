@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+public class SyslogMatchEngineTest {
+
+    private static final String DEFAULT_UEI = "uei.opennms.org/syslogd/local0/notice";
+
+    private static final String DISCARD_UEI = "DISCARD-MATCHING-MESSAGES";
+
+    @Test
+    public void canExtractRequiredLiterals() {
+        assertEquals(Arrays.asList("foo0: ", "load test ", " on "),
+                SyslogMatchEngine.extractLiterals(".*foo0: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*").getRequired());
+        assertEquals("%SEC-6-IPACCESSLOGP: list ",
+                SyslogMatchEngine.extractLiterals("^%SEC-6-IPACCESSLOGP: list (\\S+)").getPrefix());
+
+        // Optional characters are not required
+        assertEquals(Collections.singletonList("cde"), SyslogMatchEngine.extractLiterals("^ab?cde").getRequired());
+        assertNull(SyslogMatchEngine.extractLiterals("^ab?cde").getPrefix());
+        assertEquals(Arrays.asList("abc", "ghi"), SyslogMatchEngine.extractLiterals("^abc(def)?ghi$").getRequired());
+
+        // Escaped punctuation is literal
+        assertEquals(Collections.singletonList("foo.bar"), SyslogMatchEngine.extractLiterals("foo\\.bar\\d+").getRequired());
+
+        // Nothing is required with top-level alternations, inline flags or quoting
+        assertTrue(SyslogMatchEngine.extractLiterals("abc|def").getRequired().isEmpty());
+        assertTrue(SyslogMatchEngine.extractLiterals("(?i)hello world").getRequired().isEmpty());
+        assertTrue(SyslogMatchEngine.extractLiterals("\\Qhello world\\E").getRequired().isEmpty());
+    }
+
+    @Test
+    public void canMatchTheFirstEntryInOrder() throws Exception {
+        final SyslogMatchEngine engine = new SyslogMatchEngine(Arrays.asList(
+                ueiMatch("regex", "^%SEC-6-IPACCESSLOGP: list (\\S+) denied", "uei.example.org/regex"),
+                ueiMatch("substr", "denied", "uei.example.org/substr"),
+                ueiMatch("regex", "denied", "uei.example.org/never")),
+                Collections.emptyList(), DISCARD_UEI);
+
+        EventBuilder bldr = apply(engine, "%SEC-6-IPACCESSLOGP: list in110 denied tcp 192.168.10.100(63923)");
+        assertEquals("uei.example.org/regex", bldr.getEvent().getUei());
+        assertEquals("in110", bldr.getEvent().getParm("group1").getValue().getContent());
+
+        bldr = apply(engine, "access denied for user root");
+        assertEquals("uei.example.org/substr", bldr.getEvent().getUei());
+
+        bldr = apply(engine, "nothing to see here");
+        assertEquals(DEFAULT_UEI, bldr.getEvent().getUei());
+    }
+
+    @Test
+    public void canMatchAnchoredExpressionsOnAnyLine() throws Exception {
+        final SyslogMatchEngine engine = new SyslogMatchEngine(Collections.singletonList(
+                ueiMatch("regex", "^second line", "uei.example.org/multiline")),
+                Collections.emptyList(), DISCARD_UEI);
+
+        assertEquals("uei.example.org/multiline", apply(engine, "first line\nsecond line").getEvent().getUei());
+        assertEquals(DEFAULT_UEI, apply(engine, "first line, second line").getEvent().getUei());
+    }
+
+    @Test
+    public void canAssignParameters() throws Exception {
+        final UeiMatch ueiMatch = ueiMatch("regex", "user (\\S+) logged in from (\\S+)", "uei.example.org/login");
+        ueiMatch.getMatch().setDefaultParameterMapping(false);
+        final ParameterAssignment assignment = new ParameterAssignment();
+        assignment.setMatchingGroup(2);
+        assignment.setParameterName("source");
+        ueiMatch.addParameterAssignment(assignment);
+        final SyslogMatchEngine engine = new SyslogMatchEngine(Collections.singletonList(ueiMatch), Collections.emptyList(), DISCARD_UEI);
+
+        final EventBuilder bldr = apply(engine, "user jeffg logged in from 10.0.0.1");
+        assertEquals("uei.example.org/login", bldr.getEvent().getUei());
+        assertNull(bldr.getEvent().getParm("group1"));
+        assertEquals("10.0.0.1", bldr.getEvent().getParm("source").getValue().getContent());
+    }
+
+    @Test
+    public void canFilterOnTheSource() throws Exception {
+        final UeiMatch ueiMatch = ueiMatch("substr", "denied", "uei.example.org/filtered");
+        ueiMatch.addFacility("LOCAL1");
+        final SyslogMatchEngine engine = new SyslogMatchEngine(Collections.singletonList(ueiMatch), Collections.emptyList(), DISCARD_UEI);
+
+        assertEquals(DEFAULT_UEI, apply(engine, "access denied").getEvent().getUei());
+
+        ueiMatch.addFacility("local0");
+        final SyslogMatchEngine otherEngine = new SyslogMatchEngine(Collections.singletonList(ueiMatch), Collections.emptyList(), DISCARD_UEI);
+        assertEquals("uei.example.org/filtered", apply(otherEngine, "access denied").getEvent().getUei());
+    }
+
+    @Test(expected = MessageDiscardedException.class)
+    public void canDiscardMessages() throws Exception {
+        final SyslogMatchEngine engine = new SyslogMatchEngine(Collections.singletonList(
+                ueiMatch("substr", "noise", DISCARD_UEI)),
+                Collections.emptyList(), DISCARD_UEI);
+        apply(engine, "some noise");
+    }
+
+    @Test
+    public void canHideMessages() {
+        final SyslogMatchEngine engine = new SyslogMatchEngine(Collections.emptyList(), Arrays.asList(
+                hideMatch("substr", "password"),
+                hideMatch("regex", "secret[0-9]+")),
+                DISCARD_UEI);
+
+        assertTrue(engine.hasHideMatches());
+        assertTrue(engine.shouldHide("<13>Jan  1 00:00:00 host su: bad password"));
+        assertTrue(engine.shouldHide("<13>Jan  1 00:00:00 host su: secret42"));
+        assertFalse(engine.shouldHide("<13>Jan  1 00:00:00 host su: secrets"));
+    }
+
+    private static EventBuilder apply(final SyslogMatchEngine engine, final String text) throws MessageDiscardedException {
+        final SyslogMessage message = new SyslogMessage();
+        message.setFacility(SyslogFacility.LOCAL0);
+        message.setSeverity(SyslogSeverity.NOTICE);
+        message.setHostName("127.0.0.1");
+        message.setMessage(text);
+
+        final EventBuilder bldr = new EventBuilder(DEFAULT_UEI, "syslogd");
+        engine.applyUeiMatches(message, bldr);
+        return bldr;
+    }
+
+    private static UeiMatch ueiMatch(final String type, final String expression, final String uei) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setMatch(match);
+        ueiMatch.setUei(uei);
+        return ueiMatch;
+    }
+
+    private static HideMatch hideMatch(final String type, final String expression) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final HideMatch hideMatch = new HideMatch();
+        hideMatch.setMatch(match);
+        return hideMatch;
+    }
+}
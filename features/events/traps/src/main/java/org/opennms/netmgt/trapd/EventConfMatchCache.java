@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.EventMatchIndex;
+import org.opennms.netmgt.xml.eventconf.EventMatchers;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Field;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Memoizes the event definitions matched by {@link EventConfDao#findByEvent(Event)}.
+ *
+ * Traps sent by the same agent typically share the same enterprise id, generic and specific
+ * types, so the results are keyed on the values of the fields that are referenced by the masks
+ * of the event definitions (including the varbinds) - events with the same values are
+ * guaranteed to match the same definition.
+ *
+ * The cache is dropped whenever the event definitions are (re)initialized.
+ */
+class EventConfMatchCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventConfMatchCache.class);
+
+    /**
+     * Maximum number of keys kept per generation of the event definitions, 0 disables the cache.
+     */
+    public static final String CACHE_SIZE_SYS_PROP = "org.opennms.netmgt.trapd.eventConfCacheSize";
+
+    private static final long DEFAULT_CACHE_SIZE = 10000;
+
+    private final EventConfDao eventConfDao;
+
+    private final long maximumSize;
+
+    private volatile Generation generation;
+
+    public EventConfMatchCache(EventConfDao eventConfDao) {
+        this(eventConfDao, Long.getLong(CACHE_SIZE_SYS_PROP, DEFAULT_CACHE_SIZE));
+    }
+
+    public EventConfMatchCache(EventConfDao eventConfDao, long maximumSize) {
+        this.eventConfDao = Objects.requireNonNull(eventConfDao);
+        this.maximumSize = maximumSize;
+    }
+
+    public org.opennms.netmgt.xml.eventconf.Event findByEvent(final Event event) {
+        final Generation current = getGeneration();
+        if (current == null) {
+            return eventConfDao.findByEvent(event);
+        }
+
+        final List<String> key = current.getKey(event);
+        Optional<org.opennms.netmgt.xml.eventconf.Event> econf = current.matches.getIfPresent(key);
+        if (econf == null) {
+            econf = Optional.ofNullable(eventConfDao.findByEvent(event));
+            current.matches.put(key, econf);
+        }
+        return econf.orElse(null);
+    }
+
+    private Generation getGeneration() {
+        if (maximumSize <= 0) {
+            return null;
+        }
+        final Events rootEvents = eventConfDao.getRootEvents();
+        if (rootEvents == null) {
+            return null;
+        }
+
+        Generation current = generation;
+        if (current == null || current.rootEvents != rootEvents || current.matchIndex != rootEvents.getMatchIndex()) {
+            current = new Generation(rootEvents, maximumSize);
+            generation = current;
+            LOG.debug("Event definitions were (re)initialized, keying matches on: {}", Arrays.toString(current.fields));
+        }
+        return current;
+    }
+
+    private static class Generation {
+        private final Events rootEvents;
+        private final EventMatchIndex matchIndex;
+        private final Field[] fields;
+        private final Cache<List<String>, Optional<org.opennms.netmgt.xml.eventconf.Event>> matches;
+
+        private Generation(final Events rootEvents, final long maximumSize) {
+            this.rootEvents = rootEvents;
+            // Grab the index before walking the definitions, a concurrent reload will invalidate us on the next lookup
+            this.matchIndex = rootEvents.getMatchIndex();
+            this.fields = getMaskFields(rootEvents);
+            this.matches = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .build();
+        }
+
+        private List<String> getKey(final Event event) {
+            final String[] values = new String[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = fields[i].get(event);
+            }
+            return Arrays.asList(values);
+        }
+
+        private static Field[] getMaskFields(final Events rootEvents) {
+            final Map<String, Field> fields = new LinkedHashMap<>();
+            // Definitions without a mask are matched on the UEI
+            fields.put(Maskelement.TAG_UEI, EventMatchers.field(Maskelement.TAG_UEI));
+            rootEvents.forEachEvent(fields, (accum, eventConf) -> {
+                final Mask mask = eventConf.getMask();
+                if (mask == null) {
+                    return accum;
+                }
+                for (final Maskelement maskElement : mask.getMaskelements()) {
+                    accum.computeIfAbsent(maskElement.getMename(), EventMatchers::field);
+                }
+                for (final Varbind varbind : mask.getVarbinds()) {
+                    if (varbind.getVbnumber() != null) {
+                        accum.computeIfAbsent("varbind#" + varbind.getVbnumber(), k -> EventMatchers.varbind(varbind.getVbnumber()));
+                    }
+                }
+                return accum;
+            });
+            return fields.values().toArray(new Field[0]);
+        }
+    }
+}
@@ -31,9 +31,12 @@ package org.opennms.netmgt.trapd;
 import static org.opennms.core.utils.InetAddressUtils.str;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.api.EventConfDao;
@@ -54,14 +57,40 @@ class EventCreator {
 	private static final Logger LOG = LoggerFactory.getLogger(EventCreator.class);
 
     private final InterfaceToNodeCache cache;
-    private final EventConfDao eventConfDao;
+    private final EventConfMatchCache eventConfMatchCache;
 
     public EventCreator(InterfaceToNodeCache cache, EventConfDao eventConfDao) {
         this.cache = Objects.requireNonNull(cache);
-        this.eventConfDao = Objects.requireNonNull(eventConfDao);
+        this.eventConfMatchCache = new EventConfMatchCache(eventConfDao);
     }
 
     public Event createEventFrom(final TrapDTO trapDTO, final String systemId, final String location, final InetAddress trapAddress) {
+        return createEventFrom(trapDTO, systemId, trapAddress, resolveNodeId(location, trapAddress));
+    }
+
+    /**
+     * Converts all of the traps in the given batch.
+     *
+     * The traps in a batch were all received from the same address, so the node is only resolved once.
+     *
+     * @param messageLog the batch of traps
+     * @param errorHandler invoked for every trap that could not be converted
+     * @return the converted events, in the same order as the traps
+     */
+    public List<Event> createEventsFrom(final TrapLogDTO messageLog, final BiConsumer<TrapDTO, Throwable> errorHandler) {
+        final Optional<Integer> nodeId = resolveNodeId(messageLog.getLocation(), messageLog.getTrapAddress());
+        final List<Event> events = new ArrayList<>(messageLog.getMessages().size());
+        for (TrapDTO eachMessage : messageLog.getMessages()) {
+            try {
+                events.add(createEventFrom(eachMessage, messageLog.getSystemId(), messageLog.getTrapAddress(), nodeId));
+            } catch (Throwable e) {
+                errorHandler.accept(eachMessage, e);
+            }
+        }
+        return events;
+    }
+
+    private Event createEventFrom(final TrapDTO trapDTO, final String systemId, final InetAddress trapAddress, final Optional<Integer> nodeId) {
         LOG.debug("{} trap - trapInterface: {}", trapDTO.getVersion(), trapDTO.getAgentAddress());
 
         // Set event data
@@ -94,9 +123,8 @@ class EventCreator {
             }
         }
 
-        // Resolve Node id and set, if known by OpenNMS
-        resolveNodeId(location, trapAddress)
-                .ifPresent(eventBuilder::setNodeid);
+        // Set the Node id, if known by OpenNMS
+        nodeId.ifPresent(eventBuilder::setNodeid);
 
         // If there was no systemId in the trap message, assume that
         // it was generated by this system. Eventd will fill in the
@@ -107,7 +135,7 @@ class EventCreator {
 
         // Get event template and set uei, if unknown
         final Event event = eventBuilder.getEvent();
-        final org.opennms.netmgt.xml.eventconf.Event econf = eventConfDao.findByEvent(event);
+        final org.opennms.netmgt.xml.eventconf.Event econf = eventConfMatchCache.findByEvent(event);
         if (econf == null || econf.getUei() == null) {
             event.setUei("uei.opennms.org/default/trap");
         } else {
@@ -30,6 +30,8 @@ package org.opennms.netmgt.trapd;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 
 import org.opennms.core.ipc.sink.api.MessageConsumer;
@@ -121,13 +123,12 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 		final Events events = new Events();
 		log.setEvents(events);
 
-		for (TrapDTO eachMessage : messageLog.getMessages()) {
+		final List<Event> converted = eventCreator.createEventsFrom(messageLog, (trap, e) -> {
+			LOG.error("Unexpected error processing trap: {}", trap, e);
+			trapdInstrumentation.incErrorCount();
+		});
+		for (Event event : converted) {
 			try {
-				final Event event = eventCreator.createEventFrom(
-						eachMessage,
-						messageLog.getSystemId(),
-						messageLog.getLocation(),
-						messageLog.getTrapAddress());
 				if (!shouldDiscard(event)) {
 					if (event.getSnmp() != null) {
 						trapdInstrumentation.incTrapsReceivedCount(event.getSnmp().getVersion());
@@ -138,7 +139,7 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 					trapdInstrumentation.incDiscardCount();
 				}
 			} catch (Throwable e) {
-				LOG.error("Unexpected error processing trap: {}", eachMessage, e);
+				LOG.error("Unexpected error processing trap event: {}", event, e);
 				trapdInstrumentation.incErrorCount();
 			}
 		}
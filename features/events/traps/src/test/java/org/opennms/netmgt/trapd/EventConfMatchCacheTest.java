@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.EventOrdering;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.opennms.netmgt.xml.eventconf.Partition;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+
+public class EventConfMatchCacheTest {
+
+    private static final String ENTERPRISE_ID = ".1.3.6.1.4.1.5813";
+
+    private Events events;
+    private EventConfDao eventConfDao;
+
+    @Before
+    public void setUp() {
+        events = new Events();
+        events.addEvent(createEvent("uei.opennms.org/test/up", "up"));
+        events.addEvent(createEvent("uei.opennms.org/test/any", null));
+        initialize(events);
+
+        eventConfDao = mock(EventConfDao.class);
+        when(eventConfDao.getRootEvents()).thenAnswer(invocation -> events);
+        when(eventConfDao.findByEvent(any())).thenAnswer(invocation -> events.findFirstMatchingEvent((org.opennms.netmgt.xml.event.Event) invocation.getArgument(0)));
+    }
+
+    @Test
+    public void canMemoizeMatches() {
+        final EventConfMatchCache cache = new EventConfMatchCache(eventConfDao, 100);
+
+        assertEquals("uei.opennms.org/test/up", cache.findByEvent(createTrap(1, "up")).getUei());
+        assertEquals("uei.opennms.org/test/up", cache.findByEvent(createTrap(1, "up")).getUei());
+        verify(eventConfDao, times(1)).findByEvent(any());
+
+        // The value of the varbind is referenced by a mask, so it must be part of the key
+        assertEquals("uei.opennms.org/test/any", cache.findByEvent(createTrap(1, "down")).getUei());
+        verify(eventConfDao, times(2)).findByEvent(any());
+
+        // Misses are memoized too
+        assertNull(cache.findByEvent(createTrap(2, "up")));
+        assertNull(cache.findByEvent(createTrap(2, "up")));
+        verify(eventConfDao, times(3)).findByEvent(any());
+    }
+
+    @Test
+    public void canInvalidateOnReload() {
+        final EventConfMatchCache cache = new EventConfMatchCache(eventConfDao, 100);
+        assertEquals("uei.opennms.org/test/up", cache.findByEvent(createTrap(1, "up")).getUei());
+
+        // Reinitializing the same definitions drops the cache
+        events.getEvents().remove(0);
+        initialize(events);
+        assertEquals("uei.opennms.org/test/any", cache.findByEvent(createTrap(1, "up")).getUei());
+
+        // And so does swapping them
+        events = new Events();
+        initialize(events);
+        assertNull(cache.findByEvent(createTrap(1, "up")));
+        verify(eventConfDao, times(3)).findByEvent(any());
+    }
+
+    @Test
+    public void canDisableTheCache() {
+        final EventConfMatchCache cache = new EventConfMatchCache(eventConfDao, 0);
+        assertEquals("uei.opennms.org/test/up", cache.findByEvent(createTrap(1, "up")).getUei());
+        assertEquals("uei.opennms.org/test/up", cache.findByEvent(createTrap(1, "up")).getUei());
+        verify(eventConfDao, times(2)).findByEvent(any());
+    }
+
+    private static Event createEvent(String uei, String varbindValue) {
+        final Mask mask = new Mask();
+        mask.addMaskelement(createMaskElement(Maskelement.TAG_SNMP_EID, ENTERPRISE_ID));
+        mask.addMaskelement(createMaskElement(Maskelement.TAG_SNMP_GENERIC, "6"));
+        mask.addMaskelement(createMaskElement(Maskelement.TAG_SNMP_SPECIFIC, "1"));
+        if (varbindValue != null) {
+            final Varbind varbind = new Varbind();
+            varbind.setVbnumber(1);
+            varbind.addVbvalue(varbindValue);
+            mask.addVarbind(varbind);
+        }
+
+        final Event event = new Event();
+        event.setUei(uei);
+        event.setMask(mask);
+        return event;
+    }
+
+    private static Maskelement createMaskElement(String name, String value) {
+        final Maskelement maskElement = new Maskelement();
+        maskElement.setMename(name);
+        maskElement.addMevalue(value);
+        return maskElement;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event createTrap(int specific, String varbindValue) {
+        final EventBuilder bldr = new EventBuilder(null, "trapd");
+        bldr.setEnterpriseId(ENTERPRISE_ID);
+        bldr.setGeneric(6);
+        bldr.setSpecific(specific);
+        bldr.addParam(".1.3.6.1.4.1.5813.1.1", varbindValue);
+        return bldr.getEvent();
+    }
+
+    private static void initialize(Events events) {
+        events.initialize(new Partition() {
+            @Override
+            public List<String> group(Event eventConf) {
+                return eventConf.getMaskElementValues(Maskelement.TAG_SNMP_EID);
+            }
+
+            @Override
+            public String group(org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return matchingEvent.getSnmp() == null ? null : matchingEvent.getSnmp().getId();
+            }
+        }, new EventOrdering());
+    }
+}
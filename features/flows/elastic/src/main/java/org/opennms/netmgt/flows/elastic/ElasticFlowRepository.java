@@ -63,6 +63,7 @@ import org.opennms.netmgt.flows.api.FlowException;
 import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.flows.api.FlowSource;
 import org.opennms.netmgt.flows.api.ProcessingOptions;
+import org.opennms.netmgt.flows.elastic.memory.FlowRollupStore;
 import org.opennms.netmgt.flows.elastic.thresholding.FlowThresholding;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsSnmpInterface;
@@ -170,6 +171,11 @@ public class ElasticFlowRepository implements FlowRepository {
      */
     private boolean skipElasticsearchPersistence = false;
 
+    /**
+     * Optional in-memory rollup fed with the enriched flows.
+     */
+    private FlowRollupStore flowRollupStore;
+
     /**
      * Cache for marking nodes and interfaces as having flows.
      *
@@ -343,6 +349,10 @@ public class ElasticFlowRepository implements FlowRepository {
             flowDocuments.stream().map(FlowDocument::buildEnrichedFlow).forEach(enrichedFlowForwarder::forward);
         }
 
+        if (flowRollupStore != null) {
+            flowRollupStore.index(flowDocuments);
+        }
+
         if (skipElasticsearchPersistence) {
             RATE_LIMITED_LOGGER.info("Flow persistence disabled. Dropping {} flow documents.", flowDocuments.size());
         } else {
@@ -529,4 +539,8 @@ public class ElasticFlowRepository implements FlowRepository {
     public void setSkipElasticsearchPersistence(boolean skipElasticsearchPersistence) {
         this.skipElasticsearchPersistence = skipElasticsearchPersistence;
     }
+
+    public void setFlowRollupStore(FlowRollupStore flowRollupStore) {
+        this.flowRollupStore = flowRollupStore;
+    }
 }
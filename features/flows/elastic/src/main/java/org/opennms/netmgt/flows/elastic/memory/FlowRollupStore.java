@@ -0,0 +1,739 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.netmgt.flows.elastic.Direction;
+import org.opennms.netmgt.flows.elastic.FlowDocument;
+import org.opennms.netmgt.flows.elastic.NodeDocument;
+import org.opennms.netmgt.flows.elastic.RawFlowQueryService;
+import org.opennms.netmgt.flows.filter.api.DscpFilter;
+import org.opennms.netmgt.flows.filter.api.ExporterNodeFilter;
+import org.opennms.netmgt.flows.filter.api.Filter;
+import org.opennms.netmgt.flows.filter.api.NodeCriteria;
+import org.opennms.netmgt.flows.filter.api.SnmpInterfaceIdFilter;
+import org.opennms.netmgt.flows.filter.api.TimeRangeFilter;
+
+/**
+ * Embedded, time-bucketed rollup of the persisted flows.
+ *
+ * The flows are split into fixed size buckets held in a ring covering the retention window. Every bucket holds one
+ * columnar table per {@link Dimension}, where each row is identified by the exporter (node, interface and DSCP) and
+ * the dictionary encoded value of the dimension, and holds the ingress and egress byte counters.
+ *
+ * Like the proportional sum used when querying Elasticsearch, the bytes of a flow are spread over the buckets it
+ * spans, and are multiplied by the sampling interval.
+ */
+public class FlowRollupStore {
+
+    public enum Dimension {
+        APPLICATION,
+        HOST,
+        CONVERSATION,
+        /**
+         * Single row per exporter, used for the totals and the DSCP fields.
+         */
+        TOTAL
+    }
+
+    private static final int TOTAL_VALUE = 0;
+    private static final int MAX_DSCP = 63;
+
+    /**
+     * Dictionaries are compacted when they grow past this size, and then each time they double in size.
+     */
+    private static final int MIN_DICTIONARY_SIZE_TO_COMPACT = 65536;
+
+    private final long bucketSizeMs;
+    private final long retentionMs;
+    private boolean enabled = false;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Bucket[] buckets;
+
+    /**
+     * Time from which the store holds all the flows, nothing is known about what happened before.
+     */
+    private long availableSince = Long.MAX_VALUE;
+    private long newestBucketStart = Long.MIN_VALUE;
+
+    private final Map<Dimension, Dictionary> dictionaries = new HashMap<>();
+
+    // Exporters, dictionary encoded as (node id, interface, dscp), the ids are indexed by dscp + 1
+    private final Map<Long, int[]> exporterIds = new HashMap<>();
+    private int[] exporterNodeIds = new int[64];
+    private int[] exporterIfIndexes = new int[64];
+    private int[] exporterDscps = new int[64];
+    private int exporterCount = 0;
+
+    private final Map<String, Integer> nodeIdsByForeignSourceAndId = new HashMap<>();
+    private final List<String> hostnames = new ArrayList<>();
+
+    public FlowRollupStore(final long bucketSizeMs, final long retentionMs) {
+        if (bucketSizeMs <= 0) {
+            throw new IllegalArgumentException("Bucket size must be greater than 0");
+        }
+        this.bucketSizeMs = bucketSizeMs;
+        this.retentionMs = retentionMs;
+        this.buckets = new Bucket[(int) Math.max(1, retentionMs / bucketSizeMs) + 1];
+        for (final Dimension dimension : Dimension.values()) {
+            dictionaries.put(dimension, new Dictionary());
+        }
+        // Reserve the value used for the totals, it is always referenced
+        dictionaries.get(Dimension.TOTAL).encode("");
+        dictionaries.get(Dimension.TOTAL).compactedSize = Integer.MAX_VALUE / 2;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getBucketSizeMs() {
+        return bucketSizeMs;
+    }
+
+    public long getRetentionMs() {
+        return retentionMs;
+    }
+
+    public long getAvailableSince() {
+        lock.readLock().lock();
+        try {
+            return availableSince;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void index(final Collection<FlowDocument> documents) {
+        if (!enabled || documents.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            final long now = System.currentTimeMillis();
+            if (availableSince == Long.MAX_VALUE) {
+                // Only rely on the buckets which were filled from the beginning
+                availableSince = bucketStart(now) + bucketSizeMs;
+            }
+            for (final FlowDocument document : documents) {
+                index(document, now);
+            }
+            for (final Dimension dimension : Dimension.values()) {
+                final Dictionary dictionary = dictionaries.get(dimension);
+                if (dictionary.size() >= Math.max(MIN_DICTIONARY_SIZE_TO_COMPACT, dictionary.compactedSize * 2)) {
+                    compact(dimension);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(final FlowDocument document, final long now) {
+        if (document.getBytes() == null || document.getLastSwitched() == null || document.getDirection() == null) {
+            return;
+        }
+
+        final long last = document.getLastSwitched();
+        final long first = document.getDeltaSwitched() != null ? document.getDeltaSwitched()
+                : document.getFirstSwitched() != null ? document.getFirstSwitched() : last;
+        final double multiplier = document.getSamplingInterval() != null && document.getSamplingInterval() > 0
+                ? document.getSamplingInterval() : 1.0;
+        final double bytes = document.getBytes() * multiplier;
+        final boolean ingress = document.getDirection() == Direction.INGRESS;
+        final int exporterId = exporterId(document, ingress);
+        final byte ecn = ecnFlags(document.getEcn());
+
+        // Encode the dimensions once for all the buckets spanned by the flow
+        final int applicationId = dictionaries.get(Dimension.APPLICATION).encode(document.getApplication() != null
+                ? document.getApplication() : RawFlowQueryService.UNKNOWN_APPLICATION_NAME);
+        final int conversationId = document.getConvoKey() != null
+                ? dictionaries.get(Dimension.CONVERSATION).encode(document.getConvoKey()) : -1;
+        final int srcHostId = hostId(document.getSrcAddr(), document.getSrcAddrHostname());
+        final int dstHostId = hostId(document.getDstAddr(), document.getDstAddrHostname());
+
+        final long firstBucket = bucketStart(Math.min(first, last));
+        final long lastBucket = bucketStart(last);
+        final double duration = Math.max(1, last - Math.min(first, last));
+        for (long start = firstBucket; start <= lastBucket; start += bucketSizeMs) {
+            final Bucket bucket = getBucketForWriting(start, now);
+            if (bucket == null) {
+                continue;
+            }
+
+            final double fraction = firstBucket == lastBucket ? 1.0
+                    : (Math.min(last, start + bucketSizeMs) - Math.max(Math.min(first, last), start)) / duration;
+            final double value = bytes * fraction;
+            // The flow is only counted once, in the bucket of its last switched time
+            final int flows = start == lastBucket ? 1 : 0;
+
+            bucket.tables[Dimension.TOTAL.ordinal()].add(exporterId, TOTAL_VALUE, ingress, value, ecn, flows);
+            bucket.tables[Dimension.APPLICATION.ordinal()].add(exporterId, applicationId, ingress, value, ecn, flows);
+            if (conversationId >= 0) {
+                bucket.tables[Dimension.CONVERSATION.ordinal()].add(exporterId, conversationId, ingress, value, ecn, flows);
+            }
+            if (srcHostId >= 0) {
+                bucket.tables[Dimension.HOST.ordinal()].add(exporterId, srcHostId, ingress, value, ecn, flows);
+            }
+            if (dstHostId >= 0 && dstHostId != srcHostId) {
+                bucket.tables[Dimension.HOST.ordinal()].add(exporterId, dstHostId, ingress, value, ecn, flows);
+            }
+        }
+    }
+
+    /**
+     * Drops the values which are no longer referenced by any of the buckets from the dictionary of the given dimension.
+     */
+    private void compact(final Dimension dimension) {
+        final Dictionary dictionary = dictionaries.get(dimension);
+        final int[] remap = new int[dictionary.size()];
+        Arrays.fill(remap, -1);
+
+        final Dictionary compacted = new Dictionary();
+        final List<String> compactedHostnames = new ArrayList<>();
+        for (final Bucket bucket : buckets) {
+            if (bucket == null) {
+                continue;
+            }
+            final Rows rows = bucket.tables[dimension.ordinal()];
+            for (int row = 0; row < rows.size; row++) {
+                final int valueId = rows.valueIds[row];
+                if (remap[valueId] < 0) {
+                    remap[valueId] = compacted.encode(dictionary.decode(valueId));
+                    if (dimension == Dimension.HOST) {
+                        compactedHostnames.add(valueId < hostnames.size() ? hostnames.get(valueId) : null);
+                    }
+                }
+                rows.valueIds[row] = remap[valueId];
+            }
+            rows.rehash(rows.index.length);
+        }
+        compacted.compactedSize = compacted.size();
+        dictionaries.put(dimension, compacted);
+        if (dimension == Dimension.HOST) {
+            hostnames.clear();
+            hostnames.addAll(compactedHostnames);
+        }
+    }
+
+    private int hostId(final String address, final String hostname) {
+        if (address == null) {
+            return -1;
+        }
+        final int id = dictionaries.get(Dimension.HOST).encode(address);
+        while (hostnames.size() <= id) {
+            hostnames.add(null);
+        }
+        if (hostname != null) {
+            hostnames.set(id, hostname);
+        }
+        return id;
+    }
+
+    private int exporterId(final FlowDocument document, final boolean ingress) {
+        final NodeDocument exporter = document.getNodeExporter();
+        final int nodeId = exporter != null && exporter.getNodeId() != null ? exporter.getNodeId() : 0;
+        if (exporter != null && exporter.getForeignSource() != null && exporter.getForeignId() != null) {
+            nodeIdsByForeignSourceAndId.put(exporter.getForeignSource() + ":" + exporter.getForeignId(), nodeId);
+        }
+        final Integer snmp = ingress ? document.getInputSnmp() : document.getOutputSnmp();
+        final int ifIndex = snmp != null ? snmp : 0;
+        final int dscp = document.getDscp() != null ? document.getDscp() : -1;
+
+        final int[] ids = exporterIds.computeIfAbsent(((long) nodeId << 32) | (ifIndex & 0xffffffffL), k -> {
+            final int[] noIds = new int[MAX_DSCP + 2];
+            Arrays.fill(noIds, -1);
+            return noIds;
+        });
+        final int dscpIndex = dscp >= 0 && dscp <= MAX_DSCP ? dscp + 1 : 0;
+        int id = ids[dscpIndex];
+        if (id < 0) {
+            id = exporterCount++;
+            if (id == exporterNodeIds.length) {
+                exporterNodeIds = Arrays.copyOf(exporterNodeIds, id * 2);
+                exporterIfIndexes = Arrays.copyOf(exporterIfIndexes, id * 2);
+                exporterDscps = Arrays.copyOf(exporterDscps, id * 2);
+            }
+            exporterNodeIds[id] = nodeId;
+            exporterIfIndexes[id] = ifIndex;
+            exporterDscps[id] = dscpIndex - 1;
+            ids[dscpIndex] = id;
+        }
+        return id;
+    }
+
+    private static byte ecnFlags(final Integer ecn) {
+        if (ecn == null) {
+            return 0;
+        }
+        // Same semantics as the congestion_encountered and non_ect aggregations
+        return (byte) ((ecn == 3 ? Rows.CONGESTION_ENCOUNTERED : 0) | (ecn == 0 ? Rows.NON_ECT : 0));
+    }
+
+    private long bucketStart(final long timestamp) {
+        return Math.floorDiv(timestamp, bucketSizeMs) * bucketSizeMs;
+    }
+
+    private Bucket getBucketForWriting(final long start, final long now) {
+        if (start > now + bucketSizeMs) {
+            // Don't let an exporter with a skewed clock wipe out the ring
+            return null;
+        }
+        if (start > newestBucketStart) {
+            newestBucketStart = start;
+        }
+        if (start <= newestBucketStart - buckets.length * bucketSizeMs) {
+            // Too old
+            return null;
+        }
+
+        final int slot = (int) Math.floorMod(start / bucketSizeMs, (long) buckets.length);
+        Bucket bucket = buckets[slot];
+        if (bucket == null) {
+            bucket = buckets[slot] = new Bucket();
+            bucket.start = start;
+        } else if (bucket.start < start) {
+            // Recycle the bucket
+            bucket.start = start;
+            for (final Rows rows : bucket.tables) {
+                rows.clear();
+            }
+        } else if (bucket.start > start) {
+            return null;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns true if the store holds all the data required to evaluate the given filters.
+     */
+    public boolean canAnswer(final List<Filter> filters) {
+        if (!enabled) {
+            return false;
+        }
+
+        TimeRangeFilter timeRange = null;
+        for (final Filter filter : filters) {
+            if (filter instanceof TimeRangeFilter) {
+                timeRange = (TimeRangeFilter) filter;
+            } else if (!(filter instanceof ExporterNodeFilter || filter instanceof SnmpInterfaceIdFilter
+                    || filter instanceof DscpFilter)) {
+                return false;
+            }
+        }
+        if (timeRange == null) {
+            return false;
+        }
+
+        lock.readLock().lock();
+        try {
+            final long oldest = Math.max(availableSince,
+                    newestBucketStart - (buckets.length - 1) * bucketSizeMs);
+            return newestBucketStart != Long.MIN_VALUE && timeRange.getStart() >= oldest;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggregates the bytes of the given dimension.
+     *
+     * @param dimension the dimension to group by
+     * @param filters the filters, must be answerable by {@link #canAnswer(List)}
+     * @param step the step of the series, or 0 to sum up the whole time range
+     * @param values the values to restrict the aggregation to, or null for all values
+     * @return the aggregated series by value
+     */
+    public Map<String, Series> aggregate(final Dimension dimension, final List<Filter> filters, final long step,
+                                         final Set<String> values) {
+        return aggregate(dimension, false, filters, step, values);
+    }
+
+    /**
+     * Aggregates the bytes by DSCP value.
+     *
+     * @param filters the filters, must be answerable by {@link #canAnswer(List)}
+     * @param step the step of the series, or 0 to sum up the whole time range
+     * @return the aggregated series by DSCP value, flows without DSCP are not included
+     */
+    public Map<String, Series> aggregateByDscp(final List<Filter> filters, final long step) {
+        return aggregate(Dimension.TOTAL, true, filters, step, null);
+    }
+
+    private Map<String, Series> aggregate(final Dimension dimension, final boolean byDscp, final List<Filter> filters,
+                                          final long step, final Set<String> values) {
+        final TimeRangeFilter timeRange = Filter.find(filters, TimeRangeFilter.class)
+                .orElseThrow(() -> new IllegalArgumentException("Time range is required."));
+        final long start = timeRange.getStart();
+        final long end = timeRange.getEnd();
+        final long seriesStart = step > 0 ? Math.floorDiv(start, step) * step : start;
+        final int numSteps = step > 0 ? (int) ((end - seriesStart) / step) + 1 : 1;
+
+        final Map<Integer, Series> seriesById = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            final boolean[] exporterMatches = matchExporters(filters);
+            final Dictionary dictionary = dictionaries.get(dimension);
+
+            // Resolve the restriction to the encoded values
+            boolean[] valueMatches = null;
+            if (values != null) {
+                valueMatches = new boolean[dictionary.size()];
+                for (final String value : values) {
+                    final int id = dictionary.lookup(value);
+                    if (id >= 0) {
+                        valueMatches[id] = true;
+                    }
+                }
+            }
+
+            for (final Bucket bucket : buckets) {
+                if (bucket == null || bucket.start + bucketSizeMs <= start || bucket.start > end) {
+                    continue;
+                }
+
+                final Rows rows = bucket.tables[dimension.ordinal()];
+                for (int row = 0; row < rows.size; row++) {
+                    if (!exporterMatches[rows.exporterIds[row]]) {
+                        continue;
+                    }
+                    final int valueId = rows.valueIds[row];
+                    if (valueMatches != null && !valueMatches[valueId]) {
+                        continue;
+                    }
+                    final int groupId = byDscp ? exporterDscps[rows.exporterIds[row]] : valueId;
+                    if (groupId < 0) {
+                        continue;
+                    }
+
+                    final Series series = seriesById.computeIfAbsent(groupId, k -> new Series(seriesStart, step, numSteps));
+                    series.ecn |= rows.ecn[row];
+                    series.flows += rows.flows[row];
+                    distribute(bucket.start, start, end, rows.bytesIn[row], series.bytesIn, seriesStart, step);
+                    distribute(bucket.start, start, end, rows.bytesOut[row], series.bytesOut, seriesStart, step);
+                }
+            }
+
+            final Map<String, Series> seriesByValue = new HashMap<>();
+            for (final Map.Entry<Integer, Series> entry : seriesById.entrySet()) {
+                seriesByValue.put(byDscp ? Integer.toString(entry.getKey()) : dictionary.decode(entry.getKey()),
+                        entry.getValue());
+            }
+            return seriesByValue;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Spreads the bytes of the given bucket over the steps it overlaps, assuming they are evenly distributed.
+     */
+    private void distribute(final long bucketStart, final long start, final long end, final double bytes,
+                            final double[] target, final long seriesStart, final long step) {
+        if (bytes == 0) {
+            return;
+        }
+        final long from = Math.max(bucketStart, start);
+        final long to = Math.min(bucketStart + bucketSizeMs, end);
+        if (to <= from) {
+            return;
+        }
+        if (step <= 0) {
+            target[0] += bytes * (to - from) / bucketSizeMs;
+            return;
+        }
+        for (long t = from; t < to; ) {
+            final int index = (int) ((t - seriesStart) / step);
+            final long stepEnd = Math.min(to, seriesStart + (index + 1) * step);
+            if (index >= 0 && index < target.length) {
+                target[index] += bytes * (stepEnd - t) / bucketSizeMs;
+            }
+            t = stepEnd;
+        }
+    }
+
+    private boolean[] matchExporters(final List<Filter> filters) {
+        final Integer nodeId = Filter.find(filters, ExporterNodeFilter.class)
+                .map(ExporterNodeFilter::getCriteria)
+                .map(this::resolveNodeId)
+                .orElse(null);
+        final Integer ifIndex = Filter.find(filters, SnmpInterfaceIdFilter.class)
+                .map(SnmpInterfaceIdFilter::getSnmpInterfaceId)
+                .orElse(null);
+        final List<Integer> dscps = Filter.find(filters, DscpFilter.class)
+                .map(DscpFilter::getDscp)
+                .orElse(null);
+
+        final boolean[] matches = new boolean[exporterCount];
+        for (int i = 0; i < exporterCount; i++) {
+            matches[i] = (nodeId == null || nodeId == exporterNodeIds[i])
+                    && (ifIndex == null || ifIndex == exporterIfIndexes[i])
+                    && (dscps == null || dscps.contains(exporterDscps[i]));
+        }
+        return matches;
+    }
+
+    private Integer resolveNodeId(final NodeCriteria criteria) {
+        if (criteria.getNodeId() != null) {
+            return criteria.getNodeId();
+        }
+        // Unknown nodes never match
+        return nodeIdsByForeignSourceAndId.getOrDefault(criteria.getForeignSource() + ":" + criteria.getForeignId(), -1);
+    }
+
+    /**
+     * Returns the last known hostname of the given address.
+     */
+    public String getHostname(final String address) {
+        lock.readLock().lock();
+        try {
+            final int id = dictionaries.get(Dimension.HOST).lookup(address);
+            return id >= 0 && id < hostnames.size() ? hostnames.get(id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggregated bytes of a single value.
+     */
+    public static class Series {
+        private final long start;
+        private final long step;
+        private final double[] bytesIn;
+        private final double[] bytesOut;
+        private byte ecn;
+        private long flows;
+
+        private Series(final long start, final long step, final int numSteps) {
+            this.start = start;
+            this.step = step;
+            this.bytesIn = new double[numSteps];
+            this.bytesOut = new double[numSteps];
+        }
+
+        public int size() {
+            return bytesIn.length;
+        }
+
+        public long getTimestamp(final int index) {
+            return start + index * step;
+        }
+
+        public double getBytesIn(final int index) {
+            return bytesIn[index];
+        }
+
+        public double getBytesOut(final int index) {
+            return bytesOut[index];
+        }
+
+        public double getTotalBytesIn() {
+            double total = 0;
+            for (final double bytes : bytesIn) {
+                total += bytes;
+            }
+            return total;
+        }
+
+        public double getTotalBytesOut() {
+            double total = 0;
+            for (final double bytes : bytesOut) {
+                total += bytes;
+            }
+            return total;
+        }
+
+        public double getTotalBytes() {
+            return getTotalBytesIn() + getTotalBytesOut();
+        }
+
+        public boolean isCongestionEncountered() {
+            return (ecn & Rows.CONGESTION_ENCOUNTERED) != 0;
+        }
+
+        public boolean isNonEcnCapableTransport() {
+            return (ecn & Rows.NON_ECT) != 0;
+        }
+
+        public long getFlows() {
+            return flows;
+        }
+    }
+
+    private static class Bucket {
+        private long start;
+        private final Rows[] tables = new Rows[Dimension.values().length];
+
+        private Bucket() {
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = new Rows();
+            }
+        }
+    }
+
+    /**
+     * Columnar table of counters, indexed by exporter and value.
+     */
+    private static class Rows {
+        private static final byte CONGESTION_ENCOUNTERED = 1;
+        private static final byte NON_ECT = 2;
+
+        private int size = 0;
+        private int[] exporterIds = new int[16];
+        private int[] valueIds = new int[16];
+        private double[] bytesIn = new double[16];
+        private double[] bytesOut = new double[16];
+        private byte[] ecn = new byte[16];
+        private int[] flows = new int[16];
+
+        // Open addressing hash table from the (exporter, value) key to row + 1
+        private int[] index = new int[32];
+
+        private void add(final int exporterId, final int valueId, final boolean ingress, final double bytes,
+                         final byte ecnFlags, final int flowCount) {
+            final int row = getOrCreateRow(exporterId, valueId);
+            if (ingress) {
+                bytesIn[row] += bytes;
+            } else {
+                bytesOut[row] += bytes;
+            }
+            ecn[row] |= ecnFlags;
+            flows[row] += flowCount;
+        }
+
+        private int getOrCreateRow(final int exporterId, final int valueId) {
+            final int mask = index.length - 1;
+            int slot = hash(exporterId, valueId) & mask;
+            while (index[slot] != 0) {
+                final int row = index[slot] - 1;
+                if (exporterIds[row] == exporterId && valueIds[row] == valueId) {
+                    return row;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            final int row = size++;
+            if (row == exporterIds.length) {
+                final int capacity = row * 2;
+                exporterIds = Arrays.copyOf(exporterIds, capacity);
+                valueIds = Arrays.copyOf(valueIds, capacity);
+                bytesIn = Arrays.copyOf(bytesIn, capacity);
+                bytesOut = Arrays.copyOf(bytesOut, capacity);
+                ecn = Arrays.copyOf(ecn, capacity);
+                flows = Arrays.copyOf(flows, capacity);
+            }
+            exporterIds[row] = exporterId;
+            valueIds[row] = valueId;
+            bytesIn[row] = 0;
+            bytesOut[row] = 0;
+            ecn[row] = 0;
+            flows[row] = 0;
+            index[slot] = row + 1;
+
+            // Keep the load factor under 0.5
+            if (size * 2 > index.length) {
+                rehash(index.length * 2);
+            }
+            return row;
+        }
+
+        private void rehash(final int capacity) {
+            index = new int[capacity];
+            final int mask = capacity - 1;
+            for (int row = 0; row < size; row++) {
+                int slot = hash(exporterIds[row], valueIds[row]) & mask;
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = row + 1;
+            }
+        }
+
+        private static int hash(final int exporterId, final int valueId) {
+            final int h = exporterId * 0x9E3779B1 + valueId;
+            return h ^ (h >>> 16);
+        }
+
+        private void clear() {
+            size = 0;
+            Arrays.fill(index, 0);
+        }
+    }
+
+    /**
+     * Maps strings to dense integer ids.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int compactedSize = 0;
+
+        private int encode(final String value) {
+            Objects.requireNonNull(value);
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                values.add(value);
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        private int lookup(final String value) {
+            final Integer id = ids.get(value);
+            return id != null ? id : -1;
+        }
+
+        private String decode(final int id) {
+            return values.get(id);
+        }
+
+        private int size() {
+            return values.size();
+        }
+    }
+}
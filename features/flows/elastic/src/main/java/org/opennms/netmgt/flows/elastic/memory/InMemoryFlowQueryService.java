@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic.memory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.opennms.netmgt.flows.api.Conversation;
+import org.opennms.netmgt.flows.api.ConversationKey;
+import org.opennms.netmgt.flows.api.Directional;
+import org.opennms.netmgt.flows.api.FlowQueryService;
+import org.opennms.netmgt.flows.api.Host;
+import org.opennms.netmgt.flows.api.LimitedCardinalityField;
+import org.opennms.netmgt.flows.api.TrafficSummary;
+import org.opennms.netmgt.flows.elastic.ConversationKeyUtils;
+import org.opennms.netmgt.flows.elastic.RawFlowQueryService;
+import org.opennms.netmgt.flows.elastic.memory.FlowRollupStore.Dimension;
+import org.opennms.netmgt.flows.elastic.memory.FlowRollupStore.Series;
+import org.opennms.netmgt.flows.filter.api.Filter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Table;
+
+/**
+ * Answers the queries from the {@link FlowRollupStore} when it holds the requested time range,
+ * and delegates to the given {@link FlowQueryService} otherwise.
+ *
+ * Enumerating the applications, conversations and hosts matching a pattern is always delegated.
+ */
+public class InMemoryFlowQueryService implements FlowQueryService {
+
+    private final FlowRollupStore store;
+    private final FlowQueryService delegate;
+
+    private final Meter inMemoryQueries;
+    private final Meter delegatedQueries;
+
+    public InMemoryFlowQueryService(MetricRegistry metricRegistry, FlowRollupStore store, FlowQueryService delegate) {
+        this.store = Objects.requireNonNull(store);
+        this.delegate = Objects.requireNonNull(delegate);
+
+        inMemoryQueries = metricRegistry.meter("inMemoryQueries");
+        delegatedQueries = metricRegistry.meter("delegatedQueries");
+    }
+
+    private boolean canAnswer(List<Filter> filters) {
+        if (store.canAnswer(filters)) {
+            inMemoryQueries.mark();
+            return true;
+        }
+        delegatedQueries.mark();
+        return false;
+    }
+
+    private boolean canAnswer(List<Filter> filters, long step) {
+        // Series with a finer resolution than the buckets can not be answered
+        return step >= store.getBucketSizeMs() && canAnswer(filters);
+    }
+
+    @Override
+    public CompletableFuture<Long> getFlowCount(List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getFlowCount(filters);
+        }
+        final long count = store.aggregate(Dimension.TOTAL, filters, 0, null).values().stream()
+                .mapToLong(Series::getFlows)
+                .sum();
+        return CompletableFuture.completedFuture(count);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getApplications(String matchingPrefix, long limit, List<Filter> filters) {
+        return delegate.getApplications(matchingPrefix, limit, filters);
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<String>>> getTopNApplicationSummaries(int N, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getTopNApplicationSummaries(N, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getTopNSummaries(Dimension.APPLICATION, N, includeOther, filters,
+                Function.identity(), RawFlowQueryService.OTHER_NAME));
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<String>>> getApplicationSummaries(Set<String> applications, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getApplicationSummaries(applications, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSummaries(Dimension.APPLICATION, new ArrayList<>(applications),
+                includeOther, filters, Function.identity(), RawFlowQueryService.OTHER_NAME));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<String>, Long, Double>> getApplicationSeries(Set<String> applications, long step, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters, step)) {
+            return delegate.getApplicationSeries(applications, step, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSeries(Dimension.APPLICATION, new ArrayList<>(applications),
+                step, includeOther, filters, Function.identity(), RawFlowQueryService.OTHER_NAME));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<String>, Long, Double>> getTopNApplicationSeries(int N, long step, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters, step)) {
+            return delegate.getTopNApplicationSeries(N, step, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSeries(Dimension.APPLICATION, getTopN(Dimension.APPLICATION, N, filters),
+                step, includeOther, filters, Function.identity(), RawFlowQueryService.OTHER_NAME));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getConversations(String locationPattern, String protocolPattern, String lowerIPPattern, String upperIPPattern, String applicationPattern, long limit, List<Filter> filters) {
+        return delegate.getConversations(locationPattern, protocolPattern, lowerIPPattern, upperIPPattern, applicationPattern, limit, filters);
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<Conversation>>> getTopNConversationSummaries(int N, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getTopNConversationSummaries(N, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getTopNSummaries(Dimension.CONVERSATION, N, includeOther, filters,
+                this::toConversation, Conversation.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<Conversation>>> getConversationSummaries(Set<String> conversations, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getConversationSummaries(conversations, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSummaries(Dimension.CONVERSATION, unescapeConversations(conversations),
+                includeOther, filters, this::toConversation, Conversation.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<Conversation>, Long, Double>> getConversationSeries(Set<String> conversations, long step, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters, step)) {
+            return delegate.getConversationSeries(conversations, step, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSeries(Dimension.CONVERSATION, unescapeConversations(conversations),
+                step, includeOther, filters, this::toConversation, Conversation.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<Conversation>, Long, Double>> getTopNConversationSeries(int N, long step, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters, step)) {
+            return delegate.getTopNConversationSeries(N, step, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSeries(Dimension.CONVERSATION, getTopN(Dimension.CONVERSATION, N, filters),
+                step, includeOther, filters, this::toConversation, Conversation.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getHosts(String regex, long limit, List<Filter> filters) {
+        return delegate.getHosts(regex, limit, filters);
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<Host>>> getTopNHostSummaries(int N, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getTopNHostSummaries(N, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getTopNSummaries(Dimension.HOST, N, includeOther, filters,
+                this::toHost, Host.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<Host>>> getHostSummaries(Set<String> hosts, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters)) {
+            return delegate.getHostSummaries(hosts, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSummaries(Dimension.HOST, new ArrayList<>(hosts),
+                includeOther, filters, this::toHost, Host.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<Host>, Long, Double>> getHostSeries(Set<String> hosts, long step, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters, step)) {
+            return delegate.getHostSeries(hosts, step, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSeries(Dimension.HOST, new ArrayList<>(hosts),
+                step, includeOther, filters, this::toHost, Host.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<Host>, Long, Double>> getTopNHostSeries(int N, long step, boolean includeOther, List<Filter> filters) {
+        if (!canAnswer(filters, step)) {
+            return delegate.getTopNHostSeries(N, step, includeOther, filters);
+        }
+        return CompletableFuture.completedFuture(getSeries(Dimension.HOST, getTopN(Dimension.HOST, N, filters),
+                step, includeOther, filters, this::toHost, Host.forOther().build()));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getFieldValues(LimitedCardinalityField field, List<Filter> filters) {
+        if (field != LimitedCardinalityField.DSCP || !canAnswer(filters)) {
+            return delegate.getFieldValues(field, filters);
+        }
+        return CompletableFuture.completedFuture(store.aggregateByDscp(filters, 0).keySet().stream()
+                .sorted(Comparator.comparing(Integer::valueOf))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<TrafficSummary<String>>> getFieldSummaries(LimitedCardinalityField field, List<Filter> filters) {
+        if (field != LimitedCardinalityField.DSCP || !canAnswer(filters)) {
+            return delegate.getFieldSummaries(field, filters);
+        }
+        final Map<String, Series> seriesByDscp = store.aggregateByDscp(filters, 0);
+        return CompletableFuture.completedFuture(seriesByDscp.keySet().stream()
+                .sorted(Comparator.comparing(Integer::valueOf))
+                .map(dscp -> toSummary(dscp, seriesByDscp.get(dscp)))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Table<Directional<String>, Long, Double>> getFieldSeries(LimitedCardinalityField field, long step, List<Filter> filters) {
+        if (field != LimitedCardinalityField.DSCP || !canAnswer(filters, step)) {
+            return delegate.getFieldSeries(field, step, filters);
+        }
+        final Map<String, Series> seriesByDscp = store.aggregateByDscp(filters, step);
+        final ImmutableTable.Builder<Directional<String>, Long, Double> builder = ImmutableTable.builder();
+        seriesByDscp.keySet().stream()
+                .sorted(Comparator.comparing(Integer::valueOf))
+                .forEach(dscp -> putSeries(builder, dscp, seriesByDscp.get(dscp), null));
+        return CompletableFuture.completedFuture(builder.build());
+    }
+
+    private List<String> getTopN(Dimension dimension, int N, List<Filter> filters) {
+        if (N < 1) {
+            return new ArrayList<>();
+        }
+        return store.aggregate(dimension, filters, 0, null).entrySet().stream()
+                .sorted(Comparator.comparingDouble((Map.Entry<String, Series> e) -> e.getValue().getTotalBytes()).reversed())
+                .limit(N)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private <T> List<TrafficSummary<T>> getTopNSummaries(Dimension dimension, int N, boolean includeOther, List<Filter> filters,
+                                                         Function<String, T> toEntity, T otherEntity) {
+        return getSummaries(dimension, getTopN(dimension, N, filters), includeOther, filters, toEntity, otherEntity);
+    }
+
+    private <T> List<TrafficSummary<T>> getSummaries(Dimension dimension, List<String> values, boolean includeOther,
+                                                     List<Filter> filters, Function<String, T> toEntity, T otherEntity) {
+        final List<TrafficSummary<T>> summaries = new ArrayList<>(values.size() + 1);
+        final Map<String, Series> seriesByValue = values.isEmpty() ? new LinkedHashMap<>()
+                : store.aggregate(dimension, filters, 0, new HashSet<>(values));
+
+        double bytesIn = 0;
+        double bytesOut = 0;
+        for (final String value : values) {
+            final Series series = seriesByValue.get(value);
+            if (series != null) {
+                summaries.add(toSummary(toEntity.apply(value), series));
+                bytesIn += series.getTotalBytesIn();
+                bytesOut += series.getTotalBytesOut();
+            }
+        }
+
+        if (includeOther) {
+            final Series total = store.aggregate(Dimension.TOTAL, filters, 0, null).values().stream()
+                    .findFirst()
+                    .orElse(null);
+            if (total != null) {
+                summaries.add(TrafficSummary.<T>builder()
+                        .withEntity(otherEntity)
+                        .withBytesIn((long) Math.max(0, total.getTotalBytesIn() - bytesIn))
+                        .withBytesOut((long) Math.max(0, total.getTotalBytesOut() - bytesOut))
+                        .withCongestionEncountered(total.isCongestionEncountered())
+                        .withNonEcnCapableTransport(total.isNonEcnCapableTransport())
+                        .build());
+            }
+        }
+        return summaries;
+    }
+
+    private <T> Table<Directional<T>, Long, Double> getSeries(Dimension dimension, List<String> values, long step,
+                                                              boolean includeOther, List<Filter> filters,
+                                                              Function<String, T> toEntity, T otherEntity) {
+        final ImmutableTable.Builder<Directional<T>, Long, Double> builder = ImmutableTable.builder();
+        final Map<String, Series> seriesByValue = values.isEmpty() ? new LinkedHashMap<>()
+                : store.aggregate(dimension, filters, step, new HashSet<>(values));
+
+        for (final String value : values) {
+            final Series series = seriesByValue.get(value);
+            if (series != null) {
+                putSeries(builder, toEntity.apply(value), series, null);
+            }
+        }
+
+        if (includeOther) {
+            store.aggregate(Dimension.TOTAL, filters, step, null).values().stream()
+                    .findFirst()
+                    .ifPresent(total -> putSeries(builder, otherEntity, total, seriesByValue.values()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adds the ingress and egress rows of the given series, minus the given series if any.
+     */
+    private static <T> void putSeries(ImmutableTable.Builder<Directional<T>, Long, Double> builder, T entity,
+                                      Series series, Iterable<Series> minus) {
+        for (int i = 0; i < series.size(); i++) {
+            double bytesIn = series.getBytesIn(i);
+            double bytesOut = series.getBytesOut(i);
+            if (minus != null) {
+                for (final Series other : minus) {
+                    bytesIn -= other.getBytesIn(i);
+                    bytesOut -= other.getBytesOut(i);
+                }
+            }
+            builder.put(new Directional<>(entity, true), series.getTimestamp(i), Math.max(0, bytesIn));
+            builder.put(new Directional<>(entity, false), series.getTimestamp(i), Math.max(0, bytesOut));
+        }
+    }
+
+    private static <T> TrafficSummary<T> toSummary(T entity, Series series) {
+        return TrafficSummary.<T>builder()
+                .withEntity(entity)
+                .withBytesIn((long) series.getTotalBytesIn())
+                .withBytesOut((long) series.getTotalBytesOut())
+                .withCongestionEncountered(series.isCongestionEncountered())
+                .withNonEcnCapableTransport(series.isNonEcnCapableTransport())
+                .build();
+    }
+
+    private Host toHost(String address) {
+        final Host.Builder host = Host.from(address);
+        final String hostname = store.getHostname(address);
+        if (hostname != null) {
+            host.withHostname(hostname);
+        }
+        return host.build();
+    }
+
+    private Conversation toConversation(String convoKey) {
+        final ConversationKey key = ConversationKeyUtils.fromJsonString(convoKey);
+        final Conversation.Builder conversation = Conversation.from(key);
+        final String lowerHostname = store.getHostname(key.getLowerIp());
+        if (lowerHostname != null) {
+            conversation.withLowerHostname(lowerHostname);
+        }
+        final String upperHostname = store.getHostname(key.getUpperIp());
+        if (upperHostname != null) {
+            conversation.withUpperHostname(upperHostname);
+        }
+        return conversation.build();
+    }
+
+    private static List<String> unescapeConversations(Set<String> conversations) {
+        // Same as what is done before querying the raw flows
+        return conversations.stream()
+                .map(conversation -> conversation.replace("\\\"", "\""))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic.memory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.flows.api.Directional;
+import org.opennms.netmgt.flows.api.FlowQueryService;
+import org.opennms.netmgt.flows.api.TrafficSummary;
+import org.opennms.netmgt.flows.elastic.Direction;
+import org.opennms.netmgt.flows.elastic.FlowDocument;
+import org.opennms.netmgt.flows.elastic.NodeDocument;
+import org.opennms.netmgt.flows.filter.api.ExporterNodeFilter;
+import org.opennms.netmgt.flows.filter.api.Filter;
+import org.opennms.netmgt.flows.filter.api.NodeCriteria;
+import org.opennms.netmgt.flows.filter.api.SnmpInterfaceIdFilter;
+import org.opennms.netmgt.flows.filter.api.TimeRangeFilter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Table;
+
+public class InMemoryFlowQueryServiceTest {
+
+    private static final long BUCKET_SIZE_MS = 60000;
+
+    private FlowRollupStore store;
+    private FlowQueryService delegate;
+    private InMemoryFlowQueryService queryService;
+
+    private long start;
+
+    @Before
+    public void setUp() {
+        store = new FlowRollupStore(BUCKET_SIZE_MS, 10 * BUCKET_SIZE_MS);
+        store.setEnabled(true);
+        delegate = mock(FlowQueryService.class);
+        queryService = new InMemoryFlowQueryService(new MetricRegistry(), store, delegate);
+
+        // The first batch only marks the beginning of the data held by the store
+        store.index(Collections.singletonList(new FlowDocument()));
+        start = store.getAvailableSince();
+
+        store.index(Arrays.asList(
+                flow("http", Direction.INGRESS, 1, 3000),
+                flow("https", Direction.INGRESS, 1, 1500),
+                flow("https", Direction.EGRESS, 2, 500),
+                flow("ssh", Direction.INGRESS, 2, 700)));
+    }
+
+    @Test
+    public void canGetTopNApplicationSummaries() throws Exception {
+        final List<TrafficSummary<String>> summaries = queryService.getTopNApplicationSummaries(2, true,
+                getFilters()).get();
+
+        assertThat(summaries.stream().map(TrafficSummary::getEntity).collect(Collectors.toList()),
+                contains("http", "https", "Other"));
+        assertThat(summaries.get(0).getBytesIn(), equalTo(3000L));
+        assertThat(summaries.get(1).getBytesIn(), equalTo(1500L));
+        assertThat(summaries.get(1).getBytesOut(), equalTo(500L));
+        assertThat(summaries.get(2).getBytesIn(), equalTo(700L));
+        assertThat(summaries.get(2).getBytesOut(), equalTo(0L));
+        verify(delegate, never()).getTopNApplicationSummaries(anyInt(), anyBoolean(), any());
+    }
+
+    @Test
+    public void canFilterByExporterAndInterface() throws Exception {
+        final List<Filter> filters = getFilters(new ExporterNodeFilter(new NodeCriteria(1)),
+                new SnmpInterfaceIdFilter(2));
+
+        assertThat(queryService.getFlowCount(filters).get(), equalTo(2L));
+
+        final List<TrafficSummary<String>> summaries = queryService.getTopNApplicationSummaries(10, false,
+                filters).get();
+        assertThat(summaries.stream().map(TrafficSummary::getEntity).collect(Collectors.toList()),
+                contains("ssh", "https"));
+    }
+
+    @Test
+    public void canGetApplicationSeries() throws Exception {
+        final Table<Directional<String>, Long, Double> series = queryService.getTopNApplicationSeries(1,
+                BUCKET_SIZE_MS, false, getFilters()).get();
+
+        final double bytesIn = series.row(new Directional<>("http", true)).values().stream()
+                .mapToDouble(Double::doubleValue)
+                .sum();
+        assertThat(bytesIn, equalTo(3000d));
+    }
+
+    @Test
+    public void delegatesWhenTheStoreCanNotAnswer() {
+        when(delegate.getFlowCount(any())).thenReturn(CompletableFuture.completedFuture(0L));
+        when(delegate.getApplicationSeries(any(), anyLong(), anyBoolean(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Range starting before the store was filled
+        final List<Filter> tooOld = Collections.singletonList(new TimeRangeFilter(start - BUCKET_SIZE_MS, start + BUCKET_SIZE_MS));
+        queryService.getFlowCount(tooOld);
+        verify(delegate).getFlowCount(tooOld);
+
+        // Finer resolution than the buckets
+        queryService.getApplicationSeries(Collections.singleton("http"), BUCKET_SIZE_MS / 2, false, getFilters());
+        verify(delegate).getApplicationSeries(Collections.singleton("http"), BUCKET_SIZE_MS / 2, false, getFilters());
+
+        // Disabled
+        store.setEnabled(false);
+        queryService.getFlowCount(getFilters());
+        verify(delegate).getFlowCount(getFilters());
+    }
+
+    private List<Filter> getFilters(Filter... filters) {
+        final List<Filter> allFilters = new ArrayList<>(Arrays.asList(filters));
+        allFilters.add(new TimeRangeFilter(start, start + BUCKET_SIZE_MS));
+        return allFilters;
+    }
+
+    private FlowDocument flow(String application, Direction direction, int ifIndex, long bytes) {
+        final NodeDocument exporter = new NodeDocument();
+        exporter.setNodeId(1);
+        exporter.setForeignSource("fs");
+        exporter.setForeignId("fid");
+
+        final FlowDocument flow = new FlowDocument();
+        flow.setApplication(application);
+        flow.setDirection(direction);
+        flow.setInputSnmp(direction == Direction.INGRESS ? ifIndex : 0);
+        flow.setOutputSnmp(direction == Direction.EGRESS ? ifIndex : 0);
+        flow.setNodeExporter(exporter);
+        flow.setSrcAddr("10.0.0.1");
+        flow.setDstAddr("10.0.0.2");
+        flow.setBytes(bytes);
+        flow.setSamplingInterval(1.0);
+        flow.setFirstSwitched(start + 1000);
+        flow.setDeltaSwitched(start + 1000);
+        flow.setLastSwitched(start + 10000);
+        flow.setTos(0);
+        return flow;
+    }
+}
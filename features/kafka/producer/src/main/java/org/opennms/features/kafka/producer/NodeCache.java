@@ -90,6 +90,25 @@ public class NodeCache {
         });
     }
 
+    /**
+     * Calls the given callback if no call has been made for this node within the configured timeout,
+     * without looking up the node. Used when the caller still holds what it needs from a previous lookup.
+     *
+     * @param nodeId db id of the node
+     * @param callback callback to issue, if the timeout has not expired since the last callback
+     */
+    public void triggerIfNeeded(long nodeId, Runnable callback) {
+        final long now = System.currentTimeMillis();
+        final Long lastUpdated = lastUpdatedByNodeId.get(nodeId);
+        if (lastUpdated != null && now - lastUpdated <= timeoutInMs) {
+            // No update required
+            return;
+        }
+
+        lastUpdatedByNodeId.put(nodeId, now);
+        callback.run();
+    }
+
     public void setTimeoutInMs(long timeoutInMs) {
         this.timeoutInMs = timeoutInMs;
     }
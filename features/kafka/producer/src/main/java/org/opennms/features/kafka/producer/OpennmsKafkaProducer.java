@@ -30,6 +30,7 @@ package org.opennms.features.kafka.producer;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
@@ -45,9 +46,18 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -61,6 +71,7 @@ import org.opennms.features.situationfeedback.api.AlarmFeedback;
 import org.opennms.features.situationfeedback.api.AlarmFeedbackListener;
 import org.opennms.netmgt.alarmd.api.AlarmCallbackStateTracker;
 import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventListener;
 import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.events.api.ThreadAwareEventListener;
@@ -80,6 +91,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -94,7 +107,34 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             .build();
 
     public static final String KAFKA_CLIENT_PID = "org.opennms.features.kafka.producer.client";
-    private static final ExpressionParser SPEL_PARSER = new SpelExpressionParser();
+    // Filters are compiled to bytecode once they have been interpreted, falling back to the interpreter
+    // for expressions that cannot be compiled
+    private static final ExpressionParser SPEL_PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, OpennmsKafkaProducer.class.getClassLoader()));
+
+    /**
+     * Node related events that invalidate the cached node payloads.
+     */
+    private static final List<String> NODE_CHANGED_UEIS = Arrays.asList(
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+            EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+            EventConstants.INTERFACE_DELETED_EVENT_UEI,
+            EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+            EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+            EventConstants.SERVICE_DELETED_EVENT_UEI,
+            EventConstants.SERVICE_UNMANAGED_EVENT_UEI,
+            EventConstants.HARDWARE_INVENTORY_SUCCESSFUL_UEI);
+
+    /**
+     * Number of node refresh timeouts after which a cached node payload is mapped again, to pick up
+     * the changes that are not announced by any of the events above, such as meta-data changes.
+     */
+    private static final int NODE_PAYLOAD_MAX_REFRESHES = 6;
     private final ThreadFactory nodeUpdateThreadFactory = new ThreadFactoryBuilder()
             .setNameFormat("kafka-producer-node-update-%d")
             .build();
@@ -141,6 +181,21 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "KafkaSendQueueProcessor"));
     private final ExecutorService nodeUpdateExecutor;
 
+    private long alarmCoalesceWindowMs;
+    private final Map<String, KafkaRecord> coalescedAlarmRecords = new ConcurrentHashMap<>();
+    private final AtomicBoolean coalescedAlarmFlushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService alarmCoalesceExecutor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "KafkaAlarmCoalescer"));
+
+    private long nodePayloadCacheSize;
+    private long nodeRefreshTimeoutMs = TimeUnit.MINUTES.toMillis(5);
+    private Cache<Long, ProducerRecord<byte[], byte[]>> nodeRecords;
+    private final EventListener nodePayloadInvalidator = new NodePayloadInvalidator();
+
+    private MetricRegistry metrics = new MetricRegistry();
+    private Counter alarmUpdates;
+    private Counter alarmUpdatesCoalesced;
+
     private String encoding = "UTF8";
     private int numEventListenerThreads = 4;
 
@@ -180,6 +235,24 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         kafkaSendDeque = new LinkedBlockingDeque<>(kafkaSendQueueCapacity);
         kafkaSendQueueExecutor.execute(this::processKafkaSendQueue);
 
+        metrics.register(MetricRegistry.name("sendQueue", "depth"), (Gauge<Integer>) () -> kafkaSendDeque.size());
+        alarmUpdates = metrics.counter(MetricRegistry.name("alarms", "updates"));
+        alarmUpdatesCoalesced = metrics.counter(MetricRegistry.name("alarms", "coalesced"));
+        metrics.register(MetricRegistry.name("alarms", "coalescingRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(alarmUpdatesCoalesced.getCount(), alarmUpdates.getCount());
+            }
+        });
+
+        if (forwardNodes && nodePayloadCacheSize > 0) {
+            nodeRecords = CacheBuilder.newBuilder()
+                    .maximumSize(nodePayloadCacheSize)
+                    .expireAfterWrite(nodeRefreshTimeoutMs * NODE_PAYLOAD_MAX_REFRESHES, TimeUnit.MILLISECONDS)
+                    .build();
+            eventSubscriptionService.addEventListener(nodePayloadInvalidator, NODE_CHANGED_UEIS);
+        }
+
         if (forwardEvents) {
             eventSubscriptionService.addEventListener(this);
         }
@@ -188,10 +261,24 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     }
 
     public void destroy() {
+        alarmCoalesceExecutor.shutdownNow();
+        try {
+            alarmCoalesceExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         kafkaSendQueueExecutor.shutdownNow();
         nodeUpdateExecutor.shutdownNow();
 
         if (producer != null) {
+            // Send the alarm updates that are still being coalesced, they are delivered before the producer closes
+            drainCoalescedAlarms(kafkaRecord -> {
+                try {
+                    producer.send(kafkaRecord.getProducerRecord());
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to send record to producer: {}.", kafkaRecord.getProducerRecord(), e);
+                }
+            });
             producer.close();
             producer = null;
         }
@@ -200,6 +287,10 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             eventSubscriptionService.removeEventListener(this);
         }
 
+        if (nodeRecords != null) {
+            eventSubscriptionService.removeEventListener(nodePayloadInvalidator);
+        }
+
         topologyDao.unsubscribe(this);
     }
 
@@ -311,7 +402,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             outstandingAlarms.remove(reductionKey);
 
             // The alarm was deleted, push a null record to the reduction key
-            sendRecord(() -> {
+            sendAlarmRecord(reductionKey, () -> {
                 LOG.debug("Deleting alarm with reduction key: {}", reductionKey);
                 return new ProducerRecord<>(alarmTopic, reductionKey.getBytes(encoding), null);
             }, recordMetadata -> {
@@ -337,7 +428,7 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
 
         // Forward!
-        sendRecord(() -> {
+        sendAlarmRecord(reductionKey, () -> {
             final OpennmsModelProtos.Alarm mappedAlarm = protobufMapper.toAlarm(alarm).build();
             LOG.debug("Sending alarm with reduction key: {}", reductionKey);
             if (suppressIncrementalAlarms) {
@@ -351,6 +442,58 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         });
     }
 
+    /**
+     * Sends the record for the given alarm, or keeps it for the linger window if alarm updates are
+     * coalesced, so that only the latest state of an alarm updated several times within the window is sent.
+     */
+    private void sendAlarmRecord(String reductionKey, Callable<ProducerRecord<byte[], byte[]>> callable, Consumer<RecordMetadata> callback) {
+        if (producer == null) {
+            return;
+        }
+
+        alarmUpdates.inc();
+        if (alarmCoalesceWindowMs <= 0) {
+            sendRecord(callable, callback);
+            return;
+        }
+
+        // Map the alarm right away while the caller's session is still open, only the built record is kept
+        final ProducerRecord<byte[], byte[]> record;
+        try {
+            record = callable.call();
+        } catch (Exception e) {
+            // Propagate
+            throw new RuntimeException(e);
+        }
+
+        if (coalescedAlarmRecords.put(reductionKey, new KafkaRecord(record, callback)) != null) {
+            alarmUpdatesCoalesced.inc();
+        }
+
+        if (coalescedAlarmFlushScheduled.compareAndSet(false, true)) {
+            alarmCoalesceExecutor.schedule(this::flushCoalescedAlarms, alarmCoalesceWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushCoalescedAlarms() {
+        // Records added from now on will be sent by the next flush
+        coalescedAlarmFlushScheduled.set(false);
+        drainCoalescedAlarms(kafkaRecord -> {
+            if (!kafkaSendDeque.offer(kafkaRecord)) {
+                RATE_LIMITED_LOGGER.warn("Dropped a Kafka record due to queue capacity being full.");
+            }
+        });
+    }
+
+    private void drainCoalescedAlarms(Consumer<KafkaRecord> consumer) {
+        for (String reductionKey : coalescedAlarmRecords.keySet()) {
+            final KafkaRecord kafkaRecord = coalescedAlarmRecords.remove(reductionKey);
+            if (kafkaRecord != null) {
+                consumer.accept(kafkaRecord);
+            }
+        }
+    }
+
     private void updateNodeAsynchronously(long nodeId) {
         // Updating node asynchronously will unblock event consumption.
         nodeUpdateExecutor.execute(() -> {
@@ -359,6 +502,16 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     }
 
     private void maybeUpdateNode(long nodeId) {
+        // Re-send the encoded node if it did not change since it was last mapped
+        final ProducerRecord<byte[], byte[]> cachedRecord = nodeRecords != null ? nodeRecords.getIfPresent(nodeId) : null;
+        if (cachedRecord != null) {
+            nodeCache.triggerIfNeeded(nodeId, () -> sendRecord(() -> {
+                LOG.debug("Sending cached node with id: {}", nodeId);
+                return cachedRecord;
+            }, recordMetadata -> forwardedNode.countDown()));
+            return;
+        }
+
         nodeCache.triggerIfNeeded(nodeId, (node) -> {
             final String nodeCriteria;
             if (node != null && node.getForeignSource() != null && node.getForeignId() != null) {
@@ -379,7 +532,11 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             sendRecord(() -> {
                 final OpennmsModelProtos.Node mappedNode = protobufMapper.toNode(node).build();
                 LOG.debug("Sending node with criteria: {}", nodeCriteria);
-                return new ProducerRecord<>(nodeTopic, nodeCriteria.getBytes(encoding), mappedNode.toByteArray());
+                final ProducerRecord<byte[], byte[]> record = new ProducerRecord<>(nodeTopic, nodeCriteria.getBytes(encoding), mappedNode.toByteArray());
+                if (nodeRecords != null) {
+                    nodeRecords.put(nodeId, record);
+                }
+                return record;
             }, recordMetadata -> {
                 // We've got an ACK from the server that the node was forwarded
                 // Let other threads know when we've successfully forwarded a node
@@ -620,6 +777,26 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         this.kafkaSendQueueCapacity = kafkaSendQueueCapacity;
     }
 
+    public void setAlarmCoalesceWindowMs(long alarmCoalesceWindowMs) {
+        this.alarmCoalesceWindowMs = alarmCoalesceWindowMs;
+    }
+
+    public void setNodePayloadCacheSize(long nodePayloadCacheSize) {
+        this.nodePayloadCacheSize = nodePayloadCacheSize;
+    }
+
+    public void setNodeRefreshTimeoutMs(long nodeRefreshTimeoutMs) {
+        this.nodeRefreshTimeoutMs = nodeRefreshTimeoutMs;
+    }
+
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricRegistry metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
     @Override
     public int getNumThreads() {
         return numEventListenerThreads;
@@ -643,6 +820,20 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
     }
 
+    private class NodePayloadInvalidator implements EventListener {
+        @Override
+        public String getName() {
+            return OpennmsKafkaProducer.class.getName() + ":NodePayloadInvalidator";
+        }
+
+        @Override
+        public void onEvent(IEvent event) {
+            if (event.getNodeid() != null) {
+                nodeRecords.invalidate(event.getNodeid());
+            }
+        }
+    }
+
     public CountDownLatch getForwardedTopologyVertexMessage() {
         return forwardedTopologyVertexMessage;
     }
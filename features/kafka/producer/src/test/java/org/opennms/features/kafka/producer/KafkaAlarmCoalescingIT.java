@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.kafka.producer;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.test.kafka.JUnitKafkaServer;
+import org.opennms.features.kafka.producer.KafkaForwarderIT.KafkaMessageConsumerRunner;
+import org.opennms.features.kafka.producer.model.OpennmsModelProtos;
+import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.dao.api.HwEntityDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.SessionUtils;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.topologies.service.impl.OnmsTopologyDaoInMemoryImpl;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * Verifies that coalesced alarm updates are forwarded once the session
+ * they were loaded in, like the one alarmd notifies the listeners from, is closed.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-databasePopulator.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(dirtiesContext = false, reuseDatabase = false)
+public class KafkaAlarmCoalescingIT {
+
+    private static final String ALARM_TOPIC_NAME = "test-alarms";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Rule
+    public JUnitKafkaServer kafkaServer = new JUnitKafkaServer(tempFolder);
+
+    @Autowired
+    private DatabasePopulator databasePopulator;
+
+    @Autowired
+    private AlarmDao alarmDao;
+
+    @Autowired
+    private EventDao eventDao;
+
+    @Autowired
+    private DistPollerDao distPollerDao;
+
+    @Autowired
+    private HwEntityDao hwEntityDao;
+
+    @Autowired
+    private NodeDao nodeDao;
+
+    @Autowired
+    private EventConfDao eventConfDao;
+
+    @Autowired
+    private SessionUtils sessionUtils;
+
+    private OpennmsKafkaProducer kafkaProducer;
+
+    private ExecutorService executor;
+
+    private KafkaMessageConsumerRunner kafkaConsumer;
+
+    @Before
+    public void setUp() throws Exception {
+        databasePopulator.populateDatabase();
+
+        final Hashtable<String, Object> producerConfig = new Hashtable<>();
+        producerConfig.put(ConsumerConfig.GROUP_ID_CONFIG, KafkaAlarmCoalescingIT.class.getCanonicalName());
+        producerConfig.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaServer.getKafkaConnectString());
+        producerConfig.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, 3000);
+        producerConfig.put(ProducerConfig.LINGER_MS_CONFIG, 0);
+        producerConfig.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, 2000);
+        final ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        when(configAdmin.getConfiguration(OpennmsKafkaProducer.KAFKA_CLIENT_PID).getProperties()).thenReturn(producerConfig);
+
+        final ProtobufMapper protobufMapper = new ProtobufMapper(eventConfDao, hwEntityDao, sessionUtils, nodeDao, 10);
+        final NodeCache nodeCache = new NodeCache(nodeDao, sessionUtils);
+        kafkaProducer = new OpennmsKafkaProducer(protobufMapper, nodeCache, configAdmin,
+                mock(EventSubscriptionService.class), new OnmsTopologyDaoInMemoryImpl(), 1);
+        kafkaProducer.setAlarmTopic(ALARM_TOPIC_NAME);
+        kafkaProducer.setAlarmFilter(null);
+        kafkaProducer.setSuppressIncrementalAlarms(false);
+        kafkaProducer.setAlarmCoalesceWindowMs(TimeUnit.SECONDS.toMillis(5));
+        kafkaProducer.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (kafkaProducer != null) {
+            kafkaProducer.destroy();
+        }
+        if (kafkaConsumer != null) {
+            kafkaConsumer.shutdown();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(2, TimeUnit.MINUTES);
+        }
+        sessionUtils.withTransaction(() -> alarmDao.findAll().forEach(alarmDao::delete));
+        databasePopulator.resetDatabase();
+    }
+
+    @Test
+    public void canForwardCoalescedAlarmsAfterTheSessionIsClosed() throws Exception {
+        final Integer alarmId = sessionUtils.withTransaction(() -> {
+            final OnmsEvent event = nodeDownEvent(databasePopulator.getNode1());
+            eventDao.save(event);
+            final OnmsAlarm alarm = nodeDownAlarm(event);
+            alarmDao.save(alarm);
+            return alarm.getId();
+        });
+
+        // Update the alarm the same way alarmd does: the listeners are notified with an alarm that was
+        // loaded by the session of the transaction, the node and the last event are lazily loaded
+        for (int counter = 2; counter <= 3; counter++) {
+            final int count = counter;
+            sessionUtils.withTransaction(() -> {
+                final OnmsAlarm alarm = alarmDao.get(alarmId);
+                alarm.setCounter(count);
+                alarmDao.update(alarm);
+                kafkaProducer.handleNewOrUpdatedAlarm(alarm);
+            });
+        }
+
+        // Fire up the consumer, the updates are only flushed once the window closes
+        executor = Executors.newSingleThreadExecutor();
+        kafkaConsumer = new KafkaMessageConsumerRunner(kafkaServer.getKafkaConnectString());
+        executor.execute(kafkaConsumer);
+
+        // Only the latest state should have been consumed, with the details of the lazy associations
+        await().atMost(1, TimeUnit.MINUTES).until(() -> !kafkaConsumer.getAlarms().isEmpty());
+        Thread.sleep(10000);
+        assertEquals(1, kafkaConsumer.getAlarms().size());
+        final OpennmsModelProtos.Alarm alarm = kafkaConsumer.getAlarms().get(0);
+        assertEquals(3, alarm.getCount());
+        assertEquals(databasePopulator.getNode1().getLabel(), alarm.getNodeCriteria().getNodeLabel());
+        assertEquals(EventConstants.NODE_DOWN_EVENT_UEI, alarm.getLastEvent().getUei());
+
+        assertEquals(2, kafkaProducer.getMetrics().counter("alarms.coalesced").getCount());
+    }
+
+    private OnmsEvent nodeDownEvent(OnmsNode node) {
+        final OnmsEvent event = new OnmsEvent();
+        event.setEventLog("Y");
+        event.setEventDisplay("Y");
+        event.setEventCreateTime(new Date());
+        event.setDistPoller(distPollerDao.whoami());
+        event.setEventTime(new Date());
+        event.setEventSeverity(OnmsSeverity.MAJOR.getId());
+        event.setEventUei(EventConstants.NODE_DOWN_EVENT_UEI);
+        event.setEventSource("test");
+        event.setNode(node);
+        return event;
+    }
+
+    private OnmsAlarm nodeDownAlarm(OnmsEvent event) {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setUei(event.getEventUei());
+        alarm.setNode(event.getNode());
+        alarm.setDistPoller(distPollerDao.whoami());
+        alarm.setCounter(1);
+        alarm.setDescription("node down");
+        alarm.setAlarmType(1);
+        alarm.setLogMsg("node down");
+        alarm.setSeverity(OnmsSeverity.MAJOR);
+        alarm.setFirstEventTime(event.getEventTime());
+        alarm.setLastEvent(event);
+        alarm.setReductionKey(String.format("%s:%d", EventConstants.NODE_DOWN_EVENT_UEI, event.getNode().getId()));
+        return alarm;
+    }
+}
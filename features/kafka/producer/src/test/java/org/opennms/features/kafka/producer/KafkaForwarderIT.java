@@ -393,6 +393,32 @@ public class KafkaForwarderIT implements TemporaryDatabaseAware<MockDatabase> {
         assertEquals(1, kafkaConsumer.getAlarms().size());
     }
 
+    @Test
+    public void testAlarmCoalescing() throws Exception {
+        kafkaProducer.setSuppressIncrementalAlarms(false);
+        kafkaProducer.setAlarmCoalesceWindowMs(TimeUnit.SECONDS.toMillis(5));
+
+        // Send the same alarm three times within the window
+        final OnmsAlarm alarm = nodeDownAlarm();
+        alarmDao.save(alarm);
+        for (int counter = 1; counter <= 3; counter++) {
+            alarm.setCounter(counter);
+            kafkaProducer.handleNewOrUpdatedAlarm(alarm);
+        }
+
+        // Fire up the consumer
+        kafkaConsumer = startConsumer();
+
+        // Only the latest state should have been consumed
+        await().atMost(1, TimeUnit.MINUTES).until(() -> !kafkaConsumer.getAlarms().isEmpty());
+        Thread.sleep(10000);
+        assertEquals(1, kafkaConsumer.getAlarms().size());
+        assertEquals(3, kafkaConsumer.getAlarms().get(0).getCount());
+
+        assertEquals(3, kafkaProducer.getMetrics().counter("alarms.updates").getCount());
+        assertEquals(2, kafkaProducer.getMetrics().counter("alarms.coalesced").getCount());
+    }
+
     @Test
     public void testSyncSuppression() {
         kafkaProducer.setSuppressIncrementalAlarms(true);
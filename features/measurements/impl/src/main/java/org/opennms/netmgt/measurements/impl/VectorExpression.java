@@ -0,0 +1,1025 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An expression evaluated over whole columns at a time.
+ *
+ * Only the subset of the JEXL syntax used by the graph definitions is supported: numeric and boolean
+ * literals, variables, the arithmetic, relational, equality and logical operators, the ternary operator
+ * and the functions of the math and strictmath namespaces. The semantics of JEXL are retained, i.e.
+ * integer operands use integer arithmetic, real literals are floats and two doubles are equal when
+ * {@link Double#equals(Object)} says so, which makes NaN == NaN.
+ *
+ * Anything else, including the conditions under which JEXL would fail, raises an
+ * {@link UnsupportedExpressionException} so that the caller can use JEXL instead.
+ */
+abstract class VectorExpression {
+
+    /**
+     * Static type of a value, used to pick the same operations as JEXL would based on the runtime types.
+     */
+    enum Type {
+        /** Integer or Long */
+        INTEGER,
+        /** Float, held as the double it is converted to by JEXL, i.e. through its string representation */
+        FLOAT,
+        /** Double */
+        DOUBLE,
+        /** Integer, Long or Double depending on the row */
+        NUMBER,
+        /** Boolean */
+        BOOLEAN;
+
+        boolean isReal() {
+            return this == FLOAT || this == DOUBLE;
+        }
+
+        boolean isNumeric() {
+            return this != BOOLEAN;
+        }
+    }
+
+    /**
+     * Raised when an expression can not be evaluated here.
+     */
+    static class UnsupportedExpressionException extends Exception {
+        private static final long serialVersionUID = -5367384591726617744L;
+
+        UnsupportedExpressionException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Resolves the variables referenced by the expressions.
+     */
+    interface Scope {
+        /**
+         * @return the number of rows
+         */
+        int size();
+
+        /**
+         * @return the value of the variable, or null if it is not defined
+         */
+        Value resolve(String name) throws UnsupportedExpressionException;
+    }
+
+    /**
+     * Column of values, or a single value shared by all the rows.
+     *
+     * Integers are stored as longs, reals as doubles and booleans as booleans.
+     */
+    static final class Value {
+        final Type type;
+        final boolean scalar;
+        final long[] longs;
+        final double[] doubles;
+        final boolean[] booleans;
+
+        private Value(Type type, boolean scalar, long[] longs, double[] doubles, boolean[] booleans) {
+            this.type = type;
+            this.scalar = scalar;
+            this.longs = longs;
+            this.doubles = doubles;
+            this.booleans = booleans;
+        }
+
+        static Value ofLongs(long[] values) {
+            return new Value(Type.INTEGER, false, values, null, null);
+        }
+
+        static Value ofLong(long value) {
+            return new Value(Type.INTEGER, true, new long[]{value}, null, null);
+        }
+
+        static Value ofDoubles(Type type, double[] values) {
+            return new Value(type, false, null, values, null);
+        }
+
+        static Value ofDouble(Type type, double value) {
+            return new Value(type, true, null, new double[]{value}, null);
+        }
+
+        static Value ofBooleans(boolean[] values) {
+            return new Value(Type.BOOLEAN, false, null, null, values);
+        }
+
+        static Value ofBoolean(boolean value) {
+            return new Value(Type.BOOLEAN, true, null, null, new boolean[]{value});
+        }
+
+        long[] longs(int size) {
+            if (!scalar) {
+                return longs;
+            }
+            final long[] values = new long[size];
+            Arrays.fill(values, longs[0]);
+            return values;
+        }
+
+        double[] doubles(int size) {
+            if (type == Type.INTEGER) {
+                final double[] values = new double[scalar ? size : longs.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = scalar ? longs[0] : longs[i];
+                }
+                return values;
+            }
+            if (!scalar) {
+                return doubles;
+            }
+            final double[] values = new double[size];
+            Arrays.fill(values, doubles[0]);
+            return values;
+        }
+
+        boolean[] booleans(int size) {
+            if (!scalar) {
+                return booleans;
+            }
+            final boolean[] values = new boolean[size];
+            Arrays.fill(values, booleans[0]);
+            return values;
+        }
+    }
+
+    abstract Value evaluate(Scope scope) throws UnsupportedExpressionException;
+
+    /**
+     * Parses the given JEXL expression.
+     *
+     * @throws UnsupportedExpressionException if the expression uses anything outside of the supported subset
+     */
+    static VectorExpression parse(String expression) throws UnsupportedExpressionException {
+        return new Parser(expression).parse();
+    }
+
+    private static UnsupportedExpressionException unsupported(String message, Object... args) {
+        return new UnsupportedExpressionException(String.format(message, args));
+    }
+
+    private static void checkNumeric(Value... values) throws UnsupportedExpressionException {
+        for (final Value value : values) {
+            if (!value.type.isNumeric()) {
+                throw unsupported("Expected a number, got a %s.", value.type);
+            }
+        }
+    }
+
+    private static void checkBoolean(Value... values) throws UnsupportedExpressionException {
+        for (final Value value : values) {
+            if (value.type != Type.BOOLEAN) {
+                throw unsupported("Expected a boolean, got a %s.", value.type);
+            }
+        }
+    }
+
+    private static class Literal extends VectorExpression {
+        private final Value value;
+
+        private Literal(Value value) {
+            this.value = value;
+        }
+
+        @Override
+        Value evaluate(Scope scope) {
+            return value;
+        }
+    }
+
+    private static class Variable extends VectorExpression {
+        private final String name;
+        private final String head;
+
+        private Variable(String name, String head) {
+            this.name = name;
+            this.head = head;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            if (!name.equals(head) && scope.resolve(head) != null) {
+                // Property of a defined variable, not an 'antish' variable
+                throw unsupported("Property access on '%s'.", head);
+            }
+            final Value value = scope.resolve(name);
+            if (value == null) {
+                throw unsupported("Undefined variable '%s'.", name);
+            }
+            return value;
+        }
+    }
+
+    private static class Negate extends VectorExpression {
+        private final VectorExpression operand;
+
+        private Negate(VectorExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value value = operand.evaluate(scope);
+            checkNumeric(value);
+            if (value.type == Type.INTEGER) {
+                final long[] values = new long[value.longs.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = -value.longs[i];
+                }
+                return value.scalar ? Value.ofLong(values[0]) : Value.ofLongs(values);
+            }
+            final double[] values = new double[value.doubles.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = -value.doubles[i];
+            }
+            return value.scalar ? Value.ofDouble(value.type, values[0]) : Value.ofDoubles(value.type, values);
+        }
+    }
+
+    private static class Not extends VectorExpression {
+        private final VectorExpression operand;
+
+        private Not(VectorExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value value = operand.evaluate(scope);
+            checkBoolean(value);
+            final boolean[] values = new boolean[value.booleans.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = !value.booleans[i];
+            }
+            return value.scalar ? Value.ofBoolean(values[0]) : Value.ofBooleans(values);
+        }
+    }
+
+    private static class Logical extends VectorExpression {
+        private final boolean and;
+        private final VectorExpression left;
+        private final VectorExpression right;
+
+        private Logical(boolean and, VectorExpression left, VectorExpression right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value a = left.evaluate(scope);
+            checkBoolean(a);
+            if (a.scalar && a.booleans[0] != and) {
+                // Short-circuit
+                return a;
+            }
+            final Value b = right.evaluate(scope);
+            checkBoolean(b);
+            if (a.scalar && b.scalar) {
+                return b;
+            }
+            final int size = scope.size();
+            final boolean[] l = a.booleans(size);
+            final boolean[] r = b.booleans(size);
+            final boolean[] values = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = and ? l[i] && r[i] : l[i] || r[i];
+            }
+            return Value.ofBooleans(values);
+        }
+    }
+
+    private static class Arithmetic extends VectorExpression {
+        private final char operator;
+        private final VectorExpression left;
+        private final VectorExpression right;
+
+        private Arithmetic(char operator, VectorExpression left, VectorExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value a = left.evaluate(scope);
+            final Value b = right.evaluate(scope);
+            checkNumeric(a, b);
+
+            final boolean scalar = a.scalar && b.scalar;
+            final int size = scalar ? 1 : scope.size();
+            if (a.type == Type.INTEGER && b.type == Type.INTEGER) {
+                final long[] l = a.longs(size);
+                final long[] r = b.longs(size);
+                final long[] values = new long[size];
+                switch (operator) {
+                    case '+': for (int i = 0; i < size; i++) values[i] = l[i] + r[i]; break;
+                    case '-': for (int i = 0; i < size; i++) values[i] = l[i] - r[i]; break;
+                    case '*': for (int i = 0; i < size; i++) values[i] = l[i] * r[i]; break;
+                    case '/': checkNonZero(r); for (int i = 0; i < size; i++) values[i] = l[i] / r[i]; break;
+                    default: checkNonZero(r); for (int i = 0; i < size; i++) values[i] = l[i] % r[i]; break;
+                }
+                return scalar ? Value.ofLong(values[0]) : Value.ofLongs(values);
+            }
+
+            // JEXL uses doubles as soon as one of the operands is a real
+            if (!a.type.isReal() && !b.type.isReal()) {
+                throw unsupported("Arithmetic on a %s and a %s.", a.type, b.type);
+            }
+            final double[] l = a.doubles(size);
+            final double[] r = b.doubles(size);
+            final double[] values = new double[size];
+            switch (operator) {
+                case '+': for (int i = 0; i < size; i++) values[i] = l[i] + r[i]; break;
+                case '-': for (int i = 0; i < size; i++) values[i] = l[i] - r[i]; break;
+                case '*': for (int i = 0; i < size; i++) values[i] = l[i] * r[i]; break;
+                case '/': checkNonZero(r); for (int i = 0; i < size; i++) values[i] = l[i] / r[i]; break;
+                default: checkNonZero(r); for (int i = 0; i < size; i++) values[i] = l[i] % r[i]; break;
+            }
+            return scalar ? Value.ofDouble(Type.DOUBLE, values[0]) : Value.ofDoubles(Type.DOUBLE, values);
+        }
+
+        private static void checkNonZero(long[] divisors) throws UnsupportedExpressionException {
+            for (final long divisor : divisors) {
+                if (divisor == 0) {
+                    throw unsupported("Division by zero.");
+                }
+            }
+        }
+
+        private static void checkNonZero(double[] divisors) throws UnsupportedExpressionException {
+            for (final double divisor : divisors) {
+                if (divisor == 0.0) {
+                    // JEXL fails instead of returning an infinity
+                    throw unsupported("Division by zero.");
+                }
+            }
+        }
+    }
+
+    private static class Comparison extends VectorExpression {
+        private final String operator;
+        private final VectorExpression left;
+        private final VectorExpression right;
+
+        private Comparison(String operator, VectorExpression left, VectorExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value a = left.evaluate(scope);
+            final Value b = right.evaluate(scope);
+            checkNumeric(a, b);
+
+            final boolean scalar = a.scalar && b.scalar;
+            final int size = scalar ? 1 : scope.size();
+            final boolean[] values = new boolean[size];
+            switch (operator) {
+                case "==": equal(a, b, size, values); break;
+                case "!=": equal(a, b, size, values); negate(values); break;
+                case "<": lessThan(a, b, size, values); break;
+                case ">": lessThan(b, a, size, values); break;
+                // Same as JEXL, NaN <= NaN holds since both are equal
+                case "<=": lessThanOrEqual(a, b, size, values); break;
+                default: lessThanOrEqual(b, a, size, values); break;
+            }
+            return scalar ? Value.ofBoolean(values[0]) : Value.ofBooleans(values);
+        }
+
+        private static void equal(Value a, Value b, int size, boolean[] values) throws UnsupportedExpressionException {
+            if (a.type == Type.INTEGER && b.type == Type.INTEGER) {
+                final long[] l = a.longs(size);
+                final long[] r = b.longs(size);
+                for (int i = 0; i < size; i++) {
+                    values[i] = l[i] == r[i];
+                }
+            } else if (a.type == b.type && a.type.isReal()) {
+                // Same class, compared with equals()
+                final double[] l = a.doubles(size);
+                final double[] r = b.doubles(size);
+                for (int i = 0; i < size; i++) {
+                    values[i] = Double.doubleToLongBits(l[i]) == Double.doubleToLongBits(r[i]);
+                }
+            } else if (a.type != Type.NUMBER && b.type != Type.NUMBER) {
+                final double[] l = a.doubles(size);
+                final double[] r = b.doubles(size);
+                for (int i = 0; i < size; i++) {
+                    values[i] = l[i] == r[i];
+                }
+            } else {
+                throw unsupported("Equality between a %s and a %s.", a.type, b.type);
+            }
+        }
+
+        private static void lessThan(Value a, Value b, int size, boolean[] values) {
+            if (a.type == Type.INTEGER && b.type == Type.INTEGER) {
+                final long[] l = a.longs(size);
+                final long[] r = b.longs(size);
+                for (int i = 0; i < size; i++) {
+                    values[i] = l[i] < r[i];
+                }
+            } else {
+                final double[] l = a.doubles(size);
+                final double[] r = b.doubles(size);
+                for (int i = 0; i < size; i++) {
+                    values[i] = l[i] < r[i];
+                }
+            }
+        }
+
+        private static void lessThanOrEqual(Value a, Value b, int size, boolean[] values) throws UnsupportedExpressionException {
+            final boolean[] lessThan = new boolean[size];
+            equal(a, b, size, values);
+            lessThan(a, b, size, lessThan);
+            for (int i = 0; i < size; i++) {
+                values[i] |= lessThan[i];
+            }
+        }
+
+        private static void negate(boolean[] values) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = !values[i];
+            }
+        }
+    }
+
+    private static class Ternary extends VectorExpression {
+        private final VectorExpression condition;
+        private final VectorExpression then;
+        private final VectorExpression otherwise;
+
+        private Ternary(VectorExpression condition, VectorExpression then, VectorExpression otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value c = condition.evaluate(scope);
+            checkBoolean(c);
+            if (c.scalar) {
+                return c.booleans[0] ? then.evaluate(scope) : otherwise.evaluate(scope);
+            }
+
+            final Value a = then.evaluate(scope);
+            final Value b = otherwise.evaluate(scope);
+            final int size = scope.size();
+            if (a.type == b.type && a.type == Type.BOOLEAN) {
+                final boolean[] l = a.booleans(size);
+                final boolean[] r = b.booleans(size);
+                final boolean[] values = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = c.booleans[i] ? l[i] : r[i];
+                }
+                return Value.ofBooleans(values);
+            }
+            if (a.type == b.type && a.type == Type.INTEGER) {
+                final long[] l = a.longs(size);
+                final long[] r = b.longs(size);
+                final long[] values = new long[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = c.booleans[i] ? l[i] : r[i];
+                }
+                return Value.ofLongs(values);
+            }
+
+            final Type type;
+            if (a.type == b.type) {
+                type = a.type;
+            } else if (a.type != Type.FLOAT && b.type != Type.FLOAT && a.type.isNumeric() && b.type.isNumeric()) {
+                // Integers are exactly represented as doubles when they are converted to one
+                type = Type.NUMBER;
+            } else {
+                throw unsupported("Ternary with a %s and a %s.", a.type, b.type);
+            }
+            final double[] l = a.doubles(size);
+            final double[] r = b.doubles(size);
+            final double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = c.booleans[i] ? l[i] : r[i];
+            }
+            return Value.ofDoubles(type, values);
+        }
+    }
+
+    private static class Call extends VectorExpression {
+        private final String name;
+        private final Function function;
+        private final VectorExpression[] arguments;
+
+        private Call(String name, Function function, VectorExpression[] arguments) {
+            this.name = name;
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            final Value[] values = new Value[arguments.length];
+            boolean scalar = true;
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = arguments[i].evaluate(scope);
+                checkNumeric(values[i]);
+                scalar &= values[i].scalar;
+            }
+            final Value value = function.apply(values, scalar ? 1 : scope.size());
+            if (value == null) {
+                throw unsupported("No suitable overload of %s.", name);
+            }
+            return value;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Function {
+        /**
+         * @return the result or null if the types of the arguments are not supported
+         */
+        Value apply(Value[] arguments, int size);
+    }
+
+    private static final Map<String, Function> FUNCTIONS = new HashMap<>();
+    private static final Map<String, Integer> ARITIES = new HashMap<>();
+    static {
+        for (final String namespace : new String[]{"math", "strictmath"}) {
+            final boolean strict = "strictmath".equals(namespace);
+            unary(namespace, "sin", strict ? StrictMath::sin : Math::sin);
+            unary(namespace, "cos", strict ? StrictMath::cos : Math::cos);
+            unary(namespace, "tan", strict ? StrictMath::tan : Math::tan);
+            unary(namespace, "asin", strict ? StrictMath::asin : Math::asin);
+            unary(namespace, "acos", strict ? StrictMath::acos : Math::acos);
+            unary(namespace, "atan", strict ? StrictMath::atan : Math::atan);
+            unary(namespace, "sinh", strict ? StrictMath::sinh : Math::sinh);
+            unary(namespace, "cosh", strict ? StrictMath::cosh : Math::cosh);
+            unary(namespace, "tanh", strict ? StrictMath::tanh : Math::tanh);
+            unary(namespace, "sqrt", strict ? StrictMath::sqrt : Math::sqrt);
+            unary(namespace, "cbrt", strict ? StrictMath::cbrt : Math::cbrt);
+            unary(namespace, "exp", strict ? StrictMath::exp : Math::exp);
+            unary(namespace, "expm1", strict ? StrictMath::expm1 : Math::expm1);
+            unary(namespace, "log", strict ? StrictMath::log : Math::log);
+            unary(namespace, "log10", strict ? StrictMath::log10 : Math::log10);
+            unary(namespace, "log1p", strict ? StrictMath::log1p : Math::log1p);
+            unary(namespace, "floor", strict ? StrictMath::floor : Math::floor);
+            unary(namespace, "ceil", strict ? StrictMath::ceil : Math::ceil);
+            unary(namespace, "rint", strict ? StrictMath::rint : Math::rint);
+            unary(namespace, "toDegrees", strict ? StrictMath::toDegrees : Math::toDegrees);
+            unary(namespace, "toRadians", strict ? StrictMath::toRadians : Math::toRadians);
+            binary(namespace, "atan2", strict ? StrictMath::atan2 : Math::atan2);
+            binary(namespace, "pow", strict ? StrictMath::pow : Math::pow);
+            binary(namespace, "hypot", strict ? StrictMath::hypot : Math::hypot);
+            binary(namespace, "IEEEremainder", strict ? StrictMath::IEEEremainder : Math::IEEEremainder);
+
+            // Overloaded, the result has the type of the arguments
+            register(namespace, "abs", 1, VectorExpression::abs);
+            register(namespace, "signum", 1, VectorExpression::signum);
+            register(namespace, "round", 1, VectorExpression::round);
+            register(namespace, "min", 2, (args, size) -> minMax(args, size, true));
+            register(namespace, "max", 2, (args, size) -> minMax(args, size, false));
+        }
+    }
+
+    private static void register(String namespace, String name, int arity, Function function) {
+        FUNCTIONS.put(namespace + ":" + name, function);
+        ARITIES.put(namespace + ":" + name, arity);
+    }
+
+    private static void unary(String namespace, String name, DoubleUnaryOperator operator) {
+        register(namespace, name, 1, (args, size) -> {
+            final double[] x = args[0].doubles(size);
+            final double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = operator.applyAsDouble(x[i]);
+            }
+            return args[0].scalar ? Value.ofDouble(Type.DOUBLE, values[0]) : Value.ofDoubles(Type.DOUBLE, values);
+        });
+    }
+
+    private static void binary(String namespace, String name, DoubleBinaryOperator operator) {
+        register(namespace, name, 2, (args, size) -> {
+            final double[] x = args[0].doubles(size);
+            final double[] y = args[1].doubles(size);
+            final double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = operator.applyAsDouble(x[i], y[i]);
+            }
+            return args[0].scalar && args[1].scalar ? Value.ofDouble(Type.DOUBLE, values[0]) : Value.ofDoubles(Type.DOUBLE, values);
+        });
+    }
+
+    private static Value abs(Value[] args, int size) {
+        final Value x = args[0];
+        if (x.type == Type.INTEGER) {
+            final long[] l = x.longs(size);
+            final long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = Math.abs(l[i]);
+            }
+            return x.scalar ? Value.ofLong(values[0]) : Value.ofLongs(values);
+        }
+        if (!x.type.isReal()) {
+            return null;
+        }
+        final double[] d = x.doubles(size);
+        final double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = Math.abs(d[i]);
+        }
+        return x.scalar ? Value.ofDouble(x.type, values[0]) : Value.ofDoubles(x.type, values);
+    }
+
+    private static Value signum(Value[] args, int size) {
+        final Value x = args[0];
+        if (!x.type.isReal()) {
+            return null;
+        }
+        final double[] d = x.doubles(size);
+        final double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = Math.signum(d[i]);
+        }
+        return x.scalar ? Value.ofDouble(x.type, values[0]) : Value.ofDoubles(x.type, values);
+    }
+
+    private static Value round(Value[] args, int size) {
+        final Value x = args[0];
+        if (!x.type.isReal()) {
+            return null;
+        }
+        final double[] d = x.doubles(size);
+        final long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = x.type == Type.FLOAT ? Math.round((float) d[i]) : Math.round(d[i]);
+        }
+        return x.scalar ? Value.ofLong(values[0]) : Value.ofLongs(values);
+    }
+
+    private static Value minMax(Value[] args, int size, boolean min) {
+        final Value x = args[0];
+        final Value y = args[1];
+        final boolean scalar = x.scalar && y.scalar;
+        if (x.type == Type.INTEGER && y.type == Type.INTEGER) {
+            final long[] l = x.longs(size);
+            final long[] r = y.longs(size);
+            final long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = min ? Math.min(l[i], r[i]) : Math.max(l[i], r[i]);
+            }
+            return scalar ? Value.ofLong(values[0]) : Value.ofLongs(values);
+        }
+
+        final Type type;
+        if (x.type == Type.FLOAT && y.type == Type.FLOAT) {
+            type = Type.FLOAT;
+        } else if ((x.type == Type.DOUBLE || y.type == Type.DOUBLE) && x.type != Type.NUMBER && y.type != Type.NUMBER) {
+            // Resolved to the (double, double) overload
+            type = Type.DOUBLE;
+        } else {
+            return null;
+        }
+        final double[] l = x.doubles(size);
+        final double[] r = y.doubles(size);
+        final double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = min ? Math.min(l[i], r[i]) : Math.max(l[i], r[i]);
+        }
+        return scalar ? Value.ofDouble(type, values[0]) : Value.ofDoubles(type, values);
+    }
+
+    /**
+     * Recursive descent parser following the operator precedence of JEXL.
+     */
+    private static class Parser {
+        private final String text;
+        private int pos = 0;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private VectorExpression parse() throws UnsupportedExpressionException {
+            final VectorExpression expression = ternary();
+            skipWhitespace();
+            if (pos != text.length()) {
+                throw unsupported("Unexpected '%s' at %d.", text.charAt(pos), pos);
+            }
+            return expression;
+        }
+
+        private VectorExpression ternary() throws UnsupportedExpressionException {
+            final VectorExpression condition = or();
+            if (!operator("?")) {
+                return condition;
+            }
+            if (peek(':')) {
+                throw unsupported("Elvis operator.");
+            }
+            final VectorExpression then = ternary();
+            expect(":");
+            return new Ternary(condition, then, ternary());
+        }
+
+        private VectorExpression or() throws UnsupportedExpressionException {
+            VectorExpression expression = and();
+            while (operator("||") || word("or")) {
+                expression = new Logical(false, expression, and());
+            }
+            return expression;
+        }
+
+        private VectorExpression and() throws UnsupportedExpressionException {
+            VectorExpression expression = equality();
+            while (operator("&&") || word("and")) {
+                expression = new Logical(true, expression, equality());
+            }
+            return expression;
+        }
+
+        private VectorExpression equality() throws UnsupportedExpressionException {
+            VectorExpression expression = relational();
+            while (true) {
+                if (operator("=~") || operator("!~")) {
+                    throw unsupported("Pattern matching.");
+                } else if (operator("==") || word("eq")) {
+                    expression = new Comparison("==", expression, relational());
+                } else if (operator("!=") || word("ne")) {
+                    expression = new Comparison("!=", expression, relational());
+                } else {
+                    return expression;
+                }
+            }
+        }
+
+        private VectorExpression relational() throws UnsupportedExpressionException {
+            VectorExpression expression = additive();
+            while (true) {
+                if (operator("<=") || word("le")) {
+                    expression = new Comparison("<=", expression, additive());
+                } else if (operator(">=") || word("ge")) {
+                    expression = new Comparison(">=", expression, additive());
+                } else if (operator("<") || word("lt")) {
+                    expression = new Comparison("<", expression, additive());
+                } else if (operator(">") || word("gt")) {
+                    expression = new Comparison(">", expression, additive());
+                } else {
+                    return expression;
+                }
+            }
+        }
+
+        private VectorExpression additive() throws UnsupportedExpressionException {
+            VectorExpression expression = multiplicative();
+            while (true) {
+                if (operator("+")) {
+                    expression = new Arithmetic('+', expression, multiplicative());
+                } else if (operator("-")) {
+                    expression = new Arithmetic('-', expression, multiplicative());
+                } else {
+                    return expression;
+                }
+            }
+        }
+
+        private VectorExpression multiplicative() throws UnsupportedExpressionException {
+            VectorExpression expression = unary();
+            while (true) {
+                if (operator("*")) {
+                    expression = new Arithmetic('*', expression, unary());
+                } else if (operator("/") || word("div")) {
+                    expression = new Arithmetic('/', expression, unary());
+                } else if (operator("%") || word("mod")) {
+                    expression = new Arithmetic('%', expression, unary());
+                } else {
+                    return expression;
+                }
+            }
+        }
+
+        private VectorExpression unary() throws UnsupportedExpressionException {
+            if (operator("-")) {
+                return new Negate(unary());
+            } else if ((!peek("!=") && operator("!")) || word("not")) {
+                return new Not(unary());
+            }
+            return primary();
+        }
+
+        private VectorExpression primary() throws UnsupportedExpressionException {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw unsupported("Unexpected end of expression.");
+            }
+            final char c = text.charAt(pos);
+            if (c == '(') {
+                pos++;
+                final VectorExpression expression = ternary();
+                expect(")");
+                return expression;
+            } else if (Character.isDigit(c)) {
+                return number();
+            } else if (isIdentifierStart(c)) {
+                return identifier();
+            }
+            throw unsupported("Unexpected '%s' at %d.", c, pos);
+        }
+
+        private VectorExpression number() throws UnsupportedExpressionException {
+            final int start = pos;
+            while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                pos++;
+            }
+            boolean real = false;
+            if (pos + 1 < text.length() && text.charAt(pos) == '.' && Character.isDigit(text.charAt(pos + 1))) {
+                real = true;
+                pos++;
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+                if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                    pos++;
+                    if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                        pos++;
+                    }
+                    while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                }
+            }
+            final String digits = text.substring(start, pos);
+            final char suffix = pos < text.length() ? text.charAt(pos) : ' ';
+
+            final Value value;
+            try {
+                if (real && (suffix == 'd' || suffix == 'D')) {
+                    pos++;
+                    value = Value.ofDouble(Type.DOUBLE, Double.parseDouble(digits));
+                } else if (real) {
+                    // Real literals are floats unless told otherwise
+                    if (suffix == 'f' || suffix == 'F') {
+                        pos++;
+                    }
+                    value = Value.ofDouble(Type.FLOAT, Double.parseDouble(Float.toString(Float.parseFloat(digits))));
+                } else if (digits.length() > 1 && digits.charAt(0) == '0') {
+                    throw unsupported("Octal or hexadecimal literal '%s'.", digits);
+                } else {
+                    if (suffix == 'l' || suffix == 'L') {
+                        pos++;
+                    }
+                    value = Value.ofLong(Long.parseLong(digits));
+                }
+            } catch (NumberFormatException e) {
+                throw unsupported("Invalid literal '%s'.", digits);
+            }
+            if (pos < text.length() && isIdentifierPart(text.charAt(pos))) {
+                throw unsupported("Invalid literal at %d.", start);
+            }
+            return new Literal(value);
+        }
+
+        private VectorExpression identifier() throws UnsupportedExpressionException {
+            final String head = name();
+            switch (head) {
+                case "true": return new Literal(Value.ofBoolean(true));
+                case "false": return new Literal(Value.ofBoolean(false));
+                case "or": case "and": case "not": case "eq": case "ne": case "lt": case "gt": case "le": case "ge":
+                case "div": case "mod": case "null": case "new": case "empty": case "size": case "function":
+                case "var": case "return": case "if": case "else": case "for": case "foreach": case "while": case "in":
+                    throw unsupported("Reserved word '%s'.", head);
+                default:
+                    break;
+            }
+
+            if (pos + 1 < text.length() && text.charAt(pos) == ':' && isIdentifierStart(text.charAt(pos + 1))) {
+                final int start = pos;
+                pos++;
+                final String function = head + ":" + name();
+                if (operator("(")) {
+                    return call(function);
+                }
+                // Not a function call, most likely the else branch of a ternary
+                pos = start;
+            }
+
+            final StringBuilder name = new StringBuilder(head);
+            while (pos + 1 < text.length() && text.charAt(pos) == '.' && isIdentifierStart(text.charAt(pos + 1))) {
+                pos++;
+                name.append('.').append(name());
+            }
+            if (pos < text.length() && (text.charAt(pos) == '(' || text.charAt(pos) == '[' || text.charAt(pos) == '.')) {
+                throw unsupported("Method call, array or property access at %d.", pos);
+            }
+            return new Variable(name.toString(), head);
+        }
+
+        private VectorExpression call(String function) throws UnsupportedExpressionException {
+            final Function implementation = FUNCTIONS.get(function);
+            if (implementation == null) {
+                throw unsupported("Unsupported function '%s'.", function);
+            }
+            final VectorExpression[] arguments = new VectorExpression[ARITIES.get(function)];
+            for (int i = 0; i < arguments.length; i++) {
+                if (i > 0) {
+                    expect(",");
+                }
+                arguments[i] = ternary();
+            }
+            expect(")");
+            return new Call(function, implementation, arguments);
+        }
+
+        private String name() {
+            final int start = pos;
+            while (pos < text.length() && isIdentifierPart(text.charAt(pos))) {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        private void expect(String token) throws UnsupportedExpressionException {
+            if (!operator(token)) {
+                throw unsupported("Expected '%s' at %d.", token, pos);
+            }
+        }
+
+        private boolean operator(String token) {
+            skipWhitespace();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean word(String word) {
+            skipWhitespace();
+            final int end = pos + word.length();
+            if (text.startsWith(word, pos) && (end >= text.length() || !isIdentifierPart(text.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean peek(char c) {
+            skipWhitespace();
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private boolean peek(String token) {
+            skipWhitespace();
+            return text.startsWith(token, pos);
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private static boolean isIdentifierStart(char c) {
+            return Character.isLetter(c) || c == '_' || c == '$';
+        }
+
+        private static boolean isIdentifierPart(char c) {
+            return isIdentifierStart(c) || Character.isDigit(c);
+        }
+    }
+}
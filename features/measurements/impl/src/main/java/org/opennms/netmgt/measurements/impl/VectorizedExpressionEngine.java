@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.impl.VectorExpression.Type;
+import org.opennms.netmgt.measurements.impl.VectorExpression.UnsupportedExpressionException;
+import org.opennms.netmgt.measurements.impl.VectorExpression.Value;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * An expression engine which evaluates the expressions a whole column at a time,
+ * instead of evaluating them row by row with JEXL.
+ *
+ * The expressions are parsed once and cached. Requests using expressions outside of the
+ * subset supported by {@link VectorExpression} are handed over to the JEXL engine as a whole,
+ * which also takes care of reporting the errors.
+ */
+public class VectorizedExpressionEngine implements ExpressionEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VectorizedExpressionEngine.class);
+
+    /**
+     * Set to true to evaluate the expressions with this engine, JEXL is used otherwise.
+     */
+    public static final String ENABLED_PROPERTY = "org.opennms.netmgt.measurements.expressions.vectorized";
+
+    private static final int MAX_CACHED_EXPRESSIONS = 4096;
+
+    /**
+     * Placeholder for the expressions which can not be vectorized.
+     */
+    private static final VectorExpression UNSUPPORTED = new VectorExpression() {
+        @Override
+        Value evaluate(Scope scope) throws UnsupportedExpressionException {
+            throw new UnsupportedExpressionException("Unsupported expression.");
+        }
+    };
+
+    private final ExpressionEngine fallback;
+
+    private final boolean enabled;
+
+    private final Cache<String, VectorExpression> expressions = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_EXPRESSIONS)
+            .build();
+
+    public VectorizedExpressionEngine() {
+        this(new JEXLExpressionEngine());
+    }
+
+    public VectorizedExpressionEngine(final ExpressionEngine fallback) {
+        this(fallback, isEnabled());
+    }
+
+    public VectorizedExpressionEngine(final ExpressionEngine fallback, final boolean enabled) {
+        this.fallback = Objects.requireNonNull(fallback);
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates the default expression engine: the JEXL engine, or this engine on top of it
+     * when enabled with {@link #ENABLED_PROPERTY}.
+     */
+    public static ExpressionEngine create() {
+        final ExpressionEngine jexl = new JEXLExpressionEngine();
+        return isEnabled() ? new VectorizedExpressionEngine(jexl, true) : jexl;
+    }
+
+    private static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "false"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyExpressions(final QueryRequest request, final FetchResults results) throws ExpressionException {
+        Preconditions.checkNotNull(request, "request argument");
+        Preconditions.checkNotNull(results, "results argument");
+
+        if (request.getExpressions().isEmpty()) {
+            return;
+        }
+
+        if (enabled) {
+            try {
+                applyVectorized(request.getExpressions(), results);
+                return;
+            } catch (UnsupportedExpressionException e) {
+                LOG.debug("Evaluating the expressions with JEXL: {}", e.getMessage());
+            }
+        }
+        fallback.applyExpressions(request, results);
+    }
+
+    private void applyVectorized(final List<Expression> expressions, final FetchResults results) throws UnsupportedExpressionException {
+        final RequestScope scope = new RequestScope(expressions, results);
+
+        // Evaluate every expression, in the same order as which they appeared in the query,
+        // the results are only stored once all of them were evaluated successfully
+        final Map<String, double[]> derived = Maps.newLinkedHashMap();
+        for (final Expression expression : expressions) {
+            final Value value = getExpression(expression.getExpression()).evaluate(scope);
+            final double[] values = toDoubles(value, scope);
+            scope.derived(expression.getLabel(), values);
+            if (!expression.getTransient()) {
+                derived.put(expression.getLabel(), values);
+            }
+        }
+        results.getColumns().putAll(derived);
+    }
+
+    private VectorExpression getExpression(final String expression) throws UnsupportedExpressionException {
+        try {
+            return expressions.get(expression, () -> {
+                try {
+                    return VectorExpression.parse(expression);
+                } catch (UnsupportedExpressionException e) {
+                    LOG.debug("Expression '{}' can not be vectorized: {}", expression, e.getMessage());
+                    return UNSUPPORTED;
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new UnsupportedExpressionException(e.getMessage());
+        }
+    }
+
+    /**
+     * Converts the result of an expression the same way as {@link org.opennms.netmgt.measurements.utils.Utils#toDouble(Object)} does.
+     */
+    private static double[] toDoubles(final Value value, final RequestScope scope) throws UnsupportedExpressionException {
+        if (!value.type.isNumeric()) {
+            throw new UnsupportedExpressionException("The expression did not return a number.");
+        }
+        final double[] values = value.doubles(scope.size());
+        // Don't share the arrays between columns
+        return scope.isReferenced(values) ? Arrays.copyOf(values, values.length) : values;
+    }
+
+    /**
+     * Resolves the variables the same way as they are looked up in the JEXL context.
+     */
+    private static class RequestScope implements VectorExpression.Scope {
+        private final int size;
+        private final long[] timestamps;
+        private final Map<String, double[]> columns;
+        private final Map<String, Object> constants;
+        private final Map<String, Value> specials = Maps.newHashMap();
+        private final Set<String> labels = Sets.newHashSet();
+        private final Map<String, double[]> derived = Maps.newHashMap();
+        private final Map<double[], Boolean> referenced = new IdentityHashMap<>();
+        private Value index;
+
+        private RequestScope(final List<Expression> expressions, final FetchResults results) {
+            timestamps = results.getTimestamps();
+            size = timestamps.length;
+            columns = results.getColumns();
+            constants = results.getConstants();
+            for (final Expression expression : expressions) {
+                labels.add(expression.getLabel());
+            }
+            for (final double[] column : columns.values()) {
+                referenced.put(column, Boolean.TRUE);
+            }
+
+            specials.put("__inf", Value.ofDouble(Type.DOUBLE, Double.POSITIVE_INFINITY));
+            specials.put("__neg_inf", Value.ofDouble(Type.DOUBLE, Double.NEGATIVE_INFINITY));
+            specials.put("NaN", Value.ofDouble(Type.DOUBLE, Double.NaN));
+            specials.put("__E", Value.ofDouble(Type.DOUBLE, Math.E));
+            specials.put("__PI", Value.ofDouble(Type.DOUBLE, Math.PI));
+            specials.put("__diff_time", Value.ofDouble(Type.DOUBLE, size < 1 ? 0d : timestamps[size - 1] - timestamps[0]));
+            specials.put("__step", Value.ofLong(results.getStep()));
+        }
+
+        private void derived(final String label, final double[] values) {
+            derived.put(label, values);
+            referenced.put(values, Boolean.TRUE);
+        }
+
+        private boolean isReferenced(final double[] values) {
+            return referenced.containsKey(values);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Value resolve(final String name) throws UnsupportedExpressionException {
+            // The columns and the row details are (re)set before evaluating every expression
+            final double[] column = columns.get(name);
+            if (column != null) {
+                if (column.length != size) {
+                    throw new UnsupportedExpressionException("Column '" + name + "' has a different length than the timestamps.");
+                }
+                return Value.ofDoubles(Type.DOUBLE, column);
+            }
+            if (name.startsWith("__") && columns.containsKey(name.substring(2))) {
+                throw new UnsupportedExpressionException("Reference to the samples of '" + name + "'.");
+            }
+            if ("timestamp".equals(name)) {
+                return Value.ofLongs(timestamps);
+            }
+            if ("__i".equals(name)) {
+                if (index == null) {
+                    final long[] values = new long[size];
+                    for (int i = 0; i < size; i++) {
+                        values[i] = i;
+                    }
+                    index = Value.ofLongs(values);
+                }
+                return index;
+            }
+
+            // The results of the previous expressions of the row
+            final double[] values = derived.get(name);
+            if (values != null) {
+                return Value.ofDoubles(Type.DOUBLE, values);
+            }
+            if (labels.contains(name)) {
+                throw new UnsupportedExpressionException("Reference to the result of '" + name + "' from a previous row.");
+            }
+
+            final Value special = specials.get(name);
+            if (special != null) {
+                return special;
+            }
+            if (!constants.containsKey(name)) {
+                return null;
+            }
+            final Object constant = constants.get(name);
+            if (constant instanceof Double) {
+                return Value.ofDouble(Type.DOUBLE, (Double) constant);
+            } else if (constant instanceof Float) {
+                return Value.ofDouble(Type.FLOAT, Double.parseDouble(constant.toString()));
+            } else if (constant instanceof Integer || constant instanceof Long
+                    || constant instanceof Short || constant instanceof Byte) {
+                return Value.ofLong(((Number) constant).longValue());
+            }
+            throw new UnsupportedExpressionException("Constant '" + name + "' is not a number.");
+        }
+    }
+}
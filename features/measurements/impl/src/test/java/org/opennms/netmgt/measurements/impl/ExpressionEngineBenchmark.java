@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to compare the JEXL and the vectorized expression engines.
+ * <p>
+ * The expressions are the ones generated by the UI from the mib2.HCbits graph definition, as shown in
+ * the KSC reports, along with a discard percentage limited with LIMIT, and are evaluated over a year of
+ * 5 minute samples.
+ */
+public class ExpressionEngineBenchmark {
+
+    private static final int ONE_YEAR_OF_5_MINUTE_SAMPLES = 365 * 24 * 12;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @State(Scope.Benchmark)
+    public static class BState {
+
+        @Param({"jexl", "vectorized"})
+        public String engine;
+
+        private ExpressionEngine expressionEngine;
+        private QueryRequest request;
+        private long[] timestamps;
+        private Map<String, double[]> columns;
+        private Map<String, Object> constants;
+
+        @Setup
+        public void setup() {
+            expressionEngine = "jexl".equals(engine) ? new JEXLExpressionEngine() : new VectorizedExpressionEngine(new JEXLExpressionEngine(), true);
+
+            final List<Expression> expressions = Lists.newArrayList(
+                    new Expression("rawbitsIn", "(octIn * 8)", false),
+                    new Expression("rawbitsOut", "(octOut * 8)", false),
+                    new Expression("rawbitsOutNeg", "(0 - rawbitsOut)", false),
+                    new Expression("bytesIn", "(( (octIn == NaN) ? 1 : 0) != 0 ? 0 : octIn)", true),
+                    new Expression("bytesOut", "(( (octOut == NaN) ? 1 : 0) != 0 ? 0 : octOut)", true),
+                    new Expression("outSum", "(bytesOut * (__diff_time / 1000))", false),
+                    new Expression("inSum", "(bytesIn * (__diff_time / 1000))", false),
+                    new Expression("totSum", "(outSum + inSum)", false),
+                    new Expression("percentIn", "( ( ( ifInDiscards == NaN ) && ( ifInUcastpkts == NaN ) ) ? NaN : ( ( ifInDiscards * 100 ) / ( ifInUcastpkts + 1 ) ) )", false),
+                    new Expression("limitedIn", "( ( (0 == __inf) || (0 == __neg_inf) || (100 == __inf) || (100 == __neg_inf) || (percentIn == __inf) || (percentIn == __neg_inf) || (percentIn < 0) || (percentIn > 100) ) ? NaN : percentIn )", false));
+            request = new QueryRequest();
+            request.setExpressions(expressions);
+
+            final Random random = new Random(123456L);
+            timestamps = new long[ONE_YEAR_OF_5_MINUTE_SAMPLES];
+            columns = Maps.newHashMap();
+            for (final String source : new String[]{"octIn", "octOut", "ifInDiscards", "ifInUcastpkts"}) {
+                final double[] values = new double[ONE_YEAR_OF_5_MINUTE_SAMPLES];
+                for (int i = 0; i < values.length; i++) {
+                    // Leave a few gaps
+                    values[i] = random.nextInt(100) == 0 ? Double.NaN : random.nextDouble() * 1.0e6;
+                }
+                columns.put(source, values);
+            }
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = 1500000000000L + i * 300000L;
+            }
+            constants = Maps.newHashMap();
+        }
+
+        public FetchResults results() {
+            return new FetchResults(timestamps, Maps.newHashMap(columns), 300000, constants, null);
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 2)
+    public void applyExpressions(BState state, Blackhole blackhole) throws Exception {
+        final FetchResults results = state.results();
+        state.expressionEngine.applyExpressions(state.request, results);
+        blackhole.consume(results);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class VectorizedExpressionEngineTest {
+
+    private final ExpressionEngine jexlExpressionEngine = new JEXLExpressionEngine();
+
+    private final AtomicInteger fallbacks = new AtomicInteger();
+
+    private final ExpressionEngine vectorizedExpressionEngine = new VectorizedExpressionEngine((request, results) -> {
+        fallbacks.incrementAndGet();
+        jexlExpressionEngine.applyExpressions(request, results);
+    }, true);
+
+    @Test
+    public void canVectorizeGraphExpressions() throws ExpressionException {
+        // Expressions generated from the RRD graph definitions
+        for (final String expression : Arrays.asList(
+                "x * 5 + 7",
+                "(octIn * 8)",
+                "(0 - (octOut * 8))",
+                "(( (octIn == NaN) ? 1 : 0) != 0 ? 0 : octIn)",
+                "((( (octIn == NaN) ? 1 : 0) != 0 ? 0 : octIn) * (__diff_time / 1000))",
+                "( ( (0 == __inf) || (0 == __neg_inf) || (100 == __inf) || (100 == __neg_inf) || (x == __inf) || (x == __neg_inf) || (x < 0) || (x > 100) ) ? NaN : x )",
+                "( ( octIn == NaN ) ? octOut : ( ( octOut == NaN ) ? octIn : math:min(octOut,octIn) ) )",
+                "( ( ( octIn == NaN ) && ( octOut == NaN ) ) ? NaN : ( ( octIn == NaN ) ? octOut : ( ( octOut == NaN ) ? octIn : ( octIn + octOut ) ) ) )",
+                "(x >= 50 ? 1 : 0)",
+                "(x <= octIn ? x : octIn)",
+                "math:sin(x) + strictmath:cos(x) * math:pow(x, 2)",
+                "math:max(x, 0.5) - math:abs(-x)",
+                "timestamp / 1000",
+                "timestamp / 125.0d",
+                "-x % 7",
+                "speed / 0.62137",
+                "speed * 8 / 3",
+                "1 * __step",
+                "x lt 3 or x ge 97 ? 1.5 : 2.5")) {
+            fallbacks.set(0);
+            assertSameResults(expression);
+            assertEquals("Expected '" + expression + "' to be vectorized.", 0, fallbacks.get());
+        }
+    }
+
+    @Test
+    public void fallsBackToJexl() throws ExpressionException {
+        for (final String expression : Arrays.asList(
+                "__x[__i > 0 ? __i - 1 : 0]",
+                "math:random() * 0 + x",
+                "x + (x > 3 ? 1 : 0.5)",
+                "0x10 + x")) {
+            fallbacks.set(0);
+            assertSameResults(expression);
+            assertEquals("Expected '" + expression + "' to fall back to JEXL.", 1, fallbacks.get());
+        }
+    }
+
+    @Test
+    public void canReferencePreviousExpressions() throws ExpressionException {
+        final List<Expression> expressions = Lists.newArrayList(
+                new Expression("bits", "octIn * 8", true),
+                new Expression("kbits", "bits / 1000", false),
+                new Expression("total", "bits + kbits", false));
+        final FetchResults jexlResults = evaluate(jexlExpressionEngine, expressions);
+        final FetchResults vectorizedResults = evaluate(vectorizedExpressionEngine, expressions);
+
+        assertFalse(vectorizedResults.getColumns().containsKey("bits"));
+        assertArrayEquals(jexlResults.getColumns().get("kbits"), vectorizedResults.getColumns().get("kbits"), 0);
+        assertArrayEquals(jexlResults.getColumns().get("total"), vectorizedResults.getColumns().get("total"), 0);
+        assertEquals(0, fallbacks.get());
+    }
+
+    @Test(expected = ExpressionException.class)
+    public void failsWhenExpressionHasInvalidSyntax() throws ExpressionException {
+        evaluate(vectorizedExpressionEngine, Lists.newArrayList(new Expression("y", "/", false)));
+    }
+
+    @Test(expected = ExpressionException.class)
+    public void failsWhenExpressionDoesNotReturnADouble() throws ExpressionException {
+        evaluate(vectorizedExpressionEngine, Lists.newArrayList(new Expression("y", "!(!true)", false)));
+    }
+
+    private void assertSameResults(String expression) throws ExpressionException {
+        final List<Expression> expressions = Lists.newArrayList(new Expression("y", expression, false));
+        final double[] expected = evaluate(jexlExpressionEngine, expressions).getColumns().get("y");
+        final double[] actual = evaluate(vectorizedExpressionEngine, expressions).getColumns().get("y");
+        assertArrayEquals(expression, expected, actual, 0);
+    }
+
+    private static FetchResults evaluate(ExpressionEngine engine, List<Expression> expressions) throws ExpressionException {
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(expressions);
+
+        final int N = 100;
+        final long[] timestamps = new long[N];
+        final double[] xValues = new double[N];
+        final double[] octIn = new double[N];
+        final double[] octOut = new double[N];
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = 1500000000000L + i * 300000L;
+            xValues[i] = i;
+            octIn[i] = i % 10 == 0 ? Double.NaN : i * 1234.5;
+            octOut[i] = i % 7 == 0 ? Double.NaN : i % 11 == 0 ? Double.POSITIVE_INFINITY : i * 42.1;
+        }
+        final Map<String, double[]> values = Maps.newHashMap();
+        values.put("x", xValues);
+        values.put("octIn", octIn);
+        values.put("octOut", octOut);
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("speed", 65);
+
+        final FetchResults results = new FetchResults(timestamps, values, 300000, constants, null);
+        engine.applyExpressions(request, results);
+        return results;
+    }
+}
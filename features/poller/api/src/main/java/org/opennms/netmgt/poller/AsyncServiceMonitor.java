@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that is able to perform its poll without blocking
+ * the calling thread.
+ * </p>
+ *
+ * <P>
+ * Callers that are aware of this interface should prefer
+ * {@link #pollAsync(MonitoredService, Map)}, which returns as soon as the
+ * poll has been started and completes the returned future once the status of
+ * the service is known. The blocking {@link #poll(MonitoredService, Map)} is
+ * kept for callers that are not, and simply waits for the asynchronous poll.
+ * </P>
+ *
+ * <P>
+ * <STRONG>NOTE: </STRONG> The future is typically completed from an I/O
+ * thread shared by all of the asynchronous monitors. Dependent stages must
+ * not block, or use one of the <EM>async</EM> variants with their own
+ * executor.
+ * </P>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Starts polling the given service.
+     *
+     * @param svc
+     *            Includes details about to the service being monitored.
+     * @param parameters
+     *            Includes the service parameters defined in <EM>poller-configuration.xml</EM> and those
+     *            returned by {@link #getRuntimeAttributes(MonitoredService, Map)}.
+     * @return a future completed with the availability of the service, or exceptionally
+     *         if an unrecoverable error prevented the service from being monitored
+     * @exception java.lang.RuntimeException
+     *                Thrown if the poll cannot be started, i.e. because a required
+     *                parameter is missing.
+     */
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters);
+
+    /**
+     * {@inheritDoc}
+     *
+     * Waits for the result of {@link #pollAsync(MonitoredService, Map)}.
+     */
+    @Override
+    public default PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        try {
+            return pollAsync(svc, parameters).join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -30,10 +30,12 @@ package org.opennms.netmgt.poller.client.rpc;
 
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.poller.ServiceMonitorRegistry;
@@ -68,6 +70,24 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
             return CompletableFuture.completedFuture(new PollerResponseDTO(PollStatus.unknown("No monitor found with class name '" + className + "'.")));
         }
 
+        if (monitor instanceof AsyncServiceMonitor) {
+            // The monitor does not block while waiting on the service, so only the completion,
+            // and whatever the caller chains onto it, is handed off to the executor
+            CompletableFuture<PollStatus> future;
+            try {
+                future = ((AsyncServiceMonitor)monitor).pollAsync(request, request.getMonitorParameters());
+            } catch (RuntimeException e) {
+                future = CompletableFuture.completedFuture(PollStatus.unknown(e.getMessage()));
+            }
+            return future.handleAsync((pollStatus, ex) -> {
+                if (ex != null) {
+                    final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    pollStatus = PollStatus.unknown(cause.getMessage());
+                }
+                return new PollerResponseDTO(pollStatus);
+            }, executor);
+        }
+
         return CompletableFuture.supplyAsync(new Supplier<PollerResponseDTO>() {
             @Override
             public PollerResponseDTO get() {
@@ -28,23 +28,23 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.monitors.support.FtpResponse;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
+import org.opennms.netmgt.poller.monitors.support.NioConversationClient;
 import org.opennms.netmgt.poller.monitors.support.ParameterSubstitutingMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +58,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="mailto:tarus@opennms.org">Tarus Balog </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
-public class FtpMonitor extends ParameterSubstitutingMonitor {
+public class FtpMonitor extends ParameterSubstitutingMonitor implements AsyncServiceMonitor {
     
     
     public static final Logger LOG = LoggerFactory.getLogger(FtpMonitor.class);
@@ -93,7 +93,7 @@ public class FtpMonitor extends ParameterSubstitutingMonitor {
      * valid we set the service status to SERVICE_AVAILABLE and return.
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         // Get the parameters
         TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
         int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
@@ -103,126 +103,159 @@ public class FtpMonitor extends ParameterSubstitutingMonitor {
         // Extract the address
         InetAddress ipAddr = svc.getAddress();
 
-        PollStatus serviceStatus = PollStatus.unavailable();
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-
+        return NioConversationClient.converse(ipAddr, port, false, tracker, () -> {
             LOG.debug("FtpMonitor.poll: Polling interface: {} {}", InetAddressUtils.str(ipAddr), tracker);
+            return new FtpConversation(ipAddr, port, userid, password);
+        });
+    }
+
+    /**
+     * Reads the banner, logs in if credentials are available and sends QUIT,
+     * checking the response to each of them.
+     */
+    private static final class FtpConversation extends LineConversation {
+        private enum State {
+            BANNER,
+            USER,
+            PASS,
+            QUIT
+        }
 
-            Socket socket = null;
-            try {
-                // create a connected socket
-                tracker.startAttempt();
+        private final InetAddress m_ipAddr;
+        private final int m_port;
+        private final String m_userid;
+        private final String m_password;
 
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
-                LOG.debug("FtpMonitor: connected to host: {} on port: {}", ipAddr, port);
+        private State m_state = State.BANNER;
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
+        private FtpResponse.LineParser m_parser = new FtpResponse.LineParser();
 
-                BufferedReader lineRdr = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                
-                FtpResponse bannerResponse = FtpResponse.readResponse(lineRdr);
+        private double m_responseTime;
+
+        private FtpConversation(final InetAddress ipAddr, final int port, final String userid, final String password) {
+            m_ipAddr = ipAddr;
+            m_port = port;
+            m_userid = userid;
+            m_password = password;
+        }
 
-                if (bannerResponse.isSuccess()) {
+        @Override
+        protected void connected() {
+            LOG.debug("FtpMonitor: connected to host: {} on port: {}", m_ipAddr, m_port);
+        }
+
+        @Override
+        protected void lineReceived(final String line) throws IOException {
+            final FtpResponse response = m_parser.parseLine(line);
+            if (response != null) {
+                m_parser = new FtpResponse.LineParser();
+                responseReceived(response);
+            }
+        }
+
+        private void responseReceived(final FtpResponse response) {
+            switch (m_state) {
+            case BANNER:
+                if (response.isSuccess()) {
                     // Attempt to login if userid and password available
-                    boolean loggedInSuccessfully = false;
                     LOG.debug("FtpMonitor: Banner response successful.");
-                    if (userid == null || userid.length() == 0 || password == null || password.length() == 0) {
-                        loggedInSuccessfully = true;
+                    if (m_userid == null || m_userid.length() == 0 || m_password == null || m_password.length() == 0) {
+                        quit();
                     } else {
-                        FtpResponse.sendCommand(socket, "USER " + userid);
-
-                        FtpResponse userResponse = FtpResponse.readResponse(lineRdr);
-
-                        if (userResponse.isSuccess() || userResponse.isIntermediate()) {
-                            LOG.debug("FtpMonitor: User response successful.");
-                            FtpResponse.sendCommand(socket, "PASS " + password);
-                            
-                            FtpResponse passResponse = FtpResponse.readResponse(lineRdr);
-                            if (passResponse.isSuccess()) {
-                                LOG.debug("FtpMonitor.poll: Login successful, parsed return code: {}", passResponse.getCode());
-                                loggedInSuccessfully = true;
-                            } else {
-                                LOG.debug("FtpMonitor.poll: Login failed, parsed return code: {}, full response: {}", passResponse.getCode(), passResponse);
-                                loggedInSuccessfully = false;
-                            }
-                        }
-                    }
-
-                    // Store the response time before we try to quit
-                    double responseTime = tracker.elapsedTimeInMillis();
-
-                    if (loggedInSuccessfully) {
-                        FtpResponse.sendCommand(socket, "QUIT");
-
-                        FtpResponse quitResponse = FtpResponse.readResponse(lineRdr);
-
-                        /*
-                         * Special Cases for success:
-                         * 
-                         * Also want to accept the following
-                         * ERROR message generated by some FTP servers
-                         * following a QUIT command without a previous
-                         * successful login:
-                         *
-                         * "530 QUIT : User not logged in. Please login with
-                         * USER and PASS first."
-                         * 
-                         * Also want to accept the following ERROR
-                         * message generated by some FTP servers following a
-                         * QUIT command without a previously successful login:
-                         *
-                         * "425 Session is disconnected."
-                         */
-                        if (quitResponse.isSuccess()
-                                || (quitResponse.getCode() == 530 ) || (quitResponse.getCode() == 425 )) {
-                            serviceStatus = PollStatus.available(responseTime);
-                        }
+                        m_state = State.USER;
+                        sendCommand("USER " + m_userid);
                     }
+                } else {
+                    complete(PollStatus.unavailable());
                 }
-
+                break;
+            case USER:
+                if (response.isSuccess() || response.isIntermediate()) {
+                    LOG.debug("FtpMonitor: User response successful.");
+                    m_state = State.PASS;
+                    sendCommand("PASS " + m_password);
+                } else {
+                    complete(PollStatus.unavailable());
+                }
+                break;
+            case PASS:
+                if (response.isSuccess()) {
+                    LOG.debug("FtpMonitor.poll: Login successful, parsed return code: {}", response.getCode());
+                    quit();
+                } else {
+                    LOG.debug("FtpMonitor.poll: Login failed, parsed return code: {}, full response: {}", response.getCode(), response);
+                    complete(PollStatus.unavailable());
+                }
+                break;
+            case QUIT:
                 /*
-                 * If we get this far and the status has not been set
-                 * to available, then something didn't verify during
-                 * the banner checking or login/QUIT command process.
+                 * Special Cases for success:
+                 * 
+                 * Also want to accept the following
+                 * ERROR message generated by some FTP servers
+                 * following a QUIT command without a previous
+                 * successful login:
+                 *
+                 * "530 QUIT : User not logged in. Please login with
+                 * USER and PASS first."
+                 * 
+                 * Also want to accept the following ERROR
+                 * message generated by some FTP servers following a
+                 * QUIT command without a previously successful login:
+                 *
+                 * "425 Session is disconnected."
                  */
-                if (!serviceStatus.isAvailable()) {
-                    serviceStatus = PollStatus.unavailable();
+                if (response.isSuccess()
+                        || (response.getCode() == 530 ) || (response.getCode() == 425 )) {
+                    complete(PollStatus.available(m_responseTime));
+                } else {
+                    complete(PollStatus.unavailable());
                 }
-            } catch (NumberFormatException e) {
-            	String reason = "NumberFormatException while polling address: " + ipAddr;
+                break;
+            }
+        }
+
+        private void quit() {
+            // Store the response time before we try to quit
+            m_responseTime = elapsedTimeInMillis();
+            m_state = State.QUIT;
+            sendCommand("QUIT");
+        }
+
+        private void sendCommand(final String command) {
+            send(command + "\r\n");
+        }
+
+        @Override
+        protected void endOfStream() throws IOException {
+            throw m_parser.endOfStream();
+        }
+
+        @Override
+        protected void exceptionCaught(final Throwable e) {
+            if (e instanceof NumberFormatException) {
+                String reason = "NumberFormatException while polling address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (NoRouteToHostException e) {
-            	String reason = "No route to host exception for address: " + ipAddr;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (InterruptedIOException e) {
-            	String reason = "did not connect to host with " + tracker;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "did not connect to host with " + getTracker();
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (ConnectException e) {
-            	String reason = "Connection exception for address: " + ipAddr;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof ConnectException) {
+                String reason = "Connection exception for address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-            	String reason = "IOException while polling address: " + ipAddr;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null) {
-                        socket.close();
-                    }
-                } catch (IOException e) {
-                    LOG.debug("FtpMonitor.poll: Error closing socket", e);
-                }
+                complete(PollStatus.unavailable(reason));
+            } else {
+                super.exceptionCaught(e);
             }
         }
-
-        return serviceStatus;
     }
 }
@@ -28,33 +28,30 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
-import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.opennms.core.utils.Base64;
-import org.opennms.core.utils.DefaultSocketWrapper;
 import org.opennms.core.utils.IPLike;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
-import org.opennms.core.utils.SocketWrapper;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
+import org.opennms.netmgt.poller.monitors.support.NioConversationClient;
 import org.opennms.netmgt.poller.monitors.support.ParameterSubstitutingMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,7 +66,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="mailto:mike@opennms.org">Mike </A>
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  */
-public class HttpMonitor extends ParameterSubstitutingMonitor {
+public class HttpMonitor extends ParameterSubstitutingMonitor implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(HttpMonitor.class);
     
@@ -121,106 +118,51 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
      * SERVICE_AVAILABLE and return.
      */
     @Override
-    public PollStatus poll(final MonitoredService svc, final Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
         final InetAddress addr = svc.getAddress();
         final String nodeLabel = svc.getNodeLabel();
 
-        // Cycle through the port list
-        //
-        int currentPort = -1;
         final HttpMonitorClient httpClient = new HttpMonitorClient(nodeLabel, addr, new TreeMap<String, Object>(parameters));
+        return pollPort(svc, parameters, httpClient, 0);
+    }
 
-        for (int portIndex = 0; portIndex < determinePorts(httpClient.getParameters()).length && httpClient.getPollStatus() != PollStatus.SERVICE_AVAILABLE; portIndex++) {
-            currentPort = determinePorts(httpClient.getParameters())[portIndex];
-
-            httpClient.setTimeoutTracker(new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT));
-            LOG.debug("Port = {}, Address = {}, {}", currentPort, addr, httpClient.getTimeoutTracker());
-            
-            httpClient.setCurrentPort(currentPort);
-            String serviceInfo = new StringBuilder(addr.toString())
-            .append(":").append(svc.getSvcName()).append(":").append(currentPort)
-            .toString();
-
-            for(httpClient.getTimeoutTracker().reset();
-                httpClient.getTimeoutTracker().shouldRetry() && httpClient.getPollStatus() != PollStatus.SERVICE_AVAILABLE; 
-                httpClient.getTimeoutTracker().nextAttempt()) {
-                
-                try {
-                    httpClient.getTimeoutTracker().startAttempt();                    
-                    httpClient.connect();
-                    LOG.debug("HttpMonitor: connected to host: {} on port: {}", addr, currentPort);
-
-                    httpClient.sendHttpCommand();
-                    
-                    if (httpClient.isEndOfStream()) {
-                        continue;
-                    }
-
-                    httpClient.setResponseTime(httpClient.getTimeoutTracker().elapsedTimeInMillis());
-                    logResponseTimes(httpClient.getResponseTime(), httpClient.getCurrentLine());
-
-                    if (httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(httpClient.getResponseText())) {
-                        httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
-                        httpClient.readLinedMatching();
-                        
-                        if (httpClient.isEndOfStream()) {
-                            continue;
-                        }
+    /**
+     * Cycle through the port list, until the service is found to be available on one of them.
+     */
+    private CompletableFuture<PollStatus> pollPort(final MonitoredService svc, final Map<String, Object> parameters, final HttpMonitorClient httpClient, final int portIndex) {
+        final InetAddress addr = httpClient.m_addr;
+        final int[] ports = determinePorts(httpClient.getParameters());
+        if (portIndex >= ports.length || httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE || httpClient.isNoRouteToHost()) {
+            return CompletableFuture.completedFuture(httpClient.determinePollStatusResponse());
+        }
 
-                        httpClient.read();
+        final int currentPort = ports[portIndex];
 
-                        if (!httpClient.isResponseTextFound()) {
-                            String message = "Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response for " + serviceInfo;
-                            LOG.debug(message);
-                            httpClient.setReason("Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response");
-                        }
-                    }
-                    
-                } catch (NoRouteToHostException e) {
-                    LOG.warn("checkStatus: No route to host exception while polling {}", serviceInfo, e);
-                    portIndex = determinePorts(httpClient.getParameters()).length; // Will cause outer for(;;) to terminate
-                    httpClient.setReason("No route to host exception");
-                } catch (SocketTimeoutException e) {
-                    LOG.info("checkStatus: HTTP socket connection for service {} timed out with {}", serviceInfo, httpClient.getTimeoutTracker().toString());
-                    httpClient.setReason("HTTP connection timeout");
-                } catch (InterruptedIOException e) {
-                    LOG.info(String.format("checkStatus: HTTP connection for service {} interrupted after {} bytes transferred with {}", serviceInfo, e.bytesTransferred, httpClient.getTimeoutTracker().toString()), e);
-                    httpClient.setReason(String.format("HTTP connection interrupted, %d bytes transferred", e.bytesTransferred));
-                } catch (ConnectException e) {
-                    LOG.warn("Connection exception for {}", serviceInfo, e);
-                    httpClient.setReason("HTTP connection exception on port: "+determinePorts(httpClient.getParameters())[portIndex]+": "+e.getMessage());
-                } catch (IOException e) {
-                    String exceptionClass = e.getClass().getSimpleName();
-                    LOG.warn("{} while polling {}", exceptionClass, serviceInfo, e);
-                    httpClient.setReason("IOException while polling address: "+addr+": "+e.getMessage());
-                } catch (Throwable e) {
-                    String exceptionClass = e.getClass().getSimpleName();
-                    LOG.warn("Unexpected {} while polling {}", exceptionClass, serviceInfo, e);
-                    httpClient.setReason("Unexpected exception while polling address: "+addr+": "+e.getMessage());
-                } finally {
-                    httpClient.closeConnection();
-                }
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        httpClient.setTimeoutTracker(tracker);
+        LOG.debug("Port = {}, Address = {}, {}", currentPort, addr, tracker);
 
-            } // end for (attempts)
-        } // end for (ports)
-        return httpClient.determinePollStatusResponse();
+        httpClient.setCurrentPort(currentPort);
+        final String serviceInfo = new StringBuilder(addr.toString())
+        .append(":").append(svc.getSvcName()).append(":").append(currentPort)
+        .toString();
 
+        return NioConversationClient.converse(addr, currentPort, isSslEnabled(), tracker, () -> new HttpConversation(httpClient, serviceInfo))
+                .thenCompose(status -> pollPort(svc, parameters, httpClient, portIndex + 1));
     }
 
-    private void logResponseTimes(Double responseTime, String line) {
+    private static void logResponseTimes(Double responseTime, String line) {
         LOG.debug("poll: response= {}", line);
         LOG.debug("poll: responseTime= {}ms", responseTime);
     }
 
     /**
-     * <p>wrapSocket</p>
+     * <p>isSslEnabled</p>
      *
-     * @param socket a {@link java.net.Socket} object.
-     * @return a {@link java.net.Socket} object.
-     * @throws java.io.IOException if any.
+     * @return true if SSL/TLS must be negotiated as soon as the connection is established
      */
-    protected SocketWrapper getSocketWrapper() {
-        return new DefaultSocketWrapper();
+    protected boolean isSslEnabled() {
+        return false;
     }
 
     private static boolean determineVerbosity(final Map<String, Object> parameters) {
@@ -303,12 +245,9 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
         final InetAddress m_addr;
         final Map<String, Object> m_parameters;
         String m_httpCmd;
-        Socket m_httpSocket;
-        private BufferedReader m_lineRdr;
         private String m_currentLine;
         private int m_serviceStatus;
         private String m_reason;
-        private final StringBuilder m_html = new StringBuilder();
         private int m_serverResponseCode;
         private TimeoutTracker m_timeoutTracker;
         private int m_currentPort;
@@ -316,6 +255,7 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
         private boolean m_responseTextFound = false;
         private final String m_nodeLabel;
         private boolean m_headerFinished = false;
+        private boolean m_noRouteToHost = false;
         
         HttpMonitorClient(final String nodeLabel, final InetAddress addr, final Map<String, Object>parameters) {
             m_nodeLabel = nodeLabel;
@@ -326,15 +266,6 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             m_responseText = determineResponseText(parameters);
         }
         
-        public void read() throws IOException {
-            for (int nullCount = 0; nullCount < 2;) {
-                readLinedMatching();
-                if (isEndOfStream()) {
-                    nullCount++;
-                }
-            }
-        }
-
         public int getCurrentPort() {
             return m_currentPort;
         }
@@ -350,6 +281,14 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             m_responseTextFound  = found;
         }
 
+        public boolean isNoRouteToHost() {
+            return m_noRouteToHost;
+        }
+
+        public void setNoRouteToHost(final boolean noRouteToHost) {
+            m_noRouteToHost = noRouteToHost;
+        }
+
         private String determineVirtualHost(final InetAddress addr, final Map<String, Object> parameters) {
             final boolean res = ParameterMap.getKeyedBoolean(parameters, PARAMETER_RESOLVE_IP, false);
             final boolean useNodeLabel = ParameterMap.getKeyedBoolean(parameters, PARAMETER_NODE_LABEL_HOST_NAME, false);
@@ -417,26 +356,6 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             m_responseTime = elapsedTimeInMillis;
         }
 
-        private void connect() throws IOException, SocketException {
-            m_httpSocket = new Socket();
-            m_httpSocket.connect(new InetSocketAddress(m_addr, m_currentPort), m_timeoutTracker.getConnectionTimeout());
-            m_serviceStatus = PollStatus.SERVICE_UNRESPONSIVE;
-            m_httpSocket.setSoTimeout(m_timeoutTracker.getSoTimeout());
-            m_httpSocket = getSocketWrapper().wrapSocket(m_httpSocket);
-        }
-        
-        public void closeConnection() {
-            try {
-                if (m_httpSocket != null) {
-                    m_httpSocket.close();
-                    m_httpSocket = null;
-                }
-            } catch (final IOException e) {
-                e.fillInStackTrace();
-                HttpMonitor.LOG.warn("Error closing socket connection", e);
-            }
-        }
-
         public int getPollStatus() {
             return m_serviceStatus;
         }
@@ -508,19 +427,18 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             return false;
         }
 
-        public String readLine() throws IOException {
-            m_currentLine = m_lineRdr.readLine();
+        public String lineReceived(final String line) {
+            m_currentLine = line;
             
             if (determineVerbosity(m_parameters) && HttpMonitor.LOG.isDebugEnabled()) {
                 HttpMonitor.LOG.debug("\t<<: {}", m_currentLine);
             }
             
-            m_html.append(m_currentLine);
             return m_currentLine;
         }
 
-        public String readLinedMatching() throws IOException {
-            readLine();
+        public String lineReceivedMatching(final String line) {
+            lineReceived(line);
             
             if (m_responseText != null && m_currentLine != null && !m_responseTextFound) {
                 if (checkCurrentLineMatchesResponseText()) {
@@ -533,13 +451,15 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             return m_currentLine;
         }
 
-        public void sendHttpCommand() throws IOException {
+        public String getHttpCommand() {
             if (determineVerbosity(m_parameters) && HttpMonitor.LOG.isDebugEnabled()) {
                 HttpMonitor.LOG.debug("Sending HTTP command: {}", m_httpCmd);
             }
-            m_httpSocket.getOutputStream().write(m_httpCmd.getBytes());
-            m_lineRdr = new BufferedReader(new InputStreamReader(m_httpSocket.getInputStream()));
-            readLine();
+            return m_httpCmd;
+        }
+
+        public void statusLineReceived(final String line) {
+            lineReceived(line);
             if (determineVerbosity(m_parameters)) {
                 HttpMonitor.LOG.debug("Server response: {}", m_currentLine);
             }
@@ -584,14 +504,6 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
             return m_reason;
         }
 
-        public Socket getHttpSocket() {
-            return m_httpSocket;
-        }
-
-        public void setHttpSocket(final Socket httpSocket) {
-            m_httpSocket = httpSocket;
-        }
-
         protected PollStatus determinePollStatusResponse() {
             /*
              Add the 'qualifier' parm to the parameter map. This parm will
@@ -632,4 +544,107 @@ public class HttpMonitor extends ParameterSubstitutingMonitor {
         
     }
 
+    /**
+     * Sends the GET request and checks the status line and, if a response text
+     * is configured, the body of the response. The outcome is accumulated in the
+     * {@link HttpMonitorClient} shared by all of the attempts and ports.
+     */
+    private static final class HttpConversation extends LineConversation {
+        private enum State {
+            STATUS_LINE,
+            BODY
+        }
+
+        private final HttpMonitorClient m_httpClient;
+        private final String m_serviceInfo;
+
+        private State m_state = State.STATUS_LINE;
+
+        private boolean m_bodyReceived = false;
+
+        private HttpConversation(final HttpMonitorClient httpClient, final String serviceInfo) {
+            m_httpClient = httpClient;
+            m_serviceInfo = serviceInfo;
+        }
+
+        @Override
+        protected void connected() {
+            m_httpClient.setPollStatus(PollStatus.SERVICE_UNRESPONSIVE);
+            LOG.debug("HttpMonitor: connected to host: {} on port: {}", m_httpClient.m_addr, m_httpClient.getCurrentPort());
+
+            send(m_httpClient.getHttpCommand());
+        }
+
+        @Override
+        protected void lineReceived(final String line) {
+            switch (m_state) {
+            case STATUS_LINE:
+                m_httpClient.statusLineReceived(line);
+
+                m_httpClient.setResponseTime(elapsedTimeInMillis());
+                logResponseTimes(m_httpClient.getResponseTime(), m_httpClient.getCurrentLine());
+
+                if (m_httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(m_httpClient.getResponseText())) {
+                    m_httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
+                    m_state = State.BODY;
+                } else {
+                    completeAttempt();
+                }
+                break;
+            case BODY:
+                m_bodyReceived = true;
+                m_httpClient.lineReceivedMatching(line);
+                if (m_httpClient.isResponseTextFound()) {
+                    completeAttempt();
+                }
+                break;
+            }
+        }
+
+        @Override
+        protected void endOfStream() {
+            if (m_state == State.STATUS_LINE) {
+                m_httpClient.statusLineReceived(null);
+            } else if (m_bodyReceived && !m_httpClient.isResponseTextFound()) {
+                String message = "Matching text: ["+m_httpClient.getResponseText()+"] not found in body of HTTP response for " + m_serviceInfo;
+                LOG.debug(message);
+                m_httpClient.setReason("Matching text: ["+m_httpClient.getResponseText()+"] not found in body of HTTP response");
+            }
+            completeAttempt();
+        }
+
+        @Override
+        protected void exceptionCaught(final Throwable e) {
+            final TimeoutTracker tracker = getTracker();
+            if (e instanceof NoRouteToHostException) {
+                LOG.warn("checkStatus: No route to host exception while polling {}", m_serviceInfo, e);
+                m_httpClient.setNoRouteToHost(true); // Will cause the remaining ports to be skipped
+                stopRetrying();
+                m_httpClient.setReason("No route to host exception");
+            } else if (e instanceof SocketTimeoutException) {
+                LOG.info("checkStatus: HTTP socket connection for service {} timed out with {}", m_serviceInfo, tracker.toString());
+                m_httpClient.setReason("HTTP connection timeout");
+            } else if (e instanceof InterruptedIOException) {
+                LOG.info(String.format("checkStatus: HTTP connection for service {} interrupted after {} bytes transferred with {}", m_serviceInfo, ((InterruptedIOException)e).bytesTransferred, tracker.toString()), e);
+                m_httpClient.setReason(String.format("HTTP connection interrupted, %d bytes transferred", ((InterruptedIOException)e).bytesTransferred));
+            } else if (e instanceof ConnectException) {
+                LOG.warn("Connection exception for {}", m_serviceInfo, e);
+                m_httpClient.setReason("HTTP connection exception on port: "+m_httpClient.getCurrentPort()+": "+e.getMessage());
+            } else if (e instanceof IOException) {
+                String exceptionClass = e.getClass().getSimpleName();
+                LOG.warn("{} while polling {}", exceptionClass, m_serviceInfo, e);
+                m_httpClient.setReason("IOException while polling address: "+m_httpClient.m_addr+": "+e.getMessage());
+            } else {
+                String exceptionClass = e.getClass().getSimpleName();
+                LOG.warn("Unexpected {} while polling {}", exceptionClass, m_serviceInfo, e);
+                m_httpClient.setReason("Unexpected exception while polling address: "+m_httpClient.m_addr+": "+e.getMessage());
+            }
+            completeAttempt();
+        }
+
+        private void completeAttempt() {
+            complete(PollStatus.get(m_httpClient.getPollStatus(), m_httpClient.getReason()));
+        }
+    }
+
 }
@@ -31,8 +31,6 @@ package org.opennms.netmgt.poller.monitors;
 import java.util.Map;
 
 import org.opennms.core.utils.ParameterMap;
-import org.opennms.core.utils.SocketWrapper;
-import org.opennms.core.utils.SslSocketWrapper;
 
 /**
  * This class is designed to be used by the service poller framework to test the
@@ -59,8 +57,8 @@ public class HttpsMonitor extends HttpMonitor {
 
     /** {@inheritDoc} */
     @Override
-    protected SocketWrapper getSocketWrapper() {
-        return new SslSocketWrapper();
+    protected boolean isSslEnabled() {
+        return true;
     }
 
 }
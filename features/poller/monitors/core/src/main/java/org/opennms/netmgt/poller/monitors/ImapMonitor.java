@@ -28,23 +28,21 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import org.opennms.core.utils.DefaultSocketWrapper;
 import org.opennms.core.utils.ParameterMap;
-import org.opennms.core.utils.SocketWrapper;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
+import org.opennms.netmgt.poller.monitors.support.NioConversationClient;
 import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,7 +73,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @version CVS 1.1.1.1
  */
-public class ImapMonitor extends AbstractServiceMonitor {
+public class ImapMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(ImapMonitor.class);
 
     /**
@@ -133,14 +131,14 @@ public class ImapMonitor extends AbstractServiceMonitor {
      * </P>
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         // Process parameters
         //
 
         TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
         // Retries
         //
-	final int port = determinePort(parameters);
+        final int port = determinePort(parameters);
 
         // Get interface address from NetworkInterface
         //
@@ -149,116 +147,107 @@ public class ImapMonitor extends AbstractServiceMonitor {
 
         LOG.debug("ImapMonitor.poll: address: {} port: {} {}", ipAddr, port, tracker);
 
-        PollStatus serviceStatus = PollStatus.unavailable();
+        return NioConversationClient.converse(ipAddr, port, isSslEnabled(), tracker, () -> new ImapConversation(ipAddr));
+    }
 
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            try {
-                //
-                // create a connected socket
-                //
-                tracker.startAttempt();
+    protected int determinePort(final Map<String, Object> parameters) {
+        return ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+    }
 
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
+    /**
+     * <p>isSslEnabled</p>
+     *
+     * @return true if SSL/TLS must be negotiated as soon as the connection is established
+     */
+    protected boolean isSslEnabled() {
+        return false;
+    }
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
-                
- 		// For SSL support
-                socket = getSocketWrapper().wrapSocket(socket);
+    /**
+     * Reads the banner and sends LOGOUT, checking the response.
+     */
+    private static final class ImapConversation extends LineConversation {
+        private enum State {
+            BANNER,
+            BYE,
+            LOGOUT
+        }
 
-                BufferedReader rdr = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        private final InetAddress m_ipAddr;
 
-                //
-                // Tokenize the Banner Line, and check the first
-                // line for a valid return.
-                //
-                String banner = rdr.readLine();
-                
-                double responseTime = tracker.elapsedTimeInMillis();
+        private State m_state = State.BANNER;
 
+        private double m_responseTime;
 
-                LOG.debug("ImapMonitor.Poll(): banner: {}", banner);
+        private ImapConversation(final InetAddress ipAddr) {
+            m_ipAddr = ipAddr;
+        }
 
-                if (banner != null && banner.startsWith(IMAP_START_RESPONSE_PREFIX)) {
-                    //
-                    // Send the LOGOUT
-                    //
-                    socket.getOutputStream().write(IMAP_LOGOUT_REQUEST.getBytes());
+        @Override
+        protected void lineReceived(final String response) {
+            switch (m_state) {
+            case BANNER:
+                m_responseTime = elapsedTimeInMillis();
 
+                LOG.debug("ImapMonitor.Poll(): banner: {}", response);
+
+                if (response.startsWith(IMAP_START_RESPONSE_PREFIX)) {
                     //
-                    // get the returned string, tokenize, and
-                    // verify the correct output.
+                    // Send the LOGOUT
                     //
-                    String response = rdr.readLine();
-                    if (response != null && response.startsWith(IMAP_BYE_RESPONSE_PREFIX)) {
-                        response = rdr.readLine();
-                        if (response != null && response.startsWith(IMAP_LOGOUT_RESPONSE_PREFIX)) {
-                            serviceStatus = PollStatus.available(responseTime);
-                        }
-                    }
+                    m_state = State.BYE;
+                    send(IMAP_LOGOUT_REQUEST);
+                } else {
+                    complete(PollStatus.unavailable());
                 }
-
-                // If we get this far and the status has not been set
-                // to available, then something didn't verify during
-                // the banner checking or logout process.
-                if (!serviceStatus.isAvailable()) {
-                    serviceStatus = PollStatus.unavailable();
+                break;
+            case BYE:
+                if (response.startsWith(IMAP_BYE_RESPONSE_PREFIX)) {
+                    m_state = State.LOGOUT;
+                } else {
+                    complete(PollStatus.unavailable());
+                }
+                break;
+            case LOGOUT:
+                if (response.startsWith(IMAP_LOGOUT_RESPONSE_PREFIX)) {
+                    complete(PollStatus.available(m_responseTime));
+                } else {
+                    complete(PollStatus.unavailable());
                 }
+                break;
+            }
+        }
 
-            } catch (NoRouteToHostException e) {
-            	
-            	String reason = "No route to host exception for address: " + ipAddr;
-                LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
+        @Override
+        protected void endOfStream() {
+            // If we get this far, then something didn't verify during
+            // the banner checking or logout process.
+            complete(PollStatus.unavailable());
+        }
 
-            } catch (ConnectException e) {
+        @Override
+        protected void exceptionCaught(final Throwable e) {
+            if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address: " + m_ipAddr;
+                LOG.debug(reason, e);
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof ConnectException) {
                 // Connection refused. Continue to retry.
-            	String reason = "Connection exception for address: " + ipAddr;
+                String reason = "Connection exception for address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (InterruptedIOException e) {
-            	String reason = "did not connect to host with " + tracker;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "did not connect to host with " + getTracker();
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-            	String reason = "IOException while polling address: " + ipAddr;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null)
-                        socket.close();
-                } catch (IOException e) {
-                    e.fillInStackTrace();
-                    LOG.debug("ImapMonitor.poll: Error closing socket.", e);
-                }
+                complete(PollStatus.unavailable(reason));
+            } else {
+                super.exceptionCaught(e);
             }
         }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
     }
 
-    protected int determinePort(final Map<String, Object> parameters) {
-        return ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
-    }
-
-    /**
-     * <p>wrapSocket</p>
-     *
-     * @param socket a {@link java.net.Socket} object.
-     * @return a {@link java.net.Socket} object.
-     * @throws java.io.IOException if any.
-     */
-    protected SocketWrapper getSocketWrapper() {
-        return new DefaultSocketWrapper();
-    }
-
-
 }
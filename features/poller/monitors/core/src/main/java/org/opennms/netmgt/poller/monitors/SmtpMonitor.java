@@ -28,26 +28,27 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import org.apache.commons.net.io.CRLFLineReader;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
+import org.opennms.netmgt.poller.monitors.support.NioConversationClient;
 import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,7 +64,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="mailto:tarus@opennms.org">Tarus Balog </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
-public final class SmtpMonitor extends AbstractServiceMonitor {
+public final class SmtpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(SmtpMonitor.class);
 
@@ -125,7 +126,7 @@ public final class SmtpMonitor extends AbstractServiceMonitor {
      * </P>
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
 
         int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
@@ -134,181 +135,170 @@ public final class SmtpMonitor extends AbstractServiceMonitor {
         final String hostAddress = InetAddressUtils.str(ipAddr);
         LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
 
-        PollStatus serviceStatus = PollStatus.unavailable();
+        return NioConversationClient.converse(ipAddr, port, false, tracker, () -> new SmtpConversation(ipAddr, port));
+    }
 
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            try {
-                // create a connected socket
-                //
-                tracker.startAttempt();
+    private static int responseCode(String response) {
+        StringTokenizer t = new StringTokenizer(response);
+        return Integer.parseInt(t.nextToken());
+    }
 
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
+    /**
+     * Reads the banner, then sends HELO and QUIT, checking the reply to each of them.
+     */
+    private static final class SmtpConversation extends LineConversation {
+        private enum State {
+            BANNER,
+            HELO,
+            QUIT,
+            REJECTED
+        }
 
-                LOG.debug("SmtpMonitor: connected to host: {} on port: {}", ipAddr, port);
+        private final InetAddress m_ipAddr;
+        private final int m_port;
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
-                // Forcing to check for CRLF instead of any other line terminator as per RFC specification
-                CRLFLineReader rdr = new CRLFLineReader(new InputStreamReader(socket.getInputStream(), "ASCII"));
+        private State m_state = State.BANNER;
 
-                //
-                // Tokenize the Banner Line, and check the first
-                // line for a valid return.
-                //
-                String banner = sendMessage(socket, rdr, null);
-                LOG.debug("poll: banner = {}", banner);
+        /**
+         * Matches the last line of the multi-line reply being read, if any.
+         */
+        private Pattern m_endMultiline;
 
-                StringTokenizer t = new StringTokenizer(banner);
-                int rc = Integer.parseInt(t.nextToken());
-                if (rc == 220) {
-                    //
-                    // Send the HELO command
-                    //
-                    String cmd = "HELO " + LOCALHOST_NAME + "\r\n";
-                    socket.getOutputStream().write(cmd.getBytes());
+        private double m_responseTime;
 
-                    //
-                    // get the returned string, tokenize, and
-                    // verify the correct output.
-                    //
-                    String response = rdr.readLine();
-                    double responseTime = tracker.elapsedTimeInMillis();
+        private SmtpConversation(final InetAddress ipAddr, final int port) {
+            m_ipAddr = ipAddr;
+            m_port = port;
+        }
 
-                    if (response == null) {
-                        continue;
-                    }
+        @Override
+        protected Charset getCharset() {
+            return StandardCharsets.US_ASCII;
+        }
 
-                    if (MULTILINE.matcher(response).find()) {
-                        // Ok we have a multi-line response...first three
-                        // chars of the response line are the return code.
-                        // The last line of the response will start with
-                        // return code followed by a space.
-                        String multiLineRC = new String(response.getBytes("ASCII"), 0, 3, "ASCII");
+        @Override
+        protected boolean isCrlfRequired() {
+            // Forcing to check for CRLF instead of any other line terminator as per RFC specification
+            return true;
+        }
 
-                        // Create new regExp to look for last line
-                        // of this multi line response
-                        Pattern endMultiline = null;
-                        try {
-                            endMultiline = Pattern.compile(multiLineRC);
-                        } catch (PatternSyntaxException ex) {
-                            throw new java.lang.reflect.UndeclaredThrowableException(ex);
-                        }
+        @Override
+        protected void connected() {
+            LOG.debug("SmtpMonitor: connected to host: {} on port: {}", m_ipAddr, m_port);
+        }
 
-                        // read until we hit the last line of the multi-line
-                        // response
-                        do {
-                            response = rdr.readLine();
-                        } while (response != null && !endMultiline.matcher(response).find());
-                        if (response == null) {
-                            continue;
-                        }
+        @Override
+        protected void lineReceived(String response) {
+            if (m_endMultiline != null) {
+                // read until we hit the last line of the multi-line
+                // response
+                if (!m_endMultiline.matcher(response).find()) {
+                    return;
+                }
+                m_endMultiline = null;
+            } else {
+                if (m_state == State.HELO) {
+                    m_responseTime = elapsedTimeInMillis();
+                }
+                if (MULTILINE.matcher(response).find()) {
+                    // Ok we have a multi-line response...first three
+                    // chars of the response line are the return code.
+                    // The last line of the response will start with
+                    // return code followed by a space.
+                    String multiLineRC = response.substring(0, 3);
+                    if (m_state != State.HELO) {
+                        multiLineRC += " ";
                     }
+                    try {
+                        m_endMultiline = Pattern.compile(multiLineRC);
+                    } catch (PatternSyntaxException ex) {
+                        throw new java.lang.reflect.UndeclaredThrowableException(ex);
+                    }
+                    return;
+                }
+            }
+            replyReceived(response);
+        }
 
-                    t = new StringTokenizer(response);
-                    rc = Integer.parseInt(t.nextToken());
-                    if (rc == 250) {
-                        response = sendMessage(socket, rdr, "QUIT\r\n");
-
-                        t = new StringTokenizer(response);
-                        rc = Integer.parseInt(t.nextToken());
+        private void replyReceived(String response) {
+            switch (m_state) {
+            case BANNER:
+                LOG.debug("poll: banner = {}", response);
 
-                        if (rc == 221) {
-                            serviceStatus = PollStatus.available(responseTime);
-                        }
-                    }
+                int rc = responseCode(response);
+                if (rc == 220) {
+                    //
+                    // Send the HELO command
+                    //
+                    m_state = State.HELO;
+                    send("HELO " + LOCALHOST_NAME + "\r\n");
                 } else if (rc == 554) {
-                    String response = sendMessage(socket, rdr, "QUIT\r\n");
-                    serviceStatus = PollStatus.unavailable("Server rejecting transactions with 554");
+                    m_state = State.REJECTED;
+                    send("QUIT\r\n");
+                } else {
+                    complete(PollStatus.unavailable());
                 }
-
-                // If we get this far and the status has not been set to
-                // available, then something didn't verify during the banner
-                // checking or HELO/QUIT comand process.
-                if (!serviceStatus.isAvailable()) {
-                    serviceStatus = PollStatus.unavailable(serviceStatus.getReason());
+                break;
+            case HELO:
+                if (responseCode(response) == 250) {
+                    m_state = State.QUIT;
+                    send("QUIT\r\n");
+                } else {
+                    complete(PollStatus.unavailable());
+                }
+                break;
+            case QUIT:
+                if (responseCode(response) == 221) {
+                    complete(PollStatus.available(m_responseTime));
+                } else {
+                    complete(PollStatus.unavailable());
                 }
-            } catch (NumberFormatException e) {
+                break;
+            case REJECTED:
+                complete(PollStatus.unavailable("Server rejecting transactions with 554"));
+                break;
+            }
+        }
+
+        @Override
+        protected void endOfStream() {
+            if (m_state == State.HELO) {
+                // No reply to HELO, try again
+                complete(PollStatus.unresponsive());
+            } else {
+                // Treated as an empty reply
+                replyReceived("");
+            }
+        }
+
+        @Override
+        protected void exceptionCaught(Throwable e) {
+            final String hostAddress = InetAddressUtils.str(m_ipAddr);
+            if (e instanceof NumberFormatException) {
                 String reason = "NumberFormatException while polling address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (NoRouteToHostException e) {
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof NoRouteToHostException) {
                 String reason = "No route to host exception for address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-                break; // Break out of for(;;)
-            } catch (InterruptedIOException e) {
-                String reason = "Did not receive expected response within timeout " + tracker;
+                stopRetrying();
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "Did not receive expected response within timeout " + getTracker();
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (ConnectException e) {
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof ConnectException) {
                 String reason = "Unable to connect to address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof IOException) {
                 String reason = "IOException while polling address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null) {
-                        socket.close();
-                    }
-                } catch (IOException e) {
-                    e.fillInStackTrace();
-                    LOG.debug("poll: Error closing socket.", e);
-                }
-            }
-        }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
-    }
-
-    private String sendMessage(Socket socket, BufferedReader rdr, String command) throws IOException {
-        if (command != null && !"".equals(command)) {
-            socket.getOutputStream().write(command.getBytes("ASCII"));
-        }
-
-        //
-        // get the returned string, tokenize, and
-        // verify the correct output.
-        //
-        String response = rdr.readLine();
-        if (response == null) {
-            return "";
-        }
-        if (MULTILINE.matcher(response).find()) {
-            // Ok we have a multi-line response...first three
-            // chars of the response line are the return code.
-            // The last line of the response will start with
-            // return code followed by a space.
-            String multiLineRC = new String(response.getBytes("ASCII"), 0, 3, "ASCII") + " ";
-
-            // Create new regExp to look for last line
-            // of this multi line response
-            Pattern endMultiline = null;
-            try {
-                endMultiline = Pattern.compile(multiLineRC);
-            } catch (PatternSyntaxException ex) {
-                throw new java.lang.reflect.UndeclaredThrowableException(ex);
-            }
-
-            // read until we hit the last line of the multi-line
-            // response
-            do {
-                response = rdr.readLine();
-            } while (response != null && !endMultiline.matcher(response).find());
-            if (response == null) {
-                return "";
+                complete(PollStatus.unavailable(reason));
+            } else {
+                super.exceptionCaught(e);
             }
         }
-        return response;
     }
 
 }
@@ -28,22 +28,22 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.monitors.support.LineConversation;
+import org.opennms.netmgt.poller.monitors.support.NioConversationClient;
 import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +59,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="mike@opennms.org">Mike </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
-final public class TcpMonitor extends AbstractServiceMonitor {
+final public class TcpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(TcpMonitor.class);
 
@@ -95,7 +95,7 @@ final public class TcpMonitor extends AbstractServiceMonitor {
      * status to SERVICE_AVAILABLE and return.
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         //
         // Process parameters
         //
@@ -121,94 +121,94 @@ final public class TcpMonitor extends AbstractServiceMonitor {
         InetAddress ipAddr = svc.getAddress();
 
         final String hostAddress = InetAddressUtils.str(ipAddr);
-	LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
+        LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
 
         // Give it a whirl
         //
-        PollStatus serviceStatus = PollStatus.unavailable();
-
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            try {
-                
-                tracker.startAttempt();
-
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
-                LOG.debug("TcpMonitor: connected to host: {} on port: {}", ipAddr, port);
-
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
-
-                if (strBannerMatch == null || strBannerMatch.length() == 0 || strBannerMatch.equals("*")) {
-                    serviceStatus = PollStatus.available(tracker.elapsedTimeInMillis());
-                    break;
-                }
-
-                BufferedReader rdr = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                //
-                // Tokenize the Banner Line, and check the first
-                // line for a valid return.
-                //
-                String response = rdr.readLine();
-                double responseTime = tracker.elapsedTimeInMillis();
-
-                if (response == null)
-                    continue;
-                LOG.debug("poll: banner = {}", response);
-                LOG.debug("poll: responseTime= {}ms", responseTime);
-
-                //Could it be a regex?
-                if (strBannerMatch.charAt(0)=='~'){
-                  if (!response.matches(strBannerMatch.substring(1)))
-                    serviceStatus = PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
-                  else
-                    serviceStatus = PollStatus.available(responseTime);
-                }
-                else {
-                  if (response.indexOf(strBannerMatch) > -1) {
-                    serviceStatus = PollStatus.available(responseTime);
-                  }
-                  else {
-                    serviceStatus = PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
-                  }
-                }
-
-            } catch (NoRouteToHostException e) {
-            	String reason = "No route to host exception for address " + hostAddress;
+        return NioConversationClient.converse(ipAddr, port, false, tracker, () -> new TcpConversation(ipAddr, port, strBannerMatch));
+    }
+
+    /**
+     * Connects and, if a banner match is configured, checks the first line sent
+     * by the service.
+     */
+    private static final class TcpConversation extends LineConversation {
+        private final InetAddress m_ipAddr;
+        private final int m_port;
+        private final String m_bannerMatch;
+
+        private TcpConversation(final InetAddress ipAddr, final int port, final String bannerMatch) {
+            m_ipAddr = ipAddr;
+            m_port = port;
+            m_bannerMatch = bannerMatch;
+        }
+
+        @Override
+        protected void connected() {
+            LOG.debug("TcpMonitor: connected to host: {} on port: {}", m_ipAddr, m_port);
+
+            if (m_bannerMatch == null || m_bannerMatch.length() == 0 || m_bannerMatch.equals("*")) {
+                complete(PollStatus.available(elapsedTimeInMillis()));
+            }
+        }
+
+        @Override
+        protected void lineReceived(final String response) {
+            //
+            // Check the banner line for a valid return.
+            //
+            double responseTime = elapsedTimeInMillis();
+
+            LOG.debug("poll: banner = {}", response);
+            LOG.debug("poll: responseTime= {}ms", responseTime);
+
+            //Could it be a regex?
+            if (m_bannerMatch.charAt(0)=='~'){
+              if (!response.matches(m_bannerMatch.substring(1)))
+                complete(PollStatus.unavailable("Banner does not match Regex '"+m_bannerMatch+"'"));
+              else
+                complete(PollStatus.available(responseTime));
+            }
+            else {
+              if (response.indexOf(m_bannerMatch) > -1) {
+                complete(PollStatus.available(responseTime));
+              }
+              else {
+                complete(PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+m_bannerMatch+"'"));
+              }
+            }
+        }
+
+        @Override
+        protected void endOfStream() {
+            // We're connected, but got no banner
+            complete(PollStatus.unresponsive());
+        }
+
+        @Override
+        protected void exceptionCaught(final Throwable e) {
+            final String hostAddress = InetAddressUtils.str(m_ipAddr);
+            if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-                break; // Break out of for(;;)
-            } catch (InterruptedIOException e) {
-            	String reason = "did not connect to host with " + tracker;
+                stopRetrying();
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "did not connect to host with " + getTracker();
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (ConnectException e) {
-            	String reason = "Connection exception for address: " + ipAddr;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof ConnectException) {
+                String reason = "Connection exception for address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-            	String reason = "IOException while polling address: " + ipAddr;
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null)
-                        socket.close();
-                } catch (IOException e) {
-                    e.fillInStackTrace();
-                    LOG.debug("poll: Error closing socket.", e);
-                }
+                complete(PollStatus.unavailable(reason));
+            } else {
+                super.exceptionCaught(e);
             }
         }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
     }
 
 }
@@ -197,47 +197,79 @@ public class FtpResponse {
      * @throws java.io.IOException if any.
      */
     public static FtpResponse readResponse(BufferedReader in) throws IOException {
-        int code;
-        List<String> response = new ArrayList<>();
+        final LineParser parser = new LineParser();
+        FtpResponse response;
+        do {
+            final String line = in.readLine();
+            if (line == null) {
+                throw parser.endOfStream();
+            }
+            response = parser.parseLine(line);
+        } while (response == null);
+        return response;
+    }
 
-        String firstResponseLine = in.readLine();
-        if (firstResponseLine == null) {
-            throw new IOException("End of stream was reached before a response could be read");
-            
-        }
-        
-        // XXX this could use better error checking!
-        String codeString = firstResponseLine.substring(0, 3);
-        response.add(firstResponseLine.substring(4));
-
-        try {
-            code = Integer.parseInt(codeString);
-        } catch (NumberFormatException e) {
-            IOException newE = new IOException("First response line returned a non-numeric result code \"" + codeString + "\": " + firstResponseLine);
-            newE.initCause(e);
-            throw newE;
-        }
+    /**
+     * Parses a server response one line at a time, for callers that receive
+     * the lines as they arrive instead of reading them from a stream.
+     */
+    public static class LineParser {
+        private final List<String> m_response = new ArrayList<>();
+        private int m_code;
+
+        /**
+         * The multi-line response ends with a line that begins with this, if
+         * a multi-line response is being parsed.
+         */
+        private String m_endMultiLine;
 
-        // Is the fourth character a hyphen (if so, it's a continuation)?
-        if ("-".equals(firstResponseLine.substring(3, 4))) {
-            // The multi-line response ends with a line that begins with this:
-            String endMultiLine = code + " ";
+        /**
+         * Parses the next line of the response.
+         *
+         * @param line the line, without line terminator
+         * @return the response if this was its last line, null otherwise
+         * @throws java.io.IOException if the response is invalid
+         */
+        public FtpResponse parseLine(String line) throws IOException {
+            if (m_endMultiLine == null) {
+                // XXX this could use better error checking!
+                String codeString = line.substring(0, 3);
+                m_response.add(line.substring(4));
 
-            while (true) {
-                String subsequentResponse = in.readLine();
-                if (subsequentResponse == null) {
-                    throw new IOException("End of stream was reached before the complete multi-line response could be read.  What was read: " + StringUtils.collectionToDelimitedString(response, "\n"));
+                try {
+                    m_code = Integer.parseInt(codeString);
+                } catch (NumberFormatException e) {
+                    IOException newE = new IOException("First response line returned a non-numeric result code \"" + codeString + "\": " + line);
+                    newE.initCause(e);
+                    throw newE;
                 }
-                
-                if (subsequentResponse.startsWith(endMultiLine)) {
-                    response.add(subsequentResponse.substring(4));
-                    break;
+
+                // Is the fourth character a hyphen (if so, it's a continuation)?
+                if ("-".equals(line.substring(3, 4))) {
+                    m_endMultiLine = m_code + " ";
+                    return null;
                 }
-                
-                response.add(subsequentResponse);
+            } else if (line.startsWith(m_endMultiLine)) {
+                m_response.add(line.substring(4));
+            } else {
+                m_response.add(line);
+                return null;
             }
+
+            return new FtpResponse(m_code, m_response.toArray(new String[m_response.size()]));
         }
 
-        return new FtpResponse(code, response.toArray(new String[response.size()]));
+        /**
+         * Creates the exception describing an end of stream reached before
+         * the response was complete.
+         *
+         * @return the exception to throw
+         */
+        public IOException endOfStream() {
+            if (m_endMultiLine == null) {
+                return new IOException("End of stream was reached before a response could be read");
+            }
+            return new IOException("End of stream was reached before the complete multi-line response could be read.  What was read: " + StringUtils.collectionToDelimitedString(m_response, "\n"));
+        }
     }
 }
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.PollStatus;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+
+/**
+ * A single attempt at a line oriented exchange with a remote service, driven by
+ * {@link NioConversationClient}.
+ *
+ * Implementations are small state machines: they react to the connection being
+ * established, to every line received and to the end of the stream, and finish
+ * the attempt by calling {@link #complete(PollStatus)}. The callbacks are invoked
+ * from the event loop of the connection and must never block.
+ *
+ * Exceptions thrown by the callbacks, as well as connection, timeout and I/O
+ * errors, are handed to {@link #exceptionCaught(Throwable)}. Connect and read
+ * timeouts are reported as {@link java.net.SocketTimeoutException}s so that they
+ * can be handled the same way as with a blocking socket.
+ */
+public abstract class LineConversation {
+
+    private final CompletableFuture<PollStatus> m_result = new CompletableFuture<>();
+
+    private TimeoutTracker m_tracker;
+
+    private Channel m_channel;
+
+    private boolean m_retryable = true;
+
+    /**
+     * Called once the connection has been established.
+     *
+     * @throws Exception if any.
+     */
+    protected void connected() throws Exception {
+    }
+
+    /**
+     * Called for every line received, without its line terminator.
+     *
+     * @param line the line
+     * @throws Exception if any.
+     */
+    protected abstract void lineReceived(String line) throws Exception;
+
+    /**
+     * Called when the remote end closed the connection before the attempt was completed.
+     *
+     * @throws Exception if any.
+     */
+    protected abstract void endOfStream() throws Exception;
+
+    /**
+     * Called when the attempt failed. The default implementation completes the
+     * poll exceptionally, without any further retries.
+     *
+     * @param cause the cause
+     */
+    protected void exceptionCaught(Throwable cause) {
+        m_result.completeExceptionally(cause);
+        close();
+    }
+
+    /**
+     * @return the charset used to decode received lines and encode sent data
+     */
+    protected Charset getCharset() {
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * @return true if lines must be terminated by CR LF, false to also accept a bare LF
+     */
+    protected boolean isCrlfRequired() {
+        return false;
+    }
+
+    /**
+     * Writes the given data to the remote end.
+     *
+     * @param data the data, including any line terminator
+     */
+    protected final void send(final String data) {
+        if (m_channel == null || m_result.isDone()) {
+            throw new IllegalStateException("Conversation is not connected.");
+        }
+        m_channel.writeAndFlush(Unpooled.copiedBuffer(data, getCharset())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+    }
+
+    /**
+     * Completes this attempt with the given status and closes the connection.
+     *
+     * @param status the status
+     */
+    protected final void complete(final PollStatus status) {
+        m_result.complete(status);
+        close();
+    }
+
+    /**
+     * Prevents any further attempts once this one is completed, regardless of
+     * the outcome.
+     */
+    protected final void stopRetrying() {
+        m_retryable = false;
+    }
+
+    protected final TimeoutTracker getTracker() {
+        return m_tracker;
+    }
+
+    protected final double elapsedTimeInMillis() {
+        return m_tracker.elapsedTimeInMillis();
+    }
+
+    final CompletableFuture<PollStatus> getResult() {
+        return m_result;
+    }
+
+    final boolean isRetryable() {
+        return m_retryable;
+    }
+
+    final void setTracker(final TimeoutTracker tracker) {
+        m_tracker = tracker;
+    }
+
+    final void channelActive(final Channel channel) {
+        m_channel = channel;
+        try {
+            connected();
+        } catch (final Throwable t) {
+            failed(t);
+        }
+    }
+
+    final void channelRead(final String line) {
+        if (m_result.isDone()) {
+            return;
+        }
+        try {
+            lineReceived(line);
+        } catch (final Throwable t) {
+            failed(t);
+        }
+    }
+
+    final void channelInactive() {
+        if (m_result.isDone()) {
+            return;
+        }
+        try {
+            endOfStream();
+        } catch (final Throwable t) {
+            failed(t);
+        }
+        // The connection is gone, there is nothing left to wait for
+        if (!m_result.isDone()) {
+            m_result.complete(PollStatus.unavailable("Connection closed"));
+        }
+    }
+
+    final void failed(final Throwable cause) {
+        if (m_result.isDone()) {
+            return;
+        }
+        try {
+            exceptionCaught(cause);
+        } catch (final Throwable t) {
+            m_result.completeExceptionally(t);
+        }
+        if (!m_result.isDone()) {
+            m_result.completeExceptionally(cause);
+        }
+        close();
+    }
+
+    private void close() {
+        if (m_channel != null) {
+            m_channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.RelaxedX509ExtendedTrustManager;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Suppliers;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Runs {@link LineConversation}s against remote services using non-blocking I/O.
+ *
+ * All of the connections share a single event loop group, so that thousands of
+ * outstanding polls only cost a handful of threads instead of one blocked thread
+ * each. The size of the group can be set using the
+ * {@value #THREADS_PROPERTY} system property, and defaults to twice the number
+ * of available processors.
+ *
+ * Attempts are retried using the given {@link TimeoutTracker} in the same way
+ * the blocking monitors do, except that the delay required by strict timeouts is
+ * scheduled on the event loop instead of sleeping.
+ */
+public final class NioConversationClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioConversationClient.class);
+
+    public static final String THREADS_PROPERTY = "org.opennms.netmgt.poller.nio.threads";
+
+    private static final com.google.common.base.Supplier<EventLoopGroup> EVENT_LOOP_GROUP = Suppliers.memoize(() ->
+            new NioEventLoopGroup(Integer.getInteger(THREADS_PROPERTY, 0), new DefaultThreadFactory("poller-nio", true)));
+
+    private static final com.google.common.base.Supplier<SSLContext> SSL_CONTEXT = Suppliers.memoize(NioConversationClient::createSslContext);
+
+    private NioConversationClient() {
+    }
+
+    /**
+     * Converses with the service listening on the given address and port until an
+     * attempt reports the service as available, the conversation stops retrying
+     * or the tracker runs out of retries.
+     *
+     * @param address the address to connect to
+     * @param port the port to connect to
+     * @param ssl true to negotiate SSL/TLS before the conversation starts, trusting any certificate
+     * @param tracker tracks the timeout and the retries
+     * @param conversations creates the conversation for every attempt
+     * @return the status returned by the last attempt
+     */
+    public static CompletableFuture<PollStatus> converse(final InetAddress address, final int port, final boolean ssl, final TimeoutTracker tracker, final Supplier<? extends LineConversation> conversations) {
+        final CompletableFuture<PollStatus> result = new CompletableFuture<>();
+        tracker.reset();
+        attempt(new InetSocketAddress(address, port), ssl, tracker, conversations, result);
+        return result;
+    }
+
+    private static void attempt(final InetSocketAddress address, final boolean ssl, final TimeoutTracker tracker, final Supplier<? extends LineConversation> conversations, final CompletableFuture<PollStatus> result) {
+        final LineConversation conversation;
+        try {
+            conversation = conversations.get();
+            conversation.setTracker(tracker);
+            tracker.startAttempt();
+            connect(address, ssl, tracker, conversation);
+        } catch (final Throwable t) {
+            result.completeExceptionally(t);
+            return;
+        }
+
+        conversation.getResult().whenComplete((status, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            LOG.debug("Attempt {} against {} completed with {}", tracker.getAttempt(), address, status);
+            if (status.isAvailable() || !conversation.isRetryable()) {
+                result.complete(status);
+                return;
+            }
+            tracker.nextAttempt();
+            if (!tracker.shouldRetry()) {
+                result.complete(status);
+                return;
+            }
+            final long delay = tracker.getStartDelayNanos();
+            if (delay > 0) {
+                EVENT_LOOP_GROUP.get().schedule(() -> attempt(address, ssl, tracker, conversations, result), delay, TimeUnit.NANOSECONDS);
+            } else {
+                attempt(address, ssl, tracker, conversations, result);
+            }
+        });
+    }
+
+    private static void connect(final InetSocketAddress address, final boolean ssl, final TimeoutTracker tracker, final LineConversation conversation) {
+        final SSLEngine engine;
+        if (ssl) {
+            engine = SSL_CONTEXT.get().createSSLEngine(InetAddressUtils.str(address.getAddress()), address.getPort());
+            engine.setUseClientMode(true);
+        } else {
+            engine = null;
+        }
+
+        new Bootstrap()
+            .group(EVENT_LOOP_GROUP.get())
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, tracker.getConnectionTimeout())
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(final SocketChannel ch) {
+                    final ChannelPipeline pipeline = ch.pipeline();
+                    if (engine != null) {
+                        final SslHandler sslHandler = new SslHandler(engine);
+                        sslHandler.setHandshakeTimeoutMillis(tracker.getTimeoutInMillis());
+                        pipeline.addLast(sslHandler);
+                    }
+                    pipeline.addLast(new ReadTimeoutHandler(tracker.getSoTimeout(), TimeUnit.MILLISECONDS));
+                    pipeline.addLast(new LineDecoder(conversation.getCharset(), conversation.isCrlfRequired()));
+                    pipeline.addLast(new ConversationHandler(conversation));
+                }
+            })
+            .connect(address)
+            .addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    conversation.failed(normalize(future.cause()));
+                }
+            });
+    }
+
+    private static Throwable normalize(final Throwable cause) {
+        if (cause instanceof DecoderException && cause.getCause() != null) {
+            return normalize(cause.getCause());
+        } else if (cause instanceof ConnectTimeoutException) {
+            final SocketTimeoutException e = new SocketTimeoutException("connect timed out");
+            e.initCause(cause);
+            return e;
+        } else if (cause instanceof ReadTimeoutException) {
+            final SocketTimeoutException e = new SocketTimeoutException("Read timed out");
+            e.initCause(cause);
+            return e;
+        }
+        return cause;
+    }
+
+    private static SSLContext createSslContext() {
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("SSL");
+            sslContext.init(null, new TrustManager[] { new RelaxedX509ExtendedTrustManager() }, new SecureRandom());
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            LOG.error("Failed to initialize the SSL context", e);
+            throw new IllegalStateException("Failed to initialize the SSL context: " + e, e);
+        }
+    }
+
+    /**
+     * Feeds the events of a connection to its conversation.
+     */
+    private static final class ConversationHandler extends SimpleChannelInboundHandler<String> {
+        private final LineConversation m_conversation;
+
+        private ConversationHandler(final LineConversation conversation) {
+            m_conversation = conversation;
+        }
+
+        @Override
+        public void channelActive(final ChannelHandlerContext ctx) {
+            m_conversation.channelActive(ctx.channel());
+        }
+
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, final String line) {
+            m_conversation.channelRead(line);
+        }
+
+        @Override
+        public void channelInactive(final ChannelHandlerContext ctx) {
+            m_conversation.channelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+            m_conversation.failed(normalize(cause));
+        }
+    }
+
+    /**
+     * Splits the received bytes into lines, the same way a {@link java.io.BufferedReader}
+     * would: a trailing line without terminator is still delivered once the
+     * remote end closes the connection.
+     */
+    private static final class LineDecoder extends ByteToMessageDecoder {
+        private final Charset m_charset;
+        private final boolean m_crlfRequired;
+
+        private LineDecoder(final Charset charset, final boolean crlfRequired) {
+            m_charset = charset;
+            m_crlfRequired = crlfRequired;
+        }
+
+        @Override
+        protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) {
+            int from = in.readerIndex();
+            int lf;
+            while ((lf = in.indexOf(from, in.writerIndex(), (byte)'\n')) >= 0) {
+                final boolean cr = lf > in.readerIndex() && in.getByte(lf - 1) == '\r';
+                from = lf + 1;
+                if (m_crlfRequired && !cr) {
+                    continue;
+                }
+                final int start = in.readerIndex();
+                final int end = cr ? lf - 1 : lf;
+                out.add(in.toString(start, end - start, m_charset));
+                in.readerIndex(lf + 1);
+            }
+        }
+
+        @Override
+        protected void decodeLast(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) {
+            decode(ctx, in, out);
+            if (in.isReadable()) {
+                out.add(in.toString(m_charset));
+                in.skipBytes(in.readableBytes());
+            }
+        }
+    }
+
+}
@@ -126,6 +126,36 @@ public class FtpMonitorTest {
         assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
     }
     
+    @Test
+    public void testPollAsyncWithMultiLineResponse() throws Exception {
+        Thread m_serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    m_serverSocket.setSoTimeout(1000);
+                    Socket s = m_serverSocket.accept();
+                    s.getOutputStream().write("220-Hello!!!\r\nWelcome\r\n220 Ready\r\n".getBytes());
+                    BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                    String command = r.readLine();
+                    if (command.equals("QUIT")) {
+                        s.getOutputStream().write("221-See\r\n221 ya\r\n".getBytes());
+                    }
+                } catch (Throwable e) {
+                    throw new UndeclaredThrowableException(e);
+                }
+            }
+        });
+
+        m_serverThread.start();
+
+        Map<String, Object> m = new HashMap<String, Object>();
+        m.put("port", m_serverSocket.getLocalPort());
+        m.put("retries", 0);
+        m.put("timeout", TIMEOUT);
+        PollStatus status = m_monitor.pollAsync(new MockMonitoredService(1, "Node One", m_serverSocket.getInetAddress(), "FTP"), m).get();
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+    }
+
     @Test
     public void testParamSubstitution() throws Exception {
         FtpMonitor mon = new FtpMonitor();
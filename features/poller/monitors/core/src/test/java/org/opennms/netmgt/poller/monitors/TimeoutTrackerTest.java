@@ -92,4 +92,22 @@ public class TimeoutTrackerTest extends TestCase {
         assertTrue("Expected value for elapsedTimeInMillis should be less than " + maxTime, elapsedTimeInMillis < (maxTime + 1));
     }
 
+    public void testStartDelay() {
+
+        Map<String,?> emptyMap = Collections.emptyMap();
+        TimeoutTracker tracker = new TimeoutTracker(emptyMap, 1, 3000);
+
+        tracker.startAttempt();
+        tracker.nextAttempt();
+        assertEquals("expected no delay without strict timeouts", 0L, tracker.getStartDelayNanos());
+
+        tracker = new TimeoutTracker(Collections.singletonMap("strict-timeout", "true"), 1, 3000);
+        assertEquals("expected no delay before the first attempt", 0L, tracker.getStartDelayNanos());
+
+        tracker.startAttempt();
+        tracker.nextAttempt();
+        long delay = tracker.getStartDelayNanos();
+        assertTrue("expected a delay of up to the timeout, got " + delay, delay > 0L && delay <= 3000000000L);
+    }
+
 }
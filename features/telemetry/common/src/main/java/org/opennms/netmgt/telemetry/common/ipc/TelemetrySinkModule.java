@@ -28,7 +28,10 @@
 
 package org.opennms.netmgt.telemetry.common.ipc;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Objects;
@@ -43,6 +46,7 @@ import org.opennms.netmgt.telemetry.api.receiver.TelemetryMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 public class TelemetrySinkModule implements SinkModule<TelemetryMessage, TelemetryProtos.TelemetryMessageLog> {
@@ -94,6 +98,22 @@ public class TelemetrySinkModule implements SinkModule<TelemetryMessage, Telemet
         return marshal(getAggregationPolicy().aggregate(null, message).build());
     }
 
+    @Override
+    public void marshalSingleMessage(TelemetryMessage message, ByteBuffer buffer) {
+        final TelemetryProtos.TelemetryMessageLog messageLog = getAggregationPolicy().aggregate(null, message).build();
+        if (messageLog.getSerializedSize() > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
+        // Write straight into the buffer, the position is advanced when flushing
+        final CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+        try {
+            messageLog.writeTo(output);
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public TelemetryMessage unmarshalSingleMessage(byte[] message) {
         TelemetryProtos.TelemetryMessageLog messageLog = unmarshal(message);
@@ -173,12 +193,26 @@ public class TelemetrySinkModule implements SinkModule<TelemetryMessage, Telemet
     public Optional<String> getRoutingKey(final TelemetryProtos.TelemetryMessageLog message) {
         // Allow the queue configuration to drive whether or not the routing key is used. Default to true.
         if (queueConfig.getUseRoutingKey().orElse(true)) {
-            return Optional.of(String.format("%s@%s:%d", message.getLocation(), message.getSourceAddress(), message.getSourcePort()));
+            return Optional.of(getRoutingKey(message.getLocation(), message.getSourceAddress(), message.getSourcePort()));
         }
         // We've been configured to ommit the routing key.
         return Optional.empty();
     }
 
+    @Override
+    public Optional<String> getSingleMessageRoutingKey(final TelemetryMessage message) {
+        // Same key as the log built by the aggregation policy, without building it
+        if (queueConfig.getUseRoutingKey().orElse(true)) {
+            return Optional.of(getRoutingKey(distPollerDao.whoami().getLocation(), message.getSource().getHostString(),
+                    message.getSource().getPort()));
+        }
+        return Optional.empty();
+    }
+
+    private static String getRoutingKey(String location, String sourceAddress, int sourcePort) {
+        return String.format("%s@%s:%d", location, sourceAddress, sourcePort);
+    }
+
     public DistPollerDao getDistPollerDao() {
         return distPollerDao;
     }
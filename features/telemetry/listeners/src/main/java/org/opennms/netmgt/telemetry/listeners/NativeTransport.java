@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+
+/**
+ * Isolates all references to Netty's native epoll transport, so that the
+ * listeners can still be loaded when the transport is not on the class path.
+ *
+ * Callers must be prepared to handle a {@link NoClassDefFoundError} when
+ * calling {@link #isAvailable()}.
+ */
+final class NativeTransport {
+
+    private NativeTransport() {
+    }
+
+    static boolean isAvailable() {
+        return Epoll.isAvailable();
+    }
+
+    static Throwable unavailabilityCause() {
+        return Epoll.unavailabilityCause();
+    }
+
+    static EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+        return new EpollEventLoopGroup(threads, threadFactory);
+    }
+
+    static Class<? extends DatagramChannel> datagramChannelClass() {
+        return EpollDatagramChannel.class;
+    }
+
+    /**
+     * Allows multiple sockets to be bound to the same address. The kernel
+     * distributes the datagrams by hashing the source and destination
+     * addresses, so all datagrams from an exporter end up on the same socket.
+     */
+    static Bootstrap reusePort(final Bootstrap bootstrap) {
+        return bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+    }
+
+    static int fileDescriptor(final Channel channel) {
+        return ((EpollDatagramChannel) channel).fd().intValue();
+    }
+}
@@ -30,23 +30,33 @@ package org.opennms.netmgt.telemetry.listeners;
 
 import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.opennms.netmgt.telemetry.api.receiver.Listener;
 import org.opennms.netmgt.telemetry.api.receiver.Parser;
 import org.opennms.netmgt.telemetry.listeners.utils.BufferUtils;
+import org.opennms.netmgt.telemetry.listeners.utils.UdpSocketStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.swrve.ratelimitedlogger.RateLimitedLog;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
@@ -61,6 +71,16 @@ import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.SocketUtils;
 
+/**
+ * Receives datagrams on a UDP port and hands them over to the parsers.
+ *
+ * By default a single NIO socket is used. When <code>sockets</code> is greater
+ * than one and Netty's native epoll transport is available, the given number
+ * of sockets are bound to the same port using <code>SO_REUSEPORT</code>, each
+ * served by its own event loop. The kernel keeps sending the datagrams of an
+ * exporter to the same socket, so the template sessions are not shared
+ * between threads more than they are with a single socket.
+ */
 public class UdpListener implements Listener {
     private static final Logger LOG = LoggerFactory.getLogger(UdpListener.class);
 
@@ -72,19 +92,26 @@ public class UdpListener implements Listener {
     private final String name;
     private final List<UdpParser> parsers;
 
+    private final MetricRegistry metrics;
     private final Meter packetsReceived;
 
     private EventLoopGroup bossGroup;
-    private ChannelFuture socketFuture;
+    private final List<Channel> channels = new ArrayList<>();
+    private final List<String> socketMetricNames = new ArrayList<>();
+
+    // Shared by the gauges of all sockets, so that a scrape reads the kernel statistics once
+    private final Supplier<Map<String, UdpSocketStats>> socketStats =
+            Suppliers.memoizeWithExpiration(UdpSocketStats::readAll, 1, TimeUnit.SECONDS);
 
     private String host = null;
     private int port = 50000;
     private int maxPacketSize = 8096;
+    private int sockets = 1;
 
     public UdpListener(final String name, final List<UdpParser> parsers, final MetricRegistry metrics) {
         this.name = Objects.requireNonNull(name);
         this.parsers = Objects.requireNonNull(parsers);
-        Objects.requireNonNull(metrics);
+        this.metrics = Objects.requireNonNull(metrics);
 
         if (this.parsers.isEmpty()) {
             throw new IllegalArgumentException("At least 1 parsers must be defined");
@@ -99,10 +126,19 @@ public class UdpListener implements Listener {
     }
 
     public void start() throws InterruptedException {
-        // Netty defaults to 2 * num cores when the number of threads is set to 0
-        this.bossGroup = new NioEventLoopGroup(0, new ThreadFactoryBuilder()
-                .setNameFormat("telemetryd-nio-" + name + "-%d")
-                .build() );
+        final boolean useNativeTransport = this.sockets > 1 && isNativeTransportAvailable();
+        final int socketCount = useNativeTransport ? this.sockets : 1;
+
+        final Bootstrap bootstrap = new Bootstrap();
+        if (useNativeTransport) {
+            // One event loop per socket
+            this.bossGroup = NativeTransport.newEventLoopGroup(socketCount, threadFactory("telemetryd-epoll-"));
+            NativeTransport.reusePort(bootstrap.channel(NativeTransport.datagramChannelClass()));
+        } else {
+            // Netty defaults to 2 * num cores when the number of threads is set to 0
+            this.bossGroup = new NioEventLoopGroup(0, threadFactory("telemetryd-nio-"));
+            bootstrap.channel(NioDatagramChannel.class);
+        }
 
         this.parsers.forEach(parser -> parser.start(this.bossGroup));
 
@@ -110,25 +146,85 @@ public class UdpListener implements Listener {
                 ? SocketUtils.socketAddress(this.host, this.port)
                 : new InetSocketAddress(this.port);
 
-        this.socketFuture = new Bootstrap()
-                .group(this.bossGroup)
-                .channel(NioDatagramChannel.class)
+        bootstrap.group(this.bossGroup)
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.SO_RCVBUF, Integer.MAX_VALUE)
-                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxPacketSize))
-                .handler(new DefaultChannelInitializer())
-                .bind(address)
-                .sync();
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxPacketSize));
+
+        // The event loops are assigned in a round robin fashion, so every socket gets its own
+        for (int i = 0; i < socketCount; i++) {
+            final Channel channel = bootstrap.clone()
+                    .handler(new DefaultChannelInitializer(socketMeter(i)))
+                    .bind(address)
+                    .sync()
+                    .channel();
+            this.channels.add(channel);
+            if (useNativeTransport) {
+                registerSocketStats(i, NativeTransport.fileDescriptor(channel));
+            }
+        }
+
+        LOG.info("Listening on {} with {} {} socket(s).", address, socketCount, useNativeTransport ? "epoll" : "NIO");
     }
 
     public void stop() throws InterruptedException {
         LOG.info("Closing channel...");
-        this.socketFuture.channel().close().sync();
+        for (final Channel channel : this.channels) {
+            channel.close().sync();
+        }
+        this.channels.clear();
 
         this.parsers.forEach(Parser::stop);
 
         LOG.info("Closing boss group...");
         this.bossGroup.shutdownGracefully().sync();
+
+        this.socketMetricNames.forEach(this.metrics::remove);
+        this.socketMetricNames.clear();
+    }
+
+    boolean isNativeTransportAvailable() {
+        try {
+            if (NativeTransport.isAvailable()) {
+                return true;
+            }
+            LOG.warn("Native epoll transport is not available, using a single NIO socket for listener {}: {}", this.name, NativeTransport.unavailabilityCause().getMessage());
+        } catch (final NoClassDefFoundError e) {
+            LOG.warn("Native epoll transport is not installed, using a single NIO socket for listener {}.", this.name);
+        }
+        return false;
+    }
+
+    private ThreadFactory threadFactory(final String prefix) {
+        return new ThreadFactoryBuilder()
+                .setNameFormat(prefix + this.name + "-%d")
+                .build();
+    }
+
+    private Meter socketMeter(final int index) {
+        final String metricName = MetricRegistry.name("listeners", this.name, "sockets", Integer.toString(index), "packetsReceived");
+        this.socketMetricNames.add(metricName);
+        return this.metrics.meter(metricName);
+    }
+
+    private void registerSocketStats(final int index, final int fd) {
+        final Optional<String> inode = UdpSocketStats.inode(fd);
+        if (!inode.isPresent()) {
+            return;
+        }
+        final String dropsName = MetricRegistry.name("listeners", this.name, "sockets", Integer.toString(index), "drops");
+        final String rxQueueName = MetricRegistry.name("listeners", this.name, "sockets", Integer.toString(index), "rxQueue");
+        this.metrics.remove(dropsName);
+        this.metrics.remove(rxQueueName);
+        this.metrics.register(dropsName, (Gauge<Long>) () -> socketStat(inode.get(), UdpSocketStats::getDrops));
+        this.metrics.register(rxQueueName, (Gauge<Long>) () -> socketStat(inode.get(), UdpSocketStats::getRxQueue));
+        this.socketMetricNames.add(dropsName);
+        this.socketMetricNames.add(rxQueueName);
+    }
+
+    private Long socketStat(final String inode, final Function<UdpSocketStats, Long> stat) {
+        final UdpSocketStats stats = this.socketStats.get().get(inode);
+        return stats != null ? stat.apply(stats) : null;
     }
 
     public String getHost() {
@@ -155,6 +251,17 @@ public class UdpListener implements Listener {
         this.maxPacketSize = maxPacketSize;
     }
 
+    public int getSockets() {
+        return sockets;
+    }
+
+    public void setSockets(int sockets) {
+        if (sockets < 1) {
+            throw new IllegalArgumentException("At least 1 socket must be used");
+        }
+        this.sockets = sockets;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -172,10 +279,16 @@ public class UdpListener implements Listener {
 
     private class DefaultChannelInitializer extends ChannelInitializer<DatagramChannel> {
 
+        private final Meter socketPacketsReceived;
+
+        private DefaultChannelInitializer(final Meter socketPacketsReceived) {
+            this.socketPacketsReceived = socketPacketsReceived;
+        }
+
         @Override
         protected void initChannel(DatagramChannel ch) {
             // Accounting
-            ch.pipeline().addFirst(new AccountingHandler());
+            ch.pipeline().addFirst(new AccountingHandler(this.socketPacketsReceived));
 
             if (parsers.size() == 1) {
                 final UdpParser parser = parsers.get(0);
@@ -209,9 +322,16 @@ public class UdpListener implements Listener {
     }
 
     private class AccountingHandler extends ChannelInboundHandlerAdapter {
+        private final Meter socketPacketsReceived;
+
+        private AccountingHandler(final Meter socketPacketsReceived) {
+            this.socketPacketsReceived = socketPacketsReceived;
+        }
+
         @Override
         public  void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
             packetsReceived.mark();
+            socketPacketsReceived.mark();
             super.channelRead(ctx, msg);
         }
     }
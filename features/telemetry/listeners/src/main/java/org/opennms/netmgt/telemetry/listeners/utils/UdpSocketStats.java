@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the kernel statistics of a UDP socket from <code>/proc/net/udp</code>
+ * and <code>/proc/net/udp6</code>.
+ *
+ * Only available on Linux, all methods return an empty result elsewhere.
+ */
+public final class UdpSocketStats {
+
+    private static final Path[] PROC_NET_UDP = new Path[] { Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6") };
+
+    private static final Pattern SOCKET_INODE = Pattern.compile("socket:\\[(\\d+)]");
+
+    private static final int INODE_FIELD = 9;
+    private static final int QUEUES_FIELD = 4;
+    private static final int DROPS_FIELD = 12;
+
+    private final long rxQueue;
+    private final long drops;
+
+    private UdpSocketStats(final long rxQueue, final long drops) {
+        this.rxQueue = rxQueue;
+        this.drops = drops;
+    }
+
+    /**
+     * @return the number of bytes waiting in the receive queue of the socket
+     */
+    public long getRxQueue() {
+        return this.rxQueue;
+    }
+
+    /**
+     * @return the number of datagrams dropped by the kernel since the socket was opened
+     */
+    public long getDrops() {
+        return this.drops;
+    }
+
+    /**
+     * Resolves the inode of the socket behind the given file descriptor of this process.
+     */
+    public static Optional<String> inode(final int fd) {
+        try {
+            final Matcher matcher = SOCKET_INODE.matcher(Files.readSymbolicLink(Paths.get("/proc/self/fd", Integer.toString(fd))).toString());
+            return matcher.matches() ? Optional.of(matcher.group(1)) : Optional.empty();
+        } catch (final IOException | UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads the current statistics of all UDP sockets, keyed by inode.
+     *
+     * Each file is read once, so callers interested in several sockets should
+     * look them all up in the same result.
+     */
+    public static Map<String, UdpSocketStats> readAll() {
+        return readAll(PROC_NET_UDP);
+    }
+
+    static Map<String, UdpSocketStats> readAll(final Path... paths) {
+        final Map<String, UdpSocketStats> stats = new HashMap<>();
+        for (final Path path : paths) {
+            final List<String> lines;
+            try {
+                lines = Files.readAllLines(path);
+            } catch (final IOException e) {
+                continue;
+            }
+            // The first line holds the column headers
+            for (int i = 1; i < lines.size(); i++) {
+                final String[] fields = lines.get(i).trim().split("\\s+");
+                if (fields.length <= DROPS_FIELD) {
+                    continue;
+                }
+                final String[] queues = fields[QUEUES_FIELD].split(":");
+                try {
+                    stats.put(fields[INODE_FIELD], new UdpSocketStats(Long.parseLong(queues[1], 16), Long.parseLong(fields[DROPS_FIELD])));
+                } catch (final NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    // Skip malformed lines
+                }
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.netty.buffer.ByteBuf;
+
+public class UdpListenerTest {
+
+    @Test
+    public void fallsBackToASingleNioSocket() throws Exception {
+        final CountingParser parser = new CountingParser();
+        final MetricRegistry metrics = new MetricRegistry();
+        final UdpListener listener = new UdpListener("test", Collections.singletonList(parser), metrics) {
+            @Override
+            boolean isNativeTransportAvailable() {
+                return false;
+            }
+        };
+        listener.setHost("127.0.0.1");
+        listener.setPort(getAvailablePort());
+        listener.setSockets(4);
+
+        listener.start();
+        try {
+            try (final DatagramSocket socket = new DatagramSocket()) {
+                final byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
+                socket.send(new DatagramPacket(payload, payload.length, InetAddress.getByName("127.0.0.1"), listener.getPort()));
+            }
+            assertTrue(parser.received.await(30, TimeUnit.SECONDS));
+
+            // Only a single socket was bound, and there are no kernel statistics for NIO sockets
+            assertThat(metrics.getMeters().keySet(), contains(
+                    "listeners.test.packetsReceived",
+                    "listeners.test.sockets.0.packetsReceived"));
+            assertThat(metrics.getGauges().keySet(), empty());
+        } finally {
+            listener.stop();
+        }
+
+        // The socket metrics are removed with the socket
+        assertThat(metrics.getMeters().keySet(), contains("listeners.test.packetsReceived"));
+    }
+
+    private static int getAvailablePort() throws Exception {
+        try (final DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class CountingParser implements UdpParser {
+        private final CountDownLatch received = new CountDownLatch(1);
+
+        @Override
+        public CompletableFuture<?> parse(final ByteBuf buffer, final InetSocketAddress remoteAddress, final InetSocketAddress localAddress) {
+            received.countDown();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Counts the received datagrams";
+        }
+
+        @Override
+        public Object dumpInternalState() {
+            return null;
+        }
+
+        @Override
+        public void start(final ScheduledExecutorService executorService) {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
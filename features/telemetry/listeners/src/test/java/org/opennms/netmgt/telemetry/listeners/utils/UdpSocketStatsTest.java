@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class UdpSocketStatsTest {
+
+    @Test
+    public void canReadIPv4Sockets() throws Exception {
+        final Map<String, UdpSocketStats> stats = UdpSocketStats.readAll(fixture("udp"));
+        assertEquals(3, stats.size());
+
+        assertEquals(0L, stats.get("12345").getRxQueue());
+        assertEquals(0L, stats.get("12345").getDrops());
+
+        assertEquals(0x1A00L, stats.get("12346").getRxQueue());
+        assertEquals(42L, stats.get("12346").getDrops());
+    }
+
+    @Test
+    public void canReadIPv6Sockets() throws Exception {
+        final Map<String, UdpSocketStats> stats = UdpSocketStats.readAll(fixture("udp6"));
+        assertEquals(2, stats.size());
+
+        assertEquals(0xA00L, stats.get("67890").getRxQueue());
+        assertEquals(17L, stats.get("67890").getDrops());
+    }
+
+    @Test
+    public void canReadSocketsFromAllFiles() throws Exception {
+        final Map<String, UdpSocketStats> stats = UdpSocketStats.readAll(fixture("udp"), fixture("udp6"));
+        assertTrue(stats.containsKey("12346"));
+        assertTrue(stats.containsKey("67890"));
+
+        // Unknown inodes have no statistics
+        assertFalse(stats.containsKey("99999"));
+        assertNull(stats.get("99999"));
+    }
+
+    @Test
+    public void canSkipMissingFiles() throws Exception {
+        final Map<String, UdpSocketStats> stats = UdpSocketStats.readAll(Paths.get("/does/not/exist"), fixture("udp6"));
+        assertEquals(2, stats.size());
+        assertTrue(UdpSocketStats.readAll(Paths.get("/does/not/exist")).isEmpty());
+    }
+
+    private static Path fixture(final String name) throws URISyntaxException {
+        return Paths.get(UdpSocketStatsTest.class.getResource("/proc/" + name).toURI());
+    }
+}
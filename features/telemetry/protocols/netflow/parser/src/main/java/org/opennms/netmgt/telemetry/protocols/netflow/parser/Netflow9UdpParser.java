@@ -61,6 +61,8 @@ public class Netflow9UdpParser extends UdpParserBase implements UdpParser, Dispa
 
     private final Netflow9MessageBuilder messageBuilder = new Netflow9MessageBuilder();
 
+    private boolean flyweightDecoding = false;
+
     public Netflow9UdpParser(final String name,
                              final AsyncDispatcher<TelemetryMessage> dispatcher,
                              final EventForwarder eventForwarder,
@@ -77,10 +79,15 @@ public class Netflow9UdpParser extends UdpParserBase implements UdpParser, Dispa
     @Override
     protected RecordProvider parse(Session session, ByteBuf buffer) throws Exception {
         final Header header = new Header(slice(buffer, Header.SIZE));
-        final Packet packet = new Packet(session, header, buffer);
+        final Packet packet = new Packet(session, header, buffer, this.flyweightDecoding);
 
         detectClockSkew(header.unixSecs * 1000L, session.getRemoteAddress());
 
+        if (this.flyweightDecoding) {
+            // Records are read from the buffer which stays retained until all records have been dispatched
+            return this.messageBuilder.buildFlowRecords(packet);
+        }
+
         return packet;
     }
 
@@ -136,6 +143,14 @@ public class Netflow9UdpParser extends UdpParserBase implements UdpParser, Dispa
         }
     }
 
+    public boolean getFlyweightDecoding() {
+        return this.flyweightDecoding;
+    }
+
+    public void setFlyweightDecoding(final boolean flyweightDecoding) {
+        this.flyweightDecoding = flyweightDecoding;
+    }
+
     public Long getFlowActiveTimeoutFallback() {
         return this.messageBuilder.getFlowActiveTimeoutFallback();
     }
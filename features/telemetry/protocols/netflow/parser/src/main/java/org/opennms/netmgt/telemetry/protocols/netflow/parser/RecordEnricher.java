@@ -53,6 +53,7 @@ import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.SignedVal
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.StringValue;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UndeclaredValue;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.FlowRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,16 +72,32 @@ public class RecordEnricher {
 
     public CompletableFuture<RecordEnrichment> enrich(Iterable<Value<?>> record) {
         if (!this.dnsLookupsEnabled) {
-            final CompletableFuture<RecordEnrichment> emptyFuture = new CompletableFuture<>();
-            final RecordEnrichment emptyEnrichment = new DefaultRecordEnrichment(Collections.<InetAddress, String>emptyMap());
-            emptyFuture.complete(emptyEnrichment);
-            return emptyFuture;
+            return emptyEnrichment();
         }
         final IpAddressCapturingVisitor ipAddressCapturingVisitor = new IpAddressCapturingVisitor();
         for (final Value<?> value : record) {
             value.visit(ipAddressCapturingVisitor);
         }
-        final Set<InetAddress> addressesToReverseLookup = ipAddressCapturingVisitor.getAddresses();
+        return reverseLookup(ipAddressCapturingVisitor.getAddresses());
+    }
+
+    public CompletableFuture<RecordEnrichment> enrich(FlowRecord record) {
+        if (!this.dnsLookupsEnabled) {
+            return emptyEnrichment();
+        }
+        final Set<InetAddress> addresses = new HashSet<>();
+        record.visitAddresses(addresses::add);
+        return reverseLookup(addresses);
+    }
+
+    private static CompletableFuture<RecordEnrichment> emptyEnrichment() {
+        final CompletableFuture<RecordEnrichment> emptyFuture = new CompletableFuture<>();
+        final RecordEnrichment emptyEnrichment = new DefaultRecordEnrichment(Collections.<InetAddress, String>emptyMap());
+        emptyFuture.complete(emptyEnrichment);
+        return emptyFuture;
+    }
+
+    private CompletableFuture<RecordEnrichment> reverseLookup(final Set<InetAddress> addressesToReverseLookup) {
         final Map<InetAddress, String> hostnamesByAddress = new HashMap<>(addressesToReverseLookup.size());
         final CompletableFuture reverseLookupFutures[] = addressesToReverseLookup.stream()
                 .map(addr -> {
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
@@ -72,15 +73,30 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
     public final List<TemplateSet> templateSets;
     public final List<OptionsTemplateSet> optionTemplateSets;
     public final List<DataSet> dataSets;
+    public final List<RawDataSet> rawDataSets;
 
     public Packet(final Session session,
                   final Header header,
                   final ByteBuf buffer) throws InvalidPacketException {
+        this(session, header, buffer, false);
+    }
+
+    /**
+     * Parses the packet.
+     *
+     * If {@code deferDataRecords} is set, the records of data sets are not decoded but kept as {@link RawDataSet}s
+     * referring to the given buffer. Data sets of options templates are always decoded as these feed the session.
+     */
+    public Packet(final Session session,
+                  final Header header,
+                  final ByteBuf buffer,
+                  final boolean deferDataRecords) throws InvalidPacketException {
         this.header = Objects.requireNonNull(header);
 
         final List<TemplateSet> templateSets = new LinkedList<>();
         final List<OptionsTemplateSet> optionTemplateSets = new LinkedList<>();
         final List<DataSet> dataSets = new LinkedList<>();
+        final List<RawDataSet> rawDataSets = new LinkedList<>();
         while (buffer.isReadable()) {
             // We ignore header.counter here, because different exporters interpret it as flowset count or record count
 
@@ -134,6 +150,21 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
                 case DATA_FLOWSET: {
                     final Session.Resolver resolver = session.getResolver(header.sourceId);
 
+                    if (deferDataRecords) {
+                        final Template template;
+                        try {
+                            template = resolver.lookupTemplate(setHeader.setId);
+                        } catch (final MissingTemplateException ex) {
+                            LOG.debug("Skipping data-set due to missing template: {}", ex.getMessage());
+                            break;
+                        }
+
+                        if (template.type == Template.Type.TEMPLATE) {
+                            rawDataSets.add(new RawDataSet(this, setHeader, resolver, template, payloadBuffer));
+                            break;
+                        }
+                    }
+
                     final DataSet dataSet;
                     try {
                         dataSet = new DataSet(this, setHeader, resolver, payloadBuffer);
@@ -162,6 +193,7 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
         this.templateSets = Collections.unmodifiableList(templateSets);
         this.optionTemplateSets = Collections.unmodifiableList(optionTemplateSets);
         this.dataSets = Collections.unmodifiableList(dataSets);
+        this.rawDataSets = Collections.unmodifiableList(rawDataSets);
     }
 
     @Override
@@ -175,10 +207,25 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
     public Stream<Iterable<Value<?>>> getRecords() {
         final int recordCount = this.dataSets.stream()
                 .mapToInt(s -> s.records.size())
+                .sum()
+                + this.rawDataSets.stream()
+                .mapToInt(s -> s.recordCount)
                 .sum();
 
-        return this.dataSets.stream()
+        final Stream<Iterable<Value<?>>> decoded = this.dataSets.stream()
                 .flatMap(s -> s.records.stream())
+                .map(r -> Iterables.concat(r.fields, r.options));
+
+        final Stream<Iterable<Value<?>>> deferred = this.rawDataSets.stream()
+                .flatMap(s -> IntStream.range(0, s.recordCount).mapToObj(i -> {
+                    try {
+                        return Iterables.concat(s.decode(i), s.options);
+                    } catch (final InvalidPacketException | MissingTemplateException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+
+        return Stream.concat(decoded, deferred)
                 .map(r -> Iterables.concat(
                         ImmutableList.of(
                                 new UnsignedValue("@recordCount", recordCount),
@@ -186,8 +233,7 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
                                 new UnsignedValue("@sysUpTime", this.header.sysUpTime),
                                 new UnsignedValue("@unixSecs", this.header.unixSecs),
                                 new UnsignedValue("@sourceId", this.header.sourceId)),
-                        r.fields,
-                        r.options
+                        r
                 ));
     }
 
@@ -208,6 +254,7 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
                 .add("templateSets", this.templateSets)
                 .add("optionTemplateSets", this.optionTemplateSets)
                 .add("dataTemplateSets", this.dataSets)
+                .add("rawDataSets", this.rawDataSets)
                 .toString();
     }
 }
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto;
+
+import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.MissingTemplateException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Field;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
+
+import com.google.common.base.MoreObjects;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A data set which records are not decoded while parsing the packet.
+ *
+ * The set keeps a view on the payload of the packet. As all fields of a NetFlow v9 template have a fixed length,
+ * every record can be located by its index and decoded later on - or directly read from the buffer by
+ * {@link org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder}. The buffer is only
+ * valid as long as the underlying packet buffer is retained.
+ */
+public final class RawDataSet {
+    private final Session.Resolver resolver;
+
+    public final Packet packet;  // Enclosing packet
+
+    public final FlowSetHeader header;
+
+    public final Template template;
+
+    public final ByteBuf buffer;
+
+    public final int recordLength;
+
+    public final int recordCount;
+
+    // The options are looked up by system and template only and therefore apply to all records of the set
+    public final List<Value<?>> options;
+
+    public RawDataSet(final Packet packet,
+                      final FlowSetHeader header,
+                      final Session.Resolver resolver,
+                      final Template template,
+                      final ByteBuf buffer) throws InvalidPacketException {
+        this.packet = Objects.requireNonNull(packet);
+        this.header = Objects.requireNonNull(header);
+        this.resolver = Objects.requireNonNull(resolver);
+        this.template = Objects.requireNonNull(template);
+        this.buffer = Objects.requireNonNull(buffer);
+
+        this.recordLength = template.stream()
+                .mapToInt(f -> f.length()).sum();
+        this.recordCount = this.recordLength > 0
+                ? buffer.readableBytes() / this.recordLength
+                : 0;
+
+        if (this.recordCount == 0) {
+            throw new InvalidPacketException(buffer, "Empty set");
+        }
+
+        this.options = resolver.lookupOptions(ScopeFieldSpecifier.buildScopeValues(packet.header.sourceId, template.id));
+    }
+
+    /**
+     * Returns the absolute buffer index of the record with the given index.
+     */
+    public int offsetOf(final int index) {
+        return this.buffer.readerIndex() + index * this.recordLength;
+    }
+
+    /**
+     * Decodes the fields of the record with the given index like {@link DataRecord} does.
+     */
+    public List<Value<?>> decode(final int index) throws InvalidPacketException, MissingTemplateException {
+        final ByteBuf record = this.buffer.slice(this.offsetOf(index), this.recordLength);
+
+        final List<Value<?>> fields = new ArrayList<>(this.template.fields.size());
+        for (final Field field : this.template.fields) {
+            fields.add(field.parse(this.resolver, slice(record, field.length())));
+        }
+
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("header", header)
+                .add("template", template.id)
+                .add("recordCount", recordCount)
+                .toString();
+    }
+}
@@ -39,26 +39,130 @@ import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Me
 import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setLongValue;
 
 import java.net.InetAddress;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-import org.opennms.netmgt.telemetry.protocols.netflow.parser.IllegalFlowException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.RecordEnrichment;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.Direction;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.FlowMessage;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.NetflowVersion;
 import org.opennms.netmgt.telemetry.protocols.netflow.transport.SamplingAlgorithm;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 public class Netflow9MessageBuilder implements MessageBuilder {
 
     private Long flowActiveTimeoutFallback;
     private Long flowInactiveTimeoutFallback;
     private Long flowSamplingIntervalFallback;
 
+    // Templates are replaced by new instances whenever the exporter re-announces them, so plans are keyed by identity
+    private final LoadingCache<Template, Netflow9TemplatePlan> plans = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(Netflow9TemplatePlan::new));
+
     public Netflow9MessageBuilder() {
     }
 
     @Override
     public FlowMessage.Builder buildMessage(final Iterable<Value<?>> values, final RecordEnrichment enrichment) {
+        final Accumulator accumulator = new Accumulator();
+        for (Value<?> value : values) {
+            accumulator.accept(value);
+        }
+        return accumulator.buildMessage(enrichment);
+    }
+
+    /**
+     * Exposes the records of the given packet as flow records which are decoded directly from the packet buffer.
+     *
+     * Data sets which have been deferred while parsing the packet are decoded using a plan compiled once per
+     * template. Only the fields which end up in the flow message are read and no {@link Value} is created for them.
+     * Records which have been decoded eagerly are still accepted and handled like the ones passed to
+     * {@link #buildMessage(Iterable, RecordEnrichment)}.
+     */
+    public FlowRecordProvider buildFlowRecords(final Packet packet) {
+        return new FlowRecordProvider() {
+            @Override
+            public Stream<FlowRecord> getFlowRecords() {
+                final int recordCount = packet.dataSets.stream().mapToInt(s -> s.records.size()).sum()
+                        + packet.rawDataSets.stream().mapToInt(s -> s.recordCount).sum();
+
+                final Stream<FlowRecord> decoded = packet.dataSets.stream()
+                        .flatMap(s -> s.records.stream())
+                        .map(r -> {
+                            final Accumulator accumulator = new Accumulator(packet.header, recordCount);
+                            r.fields.forEach(accumulator::accept);
+                            r.options.forEach(accumulator::accept);
+                            return accumulator;
+                        });
+
+                final Stream<FlowRecord> deferred = packet.rawDataSets.stream()
+                        .flatMap(s -> {
+                            final Netflow9TemplatePlan plan = plans.getUnchecked(s.template);
+                            return IntStream.range(0, s.recordCount).mapToObj(i -> {
+                                final Accumulator accumulator = new Accumulator(packet.header, recordCount);
+                                plan.decode(s.buffer, s.offsetOf(i), accumulator);
+                                s.options.forEach(accumulator::accept);
+                                return accumulator;
+                            });
+                        });
+
+                return Stream.concat(decoded, deferred);
+            }
+
+            @Override
+            public Stream<Iterable<Value<?>>> getRecords() {
+                return packet.getRecords();
+            }
+
+            @Override
+            public long getObservationDomainId() {
+                return packet.getObservationDomainId();
+            }
+
+            @Override
+            public long getSequenceNumber() {
+                return packet.getSequenceNumber();
+            }
+        };
+    }
+
+    public Long getFlowActiveTimeoutFallback() {
+        return this.flowActiveTimeoutFallback;
+    }
+
+    public void setFlowActiveTimeoutFallback(final Long flowActiveTimeoutFallback) {
+        this.flowActiveTimeoutFallback = flowActiveTimeoutFallback;
+    }
+
+    public Long getFlowInactiveTimeoutFallback() {
+        return this.flowInactiveTimeoutFallback;
+    }
+
+    public void setFlowInactiveTimeoutFallback(final Long flowInactiveTimeoutFallback) {
+        this.flowInactiveTimeoutFallback = flowInactiveTimeoutFallback;
+    }
+
+    public Long getFlowSamplingIntervalFallback() {
+        return this.flowSamplingIntervalFallback;
+    }
+
+    public void setFlowSamplingIntervalFallback(final Long flowSamplingIntervalFallback) {
+        this.flowSamplingIntervalFallback = flowSamplingIntervalFallback;
+    }
+
+    /**
+     * Collects the facts of a single flow record until the message can be built.
+     */
+    final class Accumulator implements FlowRecord {
         final FlowMessage.Builder builder = FlowMessage.newBuilder();
 
         InetAddress ipv4DstAddress = null;
@@ -75,8 +179,8 @@ public class Netflow9MessageBuilder implements MessageBuilder {
         Long ipv6SrcMask = null;
         Long srcVlan = null;
         Long dstVlan = null;
-        Long flowActiveTimeout = this.flowActiveTimeoutFallback;
-        Long flowInActiveTimeout = this.flowInactiveTimeoutFallback;
+        Long flowActiveTimeout = flowActiveTimeoutFallback;
+        Long flowInActiveTimeout = flowInactiveTimeoutFallback;
         Long sysUpTime = null;
         Long unixSecs = null;
         Long firstSwitched = null;
@@ -84,11 +188,23 @@ public class Netflow9MessageBuilder implements MessageBuilder {
         Long flowStartMilliseconds = null;
         Long flowEndMilliseconds = null;
 
-	if (this.flowSamplingIntervalFallback != null) {
-	    builder.setSamplingInterval(setDoubleValue(this.flowSamplingIntervalFallback));
-	}
+        Accumulator() {
+            if (flowSamplingIntervalFallback != null) {
+                builder.setSamplingInterval(setDoubleValue(flowSamplingIntervalFallback));
+            }
+        }
 
-        for (Value<?> value : values) {
+        Accumulator(final Header header, final int recordCount) {
+            this();
+
+            builder.setNumFlowRecords(setIntValue(recordCount));
+            builder.setFlowSeqNum(setLongValue(header.sequenceNumber));
+            builder.setNodeIdentifier(String.valueOf(header.sourceId));
+            sysUpTime = header.sysUpTime;
+            unixSecs = header.unixSecs;
+        }
+
+        void accept(final Value<?> value) {
             switch (value.getName()) {
                 // Header
                 case "@recordCount":
@@ -244,88 +360,74 @@ public class Netflow9MessageBuilder implements MessageBuilder {
             }
         }
 
-        long timeStampInMsecs = unixSecs != null ? unixSecs * 1000 : 0;
-        builder.setTimestamp(timeStampInMsecs);
+        @Override
+        public void visitAddresses(final Consumer<InetAddress> consumer) {
+            first(ipv6DstAddress, ipv4DstAddress).ifPresent(consumer);
+            first(ipv6SrcAddress, ipv4SrcAddress).ifPresent(consumer);
+            first(ipv6NextHop, ipv4NextHop, bgpIpv6NextHop, bgpIpv4NextHop).ifPresent(consumer);
+        }
+
+        @Override
+        public FlowMessage.Builder buildMessage(final RecordEnrichment enrichment) {
+            long timeStampInMsecs = unixSecs != null ? unixSecs * 1000 : 0;
+            builder.setTimestamp(timeStampInMsecs);
 
-        long bootTime = timeStampInMsecs - sysUpTime;
+            long bootTime = timeStampInMsecs - sysUpTime;
 
-        if (firstSwitched != null) {
-            builder.setFirstSwitched(setLongValue(firstSwitched + bootTime));
-        } else {
-            // Some Cisco platforms also support absolute timestamps in NetFlow v9 (like defined in IPFIX). See NMS-13006
-            if (flowStartMilliseconds != null) {
-                builder.setFirstSwitched(setLongValue(flowStartMilliseconds));
+            if (firstSwitched != null) {
+                builder.setFirstSwitched(setLongValue(firstSwitched + bootTime));
+            } else {
+                // Some Cisco platforms also support absolute timestamps in NetFlow v9 (like defined in IPFIX). See NMS-13006
+                if (flowStartMilliseconds != null) {
+                    builder.setFirstSwitched(setLongValue(flowStartMilliseconds));
+                }
             }
-        }
-        if(lastSwitched != null) {
-            builder.setLastSwitched(setLongValue(lastSwitched + bootTime));
-        } else {
-            // Some Cisco platforms also support absolute timestamps in NetFlow v9 (like defined in IPFIX). See NMS-13006
-            if (flowEndMilliseconds != null) {
-                builder.setLastSwitched(setLongValue(flowEndMilliseconds));
+            if(lastSwitched != null) {
+                builder.setLastSwitched(setLongValue(lastSwitched + bootTime));
+            } else {
+                // Some Cisco platforms also support absolute timestamps in NetFlow v9 (like defined in IPFIX). See NMS-13006
+                if (flowEndMilliseconds != null) {
+                    builder.setLastSwitched(setLongValue(flowEndMilliseconds));
+                }
             }
-        }
 
-        // Set Destination address and host name.
-        first(ipv6DstAddress, ipv4DstAddress).ifPresent(inetAddress -> {
-            enrichment.getHostnameFor(inetAddress).ifPresent(builder::setDstHostname);
-            builder.setDstAddress(inetAddress.getHostAddress());
-        });
-
-        // dst mask
-        first(ipv6DstMask, dstMask).ifPresent(dstMaskLen ->
-            builder.setDstMaskLen(setIntValue(dstMaskLen.intValue())));
-
-        // Set Source address and host name.
-        first(ipv6SrcAddress, ipv4SrcAddress).ifPresent(inetAddress -> {
-            enrichment.getHostnameFor(inetAddress).ifPresent(builder::setSrcHostname);
-            builder.setSrcAddress(inetAddress.getHostAddress());
-        });
-        // src mask
-        first(ipv6SrcMask, srcMask).ifPresent(srcMaskLen -> builder.setSrcMaskLen(setIntValue(srcMaskLen.intValue())));
-
-        // Set next hop address, hostname.
-        first(ipv6NextHop, ipv4NextHop, bgpIpv6NextHop, bgpIpv4NextHop).ifPresent(inetAddress -> {
-            enrichment.getHostnameFor(inetAddress).ifPresent(builder::setNextHopHostname);
-            builder.setNextHopAddress(inetAddress.getHostAddress());
-        });
-
-        // set vlan
-        first(srcVlan, dstVlan).ifPresent( vlan -> builder.setVlan(setIntValue(vlan.intValue())));
-
-        Timeout timeout = new Timeout(flowActiveTimeout, flowInActiveTimeout);
-        timeout.setFirstSwitched(builder.hasFirstSwitched() ? builder.getFirstSwitched().getValue() : null);
-        timeout.setLastSwitched(builder.hasLastSwitched() ? builder.getLastSwitched().getValue() : null);
-        timeout.setNumBytes(builder.getNumBytes().getValue());
-        timeout.setNumPackets(builder.getNumPackets().getValue());
-        Long deltaSwitched = timeout.getDeltaSwitched();
-        getUInt64Value(deltaSwitched).ifPresent(builder::setDeltaSwitched);
-
-        builder.setNetflowVersion(NetflowVersion.V9);
-        return builder;
-    }
+            // Set Destination address and host name.
+            first(ipv6DstAddress, ipv4DstAddress).ifPresent(inetAddress -> {
+                enrichment.getHostnameFor(inetAddress).ifPresent(builder::setDstHostname);
+                builder.setDstAddress(inetAddress.getHostAddress());
+            });
 
-    public Long getFlowActiveTimeoutFallback() {
-        return this.flowActiveTimeoutFallback;
-    }
+            // dst mask
+            first(ipv6DstMask, dstMask).ifPresent(dstMaskLen ->
+                builder.setDstMaskLen(setIntValue(dstMaskLen.intValue())));
 
-    public void setFlowActiveTimeoutFallback(final Long flowActiveTimeoutFallback) {
-        this.flowActiveTimeoutFallback = flowActiveTimeoutFallback;
-    }
+            // Set Source address and host name.
+            first(ipv6SrcAddress, ipv4SrcAddress).ifPresent(inetAddress -> {
+                enrichment.getHostnameFor(inetAddress).ifPresent(builder::setSrcHostname);
+                builder.setSrcAddress(inetAddress.getHostAddress());
+            });
+            // src mask
+            first(ipv6SrcMask, srcMask).ifPresent(srcMaskLen -> builder.setSrcMaskLen(setIntValue(srcMaskLen.intValue())));
 
-    public Long getFlowInactiveTimeoutFallback() {
-        return this.flowInactiveTimeoutFallback;
-    }
+            // Set next hop address, hostname.
+            first(ipv6NextHop, ipv4NextHop, bgpIpv6NextHop, bgpIpv4NextHop).ifPresent(inetAddress -> {
+                enrichment.getHostnameFor(inetAddress).ifPresent(builder::setNextHopHostname);
+                builder.setNextHopAddress(inetAddress.getHostAddress());
+            });
 
-    public void setFlowInactiveTimeoutFallback(final Long flowInactiveTimeoutFallback) {
-        this.flowInactiveTimeoutFallback = flowInactiveTimeoutFallback;
-    }
+            // set vlan
+            first(srcVlan, dstVlan).ifPresent( vlan -> builder.setVlan(setIntValue(vlan.intValue())));
 
-    public Long getFlowSamplingIntervalFallback() {
-        return this.flowSamplingIntervalFallback;
-    }
+            Timeout timeout = new Timeout(flowActiveTimeout, flowInActiveTimeout);
+            timeout.setFirstSwitched(builder.hasFirstSwitched() ? builder.getFirstSwitched().getValue() : null);
+            timeout.setLastSwitched(builder.hasLastSwitched() ? builder.getLastSwitched().getValue() : null);
+            timeout.setNumBytes(builder.getNumBytes().getValue());
+            timeout.setNumPackets(builder.getNumPackets().getValue());
+            Long deltaSwitched = timeout.getDeltaSwitched();
+            getUInt64Value(deltaSwitched).ifPresent(builder::setDeltaSwitched);
 
-    public void setFlowSamplingIntervalFallback(final Long flowSamplingIntervalFallback) {
-        this.flowSamplingIntervalFallback = flowSamplingIntervalFallback;
+            builder.setNetflowVersion(NetflowVersion.V9);
+            return builder;
+        }
     }
 }
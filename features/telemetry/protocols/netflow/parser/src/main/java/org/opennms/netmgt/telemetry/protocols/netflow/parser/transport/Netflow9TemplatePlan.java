@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.transport;
+
+import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setDoubleValue;
+import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setIntValue;
+import static org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.MessageUtils.setLongValue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
+
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.FieldSpecifier;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Field;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
+import org.opennms.netmgt.telemetry.protocols.netflow.transport.Direction;
+import org.opennms.netmgt.telemetry.protocols.netflow.transport.SamplingAlgorithm;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * The fixed-offset decoding plan of a NetFlow v9 template.
+ *
+ * All fields in a NetFlow v9 template have a fixed length, so the position of every field inside a record is known
+ * as soon as the template is received. The plan keeps the offsets of the fields consumed by
+ * {@link Netflow9MessageBuilder} together with an accessor which reads the field from the buffer and stores it in
+ * the record. All other fields are skipped without being read.
+ *
+ * The accessors must stay in line with {@link Netflow9MessageBuilder.Accumulator#accept}.
+ */
+final class Netflow9TemplatePlan {
+
+    @FunctionalInterface
+    private interface Accessor {
+        void read(final ByteBuf buffer, final int index, final int length, final Netflow9MessageBuilder.Accumulator record);
+    }
+
+    private static final Map<String, Accessor> ACCESSORS = ImmutableMap.<String, Accessor>builder()
+            .put("IN_BYTES", unsigned((r, v) -> r.builder.setNumBytes(setLongValue(v))))
+            .put("DIRECTION", unsigned((r, v) -> {
+                switch ((int) v) {
+                    case 0:
+                        r.builder.setDirection(Direction.INGRESS);
+                        break;
+                    case 1:
+                        r.builder.setDirection(Direction.EGRESS);
+                        break;
+                }
+            }))
+            .put("IPV4_DST_ADDR", address((r, a) -> r.ipv4DstAddress = a))
+            .put("IPV6_DST_ADDR", address((r, a) -> r.ipv6DstAddress = a))
+            .put("DST_AS", unsigned((r, v) -> r.builder.setDstAs(setLongValue(v))))
+            .put("IPV6_DST_MASK", unsigned((r, v) -> r.ipv6DstMask = v))
+            .put("DST_MASK", unsigned((r, v) -> r.dstMask = v))
+            .put("L4_DST_PORT", unsigned((r, v) -> r.builder.setDstPort(setIntValue((int) v))))
+            .put("ENGINE_ID", unsigned((r, v) -> r.builder.setEngineId(setIntValue((int) v))))
+            .put("ENGINE_TYPE", unsigned((r, v) -> r.builder.setEngineType(setIntValue((int) v))))
+            .put("FIRST_SWITCHED", unsigned((r, v) -> r.firstSwitched = v))
+            .put("LAST_SWITCHED", unsigned((r, v) -> r.lastSwitched = v))
+            .put("INPUT_SNMP", unsigned((r, v) -> r.builder.setInputSnmpIfindex(setIntValue((int) v))))
+            .put("IP_PROTOCOL_VERSION", unsigned((r, v) -> r.builder.setIpProtocolVersion(setIntValue((int) v))))
+            .put("OUTPUT_SNMP", unsigned((r, v) -> r.builder.setOutputSnmpIfindex(setIntValue((int) v))))
+            .put("IPV6_NEXT_HOP", address((r, a) -> r.ipv6NextHop = a))
+            .put("IPV4_NEXT_HOP", address((r, a) -> r.ipv4NextHop = a))
+            .put("BPG_IPV6_NEXT_HOP", address((r, a) -> r.bgpIpv6NextHop = a))
+            .put("BPG_IPV4_NEXT_HOP", address((r, a) -> r.bgpIpv4NextHop = a))
+            .put("IN_PKTS", unsigned((r, v) -> r.builder.setNumPackets(setLongValue(v))))
+            .put("PROTOCOL", unsigned((r, v) -> r.builder.setProtocol(setIntValue((int) v))))
+            .put("SAMPLING_ALGORITHM", unsigned((r, v) -> {
+                switch ((int) v) {
+                    case 1:
+                        r.builder.setSamplingAlgorithm(SamplingAlgorithm.SYSTEMATIC_COUNT_BASED_SAMPLING);
+                        break;
+                    case 2:
+                        r.builder.setSamplingAlgorithm(SamplingAlgorithm.RANDOM_N_OUT_OF_N_SAMPLING);
+                        break;
+                    default:
+                        r.builder.setSamplingAlgorithm(SamplingAlgorithm.UNASSIGNED);
+                }
+            }))
+            .put("SAMPLING_INTERVAL", unsigned((r, v) -> r.builder.setSamplingInterval(setDoubleValue(v))))
+            .put("IPV6_SRC_ADDR", address((r, a) -> r.ipv6SrcAddress = a))
+            .put("IPV4_SRC_ADDR", address((r, a) -> r.ipv4SrcAddress = a))
+            .put("IPV6_SRC_MASK", unsigned((r, v) -> r.ipv6SrcMask = v))
+            .put("SRC_MASK", unsigned((r, v) -> r.srcMask = v))
+            .put("SRC_AS", unsigned((r, v) -> r.builder.setSrcAs(setLongValue(v))))
+            .put("L4_SRC_PORT", unsigned((r, v) -> r.builder.setSrcPort(setIntValue((int) v))))
+            .put("TCP_FLAGS", unsigned((r, v) -> r.builder.setTcpFlags(setIntValue((int) v))))
+            .put("TOS", unsigned((r, v) -> r.builder.setTos(setIntValue((int) v))))
+            .put("SRC_VLAN", unsigned((r, v) -> r.srcVlan = v))
+            .put("DST_VLAN", unsigned((r, v) -> r.dstVlan = v))
+            .put("FLOW_ACTIVE_TIMEOUT", unsigned((r, v) -> r.flowActiveTimeout = v))
+            .put("FLOW_INACTIVE_TIMEOUT", unsigned((r, v) -> r.flowInActiveTimeout = v))
+            .put("flowStartMilliseconds", unsigned((r, v) -> r.flowStartMilliseconds = v))
+            .put("flowEndMilliseconds", unsigned((r, v) -> r.flowEndMilliseconds = v))
+            .build();
+
+    private final int[] offsets;
+    private final int[] lengths;
+    private final Accessor[] accessors;
+
+    Netflow9TemplatePlan(final Template template) {
+        final List<Integer> offsets = new ArrayList<>();
+        final List<Integer> lengths = new ArrayList<>();
+        final List<Accessor> accessors = new ArrayList<>();
+
+        int offset = 0;
+        for (final Field field : template.fields) {
+            if (field instanceof FieldSpecifier) {
+                final Accessor accessor = ACCESSORS.get(((FieldSpecifier) field).informationElement.getName());
+                if (accessor != null) {
+                    offsets.add(offset);
+                    lengths.add(field.length());
+                    accessors.add(accessor);
+                }
+            }
+            offset += field.length();
+        }
+
+        this.offsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+        this.lengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+        this.accessors = accessors.toArray(new Accessor[0]);
+    }
+
+    /**
+     * Decodes the record starting at the given absolute index of the buffer into the given record.
+     * The reader index of the buffer is not modified.
+     */
+    void decode(final ByteBuf buffer, final int index, final Netflow9MessageBuilder.Accumulator record) {
+        for (int i = 0; i < this.accessors.length; i++) {
+            this.accessors[i].read(buffer, index + this.offsets[i], this.lengths[i], record);
+        }
+    }
+
+    private static Accessor unsigned(final ObjLongConsumer<Netflow9MessageBuilder.Accumulator> consumer) {
+        return (buffer, index, length, record) -> {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8L) | buffer.getUnsignedByte(index + i);
+            }
+            consumer.accept(record, value);
+        };
+    }
+
+    private static Accessor address(final BiConsumer<Netflow9MessageBuilder.Accumulator, InetAddress> consumer) {
+        return (buffer, index, length, record) -> {
+            final byte[] address = new byte[length];
+            buffer.getBytes(index, address);
+            try {
+                consumer.accept(record, InetAddress.getByAddress(address));
+            } catch (final UnknownHostException e) {
+                // The field length has been checked against the information element when the template was parsed
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+}
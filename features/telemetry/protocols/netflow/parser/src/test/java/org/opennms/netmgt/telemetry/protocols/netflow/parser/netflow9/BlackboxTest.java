@@ -29,6 +29,7 @@
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertThat;
 import static org.opennms.netmgt.telemetry.listeners.utils.BufferUtils.slice;
 
@@ -40,15 +41,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.RecordEnrichment;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.SequenceNumberTracker;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TcpSession;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.transport.Netflow9MessageBuilder;
+import org.opennms.netmgt.telemetry.protocols.netflow.transport.FlowMessage;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -112,4 +118,46 @@ public class BlackboxTest {
             }
         }
     }
+
+    @Test
+    public void testFlyweightDecoding() throws Exception {
+        final Session session = new TcpSession(InetAddress.getLoopbackAddress(), () -> new SequenceNumberTracker(32));
+        final Session flyweightSession = new TcpSession(InetAddress.getLoopbackAddress(), () -> new SequenceNumberTracker(32));
+
+        final Netflow9MessageBuilder messageBuilder = new Netflow9MessageBuilder();
+        final RecordEnrichment enrichment = address -> Optional.empty();
+
+        for (final String file : this.files) {
+            try (final FileChannel channel = FileChannel.open(FOLDER.resolve(file))) {
+                final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                channel.read(buffer);
+                buffer.flip();
+
+                final ByteBuf buf = Unpooled.wrappedBuffer(buffer);
+                final ByteBuf flyweightBuf = buf.duplicate();
+
+                do {
+                    final Packet packet = new Packet(session, new Header(slice(buf, Header.SIZE)), buf);
+                    final Packet flyweightPacket = new Packet(flyweightSession, new Header(slice(flyweightBuf, Header.SIZE)), flyweightBuf, true);
+
+                    assertThat(flyweightPacket.dataSets, is(empty()));
+
+                    final List<FlowMessage> expected = packet.getRecords()
+                            .map(r -> messageBuilder.buildMessage(r, enrichment).build())
+                            .collect(Collectors.toList());
+
+                    // Records decoded from the deferred sets must match the eagerly decoded ones
+                    assertThat(flyweightPacket.getRecords()
+                            .map(r -> messageBuilder.buildMessage(r, enrichment).build())
+                            .collect(Collectors.toList()), is(expected));
+
+                    // And so must the messages built directly from the buffer
+                    assertThat(messageBuilder.buildFlowRecords(flyweightPacket).getFlowRecords()
+                            .map(r -> r.buildMessage(enrichment).build())
+                            .collect(Collectors.toList()), is(expected));
+
+                } while (buf.isReadable());
+            }
+        }
+    }
 }
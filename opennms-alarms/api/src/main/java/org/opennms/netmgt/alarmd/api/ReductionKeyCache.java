@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.api;
+
+import java.util.List;
+
+/**
+ * In-memory index of reduction keys to alarm ids maintained by alarmd
+ * in order to avoid looking up alarms by reduction key in the database.
+ *
+ * This interface is exposed so that the state of the index can be
+ * inspected and verified from the shell.
+ */
+public interface ReductionKeyCache {
+
+    /**
+     * @return the number of reduction keys currently held in the index
+     */
+    long size();
+
+    /**
+     * @return true if the index is known to hold every alarm, in which case
+     * reduction keys that are not present in the index are known not to have an alarm
+     */
+    boolean isComplete();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    /**
+     * Compares the content of the index with the alarms table, and invalidates
+     * any entries that are found to be inconsistent.
+     *
+     * @return a description of every inconsistency that was found, empty if the
+     * index is consistent with the database
+     */
+    List<String> verify();
+
+}
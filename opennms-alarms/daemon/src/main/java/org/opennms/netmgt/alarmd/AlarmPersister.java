@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.List;
+
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
 
@@ -47,4 +49,15 @@ public interface AlarmPersister {
      */
     OnmsAlarm persist(Event event);
 
+    /**
+     * Persists a batch of events in a single transaction.
+     *
+     * The events are processed in the given order, and the results are the same as if
+     * {@link #persist(Event)} had been called for every event.
+     *
+     * @param events the events to persist
+     * @return the new/updated {@link OnmsAlarm}s, one for every event that was processed
+     */
+    List<OnmsAlarm> persistAll(List<Event> events);
+
 }
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Collects events over a short window and hands them to the {@link AlarmPersister}
+ * in batches, allowing the alarms affected by the batch to be loaded and updated
+ * in a single transaction.
+ *
+ * Events are sharded over a fixed number of stripes by their clear key, or their
+ * reduction key when no clear key is set, so that triggers and their clears are
+ * always processed by the same stripe, in the order in which they were received.
+ */
+public class AlarmPersisterBatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterBatcher.class);
+
+    protected static final boolean BATCH_ENABLED = Boolean.getBoolean("org.opennms.alarmd.batch.enabled");
+    protected static final Integer BATCH_SIZE = SystemProperties.getInteger("org.opennms.alarmd.batch.size", 250);
+    protected static final Long BATCH_WINDOW_MS = SystemProperties.getLong("org.opennms.alarmd.batch.window", 50L);
+    protected static final Integer BATCH_QUEUE_SIZE = SystemProperties.getInteger("org.opennms.alarmd.batch.queue.size", 10000);
+
+    private final AlarmPersister m_persister;
+    private final List<BlockingQueue<Event>> m_stripes;
+    private final int m_batchSize;
+    private final long m_batchWindowMs;
+
+    private ExecutorService m_executor;
+    private volatile boolean m_running = false;
+
+    public AlarmPersisterBatcher(AlarmPersister persister) {
+        this(persister, Alarmd.THREADS, BATCH_SIZE, BATCH_WINDOW_MS, BATCH_QUEUE_SIZE);
+    }
+
+    public AlarmPersisterBatcher(AlarmPersister persister, int numStripes, int batchSize, long batchWindowMs, int queueSize) {
+        m_persister = Objects.requireNonNull(persister);
+        m_batchSize = batchSize;
+        m_batchWindowMs = batchWindowMs;
+        m_stripes = new ArrayList<>(numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            m_stripes.add(new LinkedBlockingQueue<>(queueSize));
+        }
+    }
+
+    public static boolean isEnabled() {
+        return BATCH_ENABLED;
+    }
+
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        m_running = true;
+        m_executor = Executors.newFixedThreadPool(m_stripes.size(), new ThreadFactoryBuilder()
+                .setNameFormat("alarmd-batch-persister-%d")
+                .build());
+        for (final BlockingQueue<Event> stripe : m_stripes) {
+            m_executor.execute(() -> drain(stripe));
+        }
+        LOG.info("Batching alarm persister started with {} stripes, batch size {} and window {}ms.", m_stripes.size(), m_batchSize, m_batchWindowMs);
+    }
+
+    public synchronized void stop() {
+        if (!m_running) {
+            return;
+        }
+        m_running = false;
+        m_executor.shutdown();
+        try {
+            if (!m_executor.awaitTermination(m_batchWindowMs + 30000L, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Timed out while waiting for the pending alarm batches to be persisted.");
+                m_executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            m_executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues the given event for persistence, blocking if the stripe is full.
+     *
+     * @param event the event
+     */
+    public void enqueue(Event event) throws InterruptedException {
+        m_stripes.get(getStripe(event)).put(event);
+    }
+
+    private int getStripe(Event event) {
+        final String key = event.getAlarmData() == null ? event.getUei()
+                : event.getAlarmData().getClearKey() != null ? event.getAlarmData().getClearKey()
+                : event.getAlarmData().getReductionKey();
+        return key == null ? 0 : Math.floorMod(key.hashCode(), m_stripes.size());
+    }
+
+    private void drain(BlockingQueue<Event> stripe) {
+        final List<Event> batch = new ArrayList<>(m_batchSize);
+        // Keep draining after we've been stopped until the stripe is empty
+        while (m_running || !stripe.isEmpty()) {
+            try {
+                Queues.drain(stripe, batch, m_batchSize, m_batchWindowMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            persist(batch);
+            batch.clear();
+        }
+    }
+
+    private void persist(List<Event> batch) {
+        try {
+            m_persister.persistAll(batch);
+        } catch (Exception e) {
+            // Retry the events one at a time so that a single bad event does not cause the others to be lost
+            LOG.warn("Failed to persist batch of {} events. Retrying them individually.", batch.size(), e);
+            for (final Event event : batch) {
+                try {
+                    m_persister.persist(event);
+                } catch (Exception ex) {
+                    LOG.error("Failed to persist event with uei: {} and dbid: {}.", event.getUei(), event.getDbid(), ex);
+                }
+            }
+        }
+    }
+}
@@ -29,10 +29,14 @@
 package org.opennms.netmgt.alarmd;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -40,6 +44,7 @@ import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.core.sysprops.SystemProperties;
 import org.opennms.netmgt.alarmd.api.AlarmPersisterExtension;
 import org.opennms.netmgt.dao.api.AlarmDao;
@@ -57,6 +62,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -92,6 +99,9 @@ public class AlarmPersisterImpl implements AlarmPersister {
     @Autowired
     private AlarmEntityNotifier m_alarmEntityNotifier;
 
+    @Autowired(required = false)
+    private ReductionKeyCacheImpl m_reductionKeyCache;
+
     private Striped<Lock> lockStripes = StripedExt.fairLock(NUM_STRIPE_LOCKS);
 
     private final Set<AlarmPersisterExtension> extensions = Sets.newConcurrentHashSet();
@@ -127,7 +137,53 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return alarm;
     }
 
+    @Override
+    public List<OnmsAlarm> persistAll(List<Event> events) {
+        Objects.requireNonNull(events, "Cannot create alarms from null events.");
+        final List<Event> eventsToProcess = new ArrayList<>(events.size());
+        final Set<String> lockKeys = new LinkedHashSet<>();
+        for (final Event event : events) {
+            if (event == null || !checkEventSanityAndDoWeProcess(event)) {
+                continue;
+            }
+            eventsToProcess.add(event);
+            lockKeys.addAll(getLockKeys(event));
+        }
+        if (eventsToProcess.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        LOG.debug("persistAll: processing batch of {} events with {} distinct lock keys", eventsToProcess.size(), lockKeys.size());
+
+        // Lock all of the keys for the batch at once, the stripes are always acquired
+        // in the same order so this cannot deadlock with concurrent calls to persist()
+        final Iterable<Lock> locks = lockStripes.bulkGet(lockKeys);
+        final List<OnmsAlarm> alarms;
+        try {
+            locks.forEach(Lock::lock);
+            // Process the whole batch inside a single transaction
+            alarms = m_transactionOperations.execute((action) -> {
+                final BatchContext batch = new BatchContext(eventsToProcess, lockKeys);
+                final List<OnmsAlarm> processed = new ArrayList<>(eventsToProcess.size());
+                for (final Event event : eventsToProcess) {
+                    processed.add(addOrReduceEventAsAlarm(event, batch));
+                }
+                batch.flushAutoCleans();
+                batch.notifyListenersAfterCommit();
+                return processed;
+            });
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+
+        return alarms;
+    }
+
     private OnmsAlarm addOrReduceEventAsAlarm(Event event) throws IllegalStateException {
+        return addOrReduceEventAsAlarm(event, null);
+    }
+
+    private OnmsAlarm addOrReduceEventAsAlarm(Event event, BatchContext batch) throws IllegalStateException {
         
         final OnmsEvent persistedEvent = m_eventDao.get(event.getDbid());
         if (persistedEvent == null) {
@@ -146,11 +202,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             didSwapReductionKeyWithClearKey = true;
         }
 
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(key);
+        OnmsAlarm alarm = findByReductionKey(key, batch);
 
         if (alarm == null && didSwapReductionKeyWithClearKey) {
             // if the clearKey returns null, still need to check the reductionKey
-            alarm = m_alarmDao.findByReductionKey(reductionKey);
+            alarm = findByReductionKey(reductionKey, batch);
         }
 
         if (alarm == null || (m_createNewAlarmIfClearedAlarmExists && OnmsSeverity.CLEARED.equals(alarm.getSeverity()))) {
@@ -164,8 +220,17 @@ public class AlarmPersisterImpl implements AlarmPersister {
                 alarm.archive();
                 m_alarmDao.save(alarm);
                 m_alarmDao.flush();
+                if (m_reductionKeyCache != null) {
+                    m_reductionKeyCache.put(alarm.getReductionKey(), alarm.getId());
+                }
+                if (batch != null) {
+                    // The archived alarm no longer holds the key it was found with
+                    final OnmsAlarm alarmToRemove = alarm;
+                    batch.alarmsByReductionKey.values().removeIf(a -> a == alarmToRemove);
+                }
 
-                m_alarmEntityNotifier.didArchiveAlarm(alarm, reductionKey);
+                final OnmsAlarm archivedAlarm = alarm;
+                notifyListeners(batch, () -> m_alarmEntityNotifier.didArchiveAlarm(archivedAlarm, reductionKey));
             }
 
             alarm = createNewAlarm(persistedEvent, event);
@@ -180,8 +245,15 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(persistedEvent);
+            if (m_reductionKeyCache != null) {
+                m_reductionKeyCache.put(alarm.getReductionKey(), alarm.getId());
+            }
+            if (batch != null) {
+                batch.alarmsByReductionKey.put(alarm.getReductionKey(), alarm);
+            }
 
-            m_alarmEntityNotifier.didCreateAlarm(alarm);
+            final OnmsAlarm createdAlarm = alarm;
+            notifyListeners(batch, () -> m_alarmEntityNotifier.didCreateAlarm(createdAlarm));
         } else {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} found, reducing event to existing alarm: {}", reductionKey, alarm.getId());
             reduceEvent(persistedEvent, alarm, event);
@@ -198,14 +270,109 @@ public class AlarmPersisterImpl implements AlarmPersister {
             m_eventDao.update(persistedEvent);
 
             if (event.getAlarmData().isAutoClean()) {
-                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), persistedEvent);
+                if (batch != null) {
+                    // Only the last event reduced into the alarm is kept, so the delete can be done once per batch
+                    batch.autoCleans.put(alarm.getId(), persistedEvent);
+                } else {
+                    m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), persistedEvent);
+                }
             }
 
-            m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(alarm);
+            final OnmsAlarm updatedAlarm = alarm;
+            notifyListeners(batch, () -> m_alarmEntityNotifier.didUpdateAlarmWithReducedEvent(updatedAlarm));
+        }
+        return alarm;
+    }
+
+    /**
+     * Notifies the entity listeners right away, or once the batch has been committed when
+     * processing a batch, so that they never see the alarms of a batch that is rolled back
+     * and retried event by event.
+     *
+     * The {@link AlarmPersisterExtension} callbacks are not deferred: they mangle the alarm
+     * before it is saved, so their changes are rolled back along with the batch and they are
+     * invoked again, on the reloaded alarm, when the events are retried.
+     */
+    private void notifyListeners(BatchContext batch, Runnable notification) {
+        if (batch != null) {
+            batch.notifications.add(notification);
+        } else {
+            notification.run();
+        }
+    }
+
+    private OnmsAlarm findByReductionKey(String reductionKey, BatchContext batch) {
+        if (batch != null && batch.prefetchedReductionKeys.contains(reductionKey)) {
+            return batch.alarmsByReductionKey.get(reductionKey);
+        }
+        if (m_reductionKeyCache != null) {
+            final Integer alarmId = m_reductionKeyCache.lookup(reductionKey);
+            if (alarmId != null) {
+                if (alarmId == ReductionKeyCacheImpl.NO_ALARM) {
+                    return null;
+                }
+                final OnmsAlarm alarm = m_alarmDao.get(alarmId);
+                if (alarm != null && reductionKey.equals(alarm.getReductionKey())) {
+                    return alarm;
+                }
+                // The alarm was deleted or archived without us being notified, fall back to the database
+                m_reductionKeyCache.invalidate(reductionKey);
+            }
+        }
+        final OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
+        if (alarm != null && m_reductionKeyCache != null) {
+            m_reductionKeyCache.put(reductionKey, alarm.getId());
         }
         return alarm;
     }
 
+    /**
+     * State shared by all the events processed in the same batch.
+     */
+    private class BatchContext {
+        private final Set<String> prefetchedReductionKeys;
+        private final Map<String, OnmsAlarm> alarmsByReductionKey;
+        private final Map<Integer, OnmsEvent> autoCleans = new LinkedHashMap<>();
+        private final List<Runnable> notifications = new ArrayList<>();
+
+        private BatchContext(List<Event> events, Set<String> reductionKeys) {
+            // Load all of the events in the session with a single query, subsequent calls to get() are served from the session
+            final List<Integer> eventIds = events.stream().map(Event::getDbid).distinct().collect(Collectors.toList());
+            m_eventDao.findMatching(new CriteriaBuilder(OnmsEvent.class).in("id", eventIds).toCriteria());
+
+            // Load all of the alarms affected by the batch with a single query
+            prefetchedReductionKeys = reductionKeys;
+            alarmsByReductionKey = new HashMap<>(m_alarmDao.findByReductionKeys(reductionKeys));
+            if (m_reductionKeyCache != null) {
+                alarmsByReductionKey.forEach((reductionKey, alarm) -> m_reductionKeyCache.put(reductionKey, alarm.getId()));
+            }
+        }
+
+        private void flushAutoCleans() {
+            autoCleans.forEach((alarmId, lastEvent) -> m_eventDao.deletePreviousEventsForAlarm(alarmId, lastEvent));
+        }
+
+        private void notifyListenersAfterCommit() {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                notifications.forEach(Runnable::run);
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    // The session is still open here, so the listeners can access lazy associations
+                    for (final Runnable notification : notifications) {
+                        try {
+                            notification.run();
+                        } catch (Exception e) {
+                            LOG.error("An error occurred while notifying the alarm entity listeners.", e);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
     private void reduceEvent(OnmsEvent persistedEvent, OnmsAlarm alarm, Event event) {
         // Always set these
         alarm.setLastEvent(persistedEvent);
@@ -495,6 +662,10 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return m_eventUtil;
     }
 
+    public void setReductionKeyCache(ReductionKeyCacheImpl reductionKeyCache) {
+        m_reductionKeyCache = reductionKeyCache;
+    }
+
     public AlarmEntityNotifier getAlarmChangeListener() {
         return m_alarmEntityNotifier;
     }
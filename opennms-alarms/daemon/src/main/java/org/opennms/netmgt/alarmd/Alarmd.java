@@ -58,6 +58,8 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
 
     private AlarmPersister m_persister;
 
+    private volatile AlarmPersisterBatcher m_batcher;
+
     @Autowired
     private AlarmLifecycleListenerManager m_alm;
 
@@ -84,6 +86,16 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
            handleReloadEvent(e);
            return;
     	}
+    	final AlarmPersisterBatcher batcher = m_batcher;
+    	if (batcher != null) {
+    	    try {
+    	        batcher.enqueue(Event.copyFrom(e));
+    	    } catch (InterruptedException ex) {
+    	        LOG.warn("Interrupted while queuing event with uei: {} for persistence.", e.getUei());
+    	        Thread.currentThread().interrupt();
+    	    }
+    	    return;
+    	}
     	m_persister.persist(Event.copyFrom(e));
     }
 
@@ -123,10 +135,20 @@ public class Alarmd extends AbstractServiceDaemon implements ThreadAwareEventLis
     public synchronized void onStart() {
         // Start the Drools context
         m_droolsAlarmContext.start();
+        // Start batching events if enabled
+        if (AlarmPersisterBatcher.isEnabled()) {
+            m_batcher = new AlarmPersisterBatcher(m_persister);
+            m_batcher.start();
+        }
     }
 
     @Override
     public synchronized void onStop() {
+        // Flush any pending batches
+        if (m_batcher != null) {
+            m_batcher.stop();
+            m_batcher = null;
+        }
         // Stop the northbound interfaces
         m_northbounderManager.stop();
         // Stop the Drools context
@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.sysprops.SystemProperties;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.alarmd.api.ReductionKeyCache;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.SessionUtils;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Bounded, write-through index of reduction keys to alarm ids.
+ *
+ * The index is populated from the alarm snapshots issued by the {@link AlarmLifecycleListenerManager},
+ * the first of which is issued when alarmd starts, and is kept up-to-date by the
+ * {@link AlarmPersisterImpl} and the lifecycle callbacks.
+ *
+ * When the index holds every alarm, a reduction key that is not present in the index is known
+ * not to have an alarm and the database lookup can be skipped entirely. As soon as entries are
+ * evicted, absent keys fall back to the database until the next snapshot.
+ *
+ * Entries are tagged with the generation in which they were written so that a snapshot, which
+ * is loaded in a separate transaction, never overwrites or removes entries that were written
+ * after the snapshot was started.
+ *
+ * Entries written from within a transaction are only published once the transaction commits.
+ * Until then, their reduction keys are tracked as in flight: a snapshot, which cannot see the
+ * uncommitted alarms, never removes them, and they are never reported as having no alarm.
+ */
+public class ReductionKeyCacheImpl implements ReductionKeyCache, AlarmLifecycleListener, InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ReductionKeyCacheImpl.class);
+
+    public static final String ENABLED_SYS_PROP = "org.opennms.alarmd.reductionKeyCache.enabled";
+    public static final String MAX_SIZE_SYS_PROP = "org.opennms.alarmd.reductionKeyCache.maxSize";
+
+    private static final String JMX_DOMAIN = "org.opennms.netmgt.alarmd.reductionKeyCache";
+
+    /**
+     * Returned by {@link #lookup(String)} when the reduction key is known not to have an alarm.
+     */
+    public static final int NO_ALARM = -1;
+
+    private final boolean enabled;
+    private final long maxSize;
+    private final AtomicLong generation = new AtomicLong(0);
+    private volatile long snapshotGeneration = 0;
+    private volatile boolean complete = false;
+
+    /** number of uncommitted writes by reduction key */
+    private final ConcurrentMap<String, Integer> inFlightReductionKeys = new ConcurrentHashMap<>();
+
+    private final Cache<String, Entry> entriesByReductionKey;
+    private final ConcurrentMap<Integer, String> reductionKeysById = new ConcurrentHashMap<>();
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter staleEntries;
+    private JmxReporter metricsReporter;
+
+    @Autowired
+    private AlarmDao alarmDao;
+
+    @Autowired
+    private SessionUtils sessionUtils;
+
+    private static class Entry {
+        private final int alarmId;
+        private final long generation;
+
+        private Entry(int alarmId, long generation) {
+            this.alarmId = alarmId;
+            this.generation = generation;
+        }
+    }
+
+    public ReductionKeyCacheImpl() {
+        this(Boolean.getBoolean(ENABLED_SYS_PROP), SystemProperties.getLong(MAX_SIZE_SYS_PROP, 500000L));
+    }
+
+    public ReductionKeyCacheImpl(boolean enabled, long maxSize) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        entriesByReductionKey = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(this::onRemoval)
+                .build();
+
+        hits = metrics.counter("hits");
+        misses = metrics.counter("misses");
+        evictions = metrics.counter("evictions");
+        staleEntries = metrics.counter("stale");
+        metrics.register("size", (Gauge<Long>) this::size);
+        metrics.register("complete", (Gauge<Boolean>) this::isComplete);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Looks up the id of the alarm with the given reduction key.
+     *
+     * @param reductionKey the reduction key
+     * @return the id of the alarm, {@link #NO_ALARM} if the key is known not to have an alarm,
+     * or null if the database must be consulted
+     */
+    public Integer lookup(String reductionKey) {
+        if (!enabled || reductionKey == null) {
+            return null;
+        }
+        final Entry entry = entriesByReductionKey.getIfPresent(reductionKey);
+        if (entry != null) {
+            hits.inc();
+            return entry.alarmId;
+        } else if (complete && !inFlightReductionKeys.containsKey(reductionKey)) {
+            hits.inc();
+            return NO_ALARM;
+        }
+        misses.inc();
+        return null;
+    }
+
+    /**
+     * Records the alarm with the given reduction key.
+     *
+     * When called from within a transaction, the entry is only published after the
+     * transaction commits, and dropped if it rolls back.
+     */
+    public void put(String reductionKey, Integer alarmId) {
+        if (!enabled || reductionKey == null || alarmId == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(reductionKey, alarmId, generation.incrementAndGet());
+            return;
+        }
+        inFlightReductionKeys.merge(reductionKey, 1, Integer::sum);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                put(reductionKey, alarmId, generation.incrementAndGet());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                inFlightReductionKeys.computeIfPresent(reductionKey, (k, count) -> count > 1 ? count - 1 : null);
+            }
+        });
+    }
+
+    private void put(String reductionKey, int alarmId, long entryGeneration) {
+        final String previousReductionKey = reductionKeysById.put(alarmId, reductionKey);
+        if (previousReductionKey != null && !previousReductionKey.equals(reductionKey)) {
+            // The reduction key of the alarm was changed i.e. the alarm was archived
+            entriesByReductionKey.asMap().remove(previousReductionKey);
+        }
+        entriesByReductionKey.put(reductionKey, new Entry(alarmId, entryGeneration));
+    }
+
+    /**
+     * Invalidates the entry for the given reduction key after it was found to be stale.
+     */
+    public void invalidate(String reductionKey) {
+        if (!enabled || reductionKey == null) {
+            return;
+        }
+        final Entry entry = entriesByReductionKey.asMap().remove(reductionKey);
+        if (entry != null) {
+            staleEntries.inc();
+            reductionKeysById.remove(entry.alarmId, reductionKey);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, Entry> notification) {
+        if (notification.wasEvicted()) {
+            // We can no longer assume that missing keys don't have an alarm
+            complete = false;
+            evictions.inc();
+            reductionKeysById.remove(notification.getValue().alarmId, notification.getKey());
+        }
+    }
+
+    @Override
+    public void preHandleAlarmSnapshot() {
+        snapshotGeneration = generation.incrementAndGet();
+    }
+
+    @Override
+    public void handleAlarmSnapshot(List<OnmsAlarm> alarms) {
+        if (!enabled) {
+            return;
+        }
+        final long currentSnapshotGeneration = snapshotGeneration;
+        final long evictionsBeforeSnapshot = evictions.getCount();
+        final ConcurrentMap<String, Entry> entries = entriesByReductionKey.asMap();
+
+        final Set<String> reductionKeysInSnapshot = new HashSet<>(alarms.size());
+        for (OnmsAlarm alarm : alarms) {
+            if (alarm.getReductionKey() == null || alarm.getId() == null) {
+                continue;
+            }
+            reductionKeysInSnapshot.add(alarm.getReductionKey());
+            final Entry existing = entries.get(alarm.getReductionKey());
+            if (existing == null || existing.generation < currentSnapshotGeneration) {
+                put(alarm.getReductionKey(), alarm.getId(), currentSnapshotGeneration);
+            }
+        }
+
+        // Remove the entries that were not part of the snapshot, unless they were written after it started
+        entries.entrySet().removeIf(e -> {
+            if (!reductionKeysInSnapshot.contains(e.getKey()) && e.getValue().generation < currentSnapshotGeneration
+                    && !inFlightReductionKeys.containsKey(e.getKey())) {
+                reductionKeysById.remove(e.getValue().alarmId, e.getKey());
+                return true;
+            }
+            return false;
+        });
+
+        complete = alarms.size() <= maxSize && evictions.getCount() == evictionsBeforeSnapshot;
+        LOG.debug("Updated reduction key cache with a snapshot of {} alarms. Complete: {}", alarms.size(), complete);
+    }
+
+    @Override
+    public void postHandleAlarmSnapshot() {
+        // pass
+    }
+
+    @Override
+    public void handleNewOrUpdatedAlarm(OnmsAlarm alarm) {
+        put(alarm.getReductionKey(), alarm.getId());
+    }
+
+    @Override
+    public void handleDeletedAlarm(int alarmId, String reductionKey) {
+        if (!enabled) {
+            return;
+        }
+        final String key = reductionKey != null ? reductionKey : reductionKeysById.get(alarmId);
+        if (key != null) {
+            entriesByReductionKey.asMap().computeIfPresent(key, (k, e) -> e.alarmId == alarmId ? null : e);
+        }
+        reductionKeysById.remove(alarmId);
+    }
+
+    @Override
+    public long size() {
+        return entriesByReductionKey.size();
+    }
+
+    @Override
+    public boolean isComplete() {
+        return enabled && complete;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.getCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.getCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.getCount();
+    }
+
+    @Override
+    public List<String> verify() {
+        final List<String> problems = new ArrayList<>();
+        if (!enabled) {
+            return problems;
+        }
+
+        // Only entries written before we started loading the alarms can be compared
+        final long verifyGeneration = generation.incrementAndGet();
+        final Map<String, Integer> alarmIdsByReductionKey = new HashMap<>();
+        sessionUtils.withReadOnlyTransaction(() -> {
+            for (OnmsAlarm alarm : alarmDao.findAll()) {
+                alarmIdsByReductionKey.put(alarm.getReductionKey(), alarm.getId());
+            }
+            return null;
+        });
+
+        final boolean wasComplete = complete;
+        for (Map.Entry<String, Entry> e : entriesByReductionKey.asMap().entrySet()) {
+            if (e.getValue().generation > verifyGeneration) {
+                continue;
+            }
+            final Integer alarmId = alarmIdsByReductionKey.get(e.getKey());
+            if (!Objects.equals(alarmId, e.getValue().alarmId)) {
+                problems.add(String.format("Reduction key '%s' is indexed with alarm id %d, but the database has %s.",
+                        e.getKey(), e.getValue().alarmId, alarmId == null ? "no alarm" : "alarm id " + alarmId));
+                invalidate(e.getKey());
+            }
+        }
+        if (wasComplete) {
+            for (Map.Entry<String, Integer> e : alarmIdsByReductionKey.entrySet()) {
+                final Entry entry = entriesByReductionKey.getIfPresent(e.getKey());
+                if (entry == null) {
+                    problems.add(String.format("Reduction key '%s' with alarm id %d is missing from the index.", e.getKey(), e.getValue()));
+                }
+            }
+            if (!problems.isEmpty()) {
+                // Stop trusting missing keys until the next snapshot
+                complete = false;
+            }
+        }
+        return problems;
+    }
+
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    public void setAlarmDao(AlarmDao alarmDao) {
+        this.alarmDao = alarmDao;
+    }
+
+    public void setSessionUtils(SessionUtils sessionUtils) {
+        this.sessionUtils = sessionUtils;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) {
+            return;
+        }
+        metricsReporter = JmxReporter.forRegistry(metrics)
+                .inDomain(JMX_DOMAIN)
+                .build();
+        try {
+            metricsReporter.start();
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Failed to start metrics reporter. JMX metrics may not be available for the reduction key cache.");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (metricsReporter != null) {
+            metricsReporter.close();
+            metricsReporter = null;
+        }
+    }
+}
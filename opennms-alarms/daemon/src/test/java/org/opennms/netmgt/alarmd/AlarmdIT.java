@@ -329,6 +329,46 @@ public class AlarmdIT implements TemporaryDatabaseAware<MockDatabase>, Initializ
         }
     }
 
+    @Test
+    public void canPersistEventsInBatch() throws Exception {
+        final MockNode node = m_mockNetwork.getNode(1);
+
+        //there should be no alarms in the alarms table
+        assertEmptyAlarmTable();
+
+        // Write the events without broadcasting them, and hand them to the persister as a single batch
+        final List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final EventBuilder down = MockEventUtil.createNodeDownEventBuilder("Test", node);
+            final AlarmData data = new AlarmData();
+            data.setAlarmType(1);
+            data.setReductionKey("uei.opennms.org/nodes/nodeDown:1");
+            down.setAlarmData(data);
+            down.setLogDest("logndisplay");
+            down.setLogMessage("testing");
+            events.add(down.getEvent());
+        }
+        final EventBuilder up = MockEventUtil.createNodeUpEventBuilder("Test", node);
+        final AlarmData data = new AlarmData();
+        data.setAlarmType(2);
+        data.setReductionKey("uei.opennms.org/nodes/nodeUp:1");
+        data.setClearKey("uei.opennms.org/nodes/nodeDown:1");
+        up.setAlarmData(data);
+        up.setLogDest("logndisplay");
+        up.setLogMessage("testing");
+        events.add(up.getEvent());
+        events.forEach(m_database::writeEvent);
+
+        final List<OnmsAlarm> alarms = m_alarmd.getPersister().persistAll(events);
+        assertEquals(events.size(), alarms.size());
+
+        // All of the events should have been reduced into a single alarm, which was then cleared
+        assertEquals(1, m_alarmDao.findAll().size());
+        final OnmsAlarm alarm = m_alarmDao.findByReductionKey("uei.opennms.org/nodes/nodeDown:1");
+        assertEquals(Integer.valueOf(5), alarm.getCounter());
+        assertEquals(OnmsSeverity.CLEARED, alarm.getSeverity());
+    }
+
     @Test
     @Transactional
     public void testPersistSituations() throws Exception {
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReductionKeyCacheImplTest {
+
+    @Test
+    public void canLookupAlarmsAfterSnapshot() {
+        final ReductionKeyCacheImpl cache = new ReductionKeyCacheImpl(true, 10);
+
+        // Nothing is known before the first snapshot
+        assertThat(cache.lookup("a"), nullValue());
+        assertThat(cache.isComplete(), equalTo(false));
+
+        cache.preHandleAlarmSnapshot();
+        cache.handleAlarmSnapshot(Arrays.asList(alarm(1, "a"), alarm(2, "b")));
+        cache.postHandleAlarmSnapshot();
+
+        assertThat(cache.isComplete(), equalTo(true));
+        assertThat(cache.lookup("a"), equalTo(1));
+        assertThat(cache.lookup("b"), equalTo(2));
+        // Missing keys are known not to have an alarm
+        assertThat(cache.lookup("c"), equalTo(ReductionKeyCacheImpl.NO_ALARM));
+        assertThat(cache.getHitCount(), equalTo(3L));
+        assertThat(cache.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void canPreserveEntriesWrittenDuringSnapshot() {
+        final ReductionKeyCacheImpl cache = new ReductionKeyCacheImpl(true, 10);
+
+        cache.preHandleAlarmSnapshot();
+        // Alarm created after the snapshot was loaded
+        cache.put("c", 3);
+        cache.handleAlarmSnapshot(Collections.singletonList(alarm(1, "a")));
+        cache.postHandleAlarmSnapshot();
+
+        assertThat(cache.lookup("a"), equalTo(1));
+        assertThat(cache.lookup("c"), equalTo(3));
+    }
+
+    @Test
+    public void canDeferWritesUntilCommit() {
+        final ReductionKeyCacheImpl cache = new ReductionKeyCacheImpl(true, 10);
+
+        final List<TransactionSynchronization> committed = inTransaction(() -> {
+            cache.put("c", 3);
+            // Snapshot taken while the transaction is in flight, it cannot see the new alarm
+            cache.preHandleAlarmSnapshot();
+            cache.handleAlarmSnapshot(Collections.singletonList(alarm(1, "a")));
+            cache.postHandleAlarmSnapshot();
+
+            assertThat(cache.isComplete(), equalTo(true));
+            assertThat(cache.lookup("a"), equalTo(1));
+            // The key must not be reported as having no alarm
+            assertThat(cache.lookup("c"), nullValue());
+        });
+        complete(committed, TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(cache.lookup("c"), equalTo(3));
+
+        final List<TransactionSynchronization> rolledBack = inTransaction(() -> cache.put("d", 4));
+        complete(rolledBack, TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(cache.lookup("d"), equalTo(ReductionKeyCacheImpl.NO_ALARM));
+    }
+
+    @Test
+    public void canTrackArchivedAndDeletedAlarms() {
+        final ReductionKeyCacheImpl cache = new ReductionKeyCacheImpl(true, 10);
+        cache.preHandleAlarmSnapshot();
+        cache.handleAlarmSnapshot(Arrays.asList(alarm(1, "a"), alarm(2, "b")));
+
+        // Archiving changes the reduction key of the alarm
+        cache.handleNewOrUpdatedAlarm(alarm(1, "a:ID:1"));
+        assertThat(cache.lookup("a"), equalTo(ReductionKeyCacheImpl.NO_ALARM));
+        assertThat(cache.lookup("a:ID:1"), equalTo(1));
+
+        cache.handleDeletedAlarm(2, "b");
+        assertThat(cache.lookup("b"), equalTo(ReductionKeyCacheImpl.NO_ALARM));
+    }
+
+    @Test
+    public void isIncompleteAfterEviction() {
+        final ReductionKeyCacheImpl cache = new ReductionKeyCacheImpl(true, 2);
+        cache.preHandleAlarmSnapshot();
+        cache.handleAlarmSnapshot(Arrays.asList(alarm(1, "a"), alarm(2, "b")));
+        assertThat(cache.isComplete(), equalTo(true));
+
+        cache.put("c", 3);
+        cache.put("d", 4);
+        assertThat(cache.isComplete(), equalTo(false));
+        assertThat(cache.getEvictionCount() > 0, equalTo(true));
+    }
+
+    @Test
+    public void doesNothingWhenDisabled() {
+        final ReductionKeyCacheImpl cache = new ReductionKeyCacheImpl(false, 10);
+        cache.preHandleAlarmSnapshot();
+        cache.handleAlarmSnapshot(Collections.singletonList(alarm(1, "a")));
+        assertThat(cache.lookup("a"), nullValue());
+        assertThat(cache.isComplete(), equalTo(false));
+    }
+
+    private static List<TransactionSynchronization> inTransaction(Runnable runnable) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            runnable.run();
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void complete(List<TransactionSynchronization> synchronizations, int status) {
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(sync -> sync.afterCompletion(status));
+    }
+
+    private static OnmsAlarm alarm(int id, String reductionKey) {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setId(id);
+        alarm.setReductionKey(reductionKey);
+        return alarm;
+    }
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Precompiled decision tree used to narrow down the event definitions that need
+ * to be evaluated against an event that could not be resolved by UEI.
+ *
+ * The first level of the tree is keyed by the {@link Partition} (typically the
+ * enterprise id), and the following levels are keyed by the exact values of
+ * the generic and specific mask elements. Every leaf holds the candidate event
+ * definitions in the same order as they would have been evaluated by a linear
+ * scan, so the first matching definition is always the same.
+ *
+ * The index is immutable and is rebuilt whenever the {@link Events} are
+ * (re)initialized.
+ */
+public class EventMatchIndex {
+
+    /**
+     * Mask elements used to discriminate the definitions within a partition,
+     * in the order in which they are evaluated.
+     */
+    private static final String[] DISCRIMINATORS = new String[] { TAG_SNMP_GENERIC, TAG_SNMP_SPECIFIC };
+
+    /**
+     * Don't bother branching when there are only a few candidates left.
+     */
+    private static final int MIN_CANDIDATES_TO_BRANCH = 8;
+
+    private static final Field[] DISCRIMINATOR_FIELDS = new Field[DISCRIMINATORS.length];
+    static {
+        for (int i = 0; i < DISCRIMINATORS.length; i++) {
+            DISCRIMINATOR_FIELDS[i] = EventMatchers.field(DISCRIMINATORS[i]);
+        }
+    }
+
+    private static final EventMatchIndex EMPTY = new EventMatchIndex(null, new HashMap<>(), Node.leaf(new ArrayList<>()));
+
+    private final Partition m_partition;
+
+    private final Map<String, Node> m_nodesByPartitionKey;
+
+    private final Node m_unpartitioned;
+
+    private EventMatchIndex(final Partition partition, final Map<String, Node> nodesByPartitionKey, final Node unpartitioned) {
+        m_partition = partition;
+        m_nodesByPartitionKey = nodesByPartitionKey;
+        m_unpartitioned = unpartitioned;
+    }
+
+    public static EventMatchIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds the index.
+     *
+     * @param partition the partition used to group the event definitions
+     * @param partitionedEvents the partitioned event definitions, ordered by priority
+     * @param nullPartitionedEvents the event definitions that are not part of any partition, ordered by priority
+     * @return the index
+     */
+    public static EventMatchIndex build(final Partition partition, final Map<String, List<Event>> partitionedEvents, final List<Event> nullPartitionedEvents) {
+        final Map<String, Node> nodesByPartitionKey = new HashMap<>();
+        for (final Map.Entry<String, List<Event>> entry : partitionedEvents.entrySet()) {
+            // Equivalent to the merge that was previously done on every lookup
+            final TreeSet<Event> candidates = new TreeSet<>(nullPartitionedEvents);
+            candidates.addAll(entry.getValue());
+            nodesByPartitionKey.put(entry.getKey(), Node.build(new ArrayList<>(candidates), 0));
+        }
+        return new EventMatchIndex(partition, nodesByPartitionKey, Node.build(nullPartitionedEvents, 0));
+    }
+
+    /**
+     * Computes the partition key for the given event.
+     *
+     * The key only depends on the event, and can be shared between all the indices
+     * built with the same partition.
+     */
+    public String getPartitionKey(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        return m_partition == null ? null : m_partition.group(matchingEvent);
+    }
+
+    /**
+     * Returns the event definitions that may match the given event, in the order
+     * in which they should be evaluated.
+     *
+     * @param matchingEvent the event to match
+     * @param partitionKey the key returned by {@link #getPartitionKey(org.opennms.netmgt.xml.event.Event)}
+     * @param discriminatorValues cache of the discriminator values of the event, shared between lookups
+     * @return the candidates
+     */
+    public Event[] getCandidates(final org.opennms.netmgt.xml.event.Event matchingEvent, final String partitionKey, final String[] discriminatorValues) {
+        Node node = m_unpartitioned;
+        if (partitionKey != null) {
+            final Node partitionNode = m_nodesByPartitionKey.get(partitionKey);
+            if (partitionNode != null) {
+                node = partitionNode;
+            }
+        }
+        return node.getCandidates(matchingEvent, discriminatorValues);
+    }
+
+    /**
+     * Allocates a cache suitable for {@link #getCandidates(org.opennms.netmgt.xml.event.Event, String, String[])}.
+     */
+    public static String[] newDiscriminatorValues() {
+        return new String[DISCRIMINATORS.length];
+    }
+
+    private static final class Node {
+        private final int m_depth;
+        private final Event[] m_candidates;
+        private final Map<String, Node> m_children;
+        private final Node m_fallback;
+
+        private Node(final int depth, final Event[] candidates, final Map<String, Node> children, final Node fallback) {
+            m_depth = depth;
+            m_candidates = candidates;
+            m_children = children;
+            m_fallback = fallback;
+        }
+
+        private static Node leaf(final Collection<Event> candidates) {
+            return new Node(-1, candidates.toArray(new Event[0]), null, null);
+        }
+
+        private static Node build(final List<Event> candidates, final int depth) {
+            if (depth >= DISCRIMINATORS.length || candidates.size() < MIN_CANDIDATES_TO_BRANCH) {
+                return leaf(candidates);
+            }
+
+            // Split the candidates by value, definitions that don't restrict the value go in every branch
+            final Map<String, List<Event>> candidatesByValue = new HashMap<>();
+            final List<Event> unrestricted = new ArrayList<>();
+            for (final Event candidate : candidates) {
+                final List<String> values = getExactValues(candidate, DISCRIMINATORS[depth]);
+                if (values == null) {
+                    unrestricted.add(candidate);
+                    candidatesByValue.values().forEach(l -> l.add(candidate));
+                } else {
+                    for (final String value : values) {
+                        candidatesByValue.computeIfAbsent(value, v -> new ArrayList<>(unrestricted)).add(candidate);
+                    }
+                }
+            }
+
+            if (candidatesByValue.isEmpty()) {
+                // Nothing to discriminate on at this level
+                return build(candidates, depth + 1);
+            }
+
+            final Map<String, Node> children = new HashMap<>();
+            for (final Map.Entry<String, List<Event>> entry : candidatesByValue.entrySet()) {
+                children.put(entry.getKey(), build(entry.getValue(), depth + 1));
+            }
+            return new Node(depth, null, children, build(unrestricted, depth + 1));
+        }
+
+        /**
+         * Returns the values of the given mask element if it can only match on equality,
+         * or null if the event definition can match any value.
+         */
+        private static List<String> getExactValues(final Event event, final String mename) {
+            final List<String> values = event.getMaskElementValues(mename);
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            final List<String> exactValues = new ArrayList<>(values.size());
+            for (final String value : values) {
+                if (value == null) {
+                    continue;
+                }
+                if (value.startsWith("~") || value.endsWith("%")) {
+                    return null;
+                }
+                if (!exactValues.contains(value)) {
+                    exactValues.add(value);
+                }
+            }
+            return exactValues.isEmpty() ? null : exactValues;
+        }
+
+        private Event[] getCandidates(final org.opennms.netmgt.xml.event.Event matchingEvent, final String[] discriminatorValues) {
+            Node node = this;
+            while (node.m_candidates == null) {
+                final int depth = node.m_depth;
+                if (discriminatorValues[depth] == null) {
+                    final String value = DISCRIMINATOR_FIELDS[depth].get(matchingEvent);
+                    // Use the empty string as a marker for a missing value, extra candidates are rejected by their matchers
+                    discriminatorValues[depth] = value == null ? "" : value;
+                }
+                final Node child = node.m_children.get(discriminatorValues[depth]);
+                node = child != null ? child : node.m_fallback;
+            }
+            return node.m_candidates;
+        }
+    }
+}
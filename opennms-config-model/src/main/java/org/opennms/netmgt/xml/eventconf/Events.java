@@ -53,7 +53,6 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -64,7 +63,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -119,6 +117,9 @@ public class Events implements Serializable {
     @XmlTransient
     private EventOrdering m_ordering;
 
+    @XmlTransient
+    private EventMatchIndex m_matchIndex = EventMatchIndex.empty();
+
     public Global getGlobal() {
         return m_global;
     }
@@ -167,6 +168,16 @@ public class Events implements Serializable {
         return m_ordering;
     }
 
+    /**
+     * Returns the index built by the last call to {@link #initialize(Partition, EventOrdering)}.
+     *
+     * A new instance is built every time the event definitions are (re)initialized, so callers
+     * can use its identity to invalidate anything derived from the current definitions.
+     */
+    public EventMatchIndex getMatchIndex() {
+        return m_matchIndex;
+    }
+
     Resource getRelative(final Resource baseRef, final String relative) {
         try {
             if (relative.startsWith("classpath:")) {
@@ -274,6 +285,11 @@ public class Events implements Serializable {
 
 
     public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        // All of the loaded event files share the same partition, so the key only needs to be computed once
+        return findFirstMatchingEvent(matchingEvent, m_matchIndex.getPartitionKey(matchingEvent), EventMatchIndex.newDiscriminatorValues());
+    }
+
+    private Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent, final String key, final String[] discriminatorValues) {
         // Atempt to match the event definition by UEI
         final String ueiToMatch = matchingEvent.getUei();
         if (ueiToMatch != null) {
@@ -283,25 +299,15 @@ public class Events implements Serializable {
             }
         }
 
-        // If the UEI match failed, fallback to searching with the matchers through the partitions
-        final String key = m_partition.group(matchingEvent);
-        Collection<Event> potentialMatches = m_nullPartitionedEvents;
-        if (key != null) {
-            final List<Event> events = m_partitionedEvents.get(key);
-            if (events != null) {
-                potentialMatches = new TreeSet<Event>(m_nullPartitionedEvents);
-                potentialMatches.addAll(events);
-            }
-        }
-
-        for (final Event event : potentialMatches) {
+        // If the UEI match failed, fallback to searching with the matchers through the precompiled index
+        for (final Event event : m_matchIndex.getCandidates(matchingEvent, key, discriminatorValues)) {
             if (event.matches(matchingEvent).matched()) {
                 return event;
             }
         }
 
         for (Events subEvents : m_loadedEventFiles.values()) {
-            final Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+            final Event event = subEvents.findFirstMatchingEvent(matchingEvent, key, discriminatorValues);
             if (event != null) {
                 return event;
             }
@@ -371,6 +377,9 @@ public class Events implements Serializable {
         m_nullPartitionedEvents.sort(Comparator.naturalOrder());
 
         indexEventsByUei();
+
+        // must be done last, once the partitions contain the prioritized events
+        m_matchIndex = EventMatchIndex.build(m_partition, m_partitionedEvents, m_nullPartitionedEvents);
     }
 
     // Recurse through the configuration and return Event Definitions with priority > 0
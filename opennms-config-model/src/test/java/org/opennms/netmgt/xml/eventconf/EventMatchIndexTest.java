@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Snmp;
+
+public class EventMatchIndexTest {
+
+    private static final String ENTERPRISE_ID = ".1.3.6.1.4.1.9.9.41.2";
+
+    private Events events;
+
+    private Partition partition;
+
+    @Before
+    public void setUp() {
+        events = new Events();
+        partition = new Partition() {
+            @Override
+            public List<String> group(Event eventConf) {
+                return eventConf.getMaskElementValues("id");
+            }
+
+            @Override
+            public String group(org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return matchingEvent.getSnmp() == null ? null : matchingEvent.getSnmp().getId();
+            }
+        };
+    }
+
+    @Test
+    public void canMatchOnGenericAndSpecific() {
+        // Enough definitions for the index to branch
+        for (int specific = 1; specific <= 20; specific++) {
+            events.addEvent(trapDefinition("uei.opennms.org/test/trap" + specific, ENTERPRISE_ID, "6", Integer.toString(specific)));
+        }
+        events.addEvent(trapDefinition("uei.opennms.org/test/catchAll", ENTERPRISE_ID, "6", "%"));
+        events.initialize(partition, new EventOrdering());
+
+        assertEquals("uei.opennms.org/test/trap7", events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 6, 7)).getUei());
+        assertEquals("uei.opennms.org/test/trap20", events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 6, 20)).getUei());
+        assertEquals("uei.opennms.org/test/catchAll", events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 6, 42)).getUei());
+        assertNull(events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 5, 7)));
+        assertNull(events.findFirstMatchingEvent(trap(".1.3.6.1.4.1.9.9.41.3", 6, 7)));
+    }
+
+    @Test
+    public void canPreserveDefinitionOrdering() {
+        // The wildcard definition comes first, and must win over the exact ones
+        events.addEvent(trapDefinition("uei.opennms.org/test/first", ENTERPRISE_ID, "6", "%"));
+        for (int specific = 1; specific <= 20; specific++) {
+            events.addEvent(trapDefinition("uei.opennms.org/test/trap" + specific, ENTERPRISE_ID, "6", Integer.toString(specific)));
+        }
+        events.initialize(partition, new EventOrdering());
+
+        assertEquals("uei.opennms.org/test/first", events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 6, 7)).getUei());
+    }
+
+    @Test
+    public void canPreservePriorities() {
+        for (int specific = 1; specific <= 20; specific++) {
+            events.addEvent(trapDefinition("uei.opennms.org/test/trap" + specific, ENTERPRISE_ID, "6", Integer.toString(specific)));
+        }
+        final Events subEvents = new Events();
+        final Event prioritized = trapDefinition("uei.opennms.org/test/prioritized", ENTERPRISE_ID, "6", "7");
+        prioritized.setPriority(100);
+        subEvents.addEvent(prioritized);
+        events.addLoadedEventFile("sub.events.xml", subEvents);
+        events.initialize(partition, new EventOrdering());
+
+        assertEquals("uei.opennms.org/test/prioritized", events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 6, 7)).getUei());
+        assertEquals("uei.opennms.org/test/trap8", events.findFirstMatchingEvent(trap(ENTERPRISE_ID, 6, 8)).getUei());
+    }
+
+    private static Event trapDefinition(final String uei, final String id, final String generic, final String specific) {
+        final Mask mask = new Mask();
+        mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_EID, id));
+        mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_GENERIC, generic));
+        mask.addMaskelement(maskElement(Maskelement.TAG_SNMP_SPECIFIC, specific));
+
+        final Event event = new Event();
+        event.setUei(uei);
+        event.setMask(mask);
+        return event;
+    }
+
+    private static Maskelement maskElement(final String name, final String value) {
+        final Maskelement maskElement = new Maskelement();
+        maskElement.setMename(name);
+        maskElement.addMevalue(value);
+        return maskElement;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trap(final String id, final int generic, final int specific) {
+        final Snmp snmp = new Snmp();
+        snmp.setId(id);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setSnmp(snmp);
+        return event;
+    }
+}
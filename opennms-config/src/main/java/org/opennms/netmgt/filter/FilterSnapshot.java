@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.DBUtils;
+
+/**
+ * In-memory copy of the node, interface, service, category and asset rows
+ * that filter rules are most commonly evaluated against.
+ *
+ * The snapshot is loaded in full with a handful of queries and can then be
+ * kept up to date one node at a time with {@link #refreshNode(DataSource, int)}.
+ * Readers never block: each node is replaced atomically with a new immutable
+ * {@link NodeRow}.
+ */
+public class FilterSnapshot {
+
+    /**
+     * Where the value of a column is found in the snapshot.
+     */
+    public enum Source {
+        NODE,
+        INTERFACE,
+        SERVICE,
+        CATEGORY,
+        ASSET
+    }
+
+    /**
+     * Columns of database-schema.xml that are available in the snapshot.
+     */
+    public enum Column {
+        NODE_ID("node", "nodeID", Source.NODE, true),
+        LOCATION("node", "location", Source.NODE),
+        NODE_TYPE("node", "nodeType", Source.NODE),
+        NODE_SYS_OID("node", "nodeSysOID", Source.NODE),
+        NODE_SYS_NAME("node", "nodeSysName", Source.NODE),
+        NODE_SYS_DESCRIPTION("node", "nodeSysDescription", Source.NODE),
+        NODE_SYS_LOCATION("node", "nodeSysLocation", Source.NODE),
+        NODE_SYS_CONTACT("node", "nodeSysContact", Source.NODE),
+        NODE_LABEL("node", "nodeLabel", Source.NODE),
+        NODE_LABEL_SOURCE("node", "nodeLabelSource", Source.NODE),
+        NODE_NETBIOS_NAME("node", "nodeNetbiosName", Source.NODE),
+        NODE_DOMAIN_NAME("node", "nodeDomainName", Source.NODE),
+        OPERATING_SYSTEM("node", "operatingSystem", Source.NODE),
+        FOREIGN_SOURCE("node", "foreignSource", Source.NODE),
+        FOREIGN_ID("node", "foreignID", Source.NODE),
+        IP_ADDR("ipInterface", "ipAddr", Source.INTERFACE),
+        IP_HOSTNAME("ipInterface", "ipHostname", Source.INTERFACE),
+        IS_MANAGED("ipInterface", "isManaged", Source.INTERFACE),
+        IS_SNMP_PRIMARY("ipInterface", "isSnmpPrimary", Source.INTERFACE),
+        SERVICE_NAME("service", "serviceName", Source.SERVICE),
+        CATEGORY_NAME("categories", "categoryName", Source.CATEGORY),
+        DISPLAY_CATEGORY("assets", "displayCategory", Source.ASSET),
+        NOTIFY_CATEGORY("assets", "notifyCategory", Source.ASSET),
+        POLLER_CATEGORY("assets", "pollerCategory", Source.ASSET),
+        THRESHOLD_CATEGORY("assets", "thresholdCategory", Source.ASSET);
+
+        private static final Map<String, Column> BY_NAME = new HashMap<>();
+        private static final Map<Source, List<Column>> BY_SOURCE = new HashMap<>();
+        static {
+            for (final Column column : values()) {
+                BY_NAME.put(column.getName().toLowerCase(), column);
+                final List<Column> columns = BY_SOURCE.computeIfAbsent(column.getSource(), s -> new ArrayList<>());
+                column.m_index = columns.size();
+                columns.add(column);
+            }
+        }
+
+        private final String m_table;
+        private final String m_name;
+        private final Source m_source;
+        private final boolean m_numeric;
+        private int m_index;
+
+        Column(final String table, final String name, final Source source) {
+            this(table, name, source, false);
+        }
+
+        Column(final String table, final String name, final Source source, final boolean numeric) {
+            m_table = table;
+            m_name = name;
+            m_source = source;
+            m_numeric = numeric;
+        }
+
+        /**
+         * Looks up a column by name, ignoring case like the database does.
+         *
+         * @return the column, or null if it is not part of the snapshot
+         */
+        public static Column forName(final String name) {
+            return BY_NAME.get(name.toLowerCase());
+        }
+
+        public String getTable() {
+            return m_table;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        public Source getSource() {
+            return m_source;
+        }
+
+        public boolean isNumeric() {
+            return m_numeric;
+        }
+
+        private String getSql() {
+            return m_table + "." + m_name;
+        }
+
+        private static List<Column> forSource(final Source source) {
+            return BY_SOURCE.getOrDefault(source, Collections.emptyList());
+        }
+    }
+
+    public static final class NodeRow {
+        private final int m_nodeId;
+        private final String[] m_values;
+        private final String[] m_assets;
+        private final List<String> m_categories;
+        private final List<InterfaceRow> m_interfaces = new ArrayList<>();
+
+        private NodeRow(final int nodeId, final String[] values, final String[] assets, final List<String> categories) {
+            m_nodeId = nodeId;
+            m_values = values;
+            m_assets = assets;
+            m_categories = categories;
+        }
+
+        public int getNodeId() {
+            return m_nodeId;
+        }
+
+        public String getNodeLabel() {
+            return m_values[Column.NODE_LABEL.m_index];
+        }
+
+        public List<InterfaceRow> getInterfaces() {
+            return m_interfaces;
+        }
+
+        /**
+         * @return the categories of the node, empty if the node is not part of any category
+         */
+        public List<String> getCategories() {
+            return m_categories;
+        }
+
+        /**
+         * @return false if the node has no row in the assets table, and can
+         *         therefore not be matched by rules that reference asset columns
+         */
+        public boolean hasAssets() {
+            return m_assets != null;
+        }
+    }
+
+    public static final class InterfaceRow {
+        private final NodeRow m_node;
+        private final String[] m_values;
+        private final List<String> m_services;
+
+        private InterfaceRow(final NodeRow node, final String[] values, final List<String> services) {
+            m_node = node;
+            m_values = values;
+            m_services = services;
+        }
+
+        public NodeRow getNode() {
+            return m_node;
+        }
+
+        public String getIpAddr() {
+            return m_values[Column.IP_ADDR.m_index];
+        }
+
+        public String getIsManaged() {
+            return m_values[Column.IS_MANAGED.m_index];
+        }
+
+        public List<String> getServices() {
+            return m_services;
+        }
+
+        /**
+         * Returns the value of a node, interface or asset column.
+         */
+        public String get(final Column column) {
+            switch (column.getSource()) {
+                case NODE:
+                    return m_node.m_values[column.m_index];
+                case INTERFACE:
+                    return m_values[column.m_index];
+                case ASSET:
+                    return m_node.m_assets == null ? null : m_node.m_assets[column.m_index];
+                default:
+                    throw new IllegalArgumentException("Column " + column.getName() + " has multiple values per interface");
+            }
+        }
+    }
+
+    private final Map<Integer, NodeRow> m_nodes = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<Integer>> m_nodeIdsByIpAddr = new ConcurrentHashMap<>();
+
+    private final long m_createdAt = System.currentTimeMillis();
+
+    /**
+     * Loads all of the rows from the database.
+     */
+    public static FilterSnapshot load(final DataSource dataSource) throws SQLException {
+        final FilterSnapshot snapshot = new FilterSnapshot();
+        for (final NodeRow node : query(dataSource, null)) {
+            snapshot.put(node);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reloads the rows of a single node, removing it from the snapshot if it
+     * no longer exists.
+     */
+    public void refreshNode(final DataSource dataSource, final int nodeId) throws SQLException {
+        final List<NodeRow> nodes = query(dataSource, nodeId);
+        if (nodes.isEmpty()) {
+            remove(nodeId);
+        } else {
+            put(nodes.get(0));
+        }
+    }
+
+    public long getCreatedAt() {
+        return m_createdAt;
+    }
+
+    public int getNodeCount() {
+        return m_nodes.size();
+    }
+
+    public Collection<NodeRow> getNodes() {
+        return m_nodes.values();
+    }
+
+    /**
+     * Returns the interfaces with the given address, across all nodes.
+     */
+    public List<InterfaceRow> getInterfaces(final String ipAddr) {
+        final Set<Integer> nodeIds = m_nodeIdsByIpAddr.get(ipAddr);
+        if (nodeIds == null) {
+            return Collections.emptyList();
+        }
+        final List<InterfaceRow> interfaces = new ArrayList<>(1);
+        for (final Integer nodeId : nodeIds) {
+            final NodeRow node = m_nodes.get(nodeId);
+            if (node == null) {
+                continue;
+            }
+            for (final InterfaceRow iface : node.m_interfaces) {
+                if (ipAddr.equals(iface.getIpAddr())) {
+                    interfaces.add(iface);
+                }
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * Adds a node to the snapshot, used to build snapshots by hand.
+     *
+     * @param nodeValues the node column values, keyed by column
+     * @param assetValues the asset column values, or null if the node has no assets
+     * @param categories the categories of the node
+     * @return the node, to which interfaces can be added with {@link #addInterface(NodeRow, Map, List)}
+     */
+    public NodeRow addNode(final int nodeId, final Map<Column, String> nodeValues, final Map<Column, String> assetValues, final List<String> categories) {
+        final String[] values = toArray(Source.NODE, nodeValues);
+        values[Column.NODE_ID.m_index] = Integer.toString(nodeId);
+        final NodeRow node = new NodeRow(nodeId, values, assetValues == null ? null : toArray(Source.ASSET, assetValues), categories);
+        put(node);
+        return node;
+    }
+
+    /**
+     * Adds an interface to a node that was created with {@link #addNode(int, Map, Map, List)}.
+     */
+    public InterfaceRow addInterface(final NodeRow node, final Map<Column, String> interfaceValues, final List<String> services) {
+        final InterfaceRow iface = new InterfaceRow(node, toArray(Source.INTERFACE, interfaceValues), services);
+        node.m_interfaces.add(iface);
+        m_nodeIdsByIpAddr.computeIfAbsent(iface.getIpAddr(), k -> ConcurrentHashMap.newKeySet()).add(node.m_nodeId);
+        return iface;
+    }
+
+    private static String[] toArray(final Source source, final Map<Column, String> values) {
+        final String[] array = new String[Column.forSource(source).size()];
+        values.forEach((column, value) -> {
+            if (column.getSource() != source) {
+                throw new IllegalArgumentException("Column " + column.getName() + " is not a " + source + " column");
+            }
+            array[column.m_index] = value;
+        });
+        return array;
+    }
+
+    private void put(final NodeRow node) {
+        final NodeRow previous = m_nodes.put(node.m_nodeId, node);
+        for (final InterfaceRow iface : node.m_interfaces) {
+            m_nodeIdsByIpAddr.computeIfAbsent(iface.getIpAddr(), k -> ConcurrentHashMap.newKeySet()).add(node.m_nodeId);
+        }
+        if (previous != null) {
+            unindex(previous, node);
+        }
+    }
+
+    private void remove(final int nodeId) {
+        final NodeRow previous = m_nodes.remove(nodeId);
+        if (previous != null) {
+            unindex(previous, null);
+        }
+    }
+
+    private void unindex(final NodeRow previous, final NodeRow current) {
+        for (final InterfaceRow iface : previous.m_interfaces) {
+            final String ipAddr = iface.getIpAddr();
+            if (current != null && current.m_interfaces.stream().anyMatch(i -> ipAddr.equals(i.getIpAddr()))) {
+                continue;
+            }
+            m_nodeIdsByIpAddr.computeIfPresent(ipAddr, (k, nodeIds) -> {
+                nodeIds.remove(previous.m_nodeId);
+                return nodeIds.isEmpty() ? null : nodeIds;
+            });
+        }
+    }
+
+    private static List<NodeRow> query(final DataSource dataSource, final Integer nodeId) throws SQLException {
+        final DBUtils d = new DBUtils(FilterSnapshot.class);
+        try {
+            final Connection conn = dataSource.getConnection();
+            d.watch(conn);
+
+            final Map<Integer, List<String>> categories = new HashMap<>();
+            try (final ResultSet rs = execute(d, conn, "SELECT category_node.nodeID, categories.categoryName FROM category_node JOIN categories ON (category_node.categoryID = categories.categoryID)"
+                    + (nodeId == null ? "" : " WHERE category_node.nodeID = ?"), nodeId)) {
+                while (rs.next()) {
+                    categories.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>()).add(rs.getString(2));
+                }
+            }
+
+            final Map<Integer, String[]> assets = new HashMap<>();
+            final List<Column> assetColumns = Column.forSource(Source.ASSET);
+            try (final ResultSet rs = execute(d, conn, "SELECT assets.nodeID" + columns(assetColumns) + " FROM assets"
+                    + (nodeId == null ? "" : " WHERE assets.nodeID = ?"), nodeId)) {
+                while (rs.next()) {
+                    assets.put(rs.getInt(1), values(rs, assetColumns));
+                }
+            }
+
+            final Map<Integer, NodeRow> nodes = new HashMap<>();
+            final List<Column> nodeColumns = Column.forSource(Source.NODE);
+            try (final ResultSet rs = execute(d, conn, "SELECT node.nodeID" + columns(nodeColumns) + " FROM node"
+                    + (nodeId == null ? "" : " WHERE node.nodeID = ?"), nodeId)) {
+                while (rs.next()) {
+                    final int id = rs.getInt(1);
+                    nodes.put(id, new NodeRow(id, values(rs, nodeColumns), assets.get(id), categories.getOrDefault(id, Collections.emptyList())));
+                }
+            }
+
+            final Map<Integer, List<String>> services = new HashMap<>();
+            try (final ResultSet rs = execute(d, conn, "SELECT ifServices.ipInterfaceId, service.serviceName FROM ifServices JOIN service ON (ifServices.serviceID = service.serviceID)"
+                    + (nodeId == null ? "" : " JOIN ipInterface ON (ifServices.ipInterfaceId = ipInterface.id) WHERE ipInterface.nodeID = ?"), nodeId)) {
+                while (rs.next()) {
+                    services.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>()).add(rs.getString(2));
+                }
+            }
+
+            final List<Column> interfaceColumns = Column.forSource(Source.INTERFACE);
+            try (final ResultSet rs = execute(d, conn, "SELECT ipInterface.nodeID, ipInterface.id" + columns(interfaceColumns) + " FROM ipInterface"
+                    + (nodeId == null ? "" : " WHERE ipInterface.nodeID = ?") + " ORDER BY ipInterface.id", nodeId)) {
+                while (rs.next()) {
+                    final NodeRow node = nodes.get(rs.getInt(1));
+                    final String[] values = values(rs, interfaceColumns);
+                    if (node == null || values[Column.IP_ADDR.m_index] == null) {
+                        continue;
+                    }
+                    node.m_interfaces.add(new InterfaceRow(node, values, services.getOrDefault(rs.getInt(2), Collections.emptyList())));
+                }
+            }
+
+            return new ArrayList<>(nodes.values());
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private static ResultSet execute(final DBUtils d, final Connection conn, final String sql, final Integer nodeId) throws SQLException {
+        final PreparedStatement stmt = conn.prepareStatement(sql);
+        d.watch(stmt);
+        if (nodeId != null) {
+            stmt.setInt(1, nodeId);
+        }
+        return stmt.executeQuery();
+    }
+
+    private static String columns(final List<Column> columns) {
+        final StringBuilder sb = new StringBuilder();
+        for (final Column column : columns) {
+            sb.append(", ").append(column.getSql());
+        }
+        return sb.toString();
+    }
+
+    private static String[] values(final ResultSet rs, final List<Column> columns) throws SQLException {
+        // The first column(s) hold the keys, the values are at the end of the row
+        final int offset = rs.getMetaData().getColumnCount() - columns.size();
+        final String[] values = new String[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rs.getString(offset + i + 1);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.annotations.EventHandler;
+import org.opennms.netmgt.events.api.annotations.EventListener;
+import org.opennms.netmgt.events.api.model.IEvent;
+import org.opennms.netmgt.events.api.model.IParm;
+import org.opennms.netmgt.filter.api.FilterDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Keeps the in-memory inventory of the filter DAO up to date by reloading the
+ * affected node whenever provisioning changes it.
+ *
+ * Does nothing when the filter DAO does not implement {@link FilterInventoryListener}.
+ */
+@EventListener(name="FilterSnapshotEventListener", logPrefix="provisiond")
+public class FilterSnapshotEventListener implements InitializingBean {
+    private static final Logger LOG = LoggerFactory.getLogger(FilterSnapshotEventListener.class);
+
+    private FilterDao m_filterDao;
+
+    public void setFilterDao(final FilterDao filterDao) {
+        m_filterDao = filterDao;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_filterDao != null, "property filterDao cannot be null");
+    }
+
+    @EventHandler(ueis={
+        EventConstants.NODE_ADDED_EVENT_UEI,
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_LOCATION_CHANGED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.SERVICE_DELETED_EVENT_UEI,
+        EventConstants.SERVICE_UNMANAGED_EVENT_UEI,
+        EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI
+    })
+    public void handleInventoryChanged(final IEvent event) {
+        if (!(m_filterDao instanceof FilterInventoryListener) || event.getNodeid() == null) {
+            return;
+        }
+        final FilterInventoryListener listener = (FilterInventoryListener) m_filterDao;
+        LOG.debug("handleInventoryChanged: refreshing node {} after {}", event.getNodeid(), event.getUei());
+        listener.nodeChanged(event.getNodeid().intValue());
+
+        // The interface was moved away from the old node
+        final IParm oldNodeId = event.getParm(EventConstants.PARM_OLD_NODEID);
+        if (oldNodeId != null && oldNodeId.getValue() != null) {
+            try {
+                listener.nodeChanged(Integer.parseInt(oldNodeId.getValue().getContent()));
+            } catch (final NumberFormatException e) {
+                LOG.warn("handleInventoryChanged: invalid {} parameter: {}", EventConstants.PARM_OLD_NODEID, oldNodeId.getValue().getContent());
+            }
+        }
+    }
+}
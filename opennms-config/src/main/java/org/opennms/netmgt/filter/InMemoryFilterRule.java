@@ -0,0 +1,642 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.IPLike;
+import org.opennms.netmgt.config.api.DatabaseSchemaConfig;
+import org.opennms.netmgt.config.filter.Table;
+import org.opennms.netmgt.filter.FilterSnapshot.Column;
+import org.opennms.netmgt.filter.FilterSnapshot.InterfaceRow;
+import org.opennms.netmgt.filter.FilterSnapshot.Source;
+
+/**
+ * A filter rule compiled into a predicate that can be evaluated against the
+ * interfaces of a {@link FilterSnapshot}.
+ *
+ * The same syntax as {@link JdbcFilterDao} is accepted, including the filter
+ * specific operators and the "is", "notis" and "catinc" prefixes, but only a
+ * subset of the SQL is supported: comparisons, [NOT] LIKE, [NOT] IN,
+ * IS [NOT] NULL and IPLIKE on the columns of {@link Column}, combined with
+ * AND, OR and NOT. Rules that use anything else are not compiled, and must
+ * be evaluated by the database instead.
+ *
+ * Evaluation follows the SQL generated by {@link JdbcFilterDao}: NULL values
+ * propagate through the operators, an interface is expanded into one row per
+ * service when the rule references the service name, and into one row per
+ * category (or a single row without category) when it references the
+ * category name.
+ */
+public class InMemoryFilterRule {
+
+    private static final Pattern IPLIKE_BARE_PATTERN = Pattern.compile("[0-9a-fA-F.:*,-]+");
+
+    private static final List<String> NO_VALUE = Collections.singletonList(null);
+
+    private final String m_rule;
+    private final Expression m_expression;
+    private final boolean m_usesServices;
+    private final boolean m_usesCategories;
+    private final boolean m_usesAssets;
+
+    private InMemoryFilterRule(final String rule, final Expression expression, final Parser parser) {
+        m_rule = rule;
+        m_expression = expression;
+        m_usesServices = parser.m_sources.contains(Source.SERVICE);
+        m_usesCategories = parser.m_sources.contains(Source.CATEGORY);
+        m_usesAssets = parser.m_sources.contains(Source.ASSET);
+    }
+
+    /**
+     * Compiles the given rule.
+     *
+     * @param rule the filter rule
+     * @param schema used to verify that the columns map to the same tables as they would in SQL
+     * @return the compiled rule, or null if the rule cannot be evaluated in memory
+     */
+    public static InMemoryFilterRule compile(final String rule, final DatabaseSchemaConfig schema) {
+        if (rule == null || rule.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            final Parser parser = new Parser(tokenize(rule), schema);
+            final Expression expression = parser.parse();
+            return new InMemoryFilterRule(rule, expression, parser);
+        } catch (final UnsupportedRuleException e) {
+            return null;
+        }
+    }
+
+    public String getRule() {
+        return m_rule;
+    }
+
+    /**
+     * Returns true if the rule matches at least one of the rows the interface
+     * would be joined with in SQL.
+     */
+    public boolean matches(final FilterSnapshot snapshot, final InterfaceRow iface) {
+        if (m_usesAssets && !iface.getNode().hasAssets()) {
+            // Inner join on the assets table
+            return false;
+        }
+        final List<String> services = m_usesServices ? iface.getServices() : NO_VALUE;
+        final List<String> categories = m_usesCategories && !iface.getNode().getCategories().isEmpty() ? iface.getNode().getCategories() : NO_VALUE;
+        for (final String service : services) {
+            for (final String category : categories) {
+                if (Boolean.TRUE.equals(m_expression.evaluate(new Row(snapshot, iface, service, category)))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return m_rule;
+    }
+
+    private static final class Row {
+        private final FilterSnapshot m_snapshot;
+        private final InterfaceRow m_iface;
+        private final String m_service;
+        private final String m_category;
+
+        private Row(final FilterSnapshot snapshot, final InterfaceRow iface, final String service, final String category) {
+            m_snapshot = snapshot;
+            m_iface = iface;
+            m_service = service;
+            m_category = category;
+        }
+
+        private String get(final Column column) {
+            switch (column.getSource()) {
+                case SERVICE:
+                    return m_service;
+                case CATEGORY:
+                    return m_category;
+                default:
+                    return m_iface.get(column);
+            }
+        }
+    }
+
+    /**
+     * Evaluates to TRUE, FALSE or null when the result is unknown, as in SQL.
+     */
+    @FunctionalInterface
+    private interface Expression {
+        Boolean evaluate(Row row);
+    }
+
+    private static Expression and(final Expression left, final Expression right) {
+        return row -> {
+            final Boolean l = left.evaluate(row);
+            if (Boolean.FALSE.equals(l)) {
+                return false;
+            }
+            final Boolean r = right.evaluate(row);
+            if (Boolean.FALSE.equals(r)) {
+                return false;
+            }
+            return l == null || r == null ? null : true;
+        };
+    }
+
+    private static Expression or(final Expression left, final Expression right) {
+        return row -> {
+            final Boolean l = left.evaluate(row);
+            if (Boolean.TRUE.equals(l)) {
+                return true;
+            }
+            final Boolean r = right.evaluate(row);
+            if (Boolean.TRUE.equals(r)) {
+                return true;
+            }
+            return l == null || r == null ? null : false;
+        };
+    }
+
+    private static Expression not(final Expression expression) {
+        return row -> {
+            final Boolean b = expression.evaluate(row);
+            return b == null ? null : !b;
+        };
+    }
+
+    private static Expression compare(final Column column, final String operator, final Object literal) {
+        return row -> {
+            final String value = row.get(column);
+            if (value == null) {
+                return null;
+            }
+            final int cmp;
+            if (column.isNumeric()) {
+                cmp = Long.compare(Long.parseLong(value.trim()), (Long) literal);
+            } else {
+                cmp = value.equals(literal) ? 0 : 1;
+            }
+            switch (operator) {
+                case "=": return cmp == 0;
+                case "!=": return cmp != 0;
+                case "<": return cmp < 0;
+                case "<=": return cmp <= 0;
+                case ">": return cmp > 0;
+                case ">=": return cmp >= 0;
+                default: throw new IllegalStateException(operator);
+            }
+        };
+    }
+
+    private static Expression like(final Column column, final String pattern) {
+        final Pattern regex = likeToRegex(pattern);
+        return row -> {
+            final String value = row.get(column);
+            return value == null ? null : regex.matcher(value).matches();
+        };
+    }
+
+    private static Expression in(final Column column, final List<Object> literals) {
+        return row -> {
+            final String value = row.get(column);
+            if (value == null) {
+                return null;
+            }
+            final Object v = column.isNumeric() ? (Object) Long.parseLong(value.trim()) : value;
+            return literals.contains(v);
+        };
+    }
+
+    private static Expression isNull(final Column column) {
+        return row -> row.get(column) == null;
+    }
+
+    private static Expression iplike(final Column column, final String pattern) {
+        return row -> {
+            final String value = row.get(column);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return IPLike.matches(value, pattern);
+            } catch (final IllegalArgumentException e) {
+                return false;
+            }
+        };
+    }
+
+    private static Expression notHasService(final String service) {
+        // ipAddr NOT IN (SELECT ifServices.ipAddr FROM ifServices, service WHERE service.serviceName = ...)
+        return row -> {
+            for (final InterfaceRow iface : row.m_snapshot.getInterfaces(row.m_iface.getIpAddr())) {
+                if (iface.getServices().contains(service)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static Expression inCategory(final String category) {
+        return row -> row.m_iface.getNode().getCategories().contains(category);
+    }
+
+    /**
+     * Translates a SQL LIKE pattern, using the default backslash escape, to a regular expression.
+     */
+    static Pattern likeToRegex(final String pattern) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static class UnsupportedRuleException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedRuleException(final String message) {
+            super(message);
+        }
+    }
+
+    private enum TokenType {
+        STRING,
+        NUMBER,
+        WORD,
+        OPERATOR,
+        AND,
+        OR,
+        NOT,
+        LEFT_PAREN,
+        RIGHT_PAREN,
+        COMMA
+    }
+
+    private static final class Token {
+        private final TokenType m_type;
+        private final String m_text;
+
+        private Token(final TokenType type, final String text) {
+            m_type = type;
+            m_text = text;
+        }
+
+        private boolean is(final TokenType type) {
+            return m_type == type;
+        }
+
+        private boolean isKeyword(final String keyword) {
+            return m_type == TokenType.WORD && m_text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    private static List<Token> tokenize(final String rule) throws UnsupportedRuleException {
+        final List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        final int n = rule.length();
+        while (i < n) {
+            final char c = rule.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                final StringBuilder value = new StringBuilder();
+                int j = i + 1;
+                while (true) {
+                    if (j >= n) {
+                        throw new UnsupportedRuleException("Unmatched quote");
+                    }
+                    final char q = rule.charAt(j);
+                    if (q == c) {
+                        if (j + 1 < n && rule.charAt(j + 1) == c) {
+                            value.append(c);
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    value.append(q);
+                    j++;
+                }
+                tokens.add(new Token(TokenType.STRING, value.toString()));
+                i = j + 1;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.LEFT_PAREN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.RIGHT_PAREN, ")"));
+                i++;
+            } else if (c == ',') {
+                tokens.add(new Token(TokenType.COMMA, ","));
+                i++;
+            } else if (c == '&') {
+                tokens.add(new Token(TokenType.AND, "AND"));
+                i += rule.startsWith("&&", i) ? 2 : 1;
+            } else if (c == '|') {
+                tokens.add(new Token(TokenType.OR, "OR"));
+                i += rule.startsWith("||", i) ? 2 : 1;
+            } else if (c == '!') {
+                if (rule.startsWith("!=", i)) {
+                    tokens.add(new Token(TokenType.OPERATOR, "!="));
+                    i += 2;
+                } else {
+                    tokens.add(new Token(TokenType.NOT, "NOT"));
+                    i++;
+                }
+            } else if (c == '=') {
+                tokens.add(new Token(TokenType.OPERATOR, "="));
+                i += rule.startsWith("==", i) ? 2 : 1;
+            } else if (c == '<' || c == '>') {
+                if (rule.startsWith("<>", i)) {
+                    tokens.add(new Token(TokenType.OPERATOR, "!="));
+                    i += 2;
+                } else if (i + 1 < n && rule.charAt(i + 1) == '=') {
+                    tokens.add(new Token(TokenType.OPERATOR, c + "="));
+                    i += 2;
+                } else {
+                    tokens.add(new Token(TokenType.OPERATOR, String.valueOf(c)));
+                    i++;
+                }
+            } else if (isWordChar(c)) {
+                int j = i;
+                while (j < n && isWordChar(rule.charAt(j))) {
+                    j++;
+                }
+                final String word = rule.substring(i, j);
+                i = j;
+                if (word.chars().allMatch(Character::isDigit)) {
+                    tokens.add(new Token(TokenType.NUMBER, word));
+                } else if (word.chars().anyMatch(Character::isLetter)) {
+                    final Token token = new Token(TokenType.WORD, word);
+                    tokens.add(token);
+                    if (token.isKeyword("IPLIKE")) {
+                        // IPLIKE used as an operator accepts an unquoted pattern
+                        while (i < n && Character.isWhitespace(rule.charAt(i))) {
+                            i++;
+                        }
+                        if (i < n && rule.charAt(i) != '(' && rule.charAt(i) != '\'' && rule.charAt(i) != '"') {
+                            final Matcher m = IPLIKE_BARE_PATTERN.matcher(rule);
+                            m.region(i, n);
+                            if (!m.lookingAt()) {
+                                throw new UnsupportedRuleException("Invalid IPLIKE pattern");
+                            }
+                            tokens.add(new Token(TokenType.STRING, m.group()));
+                            i = m.end();
+                        }
+                    }
+                } else {
+                    throw new UnsupportedRuleException("Unsupported value " + word);
+                }
+            } else {
+                throw new UnsupportedRuleException("Unsupported character " + c);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    /**
+     * Recursive descent parser, using the SQL operator precedence: NOT binds
+     * tighter than AND, which binds tighter than OR.
+     */
+    private static final class Parser {
+        private final List<Token> m_tokens;
+        private final DatabaseSchemaConfig m_schema;
+        private final Set<Source> m_sources = EnumSet.noneOf(Source.class);
+        private int m_position = 0;
+
+        private Parser(final List<Token> tokens, final DatabaseSchemaConfig schema) {
+            m_tokens = tokens;
+            m_schema = Objects.requireNonNull(schema);
+        }
+
+        private Expression parse() throws UnsupportedRuleException {
+            final Expression expression = parseOr();
+            if (m_position != m_tokens.size()) {
+                throw new UnsupportedRuleException("Unexpected token " + peek().m_text);
+            }
+            return expression;
+        }
+
+        private Expression parseOr() throws UnsupportedRuleException {
+            Expression expression = parseAnd();
+            while (accept(TokenType.OR) || acceptKeyword("OR")) {
+                expression = or(expression, parseAnd());
+            }
+            return expression;
+        }
+
+        private Expression parseAnd() throws UnsupportedRuleException {
+            Expression expression = parseNot();
+            while (accept(TokenType.AND) || acceptKeyword("AND")) {
+                expression = and(expression, parseNot());
+            }
+            return expression;
+        }
+
+        private Expression parseNot() throws UnsupportedRuleException {
+            if (accept(TokenType.NOT) || acceptKeyword("NOT")) {
+                return not(parseNot());
+            }
+            return parsePrimary();
+        }
+
+        private Expression parsePrimary() throws UnsupportedRuleException {
+            if (accept(TokenType.LEFT_PAREN)) {
+                final Expression expression = parseOr();
+                expect(TokenType.RIGHT_PAREN);
+                return expression;
+            }
+
+            final Token token = next();
+            if (!token.is(TokenType.WORD)) {
+                throw new UnsupportedRuleException("Unexpected token " + token.m_text);
+            }
+
+            // Prefixed values, matched in the same order and with the same case sensitivity as in JdbcFilterDao
+            final String word = token.m_text;
+            if (word.startsWith("is")) {
+                return compare(column("serviceName"), "=", word.substring(2));
+            } else if (word.startsWith("notis")) {
+                column("ipAddr");
+                return notHasService(word.substring(5));
+            } else if (word.startsWith("catinc")) {
+                column("nodeID");
+                return inCategory(word.substring(6));
+            }
+
+            if (token.isKeyword("IPLIKE")) {
+                expect(TokenType.LEFT_PAREN);
+                final Column column = column(expect(TokenType.WORD).m_text);
+                expect(TokenType.COMMA);
+                final String pattern = expect(TokenType.STRING).m_text;
+                expect(TokenType.RIGHT_PAREN);
+                return iplike(column, pattern);
+            }
+
+            final Column column = column(word);
+            final Token operator = next();
+            if (operator.is(TokenType.OPERATOR)) {
+                if (!column.isNumeric() && !"=".equals(operator.m_text) && !"!=".equals(operator.m_text)) {
+                    // Ordering of strings depends on the collation of the database
+                    throw new UnsupportedRuleException("Unsupported operator " + operator.m_text + " on " + column.getName());
+                }
+                return compare(column, operator.m_text, literal(column, next()));
+            } else if (operator.isKeyword("IS")) {
+                final boolean negated = acceptKeyword("NOT");
+                if (!acceptKeyword("NULL")) {
+                    throw new UnsupportedRuleException("Unsupported IS expression");
+                }
+                return negated ? not(isNull(column)) : isNull(column);
+            } else if (operator.isKeyword("IPLIKE")) {
+                if (column != Column.IP_ADDR) {
+                    throw new UnsupportedRuleException("Unsupported IPLIKE on " + column.getName());
+                }
+                return iplike(column, expect(TokenType.STRING).m_text);
+            }
+
+            boolean negated = false;
+            Token keyword = operator;
+            if (keyword.is(TokenType.NOT) || keyword.isKeyword("NOT")) {
+                negated = true;
+                keyword = next();
+            }
+            final Expression expression;
+            if (keyword.isKeyword("LIKE")) {
+                if (column.isNumeric()) {
+                    throw new UnsupportedRuleException("Unsupported LIKE on " + column.getName());
+                }
+                expression = like(column, expect(TokenType.STRING).m_text);
+            } else if (keyword.isKeyword("IN")) {
+                expect(TokenType.LEFT_PAREN);
+                final List<Object> literals = new ArrayList<>();
+                do {
+                    literals.add(literal(column, next()));
+                } while (accept(TokenType.COMMA));
+                expect(TokenType.RIGHT_PAREN);
+                expression = in(column, literals);
+            } else {
+                throw new UnsupportedRuleException("Unsupported operator " + keyword.m_text);
+            }
+            return negated ? not(expression) : expression;
+        }
+
+        /**
+         * Resolves a column, making sure that it belongs to the same table as
+         * it would when the rule is translated to SQL.
+         */
+        private Column column(final String name) throws UnsupportedRuleException {
+            final Column column = Column.forName(name);
+            if (column == null) {
+                throw new UnsupportedRuleException("Unsupported column " + name);
+            }
+            final Table table = m_schema.findTableByVisibleColumn(name);
+            if (table == null || !column.getTable().equalsIgnoreCase(table.getName())) {
+                throw new UnsupportedRuleException("Column " + name + " is not mapped to " + column.getTable());
+            }
+            m_sources.add(column.getSource());
+            return column;
+        }
+
+        private Object literal(final Column column, final Token token) throws UnsupportedRuleException {
+            if (column.isNumeric()) {
+                if (token.is(TokenType.NUMBER) || token.is(TokenType.STRING)) {
+                    try {
+                        return Long.parseLong(token.m_text.trim());
+                    } catch (final NumberFormatException e) {
+                        throw new UnsupportedRuleException("Invalid number " + token.m_text);
+                    }
+                }
+            } else if (token.is(TokenType.STRING)) {
+                return token.m_text;
+            }
+            throw new UnsupportedRuleException("Unsupported value " + token.m_text + " for " + column.getName());
+        }
+
+        private Token peek() {
+            return m_position < m_tokens.size() ? m_tokens.get(m_position) : null;
+        }
+
+        private Token next() throws UnsupportedRuleException {
+            final Token token = peek();
+            if (token == null) {
+                throw new UnsupportedRuleException("Unexpected end of rule");
+            }
+            m_position++;
+            return token;
+        }
+
+        private boolean accept(final TokenType type) {
+            final Token token = peek();
+            if (token != null && token.is(type)) {
+                m_position++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(final String keyword) {
+            final Token token = peek();
+            if (token != null && token.isKeyword(keyword)) {
+                m_position++;
+                return true;
+            }
+            return false;
+        }
+
+        private Token expect(final TokenType type) throws UnsupportedRuleException {
+            final Token token = next();
+            if (!token.is(type)) {
+                throw new UnsupportedRuleException("Expected " + type + " but got " + token.m_text);
+            }
+            return token;
+        }
+    }
+}
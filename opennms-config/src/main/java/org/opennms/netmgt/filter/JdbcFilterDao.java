@@ -39,12 +39,19 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,6 +62,8 @@ import org.opennms.core.utils.DBUtils;
 import org.opennms.core.utils.InetAddressComparator;
 import org.opennms.netmgt.config.api.DatabaseSchemaConfig;
 import org.opennms.netmgt.config.filter.Table;
+import org.opennms.netmgt.filter.FilterSnapshot.InterfaceRow;
+import org.opennms.netmgt.filter.FilterSnapshot.NodeRow;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.filter.api.FilterParseException;
 import org.slf4j.Logger;
@@ -67,17 +76,29 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
 /**
  * <p>JdbcFilterDao class.</p>
  *
+ * <p>When <code>org.opennms.netmgt.filter.inMemory</code> is set to true,
+ * rules that only reference the most common node, interface, service,
+ * category and asset columns are evaluated against an in-memory
+ * {@link FilterSnapshot} of the inventory, instead of being translated to SQL
+ * on every call. Single nodes are refreshed through
+ * {@link FilterInventoryListener}. Once the active IP address list cache is
+ * flushed, or the snapshot gets older than
+ * <code>org.opennms.netmgt.filter.inMemory.maxAge</code> milliseconds, rules
+ * are evaluated with SQL until a new snapshot has been loaded in the
+ * background.</p>
+ *
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  * @version $Id: $
  */
 @Transactional
-public class JdbcFilterDao implements FilterDao, InitializingBean {
+public class JdbcFilterDao implements FilterDao, FilterInventoryListener, InitializingBean {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcFilterDao.class);
     private static final Pattern SQL_KEYWORD_PATTERN = Pattern.compile("\\s+(?:AND|OR|(?:NOT )?(?:LIKE|IN)|IS (?:NOT )?DISTINCT FROM)\\s+|(?:\\s+IS (?:NOT )?NULL|::(?:TIMESTAMP|INET))(?!\\w)|(?<!\\w)(?:NOT\\s+|IPLIKE(?=\\())", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     private static final Pattern SQL_QUOTE_PATTERN = Pattern.compile("'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"");
@@ -86,6 +107,11 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 	private static final Pattern SQL_IPLIKE_PATTERN = Pattern.compile("(\\w+)\\s+IPLIKE\\s+([0-9a-f.:*,-]+|###@\\d+@###)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 	private static final String SQL_IPLIKE6_RHS_REGEX = "^[0-9A-Fa-f:*,-]+$";
 
+    private static final String IN_MEMORY_ENABLED_SYS_PROP = "org.opennms.netmgt.filter.inMemory";
+    private static final String IN_MEMORY_MAX_AGE_SYS_PROP = "org.opennms.netmgt.filter.inMemory.maxAge";
+    private static final long DEFAULT_IN_MEMORY_MAX_AGE_MS = 60 * 60 * 1000;
+    private static final int MAX_COMPILED_RULES = 1000;
+
 	private DataSource m_dataSource;
     private DatabaseSchemaConfig m_databaseSchemaConfigFactory;
 
@@ -93,9 +119,40 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
     private JmxReporter jmxReporter;
     private final Timer getIpListTimer;
+    private final Timer loadSnapshotTimer;
+    private final Meter inMemoryEvaluations;
+    private final Meter sqlEvaluations;
+
+    private boolean m_inMemoryEnabled = Boolean.getBoolean(IN_MEMORY_ENABLED_SYS_PROP);
+    private long m_inMemoryMaxAge = Long.getLong(IN_MEMORY_MAX_AGE_SYS_PROP, DEFAULT_IN_MEMORY_MAX_AGE_MS);
+
+    private volatile LoadedSnapshot m_snapshot;
+    // Incremented on every flush, a snapshot is only used if it was loaded after the last one
+    private final AtomicLong m_flushCount = new AtomicLong();
+    private final Object m_snapshotLock = new Object();
+    // Guarded by m_snapshotLock
+    private boolean m_loadingSnapshot = false;
+    // Nodes that changed while the snapshot was being loaded, guarded by m_snapshotLock
+    private final Set<Integer> m_nodesChangedWhileLoading = new HashSet<>();
+    private final ExecutorService m_snapshotLoader = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "FilterSnapshot-Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @SuppressWarnings("serial")
+    private final Map<String, Optional<CompiledRule>> m_compiledRules = Collections.synchronizedMap(new LinkedHashMap<String, Optional<CompiledRule>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Optional<CompiledRule>> eldest) {
+            return size() > MAX_COMPILED_RULES;
+        }
+    });
 
     public JdbcFilterDao() {
         getIpListTimer = metricRegistry.timer("getIPAddressListForFilter");
+        loadSnapshotTimer = metricRegistry.timer("loadSnapshot");
+        inMemoryEvaluations = metricRegistry.meter("inMemoryEvaluations");
+        sqlEvaluations = metricRegistry.meter("sqlEvaluations");
     }
 
     /**
@@ -134,6 +191,24 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * <p>setInMemoryEnabled</p>
+     *
+     * @param inMemoryEnabled whether rules should be evaluated against the in-memory snapshot when possible
+     */
+    public void setInMemoryEnabled(final boolean inMemoryEnabled) {
+        m_inMemoryEnabled = inMemoryEnabled;
+    }
+
+    /**
+     * <p>setInMemoryMaxAge</p>
+     *
+     * @param inMemoryMaxAge the age, in milliseconds, after which the in-memory snapshot is reloaded
+     */
+    public void setInMemoryMaxAge(final long inMemoryMaxAge) {
+        m_inMemoryMaxAge = inMemoryMaxAge;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -152,6 +227,7 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             jmxReporter.stop();
             jmxReporter = null;
         }
+        m_snapshotLoader.shutdownNow();
     }
 
     /**
@@ -170,6 +246,22 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.getNodeMap({})", rule);
 
+        final CompiledRule compiledRule = getCompiledRule(rule);
+        final FilterSnapshot snapshot = compiledRule == null ? null : getSnapshot();
+        if (snapshot != null) {
+            inMemoryEvaluations.mark();
+            for (final NodeRow node : snapshot.getNodes()) {
+                for (final InterfaceRow iface : node.getInterfaces()) {
+                    if (compiledRule.getRule().matches(snapshot, iface)) {
+                        resultMap.put(node.getNodeId(), node.getNodeLabel());
+                        break;
+                    }
+                }
+            }
+            return Collections.unmodifiableSortedMap(resultMap);
+        }
+        sqlEvaluations.mark();
+
         // get the database connection
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
@@ -285,7 +377,36 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
     @Override
     @CacheEvict(value="activeIpAddressList", allEntries=true)
-    public void flushActiveIpAddressListCache() {}
+    public void flushActiveIpAddressListCache() {
+        // Callers flush the cache when they know that the inventory changed, use SQL until the snapshot is reloaded
+        m_flushCount.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void nodeChanged(final int nodeId) {
+        if (!m_inMemoryEnabled) {
+            return;
+        }
+        synchronized (m_snapshotLock) {
+            if (m_loadingSnapshot) {
+                // The snapshot being loaded may have read the node before it changed
+                m_nodesChangedWhileLoading.add(nodeId);
+            }
+        }
+        final LoadedSnapshot loaded = m_snapshot;
+        if (loaded == null) {
+            // Not loaded yet, the node will be picked up by the next load
+            return;
+        }
+        try {
+            loaded.getSnapshot().refreshNode(getDataSource(), nodeId);
+        } catch (final SQLException e) {
+            LOG.warn("Failed to refresh node {} in the filter snapshot, it will be reloaded on the next evaluation.", nodeId, e);
+            m_snapshot = null;
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -324,6 +445,38 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.getIPAddressList({})", rule);
 
+        final CompiledRule compiledRule = getCompiledRule(rule);
+        final FilterSnapshot snapshot = compiledRule == null ? null : getSnapshot();
+        if (snapshot != null) {
+            try (final Timer.Context ctx = getIpListTimer.time()) {
+                inMemoryEvaluations.mark();
+                final boolean skipDeleted = filterDeleted && compiledRule.isFilterDeleted();
+                final Set<String> ipAddrs = new TreeSet<>();
+                if (filterByAddress) {
+                    for (final InterfaceRow iface : snapshot.getInterfaces(address)) {
+                        if (matches(snapshot, compiledRule, iface, skipDeleted)) {
+                            ipAddrs.add(iface.getIpAddr());
+                            break;
+                        }
+                    }
+                } else {
+                    for (final NodeRow node : snapshot.getNodes()) {
+                        for (final InterfaceRow iface : node.getInterfaces()) {
+                            if (!ipAddrs.contains(iface.getIpAddr()) && matches(snapshot, compiledRule, iface, skipDeleted)) {
+                                ipAddrs.add(iface.getIpAddr());
+                            }
+                        }
+                    }
+                }
+                for (final String ipAddr : ipAddrs) {
+                    resultList.add(addr(ipAddr));
+                }
+            }
+            LOG.debug("Filter.getIPAddressList({}): resultList.size = {} (in-memory)", rule, resultList.size());
+            return resultList;
+        }
+        sqlEvaluations.mark();
+
         // get the database connection
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
@@ -409,6 +562,23 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
         LOG.debug("Filter.isRuleMatching({})", rule);
 
+        final CompiledRule compiledRule = getCompiledRule(rule);
+        final FilterSnapshot snapshot = compiledRule == null ? null : getSnapshot();
+        if (snapshot != null) {
+            inMemoryEvaluations.mark();
+            for (final NodeRow node : snapshot.getNodes()) {
+                for (final InterfaceRow iface : node.getInterfaces()) {
+                    if (compiledRule.getRule().matches(snapshot, iface)) {
+                        LOG.debug("isRuleMatching: rule \"{}\" matches an entry in the inventory", rule);
+                        return true;
+                    }
+                }
+            }
+            LOG.debug("isRuleMatching: rule \"{}\" does not match an entry in the inventory", rule);
+            return false;
+        }
+        sqlEvaluations.mark();
+
         final DBUtils d = new DBUtils(getClass());
 
         // get the database connection
@@ -455,6 +625,154 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         isRuleMatching(rule);
     }
 
+    private static boolean matches(final FilterSnapshot snapshot, final CompiledRule compiledRule, final InterfaceRow iface, final boolean skipDeleted) {
+        if (skipDeleted && "D".equals(iface.getIsManaged())) {
+            return false;
+        }
+        return compiledRule.getRule().matches(snapshot, iface);
+    }
+
+    /**
+     * Returns the in-memory version of the rule, or null if the rule must be
+     * evaluated with SQL.
+     */
+    private CompiledRule getCompiledRule(final String rule) {
+        if (!m_inMemoryEnabled || rule == null || rule.length() == 0) {
+            return null;
+        }
+        Optional<CompiledRule> compiledRule = m_compiledRules.get(rule);
+        if (compiledRule == null) {
+            // Compile outside of the lock, the least recently used rule is evicted once the map is full
+            compiledRule = Optional.ofNullable(compileRule(rule));
+            m_compiledRules.put(rule, compiledRule);
+        }
+        return compiledRule.orElse(null);
+    }
+
+    private CompiledRule compileRule(final String rule) {
+        final String sqlString;
+        try {
+            // Let the SQL path report the errors
+            sqlString = getSQLStatement(rule);
+        } catch (final FilterParseException e) {
+            return null;
+        }
+        final InMemoryFilterRule inMemoryRule = InMemoryFilterRule.compile(rule, m_databaseSchemaConfigFactory);
+        if (inMemoryRule == null) {
+            LOG.debug("Filter rule \"{}\" can not be evaluated in memory, using SQL.", rule);
+            return null;
+        }
+        return new CompiledRule(inMemoryRule, !sqlString.contains("isManaged"));
+    }
+
+    /**
+     * Returns the snapshot if it was loaded after the last flush and is not too old. Otherwise a new
+     * snapshot is loaded in the background and null is returned, so that the rule is evaluated with SQL
+     * in the meantime.
+     */
+    private FilterSnapshot getSnapshot() {
+        final LoadedSnapshot loaded = m_snapshot;
+        if (loaded != null && loaded.getFlushCount() == m_flushCount.get()
+                && System.currentTimeMillis() - loaded.getSnapshot().getCreatedAt() <= m_inMemoryMaxAge) {
+            return loaded.getSnapshot();
+        }
+        scheduleSnapshotLoad();
+        return null;
+    }
+
+    private void scheduleSnapshotLoad() {
+        synchronized (m_snapshotLock) {
+            if (m_loadingSnapshot) {
+                return;
+            }
+            m_loadingSnapshot = true;
+            m_nodesChangedWhileLoading.clear();
+        }
+        try {
+            m_snapshotLoader.execute(this::loadSnapshot);
+        } catch (final RejectedExecutionException e) {
+            LOG.debug("Not loading the filter snapshot, the filter DAO was destroyed.");
+            synchronized (m_snapshotLock) {
+                m_loadingSnapshot = false;
+            }
+        }
+    }
+
+    private void loadSnapshot() {
+        final long flushCount = m_flushCount.get();
+        FilterSnapshot snapshot = null;
+        try {
+            try (final Timer.Context ctx = loadSnapshotTimer.time()) {
+                snapshot = FilterSnapshot.load(getDataSource());
+            }
+            // Replay the changes that may have been missed by the load, until there are none left
+            while (true) {
+                final Set<Integer> changedNodes;
+                synchronized (m_snapshotLock) {
+                    if (m_nodesChangedWhileLoading.isEmpty()) {
+                        m_snapshot = new LoadedSnapshot(snapshot, flushCount);
+                        LOG.debug("Loaded filter snapshot with {} nodes.", snapshot.getNodeCount());
+                        return;
+                    }
+                    changedNodes = new HashSet<>(m_nodesChangedWhileLoading);
+                    m_nodesChangedWhileLoading.clear();
+                }
+                for (final Integer nodeId : changedNodes) {
+                    snapshot.refreshNode(getDataSource(), nodeId);
+                }
+            }
+        } catch (final SQLException | RuntimeException e) {
+            LOG.warn("Failed to load the filter snapshot, using SQL.", e);
+        } finally {
+            synchronized (m_snapshotLock) {
+                m_loadingSnapshot = false;
+            }
+        }
+    }
+
+    private static final class LoadedSnapshot {
+        private final FilterSnapshot m_snapshot;
+        private final long m_flushCount;
+
+        private LoadedSnapshot(final FilterSnapshot snapshot, final long flushCount) {
+            m_snapshot = snapshot;
+            m_flushCount = flushCount;
+        }
+
+        private FilterSnapshot getSnapshot() {
+            return m_snapshot;
+        }
+
+        /**
+         * @return the number of flushes that happened before the snapshot started loading
+         */
+        private long getFlushCount() {
+            return m_flushCount;
+        }
+    }
+
+    private static final class CompiledRule {
+        private final InMemoryFilterRule m_rule;
+        private final boolean m_filterDeleted;
+
+        private CompiledRule(final InMemoryFilterRule rule, final boolean filterDeleted) {
+            m_rule = rule;
+            m_filterDeleted = filterDeleted;
+        }
+
+        private InMemoryFilterRule getRule() {
+            return m_rule;
+        }
+
+        /**
+         * @return true if deleted interfaces need to be excluded from the active lists,
+         *         which is only done when the rule doesn't test isManaged by itself
+         */
+        private boolean isFilterDeleted() {
+            return m_filterDeleted;
+        }
+    }
+
     /**
      * <p>getNodeMappingStatement</p>
      *
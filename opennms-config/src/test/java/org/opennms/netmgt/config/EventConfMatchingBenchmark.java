@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Use the Java Microbenchmarking Harness (JMH) to measure the time it takes to find
+ * the event definition matching a trap with the shipped event configuration.
+ * <p>
+ * The trap corpus is derived from the trap definitions found in the event configuration
+ * so that every enterprise id, generic and specific combination is exercised, and a
+ * portion of the traps is made to miss every definition.
+ */
+public class EventConfMatchingBenchmark {
+
+    // the number of traps that are matched in a single benchmark method call
+    // -> the reported number of operations per second must be multiplied by this number to get
+    //    the number of lookups per second
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String SHIPPED_EVENTCONF = "../opennms-base-assembly/src/main/filtered/etc/eventconf.xml";
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @State(Scope.Benchmark)
+    public static class BState {
+
+        // percentage of traps that don't match any trap definition
+        @Param({"0", "20"})
+        public int missRatio;
+
+        private DefaultEventConfDao eventConfDao;
+        private List<org.opennms.netmgt.xml.event.Event> traps;
+
+        @Setup
+        public void setup() throws Exception {
+            eventConfDao = new DefaultEventConfDao();
+            eventConfDao.setConfigResource(new FileSystemResource(new File(SHIPPED_EVENTCONF)));
+            eventConfDao.afterPropertiesSet();
+
+            final List<org.opennms.netmgt.xml.event.Event> corpus = new ArrayList<>();
+            for (final Event eventConf : eventConfDao.getAllEvents()) {
+                final String id = firstValue(eventConf, Maskelement.TAG_SNMP_EID);
+                final String generic = firstValue(eventConf, Maskelement.TAG_SNMP_GENERIC);
+                final String specific = firstValue(eventConf, Maskelement.TAG_SNMP_SPECIFIC);
+                if (id == null || generic == null || specific == null) {
+                    continue;
+                }
+                try {
+                    corpus.add(trap(id, Integer.parseInt(generic), Integer.parseInt(specific)));
+                } catch (NumberFormatException e) {
+                    // wildcard or regex, skip it
+                }
+            }
+
+            final Random random = new Random(123456L);
+            traps = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                if (random.nextInt(100) < missRatio) {
+                    traps.add(trap(".1.3.6.1.4.1.99999." + random.nextInt(1000), 6, random.nextInt(1000)));
+                } else {
+                    traps.add(corpus.get(random.nextInt(corpus.size())));
+                }
+            }
+            Collections.shuffle(traps, random);
+        }
+
+        private static String firstValue(final Event eventConf, final String mename) {
+            final List<String> values = eventConf.getMaskElementValues(mename);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        private static org.opennms.netmgt.xml.event.Event trap(final String id, final int generic, final int specific) {
+            final Snmp snmp = new Snmp();
+            snmp.setId(id);
+            snmp.setGeneric(generic);
+            snmp.setSpecific(specific);
+
+            final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+            event.setSnmp(snmp);
+            return event;
+        }
+
+        public DefaultEventConfDao eventConfDao() {
+            return eventConfDao;
+        }
+
+        public List<org.opennms.netmgt.xml.event.Event> traps() {
+            return traps;
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 2)
+    public void findByEvent(BState state, Blackhole blackhole) {
+        final DefaultEventConfDao eventConfDao = state.eventConfDao();
+        for (final org.opennms.netmgt.xml.event.Event trap : state.traps()) {
+            blackhole.consume(eventConfDao.findByEvent(trap));
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.DatabaseSchemaConfigFactory;
+import org.opennms.netmgt.config.api.DatabaseSchemaConfig;
+import org.opennms.netmgt.filter.FilterSnapshot.Column;
+import org.opennms.netmgt.filter.FilterSnapshot.InterfaceRow;
+import org.opennms.netmgt.filter.FilterSnapshot.NodeRow;
+
+public class InMemoryFilterRuleTest {
+
+    private DatabaseSchemaConfig m_schema;
+
+    private FilterSnapshot m_snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        m_schema = new DatabaseSchemaConfigFactory();
+        m_snapshot = new FilterSnapshot();
+
+        final Map<Column, String> router = new HashMap<>();
+        router.put(Column.NODE_LABEL, "router1");
+        router.put(Column.LOCATION, "Default");
+        router.put(Column.FOREIGN_SOURCE, "fs");
+        final NodeRow node1 = m_snapshot.addNode(1, router, Collections.singletonMap(Column.POLLER_CATEGORY, "core"), Arrays.asList("Routers", "Production"));
+        m_snapshot.addInterface(node1, iface("192.168.1.1", "M"), Arrays.asList("ICMP", "SNMP"));
+        m_snapshot.addInterface(node1, iface("10.0.0.1", "D"), Arrays.asList("ICMP"));
+
+        final Map<Column, String> server = new HashMap<>();
+        server.put(Column.NODE_LABEL, "server2");
+        server.put(Column.LOCATION, "Remote");
+        final NodeRow node2 = m_snapshot.addNode(2, server, null, Collections.emptyList());
+        m_snapshot.addInterface(node2, iface("192.168.2.1", "M"), Arrays.asList("HTTP"));
+    }
+
+    @Test
+    public void canMatchAddresses() {
+        assertMatches("IPADDR != '0.0.0.0'", "192.168.1.1", "10.0.0.1", "192.168.2.1");
+        assertMatches("ipaddr == \"192.168.2.1\"", "192.168.2.1");
+        assertMatches("ipaddr IPLIKE 192.168.*.*", "192.168.1.1", "192.168.2.1");
+        assertMatches("IPLIKE(ipaddr, '10.*.*.*')", "10.0.0.1");
+    }
+
+    @Test
+    public void canMatchPrefixedValues() {
+        assertMatches("isICMP", "192.168.1.1", "10.0.0.1");
+        // Both services would have to be on the same row
+        assertMatches("isICMP & isSNMP");
+        assertMatches("notisICMP", "192.168.2.1");
+        assertMatches("catincRouters", "192.168.1.1", "10.0.0.1");
+        assertMatches("!catincRouters", "192.168.2.1");
+    }
+
+    @Test
+    public void canMatchLikeTheDatabase() {
+        assertMatches("nodeId == '1'", "192.168.1.1", "10.0.0.1");
+        assertMatches("nodeid > 1", "192.168.2.1");
+        assertMatches("nodeid IN (1, 2)", "192.168.1.1", "10.0.0.1", "192.168.2.1");
+        assertMatches("nodeLabel LIKE 'serv%'", "192.168.2.1");
+        assertMatches("nodeLabel NOT LIKE 'r_uter%'", "192.168.2.1");
+        assertMatches("IsManaged = 'D'", "10.0.0.1");
+        assertMatches("(serviceName == 'HTTP') && (location == 'Remote')", "192.168.2.1");
+        assertMatches("pollerCategory == 'core'", "192.168.1.1", "10.0.0.1");
+    }
+
+    @Test
+    public void canHandleNulls() {
+        // node 2 has no foreign source, the comparison is unknown either way
+        assertMatches("foreignSource = 'fs' OR NOT foreignSource = 'fs'", "192.168.1.1", "10.0.0.1");
+        assertMatches("location != 'Default' | foreignSource == 'fs'", "192.168.1.1", "10.0.0.1", "192.168.2.1");
+        // Left join on the categories
+        assertMatches("categoryName IS NULL", "192.168.2.1");
+        assertMatches("categoryName == 'Production'", "192.168.1.1", "10.0.0.1");
+    }
+
+    @Test
+    public void canFallBackToSql() {
+        assertNull(InMemoryFilterRule.compile("snmpIfIndex = 1", m_schema));
+        assertNull(InMemoryFilterRule.compile("nodeLabel < 'x'", m_schema));
+        assertNull(InMemoryFilterRule.compile("ipaddr::INET = '1.1.1.1'", m_schema));
+        assertNull(InMemoryFilterRule.compile("nodeLabel = 'x' IS NOT DISTINCT FROM true", m_schema));
+        assertNull(InMemoryFilterRule.compile("nodeLabel = 'unterminated", m_schema));
+        // Translated to "serviceName = 'Managed' = 'M'" in SQL
+        assertNull(InMemoryFilterRule.compile("isManaged = 'M'", m_schema));
+    }
+
+    @Test
+    public void canLookupInterfacesByAddress() {
+        assertEquals(1, m_snapshot.getInterfaces("10.0.0.1").size());
+        assertEquals(0, m_snapshot.getInterfaces("10.0.0.2").size());
+    }
+
+    private void assertMatches(final String rule, final String... expectedAddresses) {
+        final InMemoryFilterRule compiledRule = InMemoryFilterRule.compile(rule, m_schema);
+        assertNotNull("rule should be supported: " + rule, compiledRule);
+
+        final List<String> matches = new ArrayList<>();
+        for (final NodeRow node : m_snapshot.getNodes()) {
+            for (final InterfaceRow iface : node.getInterfaces()) {
+                if (compiledRule.matches(m_snapshot, iface)) {
+                    matches.add(iface.getIpAddr());
+                }
+            }
+        }
+        Collections.sort(matches);
+        final List<String> expected = new ArrayList<>(Arrays.asList(expectedAddresses));
+        Collections.sort(expected);
+        assertEquals(rule, expected, matches);
+    }
+
+    private static Map<Column, String> iface(final String ipAddr, final String isManaged) {
+        final Map<Column, String> values = new HashMap<>();
+        values.put(Column.IP_ADDR, ipAddr);
+        values.put(Column.IS_MANAGED, isManaged);
+        return values;
+    }
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.api;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -40,6 +41,14 @@ public interface AlarmDao extends LegacyOnmsDao<OnmsAlarm, Integer> {
 
     OnmsAlarm findByReductionKey(String reductionKey);
 
+    /**
+     * Retrieves the alarms with the given reduction keys using a single query.
+     *
+     * @param reductionKeys the reduction keys to look for
+     * @return the alarms indexed by reduction key, keys with no matching alarm are not present in the map
+     */
+    Map<String, OnmsAlarm> findByReductionKeys(Collection<String> reductionKeys);
+
     /**
      * <p>Get the list of current - not yet acknowledged - alarms per node with severity greater than normal,
      * reflecting the max severity, the minimum last event time and alarm count;
@@ -147,6 +147,23 @@ public interface ResourceStorageDao {
      */
     public void updateMetricToResourceMappings(ResourcePath path, Map<String, String> metricsNameToResourceNames);
 
+    /**
+     * Notifies the DAO that metrics were persisted to the given resource.
+     * Should not be called directly but only through the persisters.
+     *
+     * When persisting to .rrd or .jrb files, the resource name is the
+     * name of the file, without its extension.
+     *
+     * Strategies that keep an index of the stored resources may use this to
+     * keep the index current, others can ignore calls to this method.
+     *
+     * @param path parent resource path
+     * @param resourceName name of the resource the metrics were persisted to
+     */
+    public default void metricsPersisted(ResourcePath path, String resourceName) {
+        // pass
+    }
+
     /**
      * Retrieves the meta-data stored at the given path.
      */
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.dao.mock;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -93,6 +95,17 @@ public class MockAlarmDao extends AbstractMockDao<OnmsAlarm, Integer> implements
         return null;
     }
 
+    @Override
+    public Map<String, OnmsAlarm> findByReductionKeys(final Collection<String> reductionKeys) {
+        final Map<String, OnmsAlarm> alarmsByReductionKey = new HashMap<>();
+        for (OnmsAlarm alarm : findAll()) {
+            if (reductionKeys.contains(alarm.getReductionKey())) {
+                alarmsByReductionKey.put(alarm.getReductionKey(), alarm);
+            }
+        }
+        return alarmsByReductionKey;
+    }
+
     @Override
     public List<AlarmSummary> getNodeAlarmSummaries() {
         throw new UnsupportedOperationException("Not yet implemented!");
@@ -32,8 +32,10 @@ import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -71,6 +73,29 @@ public class AlarmDaoHibernate extends AbstractDaoHibernate<OnmsAlarm, Integer>
         return super.findUnique(hql, reductionKey);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, OnmsAlarm> findByReductionKeys(final Collection<String> reductionKeys) {
+        if (reductionKeys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final String hql = "from OnmsAlarm as alarms where alarms.reductionKey in (:reductionKeys)";
+        final List<OnmsAlarm> alarms = getHibernateTemplate().execute(new HibernateCallback<List<OnmsAlarm>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<OnmsAlarm> doInHibernate(final Session session) throws HibernateException, SQLException {
+                return session.createQuery(hql)
+                        .setParameterList("reductionKeys", reductionKeys)
+                        .list();
+            }
+        });
+        final Map<String, OnmsAlarm> alarmsByReductionKey = new HashMap<>(alarms.size());
+        for (final OnmsAlarm alarm : alarms) {
+            alarmsByReductionKey.put(alarm.getReductionKey(), alarm);
+        }
+        return alarmsByReductionKey;
+    }
+
     /** {@inheritDoc} */
     @Override
     public List<AlarmSummary> getNodeAlarmSummariesIncludeAcknowledgedOnes(List<Integer> nodeIds) {
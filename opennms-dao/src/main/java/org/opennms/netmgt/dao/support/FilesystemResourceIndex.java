@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the resource directories and metric files stored
+ * under the RRD directory.
+ *
+ * The tree is walked once by {@link #build()}. After that, it is kept current
+ * by the persisters through {@link #addMetric(Path, String)}, and by a
+ * {@link WatchService} for the changes made outside of OpenNMS.
+ *
+ * All the paths are relative to the RRD directory.
+ */
+class FilesystemResourceIndex implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilesystemResourceIndex.class);
+
+    private final Path m_root;
+
+    private final String m_extension;
+
+    private final Node m_rootNode = new Node();
+
+    private final WatchService m_watchService;
+
+    private final AtomicBoolean m_watchLimitReached = new AtomicBoolean(false);
+
+    private volatile boolean m_ready = false;
+
+    private volatile boolean m_closed = false;
+
+    /**
+     * @param root the RRD directory
+     * @param extension the extension of the metric files
+     * @param watch whether or not to watch the tree for changes made outside of OpenNMS
+     */
+    FilesystemResourceIndex(final Path root, final String extension, final boolean watch) throws IOException {
+        m_root = root.toAbsolutePath();
+        m_extension = extension;
+        m_watchService = watch ? m_root.getFileSystem().newWatchService() : null;
+    }
+
+    /**
+     * Walks the tree and starts watching it for changes.
+     *
+     * Changes made while the tree is being walked are either found by the walk,
+     * or queued by the watch service and applied once the walk completes.
+     */
+    void build() throws IOException {
+        final long start = System.currentTimeMillis();
+        if (Files.isDirectory(m_root)) {
+            scan(m_root, m_rootNode);
+        } else {
+            LOG.info("RRD directory {} does not exist yet, starting with an empty resource index.", m_root);
+        }
+        m_ready = true;
+        LOG.info("Indexed the resources under {} in {}ms.", m_root, System.currentTimeMillis() - start);
+
+        if (m_watchService != null) {
+            final Thread watcher = new Thread(this::processEvents, "resourceIndexWatcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    boolean isReady() {
+        return m_ready;
+    }
+
+    /**
+     * @see org.opennms.netmgt.dao.api.ResourceStorageDao#exists(org.opennms.netmgt.model.ResourcePath, int)
+     */
+    boolean exists(final Path path, final int depth) {
+        final Node node = getNode(path);
+        return node != null && node.exists(depth);
+    }
+
+    /**
+     * @see org.opennms.netmgt.dao.api.ResourceStorageDao#existsWithin(org.opennms.netmgt.model.ResourcePath, int)
+     */
+    boolean existsWithin(final Path path, final int depth) {
+        final Node node = getNode(path);
+        return node != null && node.existsWithin(depth);
+    }
+
+    /**
+     * Returns the names of the child directories which contain one or more
+     * metrics at the given depth.
+     *
+     * @see org.opennms.netmgt.dao.api.ResourceStorageDao#children(org.opennms.netmgt.model.ResourcePath, int)
+     */
+    Set<String> children(final Path path, final int depth) {
+        final Node node = getNode(path);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> children = new HashSet<>();
+        for (final Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (child.getValue().exists(depth - 1)) {
+                children.add(child.getKey());
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns the names of the metric files stored directly in the given directory.
+     */
+    Set<String> getMetricFiles(final Path path) {
+        final Node node = getNode(path);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(node.metrics);
+    }
+
+    /**
+     * Records a metric file, creating the directories leading to it as needed.
+     */
+    void addMetric(final Path path, final String fileName) {
+        if (isMetricFile(fileName)) {
+            getOrCreateNode(path).metrics.add(fileName);
+        }
+    }
+
+    /**
+     * Removes the given directory, and everything below it, from the index.
+     */
+    void remove(final Path path) {
+        if (path.getFileName() == null || path.getFileName().toString().isEmpty()) {
+            m_rootNode.children.clear();
+            m_rootNode.metrics.clear();
+            return;
+        }
+        final Path parentPath = path.getParent();
+        final Node parent = parentPath == null ? m_rootNode : getNode(parentPath);
+        if (parent != null) {
+            final String name = path.getFileName().toString();
+            parent.children.remove(name);
+            parent.metrics.remove(name);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_closed = true;
+        if (m_watchService != null) {
+            m_watchService.close();
+        }
+    }
+
+    private boolean isMetricFile(final String fileName) {
+        return fileName.endsWith(m_extension);
+    }
+
+    private Node getNode(final Path path) {
+        Node node = m_rootNode;
+        for (final Path element : path) {
+            final String name = element.toString();
+            if (name.isEmpty()) {
+                continue;
+            }
+            node = node.children.get(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node getOrCreateNode(final Path path) {
+        Node node = m_rootNode;
+        Path directory = m_root;
+        for (final Path element : path) {
+            final String name = element.toString();
+            if (name.isEmpty()) {
+                continue;
+            }
+            directory = directory.resolve(name);
+            Node child = node.children.get(name);
+            if (child == null) {
+                final Node newChild = new Node();
+                child = node.children.putIfAbsent(name, newChild);
+                if (child == null) {
+                    child = newChild;
+                    register(directory);
+                }
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Adds the content of the given directory to the index, and starts watching
+     * all of the directories below it.
+     */
+    private void scan(final Path directory, final Node node) throws IOException {
+        final Map<Path, Node> nodes = new ConcurrentHashMap<>();
+        nodes.put(directory, node);
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                // Watch the directory before listing it, so that no file is missed
+                register(dir);
+                if (!dir.equals(directory)) {
+                    final Node parent = nodes.get(dir.getParent());
+                    nodes.put(dir, parent.children.computeIfAbsent(dir.getFileName().toString(), name -> new Node()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                final String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && isMetricFile(name)) {
+                    nodes.get(file.getParent()).metrics.add(name);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                // Files may be removed while we are walking the tree
+                LOG.debug("Failed to index {}.", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException e) {
+                nodes.remove(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(final Path directory) {
+        if (m_watchService == null || m_watchLimitReached.get()) {
+            return;
+        }
+        try {
+            directory.register(m_watchService, ENTRY_CREATE, ENTRY_DELETE);
+        } catch (NoSuchFileException e) {
+            // The directory will be registered when its parent reports its creation
+        } catch (IOException e) {
+            if (m_watchLimitReached.compareAndSet(false, true)) {
+                LOG.warn("Failed to watch {} for changes. Changes made outside of OpenNMS to this directory, and to any "
+                        + "directory not watched yet, will not be reflected in the resource index until the next restart. "
+                        + "On Linux, consider raising fs.inotify.max_user_watches.", directory, e);
+            }
+        }
+    }
+
+    private void processEvents() {
+        while (!m_closed) {
+            final WatchKey key;
+            try {
+                key = m_watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            final Path directory = (Path) key.watchable();
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    handleEvent(directory, event);
+                } catch (Exception e) {
+                    LOG.warn("Failed to update the resource index for changes in {}.", directory, e);
+                }
+            }
+            key.reset();
+        }
+        LOG.debug("Stopped watching {} for changes.", m_root);
+    }
+
+    private void handleEvent(final Path directory, final WatchEvent<?> event) throws IOException {
+        final Path relativeDirectory = m_root.relativize(directory);
+        if (event.kind() == OVERFLOW) {
+            // Some events were lost, reconcile the directory with what is on disk
+            LOG.debug("Too many changes in {}, indexing it again.", directory);
+            final Node node = getNode(relativeDirectory);
+            if (node != null) {
+                node.children.keySet().removeIf(name -> !Files.isDirectory(directory.resolve(name)));
+                node.metrics.removeIf(name -> !Files.exists(directory.resolve(name)));
+            }
+            if (Files.isDirectory(directory)) {
+                scan(directory, getOrCreateNode(relativeDirectory));
+            }
+            return;
+        }
+
+        final Path child = directory.resolve((Path) event.context());
+        final String name = child.getFileName().toString();
+        if (event.kind() == ENTRY_CREATE) {
+            if (Files.isDirectory(child)) {
+                scan(child, getOrCreateNode(relativeDirectory.resolve(name)));
+            } else {
+                addMetric(relativeDirectory, name);
+            }
+        } else if (event.kind() == ENTRY_DELETE) {
+            remove(relativeDirectory.resolve(name));
+        }
+    }
+
+    private static final class Node {
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+
+        private final Set<String> metrics = ConcurrentHashMap.newKeySet();
+
+        private boolean exists(final int depth) {
+            if (depth == 0) {
+                return !metrics.isEmpty();
+            }
+            for (final Node child : children.values()) {
+                if (child.exists(depth - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean existsWithin(final int depth) {
+            if (depth < 0) {
+                return false;
+            }
+            if (!metrics.isEmpty()) {
+                return true;
+            }
+            for (final Node child : children.values()) {
+                if (child.existsWithin(depth - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
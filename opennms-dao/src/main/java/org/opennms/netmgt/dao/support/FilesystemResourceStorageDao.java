@@ -49,6 +49,7 @@ import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -60,9 +61,15 @@ import com.google.common.collect.Maps;
  * Used in conjunction with RRD/JRB strategies that persist
  * metrics to the local disk.
  *
+ * When the resource index is enabled, the tree is walked once at startup
+ * and the structural queries ({@link #exists}, {@link #existsWithin},
+ * {@link #children} and {@link #getAttributes}) are answered from memory
+ * instead of listing directories. Until the initial walk completes, these
+ * queries fall back to the file system.
+ *
  * @author jwhite
  */
-public class FilesystemResourceStorageDao implements ResourceStorageDao, InitializingBean {
+public class FilesystemResourceStorageDao implements ResourceStorageDao, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(FilesystemResourceStorageDao.class);
 
@@ -73,27 +80,66 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     private File m_rrdDirectory;
 
+    private boolean m_indexEnabled = false;
+
+    private FilesystemResourceIndex m_index;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
         setRrdExtension(m_rrdStrategy.getDefaultFileExtension());
+
+        if (m_indexEnabled) {
+            m_index = new FilesystemResourceIndex(m_rrdDirectory.toPath(), RRD_EXTENSION, true);
+            final Thread builder = new Thread(() -> {
+                try {
+                    m_index.build();
+                } catch (IOException e) {
+                    LOG.error("Failed to index {}. Resources will be looked up on disk.", m_rrdDirectory, e);
+                }
+            }, "resourceIndexBuilder");
+            builder.setDaemon(true);
+            builder.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (m_index != null) {
+            m_index.close();
+        }
     }
 
     @Override
     public boolean exists(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        final FilesystemResourceIndex index = getReadyIndex();
+        if (index != null) {
+            return index.exists(ResourcePath.resourceToFilesystemPath(path), depth);
+        }
         return exists(toPath(path), depth);
     }
 
     @Override
     public boolean existsWithin(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        final FilesystemResourceIndex index = getReadyIndex();
+        if (index != null) {
+            return index.existsWithin(ResourcePath.resourceToFilesystemPath(path), depth);
+        }
         return existsWithin(toPath(path), depth);
     }
 
     @Override
     public Set<ResourcePath> children(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth > 0, "depth must be positive");
+        final FilesystemResourceIndex index = getReadyIndex();
+        if (index != null) {
+            return index.children(ResourcePath.resourceToFilesystemPath(path), depth).stream()
+                .map(name -> ResourcePath.get(path, name))
+                .collect(Collectors.toSet());
+        }
+
         final Path root = toPath(path);
         if (!Files.isDirectory(root)) {
             return Collections.emptySet();
@@ -112,6 +158,11 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     @Override
     public Set<OnmsAttribute> getAttributes(ResourcePath path) {
+        final FilesystemResourceIndex index = getReadyIndex();
+        if (index != null) {
+            final Path relativePath = ResourcePath.resourceToFilesystemPath(path);
+            return RrdResourceAttributeUtils.getAttributesAtRelativePath(m_rrdDirectory, relativePath.toString(), RRD_EXTENSION, index.getMetricFiles(relativePath));
+        }
         return RrdResourceAttributeUtils.getAttributesAtRelativePath(m_rrdDirectory, ResourcePath.resourceToFilesystemPath(path).toString(), RRD_EXTENSION);
     }
 
@@ -140,6 +191,13 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         RrdResourceAttributeUtils.updateDsProperties(toPath(path).toFile(), metricsNameToResourceNames);
     }
 
+    @Override
+    public void metricsPersisted(ResourcePath path, String resourceName) {
+        if (m_index != null) {
+            m_index.addMetric(ResourcePath.resourceToFilesystemPath(path), resourceName + RRD_EXTENSION);
+        }
+    }
+
     @Override
     public Map<String, String> getMetaData(ResourcePath path) {
         return RrdMetaDataUtils.readMetaDataFile(getRrdDirectory(), ResourcePath.resourceToFilesystemPath(path).toString());
@@ -147,7 +205,11 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     @Override
     public boolean delete(ResourcePath path) {
-        return FileUtils.deleteQuietly(toPath(path).toFile());
+        final boolean deleted = FileUtils.deleteQuietly(toPath(path).toFile());
+        if (m_index != null) {
+            m_index.remove(ResourcePath.resourceToFilesystemPath(path));
+        }
+        return deleted;
     }
 
     private boolean exists(Path root, int depth) {
@@ -180,6 +242,11 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         }
     }
 
+    private FilesystemResourceIndex getReadyIndex() {
+        final FilesystemResourceIndex index = m_index;
+        return index != null && index.isReady() ? index : null;
+    }
+
     private Path toPath(final ResourcePath path) {
         return m_rrdDirectory.getAbsoluteFile().toPath().resolve(ResourcePath.resourceToFilesystemPath(path));
     }
@@ -192,6 +259,17 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         return m_rrdDirectory;
     }
 
+    /**
+     * Enables the in-memory resource index, must be set before {@link #afterPropertiesSet()} is called.
+     */
+    public void setIndexEnabled(boolean indexEnabled) {
+        m_indexEnabled = indexEnabled;
+    }
+
+    public boolean isIndexEnabled() {
+        return m_indexEnabled;
+    }
+
     public void setRrdStrategy(RrdStrategy<?, ?> rrdStrategy) {
         m_rrdStrategy = rrdStrategy;
         setRrdExtension(m_rrdStrategy.getDefaultFileExtension());
@@ -33,7 +33,10 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -82,6 +85,21 @@ public abstract class RrdResourceAttributeUtils {
         return attributes;
     }
 
+    /**
+     * Same as {@link #getAttributesAtRelativePath(File, String, String)}, but uses the given
+     * metric file names instead of listing the resource directory.
+     *
+     * @param rrdFileNames the names of the metric files stored in the resource directory
+     */
+    protected static Set<OnmsAttribute> getAttributesAtRelativePath(File rrdDirectory, String relativePath, String rrdFileSuffix, Collection<String> rrdFileNames) {
+        final Set<OnmsAttribute> attributes =  new TreeSet<>(new AlphaNumericOnmsAttributeComparator());
+
+        loadRrdAttributes(new File(rrdDirectory, relativePath), relativePath, rrdFileNames, attributes, rrdFileSuffix);
+        loadStringAttributes(rrdDirectory, relativePath, attributes);
+
+        return attributes;
+    }
+
     private static void loadStringAttributes(File rrdDirectory,
             String relativePath, Set<OnmsAttribute> attributes) {
         Properties properties = getStringProperties(rrdDirectory, relativePath);
@@ -93,7 +111,6 @@ public abstract class RrdResourceAttributeUtils {
     }
 
     private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes, final String rrdFileSuffix) {
-        int suffixLength = rrdFileSuffix.length();
         File resourceDir = new File(rrdDirectory, relativePath);
 
         FilenameFilter filter = new FilenameFilter() {
@@ -107,9 +124,17 @@ public abstract class RrdResourceAttributeUtils {
         if (files == null) {
             return;
         }
-        
+
+        final List<String> fileNames = new ArrayList<>(files.length);
         for (final File file : files) {
-            String fileName = file.getName();
+            fileNames.add(file.getName());
+        }
+        loadRrdAttributes(resourceDir, relativePath, fileNames, attributes, rrdFileSuffix);
+    }
+
+    private static void loadRrdAttributes(File resourceDir, String relativePath, Collection<String> fileNames, Set<OnmsAttribute> attributes, final String rrdFileSuffix) {
+        int suffixLength = rrdFileSuffix.length();
+        for (final String fileName : fileNames) {
             if (ResourceTypeUtils.isStoreByGroup() && !(ResourceTypeUtils.isResponseTime(relativePath) || ResourceTypeUtils.isStatus(relativePath))) {
                 String groupName = fileName.substring(0, fileName.length() - suffixLength);
                 Properties props = getDsProperties(resourceDir);
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FilesystemResourceIndexTest {
+
+    private static final String EXTENSION = ".jrb";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canAnswerQueriesFromTheInitialWalk() throws IOException {
+        File folder = tempFolder.newFolder("a", "b", "c");
+        new File(folder, "ds" + EXTENSION).createNewFile();
+        new File(folder, "ds.properties").createNewFile();
+        tempFolder.newFolder("a", "empty");
+
+        try (FilesystemResourceIndex index = new FilesystemResourceIndex(tempFolder.getRoot().toPath(), EXTENSION, false)) {
+            index.build();
+            assertTrue(index.isReady());
+
+            assertTrue(index.exists(path("a", "b", "c"), 0));
+            assertTrue(index.exists(path("a", "b"), 1));
+            assertFalse(index.exists(path("a", "b"), 2));
+            assertFalse(index.exists(path("should", "not", "exist"), 0));
+
+            assertTrue(index.existsWithin(path("a"), 2));
+            assertFalse(index.existsWithin(path("a"), 1));
+
+            assertEquals(Collections.singleton("b"), index.children(path("a"), 2));
+            assertEquals(Collections.emptySet(), index.children(path("a"), 1));
+
+            // Only the metric files are indexed
+            assertEquals(Collections.singleton("ds" + EXTENSION), index.getMetricFiles(path("a", "b", "c")));
+        }
+    }
+
+    @Test
+    public void canBeUpdatedByThePersisters() throws IOException {
+        try (FilesystemResourceIndex index = new FilesystemResourceIndex(tempFolder.getRoot().toPath(), EXTENSION, false)) {
+            index.build();
+            assertFalse(index.exists(path("snmp", "1", "eth0"), 0));
+
+            index.addMetric(path("snmp", "1", "eth0"), "ifInOctets" + EXTENSION);
+            assertTrue(index.exists(path("snmp", "1", "eth0"), 0));
+            assertTrue(index.exists(path("snmp", "1"), 1));
+            assertEquals(Collections.singleton("eth0"), index.children(path("snmp", "1"), 1));
+
+            index.remove(path("snmp", "1"));
+            assertFalse(index.existsWithin(path("snmp"), 2));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void canTrackChangesMadeOutsideOfOpenNMS() throws Exception {
+        tempFolder.newFolder("snmp", "1");
+
+        try (FilesystemResourceIndex index = new FilesystemResourceIndex(tempFolder.getRoot().toPath(), EXTENSION, true)) {
+            index.build();
+            assertFalse(index.exists(path("snmp", "1"), 1));
+
+            // Creating a directory with a metric in a watched directory
+            File folder = new File(tempFolder.getRoot(), "snmp/1/eth0");
+            assertTrue(folder.mkdirs());
+            new File(folder, "ifInOctets" + EXTENSION).createNewFile();
+            while (!index.exists(path("snmp", "1"), 1)) {
+                Thread.sleep(50);
+            }
+
+            // Deleting it
+            FileUtils.deleteDirectory(folder);
+            while (index.exists(path("snmp", "1"), 1)) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static Path path(String... elements) {
+        return Paths.get("", elements);
+    }
+}
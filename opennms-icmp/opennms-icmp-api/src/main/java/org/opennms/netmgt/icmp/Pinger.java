@@ -32,6 +32,9 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.util.List;
 
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.RateLimiter;
+
 /**
  * <p>Pinger class.</p>
  *
@@ -119,6 +122,55 @@ public interface Pinger {
          */
         public List<Number> parallelPing(InetAddress host, int count, long timeout, long pingInterval, int size) throws Exception;
         
+        /**
+         * Ping every address of a (potentially very large) range, sending at most
+         * <code>packetsPerSecond</code> echo requests per second, retries included
+         * where the implementation supports it. The callback is notified exactly once
+         * per address, and the call returns once every address has been reported.
+         *
+         * @param addresses The addresses to ping.
+         * @param timeout The time to wait between each retry.
+         * @param retries The number of times to retry.
+         * @param packetsize The size in byte of the ICMP packet.
+         * @param packetsPerSecond The maximum rate at which packets will be sent.
+         * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call upon success, timeout or error
+         * @see #sweep(Iterable, int, double, PingResponseCallback)
+         */
+        public default void sweep(final Iterable<InetAddress> addresses, final long timeout, final int retries, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+            sweep(Iterables.transform(addresses, address -> new SweepAddress(address, timeout, retries)), packetsize, packetsPerSecond, cb);
+        }
+
+        /**
+         * Ping every address, each with its own timeout and retries, sending at most
+         * <code>packetsPerSecond</code> echo requests per second, retries included
+         * where the implementation supports it. The callback is notified exactly once
+         * per address, and the call returns once every address has been reported.
+         *
+         * The default implementation paces calls to
+         * {@link #ping(InetAddress, long, int, int, int, PingResponseCallback)};
+         * pingers that can track a large number of outstanding requests cheaply
+         * should override it.
+         *
+         * @param addresses The addresses to ping, along with their timeout and retries.
+         * @param packetsize The size in byte of the ICMP packet.
+         * @param packetsPerSecond The maximum rate at which packets will be sent.
+         * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call upon success, timeout or error
+         */
+        public default void sweep(final Iterable<SweepAddress> addresses, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+            final SweepPingResponseCallback sweepCallback = new SweepPingResponseCallback(cb);
+            final RateLimiter limiter = RateLimiter.create(packetsPerSecond);
+            for (final SweepAddress address : addresses) {
+                sweepCallback.expectCallback();
+                limiter.acquire();
+                try {
+                    ping(address.getAddress(), address.getTimeout(), address.getRetries(), packetsize, 1, sweepCallback);
+                } catch (final Exception e) {
+                    sweepCallback.handleError(address.getAddress(), null, e);
+                }
+            }
+            sweepCallback.waitFor();
+        }
+
         /**
          * Ping a remote host, sending 1 or more packets at the given interval, and then
          * return the response times as a list.
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards the results of a ping sweep to a delegate callback and keeps track
+ * of how many of them are still outstanding, so that the thread that issued the
+ * requests can wait for the sweep to complete.
+ *
+ * The number of outstanding callbacks starts at one on behalf of the issuing
+ * thread, which is released by {@link #waitFor()}, so that the sweep cannot be
+ * considered complete before every request has been issued.
+ */
+public class SweepPingResponseCallback implements PingResponseCallback {
+
+    private final PingResponseCallback m_cb;
+
+    private final AtomicLong m_outstanding = new AtomicLong(1);
+
+    private final CountDownLatch m_latch = new CountDownLatch(1);
+
+    public SweepPingResponseCallback(final PingResponseCallback cb) {
+        m_cb = cb;
+    }
+
+    /**
+     * Must be called before issuing each request whose result is reported
+     * to this callback.
+     */
+    public void expectCallback() {
+        m_outstanding.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handleResponse(final InetAddress address, final EchoPacket response) {
+        try {
+            m_cb.handleResponse(address, response);
+        } finally {
+            afterHandled();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handleTimeout(final InetAddress address, final EchoPacket request) {
+        try {
+            m_cb.handleTimeout(address, request);
+        } finally {
+            afterHandled();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+        try {
+            m_cb.handleError(address, request, t);
+        } finally {
+            afterHandled();
+        }
+    }
+
+    /**
+     * Waits until every expected callback has been handled. Must be called
+     * once, after the last request has been issued.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void waitFor() throws InterruptedException {
+        afterHandled();
+        m_latch.await();
+    }
+
+    private void afterHandled() {
+        if (m_outstanding.decrementAndGet() == 0) {
+            m_latch.countDown();
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.util.List;
 import org.opennms.netmgt.icmp.NullPinger;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
+import org.opennms.netmgt.icmp.SweepAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,6 +86,12 @@ public class BestMatchPinger implements Pinger {
         return m_pinger.parallelPing(host, count, timeout, pingInterval, size);
     }
 
+    @Override
+    public void sweep(final Iterable<SweepAddress> addresses, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        initialize();
+        m_pinger.sweep(addresses, packetsize, packetsPerSecond, cb);
+    }
+
     @Override
     public void initialize4() throws Exception {
         initialize();
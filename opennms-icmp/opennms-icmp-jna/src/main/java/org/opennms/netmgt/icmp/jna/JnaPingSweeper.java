@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.IcmpMessengerIOException;
+import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.netmgt.icmp.SweepAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the echo requests of large ping sweeps without going through the
+ * generic {@link org.opennms.protocols.rt.RequestTracker}.
+ *
+ * The sweeper owns one ICMP socket per address family, each drained by its own
+ * reader thread, and uses an identifier of its own so that its replies never
+ * reach the regular pinger. Each sweep is paced by a {@link TokenBucket} on the
+ * calling thread. Outstanding requests are matched to replies through a
+ * {@link ProbeTable} keyed by identifier and sequence number, where the sequence
+ * number is widened to 48 bits by carrying it in the thread id field of the
+ * payload as well. A single timer thread expires them using a
+ * {@link TimingWheel} and hands the ones that have retries left back to their
+ * sweep, so retries are paced like first attempts.
+ */
+public class JnaPingSweeper implements PingReplyListener {
+    private static final Logger LOG = LoggerFactory.getLogger(JnaPingSweeper.class);
+
+    /** resolution of the request timeouts */
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private final int m_identifier;
+    private V4Pinger m_v4;
+    private V6Pinger m_v6;
+
+    // all of the following are guarded by this
+    private final ProbeTable<Probe> m_outstanding = new ProbeTable<>(4096);
+    private final TimingWheel<Probe> m_timeouts = new TimingWheel<>(TICK_NANOS, TICKS_PER_WHEEL, System.nanoTime());
+    private long m_nextSequenceNumber = 0;
+
+    private Thread m_timer;
+
+    public JnaPingSweeper(final int identifier) throws Exception {
+        m_identifier = identifier;
+
+        Throwable error = null;
+        try {
+            m_v4 = new V4Pinger(identifier);
+            m_v4.addPingReplyListener(this);
+        } catch (final Throwable t) {
+            LOG.debug("Unable to initialize IPv4 sweeper.", t);
+            error = t;
+            m_v4 = null;
+        }
+
+        try {
+            m_v6 = new V6Pinger(identifier);
+            m_v6.addPingReplyListener(this);
+        } catch (final Throwable t) {
+            LOG.debug("Unable to initialize IPv6 sweeper.", t);
+            if (error == null) error = t;
+            m_v6 = null;
+        }
+
+        if (m_v4 == null && m_v6 == null) {
+            final IcmpMessengerIOException exception = new IcmpMessengerIOException("IPv4 and IPv6 are not available.", error);
+            LOG.warn("Unable to initialize JNA ICMP sweeper", exception);
+            throw exception;
+        }
+    }
+
+    public void start() {
+        if (m_v4 != null) m_v4.start();
+        if (m_v6 != null) m_v6.start();
+
+        m_timer = new Thread(this::expireTimeouts, "JNA-ICMP-Sweeper-" + m_identifier + "-Timer");
+        m_timer.setDaemon(true);
+        m_timer.start();
+    }
+
+    public void setTrafficClass(final int tc) throws IOException {
+        if (m_v4 != null) m_v4.getPingSocket().setTrafficClass(tc);
+        if (m_v6 != null) m_v6.getPingSocket().setTrafficClass(tc);
+    }
+
+    public void setAllowFragmentation(final boolean allow) throws IOException {
+        if (m_v4 != null) m_v4.getPingSocket().allowFragmentation(allow);
+        if (m_v6 != null) m_v6.getPingSocket().allowFragmentation(allow);
+    }
+
+    /**
+     * Pings every address, sending at most <code>packetsPerSecond</code>
+     * packets per second, and returns once each of them has been reported
+     * to the callback.
+     *
+     * @see org.opennms.netmgt.icmp.Pinger#sweep(Iterable, int, double, PingResponseCallback)
+     */
+    public void sweep(final Iterable<SweepAddress> addresses, final int packetSize, final double packetsPerSecond, final PingResponseCallback cb) throws InterruptedException {
+        final Sweep sweep = new Sweep(packetSize, packetsPerSecond, new LogPrefixPreservingPingResponseCallback(cb));
+        final Iterator<SweepAddress> it = addresses.iterator();
+        Probe probe;
+        while ((probe = nextProbe(sweep, it)) != null) {
+            pace(sweep.m_pacer);
+            send(probe);
+        }
+    }
+
+    /**
+     * @return the next request to send for the sweep, retries first, or null
+     *         once every address has been reported
+     */
+    private synchronized Probe nextProbe(final Sweep sweep, final Iterator<SweepAddress> addresses) throws InterruptedException {
+        while (true) {
+            final Probe retry = sweep.m_retries.poll();
+            if (retry != null) {
+                return retry;
+            }
+            if (addresses.hasNext()) {
+                sweep.m_pending++;
+                return new Probe(sweep, addresses.next());
+            }
+            if (sweep.m_pending == 0) {
+                return null;
+            }
+            // wait for a retry to become due or the last replies to come in
+            wait(TimeUnit.NANOSECONDS.toMillis(TICK_NANOS));
+        }
+    }
+
+    private static void pace(final TokenBucket pacer) throws InterruptedException {
+        long delay;
+        while ((delay = pacer.tryAcquire(System.nanoTime())) > 0) {
+            LockSupport.parkNanos(delay);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private void send(final Probe probe) {
+        final long key;
+        synchronized (this) {
+            probe.m_sequenceNumber = m_nextSequenceNumber++;
+            key = ProbeTable.key(m_identifier, probe.m_sequenceNumber);
+            m_outstanding.put(key, probe);
+            probe.m_sentTimeNanos = System.nanoTime();
+            m_timeouts.schedule(probe, probe.m_sentTimeNanos + probe.m_timeoutNanos);
+            if (m_timeouts.size() == 1) {
+                // wake up the idle timer
+                notifyAll();
+            }
+        }
+
+        final InetAddress address = probe.m_address;
+        try {
+            if (address instanceof Inet4Address && m_v4 != null) {
+                m_v4.ping((Inet4Address)address, m_identifier, probe.getSequenceNumber(), probe.getThreadId(), 1, 0, probe.m_sweep.m_packetSize);
+            } else if (address instanceof Inet6Address && m_v6 != null) {
+                m_v6.ping((Inet6Address)address, m_identifier, probe.getSequenceNumber(), probe.getThreadId(), 1, 0, probe.m_sweep.m_packetSize);
+            } else {
+                throw new IllegalStateException("Cannot ping " + InetAddressUtils.str(address) + ": No pinger found that can handle this address");
+            }
+        } catch (final Throwable t) {
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            final boolean outstanding;
+            synchronized (this) {
+                outstanding = m_outstanding.remove(key) != null;
+            }
+            if (outstanding) {
+                try {
+                    probe.m_sweep.m_callback.handleError(address, probe, t);
+                } finally {
+                    complete(probe);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onPingReply(final InetAddress address, final EchoPacket packet) {
+        final long sequenceNumber = packet.getThreadId();
+        if ((sequenceNumber & 0xFFFF) != packet.getSequenceNumber()) {
+            // sent by someone else
+            return;
+        }
+
+        final Probe probe;
+        synchronized (this) {
+            final long key = ProbeTable.key(packet.getIdentifier(), sequenceNumber);
+            probe = m_outstanding.get(key);
+            if (probe == null || !probe.m_address.equals(address)) {
+                // a late or unexpected reply
+                return;
+            }
+            m_outstanding.remove(key);
+        }
+
+        try {
+            probe.m_sweep.m_callback.handleResponse(address, packet);
+        } catch (final Throwable t) {
+            // don't let a failing callback stop the socket reader
+            LOG.warn("Failed to handle the ping response from {}", InetAddressUtils.str(address), t);
+        } finally {
+            complete(probe);
+        }
+    }
+
+    private synchronized void complete(final Probe probe) {
+        if (--probe.m_sweep.m_pending == 0) {
+            notifyAll();
+        }
+    }
+
+    private void expireTimeouts() {
+        Logging.putPrefix("icmp");
+        final List<Probe> timedOut = new ArrayList<>();
+        try {
+            while (true) {
+                final long delay;
+                synchronized (this) {
+                    while (m_timeouts.size() == 0) {
+                        wait();
+                    }
+                    m_timeouts.advance(System.nanoTime(), probe -> {
+                        if (m_outstanding.remove(ProbeTable.key(m_identifier, probe.m_sequenceNumber)) == null) {
+                            // already answered
+                            return;
+                        }
+                        if (probe.m_retriesLeft > 0) {
+                            probe.m_retriesLeft--;
+                            probe.m_sweep.m_retries.add(probe);
+                            notifyAll();
+                        } else {
+                            timedOut.add(probe);
+                        }
+                    });
+                    delay = m_timeouts.nextTickNanos() - System.nanoTime();
+                }
+
+                for (final Probe probe : timedOut) {
+                    try {
+                        probe.m_sweep.m_callback.handleTimeout(probe.m_address, probe);
+                    } catch (final Throwable t) {
+                        LOG.warn("Failed to handle the ping timeout for {}", InetAddressUtils.str(probe.m_address), t);
+                    } finally {
+                        complete(probe);
+                    }
+                }
+                timedOut.clear();
+
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.debug("Sweeper timer interrupted, exiting.");
+        }
+    }
+
+    private static final class Sweep {
+        private final int m_packetSize;
+        private final TokenBucket m_pacer;
+        private final PingResponseCallback m_callback;
+
+        // guarded by the sweeper
+        private final Deque<Probe> m_retries = new ArrayDeque<>();
+        private long m_pending = 0;
+
+        private Sweep(final int packetSize, final double packetsPerSecond, final PingResponseCallback callback) {
+            m_packetSize = packetSize;
+            // allow a tick's worth of packets to go out back to back to make up for coarse sleeps
+            final int burst = (int)Math.ceil(packetsPerSecond * TICK_NANOS / TimeUnit.SECONDS.toNanos(1));
+            m_pacer = new TokenBucket(packetsPerSecond, burst, System.nanoTime());
+            m_callback = callback;
+        }
+    }
+
+    /**
+     * A single address being pinged by a sweep, which is also what is reported
+     * to the callback as the request.
+     */
+    private final class Probe implements EchoPacket {
+        private final Sweep m_sweep;
+        private final InetAddress m_address;
+        private final long m_timeoutNanos;
+        private int m_retriesLeft;
+        /** changes with each attempt, guarded by the sweeper */
+        private long m_sequenceNumber;
+        /** time at which the last attempt was sent, guarded by the sweeper */
+        private long m_sentTimeNanos;
+
+        private Probe(final Sweep sweep, final SweepAddress address) {
+            m_sweep = sweep;
+            m_address = address.getAddress();
+            m_timeoutNanos = TimeUnit.MILLISECONDS.toNanos(address.getTimeout());
+            m_retriesLeft = address.getRetries();
+        }
+
+        @Override
+        public boolean isEchoReply() {
+            return false;
+        }
+
+        @Override
+        public int getIdentifier() {
+            return m_identifier;
+        }
+
+        @Override
+        public int getSequenceNumber() {
+            return (int)(m_sequenceNumber & 0xFFFF);
+        }
+
+        @Override
+        public long getThreadId() {
+            return m_sequenceNumber;
+        }
+
+        @Override
+        public long getReceivedTimeNanos() {
+            throw new UnsupportedOperationException("EchoPacket.getReceivedTimeNanos is not yet implemented");
+        }
+
+        @Override
+        public long getSentTimeNanos() {
+            synchronized (JnaPingSweeper.this) {
+                return m_sentTimeNanos;
+            }
+        }
+
+        /**
+         * @return the time elapsed since the last attempt was sent
+         */
+        @Override
+        public double elapsedTime(final TimeUnit timeUnit) {
+            final double nanosPerUnit = TimeUnit.NANOSECONDS.convert(1, timeUnit);
+            return (System.nanoTime() - getSentTimeNanos()) / nanosPerUnit;
+        }
+
+        @Override
+        public String toString() {
+            return "Probe[address=" + InetAddressUtils.str(m_address) + ", sequence=" + m_sequenceNumber + ", retriesLeft=" + m_retriesLeft + "]";
+        }
+    }
+}
@@ -43,6 +43,7 @@ import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.icmp.SinglePingResponseCallback;
+import org.opennms.netmgt.icmp.SweepAddress;
 import org.opennms.protocols.rt.IDBasedRequestLocator;
 import org.opennms.protocols.rt.RequestTracker;
 import org.slf4j.Logger;
@@ -61,6 +62,9 @@ public class JnaPinger implements Pinger {
 
     private RequestTracker<JnaPingRequest, JnaPingReply> m_pingTracker;
     private JnaIcmpMessenger m_messenger;
+    private JnaPingSweeper m_sweeper;
+    private Boolean m_allowFragmentation;
+    private Integer m_trafficClass;
 
     /**
      * Initializes this singleton
@@ -85,6 +89,24 @@ public class JnaPinger implements Pinger {
         }
     }
 
+    /**
+     * Creates the sweeper on first use, with an identifier and sockets of its
+     * own so that sweeps do not compete with the regular request tracker.
+     */
+    private synchronized JnaPingSweeper getSweeper() throws Exception {
+        if (m_sweeper != null) return m_sweeper;
+        int sweeperId;
+        do {
+            sweeperId = new SecureRandom().nextInt(Short.MAX_VALUE);
+        } while (sweeperId == m_pingerId);
+        final JnaPingSweeper sweeper = new JnaPingSweeper(sweeperId);
+        if (m_allowFragmentation != null) sweeper.setAllowFragmentation(m_allowFragmentation);
+        if (m_trafficClass != null) sweeper.setTrafficClass(m_trafficClass);
+        sweeper.start();
+        m_sweeper = sweeper;
+        return m_sweeper;
+    }
+
     @Override
     public void initialize4() throws Exception {
         initialize();
@@ -257,16 +279,33 @@ public class JnaPinger implements Pinger {
         return parallelPing(host, count, timeout, pingInterval, DEFAULT_PACKET_SIZE);
     }
 
+    /**
+     * Sweeps the addresses using a {@link JnaPingSweeper}, which tracks large
+     * numbers of outstanding requests far more cheaply than the request tracker.
+     */
+    @Override
+    public void sweep(final Iterable<SweepAddress> addresses, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        getSweeper().sweep(addresses, packetsize, packetsPerSecond, cb);
+    }
+
     @Override
     public void setAllowFragmentation(boolean allow) throws Exception {
         initialize();
         m_messenger.setAllowFragmentation(allow);
+        synchronized (this) {
+            m_allowFragmentation = allow;
+            if (m_sweeper != null) m_sweeper.setAllowFragmentation(allow);
+        }
     }
 
     @Override
     public void setTrafficClass(int tc) throws Exception {
         initialize();
         m_messenger.setTrafficClass(tc);
+        synchronized (this) {
+            m_trafficClass = tc;
+            if (m_sweeper != null) m_sweeper.setTrafficClass(tc);
+        }
     }
 
 }
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+/**
+ * Open-addressing hash table of the echo requests a sweep is waiting on,
+ * keyed by a primitive <code>long</code> that packs the ICMP identifier and
+ * sequence number. Unlike a {@link java.util.HashMap} it neither boxes the
+ * keys nor allocates an entry per request, so hundreds of thousands of
+ * outstanding requests can be matched against replies cheaply.
+ *
+ * Collisions are resolved by linear probing, and removals shift the following
+ * entries back so that no tombstones accumulate. This class is not thread-safe.
+ */
+final class ProbeTable<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] m_keys;
+    private Object[] m_values;
+    private int m_mask;
+    private int m_size;
+
+    ProbeTable(final int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Packs an ICMP identifier and a sequence number into a table key. Only
+     * the low 48 bits of the sequence number are used.
+     */
+    static long key(final int identifier, final long sequenceNumber) {
+        return ((long)(identifier & 0xFFFF) << 48) | (sequenceNumber & 0xFFFFFFFFFFFFL);
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final long key) {
+        for (int i = index(key); m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                return (V)m_values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value previously associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(final long key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int i = index(key);
+        for (; m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                final V previous = (V)m_values[i];
+                m_values[i] = value;
+                return previous;
+            }
+        }
+        m_keys[i] = key;
+        m_values[i] = value;
+        // keep the load factor at or below one half
+        if (++m_size > (m_mask + 1) >>> 1) {
+            rehash((m_mask + 1) << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    V remove(final long key) {
+        int i = index(key);
+        for (; m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                final V removed = (V)m_values[i];
+                shiftBack(i);
+                m_size--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fills the slot at <code>hole</code> with the next entry of its probe
+     * sequence that would no longer be reachable otherwise, and repeats
+     * for the slot that entry leaves behind.
+     */
+    private void shiftBack(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & m_mask;
+            if (m_values[i] == null) {
+                break;
+            }
+            final int home = index(m_keys[i]);
+            // move the entry unless its home slot lies cyclically within (hole, i]
+            if (((i - home) & m_mask) >= ((i - hole) & m_mask)) {
+                m_keys[hole] = m_keys[i];
+                m_values[hole] = m_values[i];
+                hole = i;
+            }
+        }
+        m_keys[hole] = 0;
+        m_values[hole] = null;
+    }
+
+    private int index(final long key) {
+        // spread the bits of the key, sequence numbers are mostly consecutive
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & m_mask;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] keys = m_keys;
+        final Object[] values = m_values;
+        allocate(capacity);
+        for (int j = 0; j < values.length; j++) {
+            if (values[j] != null) {
+                int i = index(keys[j]);
+                while (m_values[i] != null) {
+                    i = (i + 1) & m_mask;
+                }
+                m_keys[i] = keys[j];
+                m_values[i] = values[j];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+    }
+
+    private static int tableSizeFor(final int expectedSize) {
+        final int wanted = Math.max(MIN_CAPACITY, expectedSize * 2);
+        return Integer.highestOneBit(wanted - 1) << 1;
+    }
+}
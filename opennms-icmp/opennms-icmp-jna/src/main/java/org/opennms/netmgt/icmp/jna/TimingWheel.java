@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel used to expire the requests of a ping sweep. Scheduling
+ * an item and expiring it are both constant time operations no matter how many
+ * items are pending, at the cost of a resolution of one tick.
+ *
+ * Items are never cancelled: the owner is expected to ignore expirations of
+ * items that have been answered in the meantime. Time is supplied by the
+ * caller, and this class is not thread-safe.
+ */
+final class TimingWheel<T> {
+
+    private static final class Timeout<T> {
+        private final T m_item;
+        private final long m_deadlineTick;
+        private Timeout<T> m_next;
+
+        private Timeout(final T item, final long deadlineTick, final Timeout<T> next) {
+            m_item = item;
+            m_deadlineTick = deadlineTick;
+            m_next = next;
+        }
+    }
+
+    private final long m_tickNanos;
+    private final long m_startNanos;
+    private final Timeout<T>[] m_buckets;
+    private final int m_mask;
+
+    /** the next tick to be processed by {@link #advance(long, Consumer)} */
+    private long m_tick = 0;
+    private int m_size = 0;
+
+    /**
+     * @param tickNanos the resolution of the wheel
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     * @param nowNanos the current value of {@link System#nanoTime()}
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(final long tickNanos, final int ticksPerWheel, final long nowNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos must be positive: " + tickNanos);
+        }
+        m_tickNanos = tickNanos;
+        m_startNanos = nowNanos;
+        final int buckets = Integer.highestOneBit(Math.max(2, ticksPerWheel) - 1) << 1;
+        m_buckets = new Timeout[buckets];
+        m_mask = buckets - 1;
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * Schedules the item to expire on the first tick at or after the deadline.
+     */
+    void schedule(final T item, final long deadlineNanos) {
+        final long elapsed = deadlineNanos - m_startNanos;
+        // round up so that items never expire early
+        final long deadlineTick = Math.max(m_tick, (elapsed + m_tickNanos - 1) / m_tickNanos);
+        final int bucket = (int)(deadlineTick & m_mask);
+        m_buckets[bucket] = new Timeout<>(item, deadlineTick, m_buckets[bucket]);
+        m_size++;
+    }
+
+    /**
+     * Processes every tick that has elapsed by <code>nowNanos</code>, passing the
+     * items whose deadline has been reached to <code>expired</code>.
+     *
+     * @return the number of expired items
+     */
+    int advance(final long nowNanos, final Consumer<T> expired) {
+        final long lastTick = (nowNanos - m_startNanos) / m_tickNanos;
+        int count = 0;
+        for (; m_tick <= lastTick; m_tick++) {
+            final int bucket = (int)(m_tick & m_mask);
+            // detach the bucket so that the consumer may safely schedule again
+            Timeout<T> timeout = m_buckets[bucket];
+            m_buckets[bucket] = null;
+            while (timeout != null) {
+                final Timeout<T> next = timeout.m_next;
+                if (timeout.m_deadlineTick <= m_tick) {
+                    m_size--;
+                    count++;
+                    expired.accept(timeout.m_item);
+                } else {
+                    // still has full rotations of the wheel to go
+                    timeout.m_next = m_buckets[bucket];
+                    m_buckets[bucket] = timeout;
+                }
+                timeout = next;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the value of {@link System#nanoTime()} at which the next tick is due
+     */
+    long nextTickNanos() {
+        return m_startNanos + m_tick * m_tickNanos;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the packets sent by a ping sweep. Tokens accrue at a fixed rate up to
+ * a small burst, and each packet consumes one. Time is supplied by the caller
+ * so that the pacer can be driven deterministically.
+ *
+ * This class is not thread-safe.
+ */
+final class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double m_tokensPerNano;
+    private final double m_capacity;
+
+    private double m_tokens;
+    private long m_lastRefillNanos;
+
+    /**
+     * @param packetsPerSecond the sustained rate, must be positive
+     * @param burst the maximum number of packets that may be sent back to back
+     * @param nowNanos the current value of {@link System#nanoTime()}
+     */
+    TokenBucket(final double packetsPerSecond, final int burst, final long nowNanos) {
+        if (packetsPerSecond <= 0) {
+            throw new IllegalArgumentException("packetsPerSecond must be positive: " + packetsPerSecond);
+        }
+        m_tokensPerNano = packetsPerSecond / NANOS_PER_SECOND;
+        m_capacity = Math.max(1, burst);
+        // Start with a single token so a new sweep does not open with a full burst
+        m_tokens = 1;
+        m_lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param nowNanos the current value of {@link System#nanoTime()}
+     * @return 0 if a token was taken, otherwise the number of nanoseconds
+     *         until the next one becomes available
+     */
+    long tryAcquire(final long nowNanos) {
+        final long elapsed = nowNanos - m_lastRefillNanos;
+        if (elapsed > 0) {
+            m_tokens = Math.min(m_capacity, m_tokens + elapsed * m_tokensPerNano);
+            m_lastRefillNanos = nowNanos;
+        }
+        if (m_tokens >= 1) {
+            m_tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long)Math.ceil((1 - m_tokens) / m_tokensPerNano));
+    }
+}
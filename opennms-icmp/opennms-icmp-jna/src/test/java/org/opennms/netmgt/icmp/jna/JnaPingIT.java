@@ -35,8 +35,13 @@ import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -244,6 +249,37 @@ public class JnaPingIT {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
 
+    @Test
+    @IfProfileValue(name="runPingTests", value="true")
+    public void testSweepIPv4() throws Exception {
+        final Set<InetAddress> responded = ConcurrentHashMap.newKeySet();
+        final Set<InetAddress> timedOut = ConcurrentHashMap.newKeySet();
+        s_jnaPinger.sweep(Arrays.asList(m_goodHost, m_badHost), PingConstants.DEFAULT_TIMEOUT, 1, PingConstants.DEFAULT_PACKET_SIZE, 100, new PingResponseCallback() {
+            @Override
+            public void handleResponse(InetAddress address, EchoPacket response) {
+                assertTrue("Negative RTT value returned from ping", response.elapsedTime(TimeUnit.MICROSECONDS) > 0);
+                responded.add(address);
+            }
+
+            @Override
+            public void handleTimeout(InetAddress address, EchoPacket request) {
+                timedOut.add(address);
+            }
+
+            @Override
+            public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+                if (!(t instanceof NoRouteToHostException)) {
+                    throw new AssertionError("Unexpected Error sending ping to " + address, t);
+                }
+                timedOut.add(address);
+            }
+        });
+
+        // sweep() only returns once every address has been reported
+        assertEquals(Collections.singleton(m_goodHost), responded);
+        assertEquals(Collections.singleton(m_badHost), timedOut);
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the data structures behind {@link JnaPingSweeper}, which do not need
+ * an ICMP socket.
+ */
+public class JnaPingSweeperTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testTokenBucketPacesPackets() {
+        final TokenBucket bucket = new TokenBucket(1000, 10, 0);
+
+        // a new bucket only holds a single token
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(MILLIS, bucket.tryAcquire(0));
+
+        // tokens accrue at the configured rate
+        assertEquals(0, bucket.tryAcquire(MILLIS));
+        assertTrue(bucket.tryAcquire(MILLIS) > 0);
+
+        // up to the burst size after an idle period
+        int sent = 0;
+        while (bucket.tryAcquire(1000 * MILLIS) == 0) {
+            sent++;
+        }
+        assertEquals(10, sent);
+    }
+
+    @Test
+    public void testProbeTable() {
+        final ProbeTable<String> table = new ProbeTable<>(4);
+        final int count = 10000;
+        for (int i = 0; i < count; i++) {
+            assertNull(table.put(ProbeTable.key(42, i), "probe" + i));
+        }
+        assertEquals(count, table.size());
+
+        // the identifier is part of the key
+        assertNull(table.get(ProbeTable.key(43, 1)));
+
+        // remove every other entry, the rest must remain reachable
+        for (int i = 0; i < count; i += 2) {
+            assertEquals("probe" + i, table.remove(ProbeTable.key(42, i)));
+        }
+        assertEquals(count / 2, table.size());
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                assertNull(table.get(ProbeTable.key(42, i)));
+            } else {
+                assertEquals("probe" + i, table.get(ProbeTable.key(42, i)));
+            }
+        }
+
+        assertEquals("probe1", table.put(ProbeTable.key(42, 1), "replaced"));
+        assertEquals("replaced", table.get(ProbeTable.key(42, 1)));
+        assertNull(table.remove(ProbeTable.key(42, 0)));
+    }
+
+    @Test
+    public void testProbeTableKeepsSequenceNumbersApart() {
+        final ProbeTable<String> table = new ProbeTable<>(16);
+        // same 16-bit ICMP sequence number, different wide sequence numbers
+        table.put(ProbeTable.key(1, 0x10005L), "a");
+        table.put(ProbeTable.key(1, 0x20005L), "b");
+        assertEquals("a", table.get(ProbeTable.key(1, 0x10005L)));
+        assertEquals("b", table.get(ProbeTable.key(1, 0x20005L)));
+    }
+
+    @Test
+    public void testTimingWheelExpiresOnDeadline() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10 * MILLIS, 8, 0);
+        final List<String> expired = new ArrayList<>();
+
+        wheel.schedule("soon", 25 * MILLIS);
+        // further out than a full rotation of the wheel
+        wheel.schedule("later", 1000 * MILLIS);
+        assertEquals(2, wheel.size());
+
+        // never early
+        assertEquals(0, wheel.advance(29 * MILLIS, expired::add));
+        assertEquals(30 * MILLIS, wheel.nextTickNanos());
+
+        assertEquals(1, wheel.advance(30 * MILLIS, expired::add));
+        assertEquals("soon", expired.get(0));
+
+        // passes by its bucket several times before expiring
+        assertEquals(0, wheel.advance(990 * MILLIS, expired::add));
+        assertEquals(1, wheel.advance(1000 * MILLIS, expired::add));
+        assertEquals("later", expired.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testTimingWheelConsumerMayReschedule() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10 * MILLIS, 8, 0);
+        final List<String> expired = new ArrayList<>();
+
+        wheel.schedule("retry", 10 * MILLIS);
+        wheel.advance(10 * MILLIS, item -> {
+            expired.add(item);
+            if (expired.size() == 1) {
+                wheel.schedule(item, 20 * MILLIS);
+            }
+        });
+        assertEquals(1, wheel.size());
+
+        wheel.advance(20 * MILLIS, expired::add);
+        assertEquals(2, expired.size());
+        assertSame(expired.get(0), expired.get(1));
+    }
+}
@@ -29,25 +29,30 @@
 package org.opennms.netmgt.provision.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.opennms.core.tasks.BatchTask;
 import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.opennms.core.sysprops.SystemProperties;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.provision.persist.AbstractRequisitionVisitor;
 import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.RequisitionVisitor;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
 import org.opennms.netmgt.provision.service.lifecycle.LifeCycleInstance;
 import org.opennms.netmgt.provision.service.lifecycle.Phase;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.RequisitionFingerprints;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
@@ -62,13 +67,35 @@ import static org.opennms.netmgt.provision.service.ImportJob.MONITOR;
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
-    
+
+    /**
+     * When set, only the nodes whose content changed since the last import get import operations.
+     */
+    private static final String INCREMENTAL_IMPORT = "org.opennms.provisiond.incrementalImport";
+
     private final ProvisionService m_provisionService;
-    
+
+    private RequisitionFingerprintStore m_fingerprintStore;
+
     public CoreImportActivities(final ProvisionService provisionService) {
         m_provisionService = provisionService;
     }
 
+    public void setFingerprintStore(final RequisitionFingerprintStore fingerprintStore) {
+        m_fingerprintStore = fingerprintStore;
+    }
+
+    private boolean isIncrementalImport() {
+        return m_fingerprintStore != null && SystemProperties.getBoolean(INCREMENTAL_IMPORT, false);
+    }
+
+    /**
+     * Unchanged nodes can only be skipped when the import does not ask for existing nodes to be updated.
+     */
+    private static boolean canSkipUnchangedNodes(final String rescanExisting) {
+        return !(rescanExisting == null || Boolean.valueOf(rescanExisting) || "dbonly".equalsIgnoreCase(rescanExisting));
+    }
+
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
     public RequisitionImport loadSpecFile(final Resource resource, final ProvisionMonitor monitor) {
         Objects.requireNonNull(monitor);
@@ -106,7 +133,26 @@ public class CoreImportActivities {
         final ImportOperationsManager opsMgr = new ImportOperationsManager(foreignIdsToNodes, m_provisionService, rescanExisting);
         
         opsMgr.setForeignSource(foreignSource);
-        opsMgr.auditNodes(specFile, monitor.getName());
+        if (isIncrementalImport()) {
+            final RequisitionFingerprints fingerprints = new RequisitionFingerprints(m_fingerprintStore.load(foreignSource),
+                    confirmed -> m_fingerprintStore.save(foreignSource, confirmed));
+            // Changes to the detectors or policies change the fingerprints of all nodes
+            final String definition = RequisitionFingerprintStore.fingerprint(m_provisionService.getForeignSource(foreignSource));
+            final boolean skipUnchanged = canSkipUnchangedNodes(rescanExisting);
+            for (final RequisitionNode node : specFile.getNodes()) {
+                fingerprints.audit(node.getForeignId(), RequisitionFingerprintStore.fingerprint(definition, node),
+                        skipUnchanged && foreignIdsToNodes.containsKey(node.getForeignId()));
+            }
+            ri.setFingerprints(fingerprints);
+            info("{} of {} nodes in requisition {} did not change since the last import and will be skipped.", fingerprints.getUnchangedForeignIds().size(), specFile.getNodeCount(), foreignSource);
+            opsMgr.auditNodes(specFile, monitor.getName(), fingerprints.getUnchangedForeignIds());
+        } else {
+            if (m_fingerprintStore != null) {
+                // The nodes are about to change without their fingerprints being tracked
+                m_fingerprintStore.delete(foreignSource);
+            }
+            opsMgr.auditNodes(specFile, monitor.getName());
+        }
 
         monitor.finishAuditNodes();
         debug("Finished auditing nodes.");
@@ -124,7 +170,10 @@ public class CoreImportActivities {
         info("Scheduling nodes for phase {}", currentPhase);
         monitor.beginScheduling();
         final Collection<ImportOperation> operations = opsMgr.getOperations();
-        
+        if (ri.getFingerprints() != null) {
+            ri.getFingerprints().expect(operations.size());
+        }
+
         for(final ImportOperation op : operations) {
             final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
 
@@ -171,7 +220,17 @@ public class CoreImportActivities {
 
         info("Running persist phase of {}", operation);
         monitor.beginPersisting(operation);
-        operation.persist();
+        final RequisitionFingerprints fingerprints = ri.getFingerprints();
+        try {
+            operation.persist();
+            if (fingerprints != null) {
+                fingerprints.persisted(operation);
+            }
+        } finally {
+            if (fingerprints != null) {
+                fingerprints.finished();
+            }
+        }
         monitor.finishPersisting(operation);
         info("Finished Running persist phase of {}", operation);
     }
@@ -187,9 +246,15 @@ public class CoreImportActivities {
         info("Running relate phase");
         monitor.beginRelateNodes();
         final Requisition requisition = ri.getRequisition();
+        final Set<String> unchanged = ri.getFingerprints() == null ? Collections.emptySet() : ri.getFingerprints().getUnchangedForeignIds();
         RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
             @Override
             public void visitNode(final OnmsNodeRequisition nodeReq) {
+                // Unchanged nodes without a parent have nothing to relate; the ones with a parent are
+                // related again in case the parent node was re-created by this import
+                if (unchanged.contains(nodeReq.getForeignId()) && nodeReq.getParentForeignId() == null && nodeReq.getParentNodeLabel() == null) {
+                    return;
+                }
                 LOG.debug("Scheduling relate of node {}", nodeReq);
                 currentPhase.add(parentSetter(m_provisionService, nodeReq, requisition.getForeignSource()));
             }
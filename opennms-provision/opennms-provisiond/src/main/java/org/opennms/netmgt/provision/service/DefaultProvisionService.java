@@ -1151,6 +1151,12 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         return foreignSource.getDetectors();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public ForeignSource getForeignSource(final String foreignSourceName) {
+        return m_foreignSourceRepository.getForeignSource(foreignSourceName);
+    }
+
     /** {@inheritDoc} */
     @Override
     public List<NodePolicy> getNodePoliciesForForeignSource(final String foreignSourceName) {
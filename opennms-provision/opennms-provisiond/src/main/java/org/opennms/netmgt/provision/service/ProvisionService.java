@@ -46,6 +46,7 @@ import org.opennms.netmgt.provision.LocationAwareDnsLookupClient;
 import org.opennms.netmgt.provision.NodePolicy;
 import org.opennms.netmgt.provision.SnmpInterfacePolicy;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
 import org.opennms.netmgt.provision.persist.foreignsource.PluginConfig;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.snmp.SnmpProfileMapper;
@@ -240,6 +241,8 @@ public interface ProvisionService {
 
     Requisition loadRequisition(Resource resource);
 
+    ForeignSource getForeignSource(String foreignSourceName);
+
     List<PluginConfig> getDetectorsForForeignSource(String foreignSource);
 
     List<NodePolicy> getNodePoliciesForForeignSource(String foreignSourceName);
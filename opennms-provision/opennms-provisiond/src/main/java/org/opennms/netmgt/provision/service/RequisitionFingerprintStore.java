@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
+import org.opennms.netmgt.provision.persist.foreignsource.PluginConfig;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Keeps a content fingerprint for every node of a requisition as of the last
+ * import, one properties file per foreign source.</p>
+ *
+ * <p>A fingerprint is the SHA-256 digest of the node marshalled to XML. The node is
+ * written through a StAX writer straight into the digest, so that fingerprinting a
+ * large requisition does not buffer any of its XML. The detectors and policies of the
+ * foreign source definition are mixed into the fingerprint as well, so that changing them
+ * updates every node of the requisition.</p>
+ */
+public class RequisitionFingerprintStore {
+    private static final Logger LOG = LoggerFactory.getLogger(RequisitionFingerprintStore.class);
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private final Path m_directory;
+
+    public RequisitionFingerprintStore(final String directory) {
+        m_directory = Paths.get(directory);
+    }
+
+    /**
+     * Returns the fingerprints stored by the last import of the given foreign source,
+     * keyed by foreign ID, or an empty map if there are none.
+     */
+    public Map<String, String> load(final String foreignSource) {
+        final Path file = getFile(foreignSource);
+        if (!Files.isReadable(file)) {
+            return Collections.emptyMap();
+        }
+        final Properties properties = new Properties();
+        try (final InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (final IOException e) {
+            LOG.warn("Unable to read requisition fingerprints from {}. All nodes will be treated as changed.", file, e);
+            return Collections.emptyMap();
+        }
+        final Map<String, String> fingerprints = new HashMap<>(properties.size());
+        for (final String foreignId : properties.stringPropertyNames()) {
+            fingerprints.put(foreignId, properties.getProperty(foreignId));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Replaces the stored fingerprints of the given foreign source.
+     */
+    public void save(final String foreignSource, final Map<String, String> fingerprints) {
+        final Path file = getFile(foreignSource);
+        final Properties properties = new Properties();
+        properties.putAll(fingerprints);
+        try {
+            Files.createDirectories(m_directory);
+            // Write to a temporary file first so that a crash never leaves a truncated file behind
+            final Path tmp = Files.createTempFile(m_directory, file.getFileName().toString(), ".tmp");
+            try (final OutputStream os = Files.newOutputStream(tmp)) {
+                properties.store(os, "Requisition fingerprints for foreign source " + foreignSource);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("Saved {} requisition fingerprints to {}", fingerprints.size(), file);
+        } catch (final IOException e) {
+            LOG.warn("Unable to save requisition fingerprints to {}. The next import will treat all nodes as changed.", file, e);
+            delete(foreignSource);
+        }
+    }
+
+    /**
+     * Forget the fingerprints of the given foreign source so that its next import updates every node.
+     */
+    public void delete(final String foreignSource) {
+        try {
+            Files.deleteIfExists(getFile(foreignSource));
+        } catch (final IOException e) {
+            LOG.warn("Unable to delete requisition fingerprints for foreign source {}", foreignSource, e);
+        }
+    }
+
+    private Path getFile(final String foreignSource) {
+        try {
+            return m_directory.resolve(URLEncoder.encode(foreignSource, StandardCharsets.UTF_8.name()) + ".properties");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Calculates the fingerprint of a requisition node.
+     */
+    public static String fingerprint(final RequisitionNode node) {
+        final MessageDigest digest = newDigest();
+        update(digest, node, "node " + node.getForeignId());
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Calculates the fingerprint of a requisition node imported with the foreign source
+     * definition of the given fingerprint.
+     */
+    public static String fingerprint(final String definition, final RequisitionNode node) {
+        final MessageDigest digest = newDigest();
+        digest.update(definition.getBytes(StandardCharsets.UTF_8));
+        update(digest, node, "node " + node.getForeignId());
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Calculates the fingerprint of the detectors and policies of a foreign source definition.
+     */
+    public static String fingerprint(final ForeignSource foreignSource) {
+        final MessageDigest digest = newDigest();
+        if (foreignSource != null) {
+            digest.update("detectors".getBytes(StandardCharsets.UTF_8));
+            for (final PluginConfig detector : foreignSource.getDetectors()) {
+                update(digest, detector, "detector " + detector.getName());
+            }
+            digest.update("policies".getBytes(StandardCharsets.UTF_8));
+            for (final PluginConfig policy : foreignSource.getPolicies()) {
+                update(digest, policy, "policy " + policy.getName());
+            }
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final Object obj, final String description) {
+        try (final DigestOutputStream os = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            final XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(os, StandardCharsets.UTF_8.name());
+            JaxbUtils.getMarshallerFor(obj, null).marshal(obj, writer);
+            writer.flush();
+            writer.close();
+        } catch (final IOException | JAXBException | XMLStreamException e) {
+            throw new IllegalStateException("Unable to calculate fingerprint for " + description, e);
+        }
+    }
+}
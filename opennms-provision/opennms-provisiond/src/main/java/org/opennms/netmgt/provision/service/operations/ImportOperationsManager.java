@@ -38,12 +38,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
 import org.opennms.netmgt.provision.service.ProvisionService;
 import org.opennms.netmgt.provision.service.RequisitionAccountant;
 import org.slf4j.Logger;
@@ -313,6 +315,24 @@ public class ImportOperationsManager {
         requisition.visit(new RequisitionAccountant(this, monitorKey));
     }
 
+    /**
+     * <p>Audit the nodes of the requisition, leaving the given nodes untouched:
+     * they get no import operation and are not deleted either.</p>
+     *
+     * @param requisition a {@link org.opennms.netmgt.provision.persist.requisition.Requisition} object.
+     * @param unchangedForeignIds foreign IDs of the nodes that did not change since the last import
+     */
+    public void auditNodes(Requisition requisition, String monitorKey, Set<String> unchangedForeignIds) {
+        final RequisitionAccountant accountant = new RequisitionAccountant(this, monitorKey);
+        for (final RequisitionNode node : requisition.getNodes()) {
+            if (unchangedForeignIds.contains(node.getForeignId())) {
+                processForeignId(node.getForeignId());
+            } else {
+                requisition.getNodeRequistion(node.getForeignId()).visit(accountant);
+            }
+        }
+    }
+
     @SuppressWarnings("unused")
     private Runnable persister(final ImportOperation oper) {
         Runnable r = new Runnable() {
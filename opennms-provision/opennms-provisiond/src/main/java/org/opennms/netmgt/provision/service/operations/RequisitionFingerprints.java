@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>Tracks the node fingerprints of a single incremental import.</p>
+ *
+ * <p>During the audit each node of the requisition is compared with the fingerprint
+ * recorded by the previous import. Nodes that exist in the database and did not change
+ * are skipped entirely; the others get their usual insert or update operation. A new
+ * fingerprint only replaces the previous one once the node has been persisted, so a
+ * node that fails to import is treated as changed again on the next run.</p>
+ *
+ * <p>When every scheduled operation has been persisted, the resulting fingerprints are
+ * handed to the callback given at construction time to be stored.</p>
+ */
+public class RequisitionFingerprints {
+    private final Map<String, String> m_previous;
+    private final Set<String> m_unchanged = new HashSet<>();
+    private final Map<String, String> m_pending = new ConcurrentHashMap<>();
+    private final Map<String, String> m_confirmed = new ConcurrentHashMap<>();
+    private final AtomicInteger m_outstanding = new AtomicInteger();
+    private final AtomicBoolean m_completed = new AtomicBoolean(false);
+    private final Consumer<Map<String, String>> m_onComplete;
+
+    public RequisitionFingerprints(final Map<String, String> previous, final Consumer<Map<String, String>> onComplete) {
+        m_previous = previous;
+        m_onComplete = onComplete;
+    }
+
+    /**
+     * Compare a node of the requisition with the previous import.
+     *
+     * @param foreignId foreign ID of the node
+     * @param fingerprint current fingerprint of the node
+     * @param skippable whether the node is present in the database and may be skipped if it did not change
+     * @return true if the node can be skipped
+     */
+    public boolean audit(final String foreignId, final String fingerprint, final boolean skippable) {
+        if (skippable && fingerprint.equals(m_previous.get(foreignId))) {
+            m_unchanged.add(foreignId);
+            m_confirmed.put(foreignId, fingerprint);
+            return true;
+        }
+        m_pending.put(foreignId, fingerprint);
+        return false;
+    }
+
+    public Set<String> getUnchangedForeignIds() {
+        return Collections.unmodifiableSet(m_unchanged);
+    }
+
+    /**
+     * Must be called with the number of operations before any of them is scheduled.
+     */
+    public void expect(final int operations) {
+        if (m_outstanding.addAndGet(operations) == 0) {
+            complete();
+        }
+    }
+
+    /**
+     * Record that the given operation was persisted successfully.
+     */
+    public void persisted(final ImportOperation operation) {
+        if (operation instanceof SaveOrUpdateOperation) {
+            final String foreignId = ((SaveOrUpdateOperation)operation).getNode().getForeignId();
+            final String fingerprint = m_pending.remove(foreignId);
+            if (fingerprint != null) {
+                m_confirmed.put(foreignId, fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Record that the given operation is done, successfully or not.
+     */
+    public void finished() {
+        if (m_outstanding.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        if (m_completed.compareAndSet(false, true)) {
+            m_onComplete.accept(m_confirmed);
+        }
+    }
+}
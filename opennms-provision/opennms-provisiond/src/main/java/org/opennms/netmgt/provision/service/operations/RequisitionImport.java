@@ -38,6 +38,7 @@ public class RequisitionImport {
     private static final Logger LOG = LoggerFactory.getLogger(RequisitionImport.class);
     private Requisition m_requisition;
     private Throwable m_throwable;
+    private RequisitionFingerprints m_fingerprints;
 
     public Requisition getRequisition() {
         return m_requisition;
@@ -56,6 +57,17 @@ public class RequisitionImport {
         }
     }
 
+    /**
+     * @return the fingerprints of an incremental import, or null if all nodes are imported
+     */
+    public RequisitionFingerprints getFingerprints() {
+        return m_fingerprints;
+    }
+
+    public void setFingerprints(final RequisitionFingerprints fingerprints) {
+        m_fingerprints = fingerprints;
+    }
+
     public Throwable getError() {
         return m_throwable;
     }
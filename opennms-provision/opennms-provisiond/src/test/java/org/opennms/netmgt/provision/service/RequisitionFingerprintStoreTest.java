@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
+import org.opennms.netmgt.provision.persist.foreignsource.PluginConfig;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionCategory;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.service.operations.RequisitionFingerprints;
+import org.opennms.netmgt.provision.service.operations.UpdateOperation;
+
+public class RequisitionFingerprintStoreTest {
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    @Test
+    public void testFingerprint() {
+        final String fingerprint = RequisitionFingerprintStore.fingerprint(createNode("n1", "node1"));
+        assertEquals(fingerprint, RequisitionFingerprintStore.fingerprint(createNode("n1", "node1")));
+        assertNotEquals(fingerprint, RequisitionFingerprintStore.fingerprint(createNode("n1", "node2")));
+
+        final RequisitionNode node = createNode("n1", "node1");
+        node.putCategory(new RequisitionCategory("Routers"));
+        assertNotEquals(fingerprint, RequisitionFingerprintStore.fingerprint(node));
+    }
+
+    @Test
+    public void testDefinitionFingerprint() {
+        final ForeignSource foreignSource = new ForeignSource("fs");
+        foreignSource.addDetector(new PluginConfig("ICMP", "org.opennms.netmgt.provision.detector.icmp.IcmpDetector"));
+        final String definition = RequisitionFingerprintStore.fingerprint(foreignSource);
+        assertEquals(definition, RequisitionFingerprintStore.fingerprint(foreignSource));
+
+        foreignSource.addPolicy(new PluginConfig("No Discards", "org.opennms.netmgt.provision.persist.policies.MatchingSnmpInterfacePolicy"));
+        final String changedDefinition = RequisitionFingerprintStore.fingerprint(foreignSource);
+        assertNotEquals(definition, changedDefinition);
+
+        // Changing the definition changes the fingerprint of every node
+        final RequisitionNode node = createNode("n1", "node1");
+        assertEquals(RequisitionFingerprintStore.fingerprint(definition, node), RequisitionFingerprintStore.fingerprint(definition, createNode("n1", "node1")));
+        assertNotEquals(RequisitionFingerprintStore.fingerprint(definition, node), RequisitionFingerprintStore.fingerprint(changedDefinition, node));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final RequisitionFingerprintStore store = new RequisitionFingerprintStore(m_folder.getRoot().getAbsolutePath() + "/fingerprints");
+        assertTrue(store.load("Some Source").isEmpty());
+
+        final Map<String, String> fingerprints = new HashMap<>();
+        fingerprints.put("n1", "abc");
+        fingerprints.put("n:2 = 3", "def");
+        store.save("Some Source", fingerprints);
+        assertEquals(fingerprints, store.load("Some Source"));
+        assertTrue(store.load("Other").isEmpty());
+
+        store.delete("Some Source");
+        assertTrue(store.load("Some Source").isEmpty());
+    }
+
+    @Test
+    public void testOnlyPersistedNodesAreRecorded() {
+        final Map<String, String> previous = new HashMap<>();
+        previous.put("unchanged", "a");
+        previous.put("changed", "b");
+        previous.put("deleted", "c");
+
+        final AtomicReference<Map<String, String>> saved = new AtomicReference<>();
+        final RequisitionFingerprints fingerprints = new RequisitionFingerprints(previous, saved::set);
+
+        assertTrue(fingerprints.audit("unchanged", "a", true));
+        assertFalse(fingerprints.audit("changed", "b2", true));
+        assertFalse(fingerprints.audit("failed", "d", true));
+        // Nodes that are no longer in the database are imported again even if they did not change
+        assertFalse(fingerprints.audit("missing", "e", false));
+        assertEquals(Collections.singleton("unchanged"), fingerprints.getUnchangedForeignIds());
+
+        fingerprints.expect(3);
+        final UpdateOperation changed = new UpdateOperation(1, "fs", "changed", "changed", null, null, null, null, "true", null);
+        fingerprints.persisted(changed);
+        fingerprints.finished();
+        final UpdateOperation missing = new UpdateOperation(2, "fs", "missing", "missing", null, null, null, null, "true", null);
+        fingerprints.persisted(missing);
+        fingerprints.finished();
+        assertNull(saved.get());
+
+        // "failed" never gets persisted
+        fingerprints.finished();
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("unchanged", "a");
+        expected.put("changed", "b2");
+        expected.put("missing", "e");
+        assertEquals(expected, saved.get());
+    }
+
+    @Test
+    public void testNothingToImport() {
+        final AtomicReference<Map<String, String>> saved = new AtomicReference<>();
+        final RequisitionFingerprints fingerprints = new RequisitionFingerprints(Collections.singletonMap("n1", "a"), saved::set);
+        assertTrue(fingerprints.audit("n1", "a", true));
+        fingerprints.expect(0);
+        assertEquals(Collections.singletonMap("n1", "a"), saved.get());
+    }
+
+    private static RequisitionNode createNode(final String foreignId, final String label) {
+        final RequisitionNode node = new RequisitionNode();
+        node.setForeignId(foreignId);
+        node.setNodeLabel(label);
+        node.putCategory(new RequisitionCategory("Servers"));
+        return node;
+    }
+}
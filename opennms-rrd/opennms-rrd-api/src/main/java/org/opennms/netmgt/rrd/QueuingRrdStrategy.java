@@ -109,7 +109,7 @@ import org.slf4j.LoggerFactory;
  * @author ranger
  * @version $Id: $
  */
-public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String>, Runnable {
+public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String>, RrdFilePoolStatistics, Runnable {
 
     private Logger m_log = LoggerFactory.getLogger(QueuingRrdStrategy.class);
 
@@ -1112,10 +1112,23 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
                     }
                     // now we actually process the events
-                    for (final Operation op : ops) {
+                    final Iterator<Operation> it = ops.iterator();
+                    while (rrd == null && it.hasNext()) {
+                        final Operation op = it.next();
                         fileName = op.getFileName();
                         rrd = op.process(rrd);
                     }
+                    if (rrd != null && it.hasNext()) {
+                        // Apply the remaining updates in a single pass while holding the lock on the
+                        // open file, so that readers sharing the same handle never see half of them
+                        synchronized (rrd) {
+                            while (it.hasNext()) {
+                                final Operation op = it.next();
+                                fileName = op.getFileName();
+                                rrd = op.process(rrd);
+                            }
+                        }
+                    }
                 } catch (final Throwable e) {
                     setErrors(getErrors() + 1);
                     logLapTime("Error updating file " + fileName + ": " + e.getMessage());
@@ -1291,6 +1304,30 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return m_delegate.createGraphReturnDetails(command, workDir);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolHits() {
+        return m_delegate instanceof RrdFilePoolStatistics ? ((RrdFilePoolStatistics) m_delegate).getPoolHits() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolMisses() {
+        return m_delegate instanceof RrdFilePoolStatistics ? ((RrdFilePoolStatistics) m_delegate).getPoolMisses() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolEvictions() {
+        return m_delegate instanceof RrdFilePoolStatistics ? ((RrdFilePoolStatistics) m_delegate).getPoolEvictions() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolOpenFiles() {
+        return m_delegate instanceof RrdFilePoolStatistics ? ((RrdFilePoolStatistics) m_delegate).getPoolOpenFiles() : 0L;
+    }
+
     /**
      * <p>getTotalOperationsPending</p>
      *
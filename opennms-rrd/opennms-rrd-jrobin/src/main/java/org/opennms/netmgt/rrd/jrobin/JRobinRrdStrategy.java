@@ -44,15 +44,18 @@ import java.util.Map.Entry;
 import java.util.Properties;
 
 import org.jrobin.core.FetchData;
+import org.jrobin.core.RrdBackendFactory;
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
 import org.jrobin.core.RrdException;
+import org.jrobin.core.RrdNioBackendFactory;
 import org.jrobin.core.Sample;
 import org.jrobin.data.DataProcessor;
 import org.jrobin.data.Plottable;
 import org.jrobin.graph.RrdGraph;
 import org.jrobin.graph.RrdGraphDef;
 import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdFilePoolStatistics;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.slf4j.Logger;
@@ -64,14 +67,29 @@ import org.slf4j.LoggerFactory;
  * FILE mode (NIO is too memory consuming for the large number of files that we
  * open)
  *
+ * When <code>org.opennms.rrd.jrobin.pool.size</code> is set, up to that many
+ * files are kept open between updates, using the NIO backend by default, so
+ * that the header of a file does not need to be parsed on every update.
+ *
  * @author ranger
  * @version $Id: $
  */
-public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
+public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb>, RrdFilePoolStatistics, AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
 
+    /**
+     * Maximum number of files kept open between updates, 0 disables the pool.
+     */
+    private static final String POOL_SIZE_PROPERTY = "org.opennms.rrd.jrobin.pool.size";
+    private static final String POOL_BACKEND_FACTORY_PROPERTY = "org.opennms.rrd.jrobin.pool.backendFactory";
+    private static final String DEFAULT_POOL_BACKEND_FACTORY = RrdNioBackendFactory.NAME;
+    /**
+     * Number of seconds between two syncs of the memory-mapped files to disk.
+     */
+    private static final String POOL_SYNC_PERIOD_PROPERTY = "org.opennms.rrd.jrobin.pool.syncPeriod";
+
     /*
      * Ensure that we only initialize certain things *once* per
      * Java VM, not once per instantiation of this class.
@@ -80,6 +98,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    private volatile RrdDbHandlePool m_pool;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -136,17 +156,59 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+        configurePool();
+    }
+
+    private void configurePool() {
+        final RrdDbHandlePool previousPool = m_pool;
+        m_pool = null;
+        if (previousPool != null) {
+            previousPool.close();
+        }
+
+        final int size = m_configurationProperties == null ? 0 : Integer.parseInt(m_configurationProperties.getProperty(POOL_SIZE_PROPERTY, "0"));
+        if (size <= 0) {
+            return;
+        }
+
+        final String factory = m_configurationProperties.getProperty(POOL_BACKEND_FACTORY_PROPERTY, DEFAULT_POOL_BACKEND_FACTORY);
+        final String syncPeriod = m_configurationProperties.getProperty(POOL_SYNC_PERIOD_PROPERTY);
+        if (syncPeriod != null && !syncPeriod.trim().isEmpty()) {
+            RrdNioBackendFactory.setSyncPeriod(Integer.parseInt(syncPeriod.trim()));
+        }
+        try {
+            m_pool = new RrdDbHandlePool(size, RrdBackendFactory.getFactory(factory));
+            LOG.info("Keeping up to {} JRobin files open using the {} backend", size, factory);
+        } catch (RrdException e) {
+            LOG.error("Could not get JRobin RRD factory {}, files will be opened for every update", factory, e);
+        }
+    }
+
+    /**
+     * Closes all the files held open by the pool.
+     */
+    @Override
+    public void close() {
+        final RrdDbHandlePool pool = m_pool;
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     /**
-     * Closes the JRobin RrdDb.
+     * Closes the JRobin RrdDb, or returns it to the pool.
      *
      * @param rrdFile a {@link org.jrobin.core.RrdDb} object.
      * @throws java.lang.Exception if any.
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        final RrdDbHandlePool pool = m_pool;
+        if (pool != null) {
+            pool.release(rrdFile);
+        } else {
+            rrdFile.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -201,6 +263,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        final RrdDbHandlePool pool = m_pool;
+        if (pool != null) {
+            // Forget about any handle on a previous file with the same path
+            pool.invalidate(rrdDef.getPath());
+        }
+
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
     }
@@ -212,6 +280,10 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
+        final RrdDbHandlePool pool = m_pool;
+        if (pool != null) {
+            return pool.acquire(fileName);
+        }
         return new RrdDb(fileName);
     }
 
@@ -255,7 +327,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = openFileForReading(fileName);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -269,11 +341,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
             if (rrd != null) {
-                try {
-                    rrd.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close rrd file: {}", fileName, e);
-                }
+                closeFileForReading(rrd, fileName);
             }
         }
     }
@@ -283,7 +351,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+        	rrd = openFileForReading(fileName);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -311,15 +379,60 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
             if (rrd != null) {
-                try {
-                    rrd.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close rrd file: {}", fileName, e);
-                }
+                closeFileForReading(rrd, fileName);
+            }
+        }
+    }
+
+    private RrdDb openFileForReading(final String fileName) throws IOException, RrdException {
+        final RrdDbHandlePool pool = m_pool;
+        if (pool != null) {
+            return pool.acquire(fileName);
+        }
+        return new RrdDb(fileName, true);
+    }
+
+    private void closeFileForReading(final RrdDb rrd, final String fileName) {
+        try {
+            final RrdDbHandlePool pool = m_pool;
+            if (pool != null) {
+                pool.release(rrd);
+            } else {
+                rrd.close();
             }
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.error("Failed to close rrd file: {}", fileName, e);
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolHits() {
+        final RrdDbHandlePool pool = m_pool;
+        return pool != null ? pool.getHits() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolMisses() {
+        final RrdDbHandlePool pool = m_pool;
+        return pool != null ? pool.getMisses() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolEvictions() {
+        final RrdDbHandlePool pool = m_pool;
+        return pool != null ? pool.getEvictions() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPoolOpenFiles() {
+        final RrdDbHandlePool pool = m_pool;
+        return pool != null ? pool.getOpenFiles() : 0L;
+    }
+
     private Color getColor(final String colorValue) {
         int rVal = Integer.parseInt(colorValue.substring(0, 2), 16);
         int gVal = Integer.parseInt(colorValue.substring(2, 4), 16);
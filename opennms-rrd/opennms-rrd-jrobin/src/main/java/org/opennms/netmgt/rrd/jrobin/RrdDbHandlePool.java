@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jrobin.core.RrdBackendFactory;
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of open {@link RrdDb} handles, keyed by path.
+ *
+ * Handles are reference counted: {@link #acquire(String)} must be followed by
+ * a call to {@link #release(RrdDb)}. When the pool is full, the least recently
+ * used handles that are not in use are closed. Handles that are evicted while
+ * in use are closed on their last release.
+ */
+class RrdDbHandlePool {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbHandlePool.class);
+
+    private final int m_capacity;
+
+    private final RrdBackendFactory m_backendFactory;
+
+    /**
+     * Handles by path, in access order.
+     */
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * All the handles that were handed out and not released yet, including
+     * the ones that were evicted.
+     */
+    private final Map<RrdDb, Entry> m_entriesByHandle = new IdentityHashMap<>();
+
+    private long m_hits = 0;
+
+    private long m_misses = 0;
+
+    private long m_evictions = 0;
+
+    RrdDbHandlePool(final int capacity, final RrdBackendFactory backendFactory) {
+        m_capacity = capacity;
+        m_backendFactory = backendFactory;
+    }
+
+    /**
+     * Returns an open handle for the given path, opening the file if needed.
+     */
+    RrdDb acquire(final String path) throws IOException, RrdException {
+        final List<Entry> toClose = new ArrayList<>(1);
+        try {
+            synchronized (this) {
+                final Entry entry = m_entries.get(path);
+                if (entry != null) {
+                    if (new File(path).exists()) {
+                        m_hits++;
+                        return entry.acquire();
+                    }
+                    // The file was deleted behind our back, don't keep writing to the old inode
+                    evict(path, toClose);
+                }
+                m_misses++;
+            }
+
+            // Open the file without holding the lock, parsing the header is the expensive part
+            final RrdDb rrdDb = new RrdDb(path, false, m_backendFactory);
+
+            synchronized (this) {
+                Entry entry = m_entries.get(path);
+                if (entry != null) {
+                    // Someone else opened the same file in the meantime
+                    toClose.add(new Entry(rrdDb));
+                } else {
+                    entry = new Entry(rrdDb);
+                    m_entries.put(path, entry);
+                    evictIdle(toClose);
+                }
+                return entry.acquire();
+            }
+        } finally {
+            close(toClose);
+        }
+    }
+
+    /**
+     * Releases a handle returned by {@link #acquire(String)}.
+     */
+    void release(final RrdDb rrdDb) throws IOException {
+        final List<Entry> toClose = new ArrayList<>(1);
+        synchronized (this) {
+            final Entry entry = m_entriesByHandle.get(rrdDb);
+            if (entry == null) {
+                throw new IllegalArgumentException("Handle for " + rrdDb.getPath() + " does not belong to this pool or was already released.");
+            }
+            if (entry.release() == 0) {
+                m_entriesByHandle.remove(rrdDb);
+                if (entry.evicted) {
+                    toClose.add(entry);
+                } else {
+                    evictIdle(toClose);
+                }
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes the handle for the given path, if any, so that the next call to
+     * {@link #acquire(String)} opens the file again.
+     */
+    void invalidate(final String path) {
+        final List<Entry> toClose = new ArrayList<>(1);
+        synchronized (this) {
+            evict(path, toClose);
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes all the handles that are not in use.
+     */
+    void close() {
+        final List<Entry> toClose = new ArrayList<>();
+        synchronized (this) {
+            for (final String path : new ArrayList<>(m_entries.keySet())) {
+                evict(path, toClose);
+            }
+        }
+        close(toClose);
+    }
+
+    synchronized long getHits() {
+        return m_hits;
+    }
+
+    synchronized long getMisses() {
+        return m_misses;
+    }
+
+    synchronized long getEvictions() {
+        return m_evictions;
+    }
+
+    synchronized int getOpenFiles() {
+        return m_entries.size();
+    }
+
+    private void evict(final String path, final List<Entry> toClose) {
+        final Entry entry = m_entries.remove(path);
+        if (entry == null) {
+            return;
+        }
+        m_evictions++;
+        if (entry.refCount == 0) {
+            toClose.add(entry);
+        } else {
+            entry.evicted = true;
+        }
+    }
+
+    private void evictIdle(final List<Entry> toClose) {
+        final Iterator<Entry> it = m_entries.values().iterator();
+        while (m_entries.size() > m_capacity && it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.refCount == 0) {
+                it.remove();
+                m_evictions++;
+                toClose.add(entry);
+            }
+        }
+    }
+
+    private static void close(final List<Entry> entries) {
+        for (final Entry entry : entries) {
+            try {
+                entry.rrdDb.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close rrd file: {}", entry.rrdDb.getPath(), e);
+            }
+        }
+    }
+
+    private final class Entry {
+        private final RrdDb rrdDb;
+        private int refCount = 0;
+        private boolean evicted = false;
+
+        private Entry(final RrdDb rrdDb) {
+            this.rrdDb = rrdDb;
+        }
+
+        private RrdDb acquire() {
+            if (refCount++ == 0) {
+                m_entriesByHandle.put(rrdDb, this);
+            }
+            return rrdDb;
+        }
+
+        private int release() {
+            return --refCount;
+        }
+    }
+}
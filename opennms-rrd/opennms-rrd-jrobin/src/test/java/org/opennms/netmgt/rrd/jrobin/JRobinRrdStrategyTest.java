@@ -31,6 +31,7 @@ package org.opennms.netmgt.rrd.jrobin;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -38,6 +39,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
 
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
@@ -175,6 +177,48 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testPooledFiles() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        properties.setProperty("org.opennms.rrd.jrobin.pool.size", "1");
+        m_strategy.setConfigurationProperties(properties);
+        final JRobinRrdStrategy strategy = (JRobinRrdStrategy) m_strategy;
+
+        try {
+            File rrdFile = createRrdFile();
+            final long start = System.currentTimeMillis() / 1000 - 900;
+
+            RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            m_strategy.updateFile(openedFile, "huh?", start + ":1.0");
+            m_strategy.closeFile(openedFile);
+
+            // The same handle is returned while it is in the pool
+            RrdDb reopenedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            assertSame(openedFile, reopenedFile);
+            m_strategy.updateFile(reopenedFile, "huh?", (start + 300) + ":2.0");
+            m_strategy.closeFile(reopenedFile);
+
+            m_strategy.fetchLastValue(rrdFile.getAbsolutePath(), "bar", 300000);
+
+            assertEquals(2, strategy.getPoolHits());
+            assertEquals(1, strategy.getPoolMisses());
+            assertEquals(1, strategy.getPoolOpenFiles());
+
+            // Closing the pool closes the file, which is opened again on the next update
+            strategy.close();
+            assertEquals(0, strategy.getPoolOpenFiles());
+            assertEquals(1, strategy.getPoolEvictions());
+
+            openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            assertEquals(start + 300, openedFile.getLastUpdateTime());
+            m_strategy.closeFile(openedFile);
+            assertEquals(2, strategy.getPoolMisses());
+        } finally {
+            strategy.close();
+        }
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
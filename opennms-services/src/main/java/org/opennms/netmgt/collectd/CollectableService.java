@@ -31,6 +31,9 @@ package org.opennms.netmgt.collectd;
 import java.io.File;
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
@@ -65,6 +68,7 @@ import org.opennms.netmgt.events.api.EventIpcManagerFactory;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.netmgt.scheduler.AsyncReadyRunnable;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
 import org.opennms.netmgt.threshd.api.ThresholdInitializationException;
@@ -83,7 +87,7 @@ import org.springframework.transaction.PlatformTransactionManager;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * 
  */
-class CollectableService implements ReadyRunnable {
+class CollectableService implements AsyncReadyRunnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(CollectableService.class);
 
@@ -318,6 +322,61 @@ class CollectableService implements ReadyRunnable {
      */
     @Override
     public void run() {
+        withLoggingContext(this::doRun);
+    }
+
+    /**
+     * Asynchronous variant of {@link #run()} used by schedulers that support
+     * it. The next collection is scheduled as soon as this one starts, so that
+     * the collection time does not add up to the interval, and the collected
+     * data is persisted on the given executor once the collector responds.
+     */
+    @Override
+    public CompletableFuture<Void> runAsync(final Executor executor) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        withLoggingContext(() -> {
+            if (processUpdates() == ABORT_COLLECTION) {
+                LOG.debug("run: Aborting because processUpdates returned ABORT_COLLECTION (probably marked for deletion) for {}", this);
+                future.complete(null);
+                return;
+            }
+
+            updateLastScheduledCollectionTime();
+            m_scheduler.schedule(Math.max(0, m_lastScheduledCollectionTime + m_spec.getInterval() - System.currentTimeMillis()), getReadyRunnable());
+
+            if (m_spec.scheduledOutage(m_agent)) {
+                future.complete(null);
+                return;
+            }
+
+            LOG.info("run: starting new collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+            m_spec.collectAsync(m_agent).whenCompleteAsync((result, t) -> withLoggingContext(() -> {
+                try {
+                    Throwable failure = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    if (failure == null) {
+                        try {
+                            handleCollectionSet(result);
+                        } catch (Throwable e) {
+                            failure = e;
+                        }
+                    }
+                    if (failure == null) {
+                        LOG.info("run: finished collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+                        updateStatus(CollectionStatus.SUCCEEDED, null);
+                    } else {
+                        LOG.warn("run: failed collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+                        handleCollectionFailure(failure instanceof CollectionException ? failure
+                                : new CollectionException("An undeclared throwable was caught during data collection for interface " + m_nodeId + "/" + getHostAddress() + "/" + m_spec.getServiceName(), failure));
+                    }
+                } finally {
+                    future.complete(null);
+                }
+            }), executor);
+        });
+        return future;
+    }
+
+    private void withLoggingContext(final Runnable runnable) {
         Logging.withPrefix(Collectd.LOG4J_CATEGORY, () -> {
             Logging.putThreadContext("service", m_spec.getServiceName());
             Logging.putThreadContext("ipAddress", m_agent.getAddress().getHostAddress());
@@ -325,7 +384,7 @@ class CollectableService implements ReadyRunnable {
             Logging.putThreadContext("nodeLabel", m_agent.getNodeLabel());
             Logging.putThreadContext("foreignSource", m_agent.getForeignSource());
             Logging.putThreadContext("foreignId", m_agent.getForeignId());
-            doRun();
+            runnable.run();
         });
     }
 
@@ -336,14 +395,7 @@ class CollectableService implements ReadyRunnable {
             return;
         }
 
-        // Update last scheduled poll time; if we are not doing strict interval,
-        // it is the current time; if we are, it is the previous time plus the
-        // interval
-        if (m_lastScheduledCollectionTime == 0 || !m_usingStrictInterval) {
-            m_lastScheduledCollectionTime = System.currentTimeMillis();
-        } else {
-            m_lastScheduledCollectionTime += m_spec.getInterval();
-        }
+        updateLastScheduledCollectionTime();
 
         /*
          * Check scheduled outages to see if any apply indicating
@@ -353,21 +405,8 @@ class CollectableService implements ReadyRunnable {
             try {
                 doCollection();
                 updateStatus(CollectionStatus.SUCCEEDED, null);
-            } catch (CollectionTimedOut e) {
-                LOG.info(e.getMessage());
-                updateStatus(CollectionStatus.FAILED, e);
-            } catch (CollectionWarning e) {
-                LOG.warn(e.getMessage(), e);
-                updateStatus(CollectionStatus.FAILED, e);
-            } catch (CollectionUnknown e) {
-                LOG.warn(e.getMessage(), e);
-                // Omit any status updates
-            } catch (CollectionException e) {
-                LOG.error(e.getMessage(), e);
-                updateStatus(CollectionStatus.FAILED, e);
             } catch (Throwable e) {
-                LOG.error(e.getMessage(), e);
-                updateStatus(CollectionStatus.FAILED, new CollectionException("Collection failed unexpectedly: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e));
+                handleCollectionFailure(e);
             }
         }
 
@@ -382,6 +421,36 @@ class CollectableService implements ReadyRunnable {
         m_scheduler.schedule(m_spec.getInterval() - diff, getReadyRunnable());
     }
 
+    private void updateLastScheduledCollectionTime() {
+        // Update last scheduled poll time; if we are not doing strict interval,
+        // it is the current time; if we are, it is the previous time plus the
+        // interval
+        if (m_lastScheduledCollectionTime == 0 || !m_usingStrictInterval) {
+            m_lastScheduledCollectionTime = System.currentTimeMillis();
+        } else {
+            m_lastScheduledCollectionTime += m_spec.getInterval();
+        }
+    }
+
+    private void handleCollectionFailure(Throwable e) {
+        if (e instanceof CollectionTimedOut) {
+            LOG.info(e.getMessage());
+            updateStatus(CollectionStatus.FAILED, (CollectionException)e);
+        } else if (e instanceof CollectionWarning) {
+            LOG.warn(e.getMessage(), e);
+            updateStatus(CollectionStatus.FAILED, (CollectionException)e);
+        } else if (e instanceof CollectionUnknown) {
+            LOG.warn(e.getMessage(), e);
+            // Omit any status updates
+        } else if (e instanceof CollectionException) {
+            LOG.error(e.getMessage(), e);
+            updateStatus(CollectionStatus.FAILED, (CollectionException)e);
+        } else {
+            LOG.error(e.getMessage(), e);
+            updateStatus(CollectionStatus.FAILED, new CollectionException("Collection failed unexpectedly: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e));
+        }
+    }
+
     private void updateStatus(CollectionStatus status, CollectionException e) {
         // Any change in status?
         if (!status.equals(m_status)) {
@@ -420,35 +489,7 @@ class CollectableService implements ReadyRunnable {
 		CollectionSet result = null;
 		try {
 		    result = m_spec.collect(m_agent);
-		    if (result != null) {
-                        Collectd.instrumentation().beginPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
-                        try {
-                            CollectionSetVisitor persister = m_persisterFactory.createPersister(m_params, m_repository, result.ignorePersist(), false, false);
-                            if (Boolean.getBoolean(USE_COLLECTION_START_TIME_SYS_PROP)) {
-                                final ConstantTimeKeeper timeKeeper = new ConstantTimeKeeper(new Date(m_lastScheduledCollectionTime));
-                                // Wrap the persister visitor such that calls to CollectionResource.getTimeKeeper() return the given timeKeeper
-                                persister = wrapResourcesWithTimekeeper(persister, timeKeeper);
-                            }
-                            result.visit(persister);
-                        } finally {
-                            Collectd.instrumentation().endPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
-                        }
-
-                        // Do thresholding
-                        if (m_thresholdingSession != null) {
-                            try {
-                                m_thresholdingSession.accept(result);
-                            } catch (ThresholdInitializationException e) {
-                                LOG.warn("ThresholdInitializationException for {}. Thresholding skipped.", this, e);
-                            }
-                        } else {
-                            LOG.warn("No thresholding session for {}. Thresholding skipped.", this);
-                        }
-
-                        if (!CollectionStatus.SUCCEEDED.equals(result.getStatus())) {
-                            throw new CollectionFailed(result.getStatus());
-                        }
-                    }
+		    handleCollectionSet(result);
                 } catch (CollectionException e) {
                     LOG.warn("run: failed collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
                     throw e;
@@ -459,6 +500,42 @@ class CollectableService implements ReadyRunnable {
 		LOG.info("run: finished collection for {}/{}/{}/{}", m_nodeId, getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
 	}
 
+    /**
+     * Persist and threshold the collected data.
+     */
+    private void handleCollectionSet(CollectionSet result) throws CollectionException {
+        if (result == null) {
+            return;
+        }
+        Collectd.instrumentation().beginPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
+        try {
+            CollectionSetVisitor persister = m_persisterFactory.createPersister(m_params, m_repository, result.ignorePersist(), false, false);
+            if (Boolean.getBoolean(USE_COLLECTION_START_TIME_SYS_PROP)) {
+                final ConstantTimeKeeper timeKeeper = new ConstantTimeKeeper(new Date(m_lastScheduledCollectionTime));
+                // Wrap the persister visitor such that calls to CollectionResource.getTimeKeeper() return the given timeKeeper
+                persister = wrapResourcesWithTimekeeper(persister, timeKeeper);
+            }
+            result.visit(persister);
+        } finally {
+            Collectd.instrumentation().endPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
+        }
+
+        // Do thresholding
+        if (m_thresholdingSession != null) {
+            try {
+                m_thresholdingSession.accept(result);
+            } catch (ThresholdInitializationException e) {
+                LOG.warn("ThresholdInitializationException for {}. Thresholding skipped.", this, e);
+            }
+        } else {
+            LOG.warn("No thresholding session for {}. Thresholding skipped.", this);
+        }
+
+        if (!CollectionStatus.SUCCEEDED.equals(result.getStatus())) {
+            throw new CollectionFailed(result.getStatus());
+        }
+    }
+
 	/**
      * Process any outstanding updates.
      * 
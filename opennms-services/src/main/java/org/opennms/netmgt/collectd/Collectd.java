@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -82,6 +83,7 @@ import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventUtils;
+import org.opennms.netmgt.scheduler.HashedWheelScheduler;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
@@ -133,6 +135,20 @@ public class Collectd extends AbstractServiceDaemon implements
      * Log4j category
      */
     static final String LOG4J_CATEGORY = "collectd";
+
+    /**
+     * Selects the scheduler engine, either <code>legacy</code> (the default) or
+     * <code>wheel</code> for the non-blocking {@link HashedWheelScheduler}.
+     */
+    protected static final String SCHEDULER_SYS_PROP = "org.opennms.netmgt.collectd.scheduler";
+
+    protected static final String WHEEL_SCHEDULER = "wheel";
+
+    /**
+     * Maximum number of collections in flight with the {@link HashedWheelScheduler},
+     * defaults to the number of threads in the configuration.
+     */
+    protected static final String MAX_IN_FLIGHT_SYS_PROP = "org.opennms.netmgt.collectd.scheduler.maxInFlight";
     
     /**
      * Instantiated service collectors specified in config file
@@ -313,8 +329,16 @@ public class Collectd extends AbstractServiceDaemon implements
         Logging.withPrefix(LOG4J_CATEGORY, () -> {
             // Create a scheduler
             try {
-                LOG.debug("init: Creating collectd scheduler");
-                setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                final int threads = m_collectdConfigFactory.getCollectdConfig().getThreads();
+                if (WHEEL_SCHEDULER.equalsIgnoreCase(System.getProperty(SCHEDULER_SYS_PROP))) {
+                    LOG.debug("init: Creating collectd timing wheel scheduler");
+                    final int maxInFlight = Integer.getInteger(MAX_IN_FLIGHT_SYS_PROP, threads);
+                    setScheduler(new HashedWheelScheduler("Collectd", threads, maxInFlight,
+                            HashedWheelScheduler.DEFAULT_TICK_DURATION, HashedWheelScheduler.DEFAULT_TICKS_PER_WHEEL));
+                } else {
+                    LOG.debug("init: Creating collectd scheduler");
+                    setScheduler(new LegacyScheduler("Collectd", threads));
+                }
             } catch (final RuntimeException e) {
                 LOG.error("init: Failed to create collectd scheduler", e);
                 throw e;
@@ -493,8 +517,9 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
 
-                // Schedule the collectable service for immediate collection
-                getScheduler().schedule(0, cSvc.getReadyRunnable());
+                // Schedule the collectable service for immediate collection, or
+                // spread the first collections over the interval with the timing wheel
+                getScheduler().schedule(getInitialDelay(spec), cSvc.getReadyRunnable());
 
                 LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
             } catch (CollectionInitializationException e) {
@@ -980,6 +1005,13 @@ public class Collectd extends AbstractServiceDaemon implements
         scheduleNode(nodeId.intValue(), true);
     }
 
+    private long getInitialDelay(CollectionSpecification spec) {
+        if (getScheduler() instanceof HashedWheelScheduler && spec.getInterval() > 0) {
+            return ThreadLocalRandom.current().nextLong(spec.getInterval());
+        }
+        return 0;
+    }
+
     private void rebuildScheduler() {
         //Remove all collectable services
         Collection<Integer> nodeIds = m_nodeDao.getNodeIds();
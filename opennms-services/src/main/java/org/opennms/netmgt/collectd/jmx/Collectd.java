@@ -29,7 +29,9 @@
 package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
+import org.opennms.netmgt.scheduler.HashedWheelScheduler;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Scheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -153,11 +155,53 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
         return getDaemon().getCollectableServiceCount();
     }
     
+    @Override
+    public long getInFlightCollections() {
+        if (getWheelScheduler() != null) {
+            return getWheelScheduler().getInFlight();
+        } else {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long getCollectionOverruns() {
+        if (getWheelScheduler() != null) {
+            return getWheelScheduler().getNumOverruns();
+        } else {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long getSchedulingLagTotal() {
+        if (getWheelScheduler() != null) {
+            return getWheelScheduler().getTotalSchedulingLag();
+        } else {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long getTasksExecuted() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        return scheduler != null ? scheduler.getNumTasksExecuted() : 0L;
+    }
+
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        final Scheduler scheduler = getDaemon().getScheduler();
+        if (scheduler instanceof HashedWheelScheduler) {
+            return (ThreadPoolExecutor) ((HashedWheelScheduler) scheduler).getRunner();
+        }
+        return (ThreadPoolExecutor) ((LegacyScheduler) scheduler).getRunner();
+    }
+
+    private HashedWheelScheduler getWheelScheduler() {
+        final Scheduler scheduler = getDaemon().getScheduler();
+        return scheduler instanceof HashedWheelScheduler ? (HashedWheelScheduler) scheduler : null;
     }
 
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (getDaemon().getScheduler() instanceof LegacyScheduler || getDaemon().getScheduler() instanceof HashedWheelScheduler);
     }
 }
@@ -91,4 +91,24 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of pending tasks
      */
     public long getTaskQueueRemainingCapacity();
+
+    /**
+     * @return The number of collections that were started and are waiting for the collector to respond
+     */
+    public long getInFlightCollections();
+
+    /**
+     * @return The cumulative number of collections that were skipped because the previous one was still in flight
+     */
+    public long getCollectionOverruns();
+
+    /**
+     * @return The cumulative number of collection tasks started by the scheduler since collector startup
+     */
+    public long getTasksExecuted();
+
+    /**
+     * @return The cumulative delay, in milliseconds, between the time collection tasks were due and the time they were started
+     */
+    public long getSchedulingLagTotal();
 }
@@ -247,5 +247,60 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /**
+     * <p>getPoolHits</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getPoolHits() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getPoolHits();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getPoolMisses</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getPoolMisses() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getPoolMisses();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getPoolEvictions</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getPoolEvictions() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getPoolEvictions();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getPoolOpenFiles</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getPoolOpenFiles() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getPoolOpenFiles();
+        } else {
+            return 0;
+        }
+    }
 
 }
@@ -115,5 +115,29 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getPoolHits</p>
+	 *
+	 * @return the number of times an RRD file was found open in the pool
+	 */
+	public long getPoolHits();
+	/**
+	 * <p>getPoolMisses</p>
+	 *
+	 * @return the number of times an RRD file had to be opened
+	 */
+	public long getPoolMisses();
+	/**
+	 * <p>getPoolEvictions</p>
+	 *
+	 * @return the number of RRD files closed to make room in the pool
+	 */
+	public long getPoolEvictions();
+	/**
+	 * <p>getPoolOpenFiles</p>
+	 *
+	 * @return the number of RRD files currently held open by the pool
+	 */
+	public long getPoolOpenFiles();
 
 }
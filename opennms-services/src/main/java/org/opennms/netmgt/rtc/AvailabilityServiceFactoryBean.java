@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.FactoryBean;
+
+/**
+ * Selects the {@link AvailabilityService} used by the {@link DataSender}.
+ *
+ * By default, availability is computed with database queries by the
+ * {@link AvailabilityServiceHibernateImpl}. When the
+ * <code>org.opennms.netmgt.rtc.incremental</code> system property is set to
+ * <code>true</code>, the {@link DataManager} is used instead: it loads the
+ * outages once and maintains the availability of the categories incrementally,
+ * as the events are received by the {@link BroadcastEventProcessor}.
+ *
+ * The beans of the implementation that is not selected are lazy and never
+ * created.
+ */
+public class AvailabilityServiceFactoryBean implements FactoryBean<AvailabilityService>, BeanFactoryAware {
+
+    public static final String INCREMENTAL_SYS_PROP = "org.opennms.netmgt.rtc.incremental";
+
+    private boolean m_incremental = Boolean.getBoolean(INCREMENTAL_SYS_PROP);
+
+    private String m_defaultServiceName;
+
+    private String m_incrementalServiceName;
+
+    private String m_incrementalListenerName;
+
+    private BeanFactory m_beanFactory;
+
+    private AvailabilityService m_availabilityService;
+
+    @Override
+    public void setBeanFactory(final BeanFactory beanFactory) throws BeansException {
+        m_beanFactory = beanFactory;
+    }
+
+    public void setIncremental(final boolean incremental) {
+        m_incremental = incremental;
+    }
+
+    /**
+     * @param defaultServiceName the name of the bean used when the incremental implementation is disabled
+     */
+    public void setDefaultServiceName(final String defaultServiceName) {
+        m_defaultServiceName = defaultServiceName;
+    }
+
+    /**
+     * @param incrementalServiceName the name of the {@link DataManager} bean
+     */
+    public void setIncrementalServiceName(final String incrementalServiceName) {
+        m_incrementalServiceName = incrementalServiceName;
+    }
+
+    /**
+     * @param incrementalListenerName the name of the bean that subscribes the {@link BroadcastEventProcessor} to the events
+     */
+    public void setIncrementalListenerName(final String incrementalListenerName) {
+        m_incrementalListenerName = incrementalListenerName;
+    }
+
+    @Override
+    public synchronized AvailabilityService getObject() {
+        if (m_availabilityService == null) {
+            if (m_incremental) {
+                final AvailabilityService dataManager = m_beanFactory.getBean(m_incrementalServiceName, AvailabilityService.class);
+                // The data manager is only kept up to date once its event listener is subscribed
+                m_beanFactory.getBean(m_incrementalListenerName);
+                m_availabilityService = dataManager;
+            } else {
+                m_availabilityService = m_beanFactory.getBean(m_defaultServiceName, AvailabilityService.class);
+            }
+        }
+        return m_availabilityService;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return AvailabilityService.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+}
@@ -39,9 +39,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.OptionalDouble;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.RTCConfigFactory;
@@ -50,6 +51,7 @@ import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.filter.api.FilterParseException;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
+import org.opennms.netmgt.rtc.datablock.RTCCategoryAvailability;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
 import org.opennms.netmgt.rtc.datablock.RTCNodeKey;
@@ -65,6 +67,9 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+
 /**
  * Contains and maintains all the data for the RTC.
  *
@@ -80,6 +85,11 @@ import org.springframework.transaction.support.TransactionTemplate;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * Updates for a node are serialized on a lock stripe for its node ID, so
+ * events for different nodes are applied concurrently. Readers take no locks:
+ * the category values are maintained incrementally in a
+ * 'RTCCategoryAvailability' per category as outages come and go.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -107,6 +117,11 @@ public class DataManager implements AvailabilityService, InitializingBean {
      */
     private final LegacyEuiLevelMapper m_euiMapper;
 
+    /**
+     * Serializes the updates for a node
+     */
+    private final Striped<Lock> m_nodeLocks = Striped.lock(64);
+
 	private class RTCNodeProcessor implements RowCallbackHandler {
 		RTCNodeKey m_currentKey = null;
 
@@ -190,7 +205,12 @@ public class DataManager implements AvailabilityService, InitializingBean {
      */
     private RTCHashMap m_map;
 
-	private static void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
+    /**
+     * The incrementally maintained availability keyed by category label
+     */
+    private Map<String, RTCCategoryAvailability> m_availabilities;
+
+	private void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
 		if (lostTimeTS == null) return;
 		long lostTime = lostTimeTS.getTime();
 		long regainedTime = -1;
@@ -201,17 +221,24 @@ public class DataManager implements AvailabilityService, InitializingBean {
 
 		LOG.debug("regained time for nodeid/ip/svc: {}/{}/{}: {}/{}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), regainedTimeTS, regainedTime);
 
-		rtcN.addSvcTime(lostTime, regainedTime);
+		if (rtcN.addSvcTime(lostTime, regainedTime)) {
+			for (String catlabel : rtcN.getCategories()) {
+				m_availabilities.get(catlabel).outageCreated(lostTime, regainedTime);
+			}
+		}
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
 		m_map.add(rtcN);
 	}
 
-	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
+	private void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
 
 		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
+		if (!rtcN.belongsTo(cat.getLabel())) {
+			rtcN.addCategory(cat.getLabel());
+			m_availabilities.get(cat.getLabel()).add(rtcN.getSvcTimeline());
+		}
 
 		// Add node to category
 		cat.addNode(rtcN);
@@ -324,6 +351,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
     	// create data holder
     	m_map = new RTCHashMap(30000);
 
+    	final long rollingWindow = m_configFactory.getRollingWindow();
+    	final long now = System.currentTimeMillis();
+    	m_availabilities = new HashMap<String, RTCCategoryAvailability>();
+    	for (String catlabel : m_categories.keySet()) {
+    		m_availabilities.put(catlabel, new RTCCategoryAvailability(rollingWindow, now));
+    	}
+
     	m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 
     		@Override
@@ -353,7 +387,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service name
      */
-    public synchronized void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
+    public void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
         //
         // check the 'status' flag for the service
         //
@@ -414,18 +448,27 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void outageCreated(int nodeid, InetAddress ip, String svcName, long t) {
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a outageCreated event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
-
-        // inform node
-        rtcN.nodeLostService(t);
+    public void outageCreated(int nodeid, InetAddress ip, String svcName, long t) {
+        final Lock lock = m_nodeLocks.get(nodeid);
+        lock.lock();
+        try {
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a outageCreated event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
+            // inform node and its categories
+            if (rtcN.nodeLostService(t)) {
+                for (String catlabel : rtcN.getCategories()) {
+                    m_availabilities.get(catlabel).outageCreated(t, -1);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -441,17 +484,27 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void outageResolved(int nodeid, InetAddress ip, String svcName, long t) {
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a outageResolved event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
+    public void outageResolved(int nodeid, InetAddress ip, String svcName, long t) {
+        final Lock lock = m_nodeLocks.get(nodeid);
+        lock.lock();
+        try {
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a outageResolved event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
-        // inform node
-        rtcN.nodeRegainedService(t);
+            // inform node and its categories
+            if (rtcN.nodeRegainedService(t)) {
+                for (String catlabel : rtcN.getCategories()) {
+                    m_availabilities.get(catlabel).outageResolved(t);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -464,50 +517,51 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service that was deleted
      */
-    public synchronized void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
-        // create lookup key
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+    public void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
+        final Lock lock = m_nodeLocks.get(nodeid);
+        lock.lock();
+        try {
+            // create lookup key
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
 
-        // lookup the node
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
+            // lookup the node
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
 
-            return;
-        }
+                return;
+            }
 
-        //
-        // Go through from all the categories this node belongs to
-        // and delete the service
-        //
-        List<String> categories = rtcN.getCategories();
-        ListIterator<String> catIter = categories.listIterator();
-        while (catIter.hasNext()) {
-            String catlabel = (String) catIter.next();
-
-            RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
-
-            // get nodes in this category
-            List<Integer> catNodes = cat.getNodes();
-
-            // check if the category contains this node
-            int nIndex = catNodes.indexOf(rtcN.getNodeID());
-            if (nIndex != -1) {
-                // remove from the category if it is the only service left.
-                if (m_map.getServiceCount(nodeid, catlabel) == 1) {
-                    catNodes.remove(nIndex);
-                    LOG.info("Removing node from category: {}", catlabel);
+            //
+            // Go through from all the categories this node belongs to
+            // and delete the service
+            //
+            for (String catlabel : rtcN.getCategories()) {
+                RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
+
+                // get nodes in this category
+                List<Integer> catNodes = cat.getNodes();
+
+                // check if the category contains this node
+                if (catNodes.contains(rtcN.getNodeID())) {
+                    // remove from the category if it is the only service left.
+                    if (m_map.getServiceCount(nodeid, catlabel) == 1) {
+                        cat.deleteNode(rtcN.getNodeID());
+                        LOG.info("Removing node from category: {}", catlabel);
+                    }
+
+                    // let the node know that this category is out
+                    rtcN.removeCategory(catlabel);
+                    m_availabilities.get(catlabel).remove(rtcN.getSvcTimeline());
                 }
-
-                // let the node know that this category is out
-                catIter.remove();
             }
-        }
 
-        // finally remove from map
-        
-        m_map.delete(rtcN);
+            // finally remove from map
 
+            m_map.delete(rtcN);
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
@@ -515,7 +569,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void assetInfoChanged(int nodeid) {
+    public void assetInfoChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -537,7 +591,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void nodeCategoryMembershipChanged(int nodeid) {
+    public void nodeCategoryMembershipChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -567,16 +621,26 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    public synchronized void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
-    	
-    	for (RTCCategory cat : m_categories.values()) {
-			cat.deleteNode(nodeid);
-		}
-    	
-    	m_map.deleteNode(nodeid);
-    	
-    	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
-    	
+    public void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
+    	final Lock lock = m_nodeLocks.get(nodeid);
+    	lock.lock();
+    	try {
+    		for (RTCCategory cat : m_categories.values()) {
+    			cat.deleteNode(nodeid);
+    		}
+
+    		for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+    			for (String catlabel : rtcN.getCategories()) {
+    				m_availabilities.get(catlabel).remove(rtcN.getSvcTimeline());
+    			}
+    		}
+
+    		m_map.deleteNode(nodeid);
+
+    		populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+    	} finally {
+    		lock.unlock();
+    	}
     }
 
     /**
@@ -599,27 +663,34 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param newNodeId
      *            the node that the IP now belongs to
      */
-    public synchronized void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
-        // get all RTCNodes with the IP/old node ID
-        for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
+    public void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
+        // lock both nodes, in stripe order
+        final List<Lock> locks = Lists.newArrayList(m_nodeLocks.bulkGet(Arrays.asList(oldNodeId, newNodeId)));
+        locks.forEach(Lock::lock);
+        try {
+            // get all RTCNodes with the IP/old node ID
+            for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
 
-            // remove the node with the old node id from the map
-            m_map.delete(rtcN);
+                // remove the node with the old node id from the map
+                m_map.delete(rtcN);
 
-            // change the node ID on the RTCNode
-            rtcN.setNodeID(newNodeId);
+                // change the node ID on the RTCNode
+                rtcN.setNodeID(newNodeId);
 
-            // now add the node with the new node ID
-            m_map.add(rtcN);
+                // now add the node with the new node ID
+                m_map.add(rtcN);
 
-            // remove old node ID from the categories it belonged to
-            // and the new node ID
-            for (String catlabel : rtcN.getCategories()) {
-                RTCCategory rtcCat = m_categories.get(catlabel);
-                rtcCat.deleteNode(oldNodeId);
-                rtcCat.addNode(newNodeId);
-            }
+                // remove old node ID from the categories it belonged to
+                // and the new node ID
+                for (String catlabel : rtcN.getCategories()) {
+                    RTCCategory rtcCat = m_categories.get(catlabel);
+                    rtcCat.deleteNode(oldNodeId);
+                    rtcCat.addNode(newNodeId);
+                }
 
+            }
+        } finally {
+            Lists.reverse(locks).forEach(Lock::unlock);
         }
     }
 
@@ -636,7 +707,15 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(RTCCategory category, long curTime, long rollingWindow) {
+        final RTCCategoryAvailability availability = m_availabilities.get(category.getLabel());
+        if (availability != null) {
+            final OptionalDouble value = availability.getValue(curTime, rollingWindow);
+            if (value.isPresent()) {
+                return value.getAsDouble();
+            }
+        }
+        // not answerable from the running totals, compute from the nodes
         return m_map.getValue(category.getLabel(), curTime, rollingWindow);
     }
 
@@ -655,7 +734,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
         return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
     }
 
@@ -670,7 +749,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(int nodeid, RTCCategory category) {
+    public int getServiceCount(int nodeid, RTCCategory category) {
         return m_map.getServiceCount(nodeid, category.getLabel());
     }
 
@@ -685,7 +764,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(int nodeid, RTCCategory category) {
+    public int getServiceDownCount(int nodeid, RTCCategory category) {
         return m_map.getServiceDownCount(nodeid, category.getLabel());
     }
 
@@ -695,7 +774,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the categories
      */
     @Override
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
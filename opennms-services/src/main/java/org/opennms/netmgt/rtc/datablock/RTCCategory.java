@@ -28,10 +28,9 @@
 
 package org.opennms.netmgt.rtc.datablock;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.netmgt.config.categories.Category;
 
@@ -53,7 +52,7 @@ public class RTCCategory extends Category {
     /**
      * The nodes list - list of node IDs
      */
-    private final List<Integer> m_nodes = Collections.synchronizedList(new ArrayList<Integer>());
+    private final CopyOnWriteArrayList<Integer> m_nodes = new CopyOnWriteArrayList<>();
 
     /**
      * The default constructor - initializes the values
@@ -79,10 +78,7 @@ public class RTCCategory extends Category {
      *            the node to add
      */
     public void addNode(RTCNode node) {
-        Integer longnodeid = node.getNodeID();
-
-        if (!m_nodes.contains(longnodeid))
-            m_nodes.add(longnodeid);
+        m_nodes.addIfAbsent(node.getNodeID());
     }
 
     /**
@@ -92,9 +88,7 @@ public class RTCCategory extends Category {
      *            the node ID to add
      */
     public void addNode(int nodeid) {
-        if (!m_nodes.contains(nodeid)) {
-            m_nodes.add(nodeid);
-        }
+        m_nodes.addIfAbsent(nodeid);
     }
 
     /**
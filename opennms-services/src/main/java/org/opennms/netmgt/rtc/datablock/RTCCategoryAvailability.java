@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+
+import org.opennms.netmgt.rtc.RTCUtils;
+
+/**
+ * Incrementally maintained availability of a category.
+ *
+ * The down time of a single outage [lost, regained) in the window
+ * [t - rollingWindow, t] is a piecewise-linear function of t whose slope only
+ * changes at lost, regained, lost + rollingWindow and regained +
+ * rollingWindow. The sum over all services in the category is therefore
+ * piecewise-linear as well: we keep its value and slope at time 'm_time'
+ * together with a min-heap of the future slope changes, and move forward
+ * through the heap whenever the category is read or modified. Reading the
+ * value is O(1) amortized instead of a scan of every service in the category.
+ *
+ * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimeline
+ */
+public class RTCCategoryAvailability {
+
+    private final long m_rollingWindow;
+
+    /**
+     * Number of services in this category.
+     */
+    private int m_count;
+
+    /**
+     * Total down time of all services at 'm_time'.
+     */
+    private long m_downTime;
+
+    /**
+     * Rate at which the total down time changes after 'm_time'.
+     */
+    private long m_slope;
+
+    private long m_time;
+
+    /**
+     * Slope changes after 'm_time', kept as a binary min-heap on the time.
+     */
+    private long[] m_breakTimes = new long[16];
+
+    private long[] m_breakDeltas = new long[16];
+
+    private int m_breaks;
+
+    /**
+     * Constructor.
+     *
+     * @param rollingWindow
+     *            the window for which the availability is maintained
+     * @param curTime
+     *            the time from which the availability is maintained
+     */
+    public RTCCategoryAvailability(final long rollingWindow, final long curTime) {
+        m_rollingWindow = rollingWindow;
+        m_time = curTime;
+    }
+
+    public long getRollingWindow() {
+        return m_rollingWindow;
+    }
+
+    public synchronized int getCount() {
+        return m_count;
+    }
+
+    /**
+     * Account for a service that was added to the category.
+     */
+    public synchronized void add(final RTCNodeSvcTimeline timeline) {
+        advance(System.currentTimeMillis());
+        for (int i = 0; i < timeline.size(); i++) {
+            addOutage(timeline.getLostTime(i), timeline.getRegainedTime(i), 1);
+        }
+        m_count++;
+    }
+
+    /**
+     * Account for a service that was removed from the category.
+     */
+    public synchronized void remove(final RTCNodeSvcTimeline timeline) {
+        advance(System.currentTimeMillis());
+        for (int i = 0; i < timeline.size(); i++) {
+            addOutage(timeline.getLostTime(i), timeline.getRegainedTime(i), -1);
+        }
+        m_count--;
+    }
+
+    /**
+     * Account for an outage of a service in the category.
+     *
+     * @param regainedTime
+     *            the time at which the service was regained or -1 if the
+     *            outage is still open
+     */
+    public synchronized void outageCreated(final long lostTime, final long regainedTime) {
+        advance(System.currentTimeMillis());
+        addOutage(lostTime, regainedTime, 1);
+    }
+
+    /**
+     * Account for the resolution of an open outage of a service in the
+     * category: [lost, regained) is [lost, infinity) without
+     * [regained, infinity).
+     */
+    public synchronized void outageResolved(final long regainedTime) {
+        advance(System.currentTimeMillis());
+        addOutage(regainedTime, -1, -1);
+    }
+
+    /**
+     * Get the value (uptime) of the category in the last 'rollingWindow'
+     * starting at 'curTime'.
+     *
+     * @return the value or an empty optional if it cannot be answered from
+     *         the aggregate (a different window or a time in the past), in
+     *         which case the caller has to compute it from the services
+     */
+    public synchronized OptionalDouble getValue(final long curTime, final long rollingWindow) {
+        if (rollingWindow != m_rollingWindow || curTime < m_time) {
+            return OptionalDouble.empty();
+        }
+        advance(curTime);
+        return OptionalDouble.of(RTCUtils.getOutagePercentage(m_downTime, m_rollingWindow, m_count));
+    }
+
+    /**
+     * Get the total down time of all services in the last 'rollingWindow'
+     * starting at 'curTime'.
+     */
+    public synchronized long getDownTime(final long curTime) {
+        advance(curTime);
+        return m_downTime;
+    }
+
+    private void addOutage(final long lostTime, final long regainedTime, final int sign) {
+        final boolean open = regainedTime < 0;
+        final long windowStart = m_time - m_rollingWindow;
+
+        m_downTime += sign * RTCNodeSvcTimeline.getDownTime(lostTime, regainedTime, m_time, m_rollingWindow);
+
+        // the slope is +1 while the window end lies in the outage and -1
+        // while the window start lies in it
+        if (lostTime <= m_time && (open || m_time < regainedTime)) {
+            m_slope += sign;
+        }
+        if (lostTime <= windowStart && (open || windowStart < regainedTime)) {
+            m_slope -= sign;
+        }
+
+        addBreak(lostTime, sign);
+        addBreak(lostTime + m_rollingWindow, -sign);
+        if (!open) {
+            addBreak(regainedTime, -sign);
+            addBreak(regainedTime + m_rollingWindow, sign);
+        }
+    }
+
+    /**
+     * Move the aggregate forward to 'curTime', applying all slope changes on
+     * the way.
+     */
+    private void advance(final long curTime) {
+        if (curTime <= m_time) {
+            return;
+        }
+
+        while (m_breaks > 0 && m_breakTimes[0] <= curTime) {
+            m_downTime += m_slope * (m_breakTimes[0] - m_time);
+            m_time = m_breakTimes[0];
+            m_slope += m_breakDeltas[0];
+            removeFirstBreak();
+        }
+
+        m_downTime += m_slope * (curTime - m_time);
+        m_time = curTime;
+    }
+
+    private void addBreak(final long time, final long delta) {
+        // changes up to now are already part of the slope
+        if (time <= m_time) {
+            return;
+        }
+
+        if (m_breaks == m_breakTimes.length) {
+            m_breakTimes = Arrays.copyOf(m_breakTimes, m_breaks * 2);
+            m_breakDeltas = Arrays.copyOf(m_breakDeltas, m_breaks * 2);
+        }
+
+        int i = m_breaks++;
+        while (i > 0) {
+            final int parent = (i - 1) / 2;
+            if (m_breakTimes[parent] <= time) {
+                break;
+            }
+            m_breakTimes[i] = m_breakTimes[parent];
+            m_breakDeltas[i] = m_breakDeltas[parent];
+            i = parent;
+        }
+        m_breakTimes[i] = time;
+        m_breakDeltas[i] = delta;
+    }
+
+    private void removeFirstBreak() {
+        m_breaks--;
+        final long time = m_breakTimes[m_breaks];
+        final long delta = m_breakDeltas[m_breaks];
+
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= m_breaks) {
+                break;
+            }
+            if (child + 1 < m_breaks && m_breakTimes[child + 1] < m_breakTimes[child]) {
+                child++;
+            }
+            if (time <= m_breakTimes[child]) {
+                break;
+            }
+            m_breakTimes[i] = m_breakTimes[child];
+            m_breakDeltas[i] = m_breakDeltas[child];
+            i = child;
+        }
+        m_breakTimes[i] = time;
+        m_breakDeltas[i] = delta;
+    }
+}
@@ -31,11 +31,12 @@ package org.opennms.netmgt.rtc.datablock;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
 import org.opennms.netmgt.rtc.RTCUtils;
@@ -45,6 +46,9 @@ import org.opennms.netmgt.rtc.RTCUtils;
  * convenience methods to add and remove 'RTCNodes' with these values - each key
  * points to a list of 'RTCNode's
  *
+ * The map and the lists are safe to read while they are being modified, the
+ * lists are copied on write.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -60,16 +64,21 @@ public class RTCHashMap {
      * @param initialCapacity a int.
      */
     public RTCHashMap(int initialCapacity) {
-        m_map = new HashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
+        m_map = new ConcurrentHashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
     }
 
-    private List<Integer> getNodeIDs() {
-    	List<Integer> nodes = new LinkedList<>();
-    	for (Iterator<RTCNodeKey> it = m_map.keySet().iterator(); it.hasNext();) {
-			RTCNodeKey key = it.next();
-			nodes.add(key.getNodeID());
-		}
-    	return nodes;
+    /**
+     * Every service is stored under three keys - only the nodeid keys are
+     * used here so each service is counted once.
+     */
+    private Set<Integer> getNodeIDs() {
+        Set<Integer> nodes = new LinkedHashSet<>();
+        for (RTCNodeKey key : m_map.keySet()) {
+            if (key.getIP() == null && key.getSvcName() == null) {
+                nodes.add(key.getNodeID());
+            }
+        }
+        return nodes;
     }
     
     /**
@@ -83,17 +92,7 @@ public class RTCHashMap {
     private void add(int nodeid, RTCNode rtcN) {
         RTCNodeKey key = new RTCNodeKey(nodeid, null, null);
 
-        List<RTCNode> nodesList = m_map.get(key);
-        if (nodesList != null) {
-            nodesList.add(rtcN);
-        } else {
-            // add current node to list
-            nodesList = new ArrayList<>();
-            nodesList.add(rtcN);
-
-            // add list to map
-            m_map.put(key, nodesList);
-        }
+        m_map.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(rtcN);
     }
 
     /**
@@ -109,17 +108,7 @@ public class RTCHashMap {
     private void add(int nodeid, InetAddress inetAddress, RTCNode rtcN) {
         RTCNodeKey key = new RTCNodeKey(nodeid, inetAddress, null);
 
-        List<RTCNode> nodesList = m_map.get(key);
-        if (nodesList != null) {
-            nodesList.add(rtcN);
-        } else {
-            // add current node to list
-            nodesList = new ArrayList<>();
-            nodesList.add(rtcN);
-
-            // add list to map
-            m_map.put(key, nodesList);
-        }
+        m_map.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(rtcN);
     }
     
     private void add(int nodeid, InetAddress ip, String svcName, RTCNode rtcN) {
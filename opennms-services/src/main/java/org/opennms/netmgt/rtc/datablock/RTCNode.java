@@ -29,8 +29,8 @@
 package org.opennms.netmgt.rtc.datablock;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
@@ -41,7 +41,7 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * RTCNode is the main data unit for the RTCManager - these datablocks are
  * created initially as data is read from the database and later if a
  * 'nodeGainedService' is received - each node maintains its node id, ip
- * address, service name and a list of 'RTCNodeSvcTime's
+ * address, service name and a timeline of its outages
  * </p>
  *
  * <p>
@@ -49,17 +49,21 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  * belongs to
  * </p>
  *
+ * <p>
+ * The outage timeline is immutable and replaced on every change, so readers
+ * never block on a node that is being updated.
+ * </p>
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  * 
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTime
- * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimesList
+ * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimeline
  */
 public class RTCNode {
     /**
      * The node ID.
      */
-    private int m_nodeID;
+    private volatile int m_nodeID;
 
     /**
      * The ip address of the interface of the node.
@@ -72,14 +76,19 @@ public class RTCNode {
     private final String m_svcName;
 
     /**
-     * List of the lost/regained service times for this node.
+     * The window for which outages are kept.
      */
-    private RTCNodeSvcTimesList m_svcTimesList;
+    private final long m_rollingWindow;
+
+    /**
+     * The lost/regained service times for this node.
+     */
+    private volatile RTCNodeSvcTimeline m_svcTimeline = RTCNodeSvcTimeline.EMPTY;
 
     /**
      * List of the categories this node belongs to
      */
-    private final List<String> m_categories = new ArrayList<>();
+    private final CopyOnWriteArrayList<String> m_categories = new CopyOnWriteArrayList<>();
 
     /**
      * <p>Constructor for RTCNode.</p>
@@ -107,7 +116,7 @@ public class RTCNode {
 
         m_svcName = svcName;
 
-        m_svcTimesList = new RTCNodeSvcTimesList(rollingWindow);
+        m_rollingWindow = rollingWindow;
     }
 
     /**
@@ -121,15 +130,32 @@ public class RTCNode {
     }
 
     /**
-     * Add a new 'RTCNodeSvcTime' entry for this node.
+     * Add a new lost/regained service time entry for this node. Expired
+     * outages are removed at the same time.
      *
      * @param losttime
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
+     * @return true if the entry was added, false if it was rejected
+     */
+    public synchronized boolean addSvcTime(long losttime, long regainedtime) {
+        final RTCNodeSvcTimeline timeline = m_svcTimeline.withOutage(losttime, regainedtime, System.currentTimeMillis() - m_rollingWindow);
+        if (timeline == m_svcTimeline) {
+            return false;
+        }
+
+        m_svcTimeline = timeline;
+        return true;
+    }
+
+    /**
+     * Return the lost/regained service times for this node.
+     *
+     * @return the current outage timeline
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public RTCNodeSvcTimeline getSvcTimeline() {
+        return m_svcTimeline;
     }
 
     /**
@@ -139,10 +165,7 @@ public class RTCNode {
      *            category label of the category this node has been added to
      */
     public void addCategory(String catLabel) {
-        int index = m_categories.indexOf(catLabel);
-        if (index == -1) {
-            m_categories.add(catLabel);
-        }
+        m_categories.addIfAbsent(catLabel);
     }
 
     /**
@@ -152,11 +175,7 @@ public class RTCNode {
      *            category label of the category this node has been added to
      */
     public void removeCategory(String catLabel) {
-        int index = m_categories.indexOf(catLabel);
-        if (index != -1) {
-            m_categories.remove(catLabel);
-
-        }
+        m_categories.remove(catLabel);
     }
 
     /**
@@ -165,26 +184,19 @@ public class RTCNode {
      *
      * @param t
      *            the time at which service was lost
+     * @return true if an outage was opened, false if the service was
+     *         already down
      */
-    public synchronized void nodeLostService(long t) {
+    public synchronized boolean nodeLostService(long t) {
         // check if the last element in the times list is 'open'
         // i.e. is waiting for a regained service - if yes,
         // don't add anything
-
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() == -1) {
-                // last event was a 'lostService'
-                // ignore this event
-                return;
-            }
+        if (m_svcTimeline.isCurrentlyDown()) {
+            return false;
         }
 
-        // create a new entry
-        RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
-        m_svcTimesList.add(newStime);
+        m_svcTimeline = m_svcTimeline.withOutage(t, -1, System.currentTimeMillis() - m_rollingWindow);
+        return true;
     }
 
     /**
@@ -194,20 +206,18 @@ public class RTCNode {
      *
      * @param t
      *            the time at which node regained service
+     * @return true if an open outage was closed, false otherwise
      */
-    public synchronized void nodeRegainedService(long t) {
-        int listsize = m_svcTimesList.size();
-        if (listsize > 0) {
-            RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
-
-            if (stime.getRegainedTime() != -1) {
-                // last event was a 'regainedService'
-                // ignore this event
-                return;
-            }
-
-            stime.setRegainedTime(t);
+    public synchronized boolean nodeRegainedService(long t) {
+        final RTCNodeSvcTimeline timeline = m_svcTimeline.withRegainedTime(t);
+        if (timeline == m_svcTimeline) {
+            // last event was a 'regainedService'
+            // ignore this event
+            return false;
         }
+
+        m_svcTimeline = timeline;
+        return true;
     }
 
     /**
@@ -283,7 +293,7 @@ public class RTCNode {
             throw new NodeNotInCategoryException();
         }
 
-        return m_svcTimesList.getDownTime(curTime, rollingWindow);
+        return m_svcTimeline.getDownTime(curTime, rollingWindow);
     }
 
     /**
@@ -292,26 +302,7 @@ public class RTCNode {
      * @return true if the service is currently down
      */
     public boolean isServiceCurrentlyDown() {
-        int size = m_svcTimesList.size();
-        if (size == 0) {
-            return false;
-        }
-
-        // else get last entry
-        RTCNodeSvcTime svctime = (RTCNodeSvcTime) m_svcTimesList.get(size - 1);
-        if (svctime.getRegainedTime() != -1) {
-            // node has regained service - so service not currently down
-            return false;
-        }
-
-        // getting here means the service losttime is the one to be returned
-        long svclosttime = svctime.getLostTime();
-        if (svclosttime == -1) {
-            // huh? how is it possible?
-            return false;
-        }
-
-        return true;
+        return m_svcTimeline.isCurrentlyDown();
     }
 
     /** {@inheritDoc} */
@@ -322,7 +313,7 @@ public class RTCNode {
             .append(m_ip)
             .append(m_svcName)
             .append(m_categories)
-            .append(m_svcTimesList)
+            .append(m_svcTimeline)
             .toHashCode();
     }
 
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The lost/regained service times of a RTCNode.
+ *
+ * The outages are kept in two primitive arrays in the order they have been
+ * reported, which is chronological. A regained time of -1 marks an outage
+ * which is still open. Instances are immutable - every change returns a new
+ * timeline, so readers never need to lock the node they are looking at.
+ *
+ * 'Expired' outages are removed whenever the timeline is changed.
+ */
+public final class RTCNodeSvcTimeline {
+    private static final Logger LOG = LoggerFactory.getLogger(RTCNodeSvcTimeline.class);
+
+    public static final RTCNodeSvcTimeline EMPTY = new RTCNodeSvcTimeline(new long[0], new long[0]);
+
+    private final long[] m_lostTimes;
+
+    private final long[] m_regainedTimes;
+
+    private RTCNodeSvcTimeline(final long[] lostTimes, final long[] regainedTimes) {
+        m_lostTimes = Objects.requireNonNull(lostTimes);
+        m_regainedTimes = Objects.requireNonNull(regainedTimes);
+    }
+
+    public int size() {
+        return m_lostTimes.length;
+    }
+
+    public long getLostTime(final int index) {
+        return m_lostTimes[index];
+    }
+
+    /**
+     * @return the regained time of the outage at the given index or -1 if the
+     *         service has not been regained yet
+     */
+    public long getRegainedTime(final int index) {
+        return m_regainedTimes[index];
+    }
+
+    /**
+     * @return true if the last outage has not been resolved
+     */
+    public boolean isCurrentlyDown() {
+        return size() > 0 && m_regainedTimes[size() - 1] == -1;
+    }
+
+    /**
+     * Add a lost/regained service pair.
+     *
+     * @param lostTime
+     *            the time at which the service was lost
+     * @param regainedTime
+     *            the time at which the service was regained or a value <= 0
+     *            if the service is still down
+     * @param startOfWindow
+     *            the start of the rolling window, closed outages before this
+     *            time are dropped
+     * @return the new timeline
+     */
+    public RTCNodeSvcTimeline withOutage(final long lostTime, final long regainedTime, final long startOfWindow) {
+        if (regainedTime > 0 && regainedTime < lostTime) {
+            LOG.warn("RTCNodeSvcTimeline: Rejecting service time pair since regained time in milliseconds: {} less than lost time -> losttime in milliseconds: {}", regainedTime, lostTime);
+            return this;
+        }
+
+        final RTCNodeSvcTimeline timeline = withoutExpired(startOfWindow);
+        final int size = timeline.size();
+
+        final long[] lostTimes = Arrays.copyOf(timeline.m_lostTimes, size + 1);
+        final long[] regainedTimes = Arrays.copyOf(timeline.m_regainedTimes, size + 1);
+        lostTimes[size] = lostTime;
+        regainedTimes[size] = regainedTime > 0 ? regainedTime : -1;
+
+        return new RTCNodeSvcTimeline(lostTimes, regainedTimes);
+    }
+
+    /**
+     * Resolve the last outage.
+     *
+     * @return the new timeline or this timeline if there is no open outage
+     */
+    public RTCNodeSvcTimeline withRegainedTime(final long regainedTime) {
+        if (!isCurrentlyDown() || regainedTime <= 0) {
+            return this;
+        }
+
+        final int last = size() - 1;
+        if (regainedTime < m_lostTimes[last]) {
+            throw new IllegalArgumentException("Cannot set outage end time to value less than outage start time: " + regainedTime + " < " + m_lostTimes[last]);
+        }
+
+        final long[] regainedTimes = Arrays.copyOf(m_regainedTimes, m_regainedTimes.length);
+        regainedTimes[last] = regainedTime;
+
+        return new RTCNodeSvcTimeline(m_lostTimes, regainedTimes);
+    }
+
+    /**
+     * Remove all closed outages that have been regained before the given start
+     * of the rolling window.
+     */
+    public RTCNodeSvcTimeline withoutExpired(final long startOfWindow) {
+        int expired = 0;
+        for (int i = 0; i < size(); i++) {
+            if (hasExpired(i, startOfWindow)) {
+                expired++;
+            }
+        }
+
+        if (expired == 0) {
+            return this;
+        }
+
+        final long[] lostTimes = new long[size() - expired];
+        final long[] regainedTimes = new long[size() - expired];
+        for (int i = 0, j = 0; i < size(); i++) {
+            if (!hasExpired(i, startOfWindow)) {
+                lostTimes[j] = m_lostTimes[i];
+                regainedTimes[j] = m_regainedTimes[i];
+                j++;
+            }
+        }
+
+        return new RTCNodeSvcTimeline(lostTimes, regainedTimes);
+    }
+
+    private boolean hasExpired(final int index, final long startOfWindow) {
+        return m_regainedTimes[index] >= 0 && m_regainedTimes[index] < startOfWindow;
+    }
+
+    /**
+     * Get the down time in the last 'rollingWindow' starting at 'curTime'.
+     */
+    public long getDownTime(final long curTime, final long rollingWindow) {
+        long outTime = 0;
+        for (int i = 0; i < size(); i++) {
+            outTime += getDownTime(m_lostTimes[i], m_regainedTimes[i], curTime, rollingWindow);
+        }
+        return outTime;
+    }
+
+    /**
+     * Get the part of the outage [lostTime, regainedTime) which lies in the
+     * window [curTime - rollingWindow, curTime]. An outage which is still open
+     * or regained after curTime lasts up to curTime.
+     */
+    public static long getDownTime(final long lostTime, final long regainedTime, final long curTime, final long rollingWindow) {
+        final long end = regainedTime < 0 || regainedTime >= curTime ? curTime : regainedTime;
+        final long start = Math.max(lostTime, curTime - rollingWindow);
+        return Math.max(0, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return "RTCNodeSvcTimeline[lostTimes=" + Arrays.toString(m_lostTimes) + ", regainedTimes=" + Arrays.toString(m_regainedTimes) + "]";
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.netmgt.rtc.RTCUtils;
+
+public class RTCCategoryAvailabilityTest {
+
+    private static final long WINDOW = 60L * 60L * 1000L;
+
+    @Test
+    public void testMatchesScanOfServices() {
+        final Random random = new Random(42);
+        final long now = System.currentTimeMillis();
+
+        final RTCCategoryAvailability availability = new RTCCategoryAvailability(WINDOW, now);
+        final List<RTCNodeSvcTimeline> timelines = new ArrayList<>();
+
+        // services with closed and open outages in the last three windows
+        for (int i = 0; i < 50; i++) {
+            RTCNodeSvcTimeline timeline = RTCNodeSvcTimeline.EMPTY;
+            long t = now - 3 * WINDOW + random.nextInt((int) WINDOW);
+            while (t < now) {
+                final long regained = t + random.nextInt((int) (WINDOW / 2));
+                timeline = timeline.withOutage(t, regained < now ? regained : -1, now - 3 * WINDOW);
+                t = regained + random.nextInt((int) WINDOW);
+            }
+            timelines.add(timeline);
+            availability.add(timeline);
+        }
+
+        // a service leaves the category
+        availability.remove(timelines.remove(0));
+
+        // outages come and go
+        for (int i = 0; i < timelines.size(); i += 3) {
+            final RTCNodeSvcTimeline timeline = timelines.get(i);
+            if (timeline.isCurrentlyDown()) {
+                final long regained = timeline.getLostTime(timeline.size() - 1) + 1;
+                timelines.set(i, timeline.withRegainedTime(regained));
+                availability.outageResolved(regained);
+            } else {
+                final long lost = now - random.nextInt(1000);
+                timelines.set(i, timeline.withOutage(lost, -1, now - 3 * WINDOW));
+                availability.outageCreated(lost, -1);
+            }
+        }
+
+        assertEquals(timelines.size(), availability.getCount());
+
+        final long start = Math.max(now, System.currentTimeMillis());
+        for (long curTime = start; curTime < start + 2 * WINDOW; curTime += WINDOW / 7) {
+            long downTime = 0;
+            for (RTCNodeSvcTimeline timeline : timelines) {
+                downTime += timeline.getDownTime(curTime, WINDOW);
+            }
+            assertEquals("down time at " + curTime, downTime, availability.getDownTime(curTime));
+            assertEquals(RTCUtils.getOutagePercentage(downTime, WINDOW, timelines.size()), availability.getValue(curTime, WINDOW).getAsDouble(), 0.0);
+        }
+    }
+
+    @Test
+    public void testFallsBackForOtherWindowsAndPastTimes() {
+        final long now = System.currentTimeMillis();
+        final RTCCategoryAvailability availability = new RTCCategoryAvailability(WINDOW, now);
+
+        assertTrue(availability.getValue(now, WINDOW).isPresent());
+        assertFalse(availability.getValue(now, 2 * WINDOW).isPresent());
+        assertFalse(availability.getValue(now - 1, WINDOW).isPresent());
+    }
+
+    @Test
+    public void testTimeline() {
+        RTCNodeSvcTimeline timeline = RTCNodeSvcTimeline.EMPTY
+                .withOutage(100, 200, 0)
+                .withOutage(300, -1, 0);
+
+        assertTrue(timeline.isCurrentlyDown());
+        assertEquals(100 + 100, timeline.getDownTime(400, 1000));
+        assertEquals(50 + 100, timeline.getDownTime(400, 250));
+
+        timeline = timeline.withRegainedTime(350);
+        assertFalse(timeline.isCurrentlyDown());
+        assertEquals(150, timeline.getDownTime(400, 1000));
+
+        // a closed outage outside of the window is dropped on the next change
+        timeline = timeline.withOutage(500, -1, 250);
+        assertEquals(2, timeline.size());
+        assertEquals(300, timeline.getLostTime(0));
+
+        // rejected pair
+        assertEquals(timeline, timeline.withOutage(700, 600, 250));
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest.support;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.engine.QueryParameters;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.impl.CriteriaImpl;
+import org.hibernate.loader.criteria.CriteriaJoinWalker;
+import org.hibernate.loader.criteria.CriteriaQueryTranslator;
+import org.hibernate.persister.entity.OuterJoinLoadable;
+import org.hibernate.type.Type;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.dao.hibernate.HibernateCriteriaConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.hibernate3.HibernateCallback;
+
+/**
+ * <p>Estimates the number of rows matching a {@link Criteria} from the
+ * PostgreSQL planner statistics instead of counting them.</p>
+ *
+ * <p>The criteria is rendered to SQL the same way Hibernate would render it
+ * for {@code list()} and handed to {@code EXPLAIN}; the row estimate of the
+ * top plan node is returned. This costs a planning round trip regardless of
+ * table size, but the value is only as accurate as the last {@code ANALYZE}.
+ * If the statement cannot be explained, {@code null} is returned so that the
+ * caller can fall back to an exact count.</p>
+ */
+public class EstimatedCountCallback implements HibernateCallback<Integer> {
+    private static final Logger LOG = LoggerFactory.getLogger(EstimatedCountCallback.class);
+
+    private static final Pattern ROWS = Pattern.compile("rows=(\\d+)");
+
+    private final Criteria m_criteria;
+
+    public EstimatedCountCallback(final Criteria criteria) {
+        m_criteria = criteria;
+    }
+
+    @Override
+    public Integer doInHibernate(final Session session) throws HibernateException, SQLException {
+        final SessionImplementor sessionImpl = (SessionImplementor)session;
+        final SessionFactoryImplementor factory = sessionImpl.getFactory();
+        final CriteriaImpl criteria = (CriteriaImpl)new HibernateCriteriaConverter().convertForCount(m_criteria, session);
+
+        final String entityName = factory.getImplementors(criteria.getEntityOrClassName())[0];
+        final CriteriaQueryTranslator translator = new CriteriaQueryTranslator(factory, criteria, entityName, CriteriaQueryTranslator.ROOT_SQL_ALIAS);
+        final CriteriaJoinWalker walker = new CriteriaJoinWalker((OuterJoinLoadable)factory.getEntityPersister(entityName), translator, factory, criteria, entityName, sessionImpl.getLoadQueryInfluencers());
+        final String sql = "EXPLAIN " + walker.getSQLString();
+        final QueryParameters parameters = translator.getQueryParameters();
+
+        final Integer[] estimate = new Integer[1];
+        session.doWork(connection -> {
+            // A failed statement aborts the surrounding transaction in PostgreSQL
+            final Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try (final PreparedStatement stmt = connection.prepareStatement(sql)) {
+                final Type[] types = parameters.getPositionalParameterTypes();
+                final Object[] values = parameters.getPositionalParameterValues();
+                int index = 1;
+                for (int i = 0; i < types.length; i++) {
+                    types[i].nullSafeSet(stmt, values[i], index, sessionImpl);
+                    index += types[i].getColumnSpan(factory);
+                }
+                try (final ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        final Matcher m = ROWS.matcher(rs.getString(1));
+                        if (m.find()) {
+                            estimate[0] = (int)Math.min(Integer.MAX_VALUE, Long.parseLong(m.group(1)));
+                        }
+                    }
+                }
+                if (savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                }
+            } catch (final SQLException e) {
+                LOG.debug("Unable to estimate row count with statement: {}", sql, e);
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+            }
+        });
+        return estimate[0];
+    }
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2024 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2024 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest.support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.function.Function;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.annotation.XmlElement;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.jaxrs.JacksonJaxbJsonProvider;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.opennms.core.config.api.JaxbListWrapper;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.dao.hibernate.HibernateCriteriaConverter;
+import org.springframework.orm.hibernate3.SessionFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * <p>Writes the entities matching a {@link Criteria} as a JSON list while they
+ * are read from a forward-only JDBC cursor, so that large result sets are
+ * never materialized in memory on the server.</p>
+ *
+ * <p>The document has the same shape as the {@link JaxbListWrapper} that the
+ * endpoint would otherwise return, except that {@code count} and
+ * {@code totalCount} follow the list since they are only known at the end.</p>
+ *
+ * @param <T> Entity object
+ * @param <D> DTO object
+ */
+public class JsonListStreamingOutput<T,D> implements StreamingOutput {
+
+    /**
+     * Number of rows fetched per round trip and kept in the session before it is cleared.
+     */
+    public static final int FETCH_SIZE = 500;
+
+    /**
+     * Same configuration as the {@code jacksonJaxbJsonProvider} used for regular responses.
+     */
+    private static final ObjectMapper MAPPER = new JacksonJaxbJsonProvider().locateMapper(Object.class, MediaType.APPLICATION_JSON_TYPE)
+            .configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
+
+    private final PlatformTransactionManager m_transactionManager;
+    private final SessionFactory m_sessionFactory;
+    private final Criteria m_criteria;
+    private final Function<T,D> m_mapper;
+    private final String m_elementName;
+    private final Integer m_totalCount;
+
+    public JsonListStreamingOutput(final PlatformTransactionManager transactionManager, final SessionFactory sessionFactory, final Criteria criteria, final Function<T,D> mapper, final Class<?> listWrapperClass, final Integer totalCount) {
+        m_transactionManager = transactionManager;
+        m_sessionFactory = sessionFactory;
+        m_criteria = criteria;
+        m_mapper = mapper;
+        m_elementName = getElementName(listWrapperClass);
+        m_totalCount = totalCount;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final JsonGenerator generator = MAPPER.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart(m_elementName);
+
+        final TransactionTemplate template = new TransactionTemplate(m_transactionManager);
+        template.setReadOnly(true);
+        final Integer count;
+        try {
+            count = template.execute(status -> {
+                final Session session = SessionFactoryUtils.getSession(m_sessionFactory, false);
+                final ScrollableResults results = new HibernateCriteriaConverter().convert(m_criteria, session)
+                        .setFetchSize(FETCH_SIZE)
+                        .scroll(ScrollMode.FORWARD_ONLY);
+                int rows = 0;
+                try {
+                    while (results.next()) {
+                        @SuppressWarnings("unchecked")
+                        final T entity = (T)results.get(0);
+                        MAPPER.writeValue(generator, m_mapper.apply(entity));
+                        if (++rows % FETCH_SIZE == 0) {
+                            // Release the entities we have already written
+                            session.clear();
+                            generator.flush();
+                        }
+                    }
+                } catch (final IOException e) {
+                    // The client went away, stop reading from the cursor
+                    throw new StreamingException(e);
+                } finally {
+                    results.close();
+                }
+                return rows;
+            });
+        } catch (final StreamingException e) {
+            throw (IOException)e.getCause();
+        }
+
+        generator.writeEndArray();
+        generator.writeNumberField("count", count);
+        generator.writeNumberField("totalCount", m_totalCount == null ? count : m_totalCount);
+        generator.writeNumberField("offset", m_criteria.getOffset() == null ? 0 : m_criteria.getOffset());
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Find the JSON property name of the list in the given {@link JaxbListWrapper}
+     * subclass, as declared on its {@code getObjects()} override.
+     */
+    protected static String getElementName(final Class<?> listWrapperClass) {
+        try {
+            final Method method = listWrapperClass.getMethod("getObjects");
+            final JsonProperty jsonProperty = method.getAnnotation(JsonProperty.class);
+            if (jsonProperty != null && !jsonProperty.value().isEmpty()) {
+                return jsonProperty.value();
+            }
+            final XmlElement xmlElement = method.getAnnotation(XmlElement.class);
+            if (xmlElement != null && !"##default".equals(xmlElement.name())) {
+                return xmlElement.name();
+            }
+        } catch (final NoSuchMethodException e) {
+            // Fall through to the bean property name
+        }
+        return "objects";
+    }
+
+    private static class StreamingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public StreamingException(final IOException cause) {
+            super(cause);
+        }
+    }
+}
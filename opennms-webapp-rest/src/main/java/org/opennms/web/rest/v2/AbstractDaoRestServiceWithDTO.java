@@ -66,10 +66,12 @@ import org.apache.cxf.jaxrs.ext.search.SearchCondition;
 import org.apache.cxf.jaxrs.ext.search.SearchConditionVisitor;
 import org.apache.cxf.jaxrs.ext.search.SearchContext;
 import org.apache.cxf.jaxrs.ext.search.SearchParseException;
+import org.hibernate.EntityMode;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
 import org.opennms.core.config.api.JaxbListWrapper;
 import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
@@ -84,8 +86,10 @@ import org.opennms.web.api.RestUtils;
 import org.opennms.web.rest.support.CriteriaBehavior;
 import org.opennms.web.rest.support.CriteriaBuilderSearchVisitor;
 import org.opennms.web.rest.support.DateCollection;
+import org.opennms.web.rest.support.EstimatedCountCallback;
 import org.opennms.web.rest.support.FloatCollection;
 import org.opennms.web.rest.support.IntegerCollection;
+import org.opennms.web.rest.support.JsonListStreamingOutput;
 import org.opennms.web.rest.support.LongCollection;
 import org.opennms.web.rest.support.MultivaluedMapImpl;
 import org.opennms.web.rest.support.SearchProperty;
@@ -101,6 +105,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.orm.hibernate3.HibernateTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Strings;
@@ -135,11 +140,54 @@ public abstract class AbstractDaoRestServiceWithDTO<T,D,Q,K extends Serializable
     @Autowired
     private SessionFactory m_sessionFactory;
 
+    @Autowired
+    private PlatformTransactionManager m_transactionManager;
+
     private final ReadWriteUpdateLock m_globalLock = new ReentrantReadWriteUpdateLock();
     private final Lock m_writeLock = m_globalLock.writeLock();
 
     protected static final int DEFAULT_LIMIT = 10;
 
+    /**
+     * Query parameter holding the ID of the last entity of the previous page
+     * when paging by keyset instead of by offset.
+     */
+    protected static final String AFTER_PARAM = "after";
+
+    /**
+     * Query parameter selecting how {@code totalCount} is calculated, see {@link TotalCount}.
+     */
+    protected static final String TOTAL_COUNT_PARAM = "totalCount";
+
+    /**
+     * Query parameter that requests the list to be streamed as JSON while it is read from the database.
+     */
+    protected static final String STREAM_PARAM = "stream";
+
+    /**
+     * How the total number of matching entities is determined for list requests.
+     */
+    protected enum TotalCount {
+        /** Run a {@code count(*)} over the matching entities (default) */
+        EXACT,
+        /** Use the row estimate of the query planner, falling back to {@link #EXACT} if there is none */
+        ESTIMATE,
+        /** Do not calculate the total at all */
+        NONE;
+
+        protected static TotalCount fromParameter(final String value) {
+            if (Strings.isNullOrEmpty(value)) {
+                return EXACT;
+            }
+            for (final TotalCount mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Invalid totalCount value: " + value);
+        }
+    }
+
     protected abstract OnmsDao<T,K> getDao();
     protected abstract Class<T> getDaoClass();
     protected abstract Class<Q> getQueryBeanClass();
@@ -235,6 +283,7 @@ public abstract class AbstractDaoRestServiceWithDTO<T,D,Q,K extends Serializable
         // Apply limit, offset, orderBy, order parameters
         final MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
         applyLimitOffsetOrderBy(params, builder);
+        applyKeyset(params, builder);
         Criteria crit = builder.toCriteria();
 
         /*
@@ -251,21 +300,138 @@ public abstract class AbstractDaoRestServiceWithDTO<T,D,Q,K extends Serializable
         return crit;
     }
 
+    /**
+     * <p>Keyset pagination: when the {@code after} parameter is given, only return
+     * the entities whose ID follows it in the requested order. Paging this way is an
+     * index range scan on the primary key, whereas a deep {@code offset} makes the
+     * database read and discard every row before it.</p>
+     *
+     * <p>The results are ordered by ID (ascending unless {@code order=desc}) and
+     * {@code offset} is ignored. Ordering by any other property is rejected since the
+     * cursor would not identify a position in that order.</p>
+     */
+    private void applyKeyset(final MultivaluedMap<String,String> params, final CriteriaBuilder builder) {
+        final String after = params.getFirst(AFTER_PARAM);
+        if (Strings.isNullOrEmpty(after)) {
+            return;
+        }
+
+        final ClassMetadata metadata = getClassMetadata();
+        if (metadata == null) {
+            throw getException(Status.BAD_REQUEST, "Parameter {} is not supported by this endpoint", AFTER_PARAM);
+        }
+        final String idProperty = metadata.getIdentifierPropertyName();
+        final String orderBy = params.getFirst("orderBy");
+        if (orderBy != null && !idProperty.equals(orderBy.trim())) {
+            throw getException(Status.BAD_REQUEST, "Parameter {} requires ordering by {}", AFTER_PARAM, idProperty);
+        }
+
+        final Object cursor;
+        try {
+            final Class<?> idClass = metadata.getIdentifierType().getReturnedClass();
+            if (Integer.class.equals(idClass)) {
+                cursor = Integer.valueOf(after.trim());
+            } else if (Long.class.equals(idClass)) {
+                cursor = Long.valueOf(after.trim());
+            } else {
+                throw getException(Status.BAD_REQUEST, "Parameter {} is not supported by this endpoint", AFTER_PARAM);
+            }
+        } catch (final NumberFormatException e) {
+            throw getException(Status.BAD_REQUEST, "Invalid value for parameter {}: {}", AFTER_PARAM, after);
+        }
+
+        final boolean ascending = !isDescending(params);
+        builder.offset(null);
+        builder.clearOrder();
+        builder.orderBy(idProperty, ascending);
+        if (ascending) {
+            builder.gt(idProperty, cursor);
+        } else {
+            builder.lt(idProperty, cursor);
+        }
+    }
+
+    private static boolean isDescending(final MultivaluedMap<String,String> params) {
+        final String order = params.getFirst("order");
+        return order != null && "desc".equalsIgnoreCase(order.trim());
+    }
+
+    private ClassMetadata getClassMetadata() {
+        return m_sessionFactory.getClassMetadata(getDaoClass());
+    }
+
+    /**
+     * Returns the link to the next page when the list is ordered by ID, so that
+     * clients can walk the whole collection with keyset pagination.
+     */
+    private String getNextLink(final UriInfo uriInfo, final Criteria crit, final List<T> coll) {
+        final MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
+        final ClassMetadata metadata = getClassMetadata();
+        if (metadata == null || crit.getLimit() == null || coll.size() < crit.getLimit()) {
+            return null;
+        }
+        final String orderBy = params.getFirst("orderBy");
+        if (Strings.isNullOrEmpty(params.getFirst(AFTER_PARAM)) && (orderBy == null || !metadata.getIdentifierPropertyName().equals(orderBy.trim()))) {
+            return null;
+        }
+        final Object lastId = metadata.getIdentifier(coll.get(coll.size() - 1), EntityMode.POJO);
+        return uriInfo.getRequestUriBuilder()
+                .replaceQueryParam(AFTER_PARAM, lastId)
+                .replaceQueryParam("offset")
+                .build()
+                .toString();
+    }
+
+    private Integer getTotalCount(final Criteria crit, final TotalCount mode) {
+        // Remove limit, offset and ordering when fetching count
+        final Criteria countCrit = crit.clone();
+        countCrit.setLimit(null);
+        countCrit.setOffset(null);
+        countCrit.setOrders(new ArrayList<Order>());
+
+        switch (mode) {
+            case NONE:
+                return null;
+            case ESTIMATE:
+                final Integer estimate = new HibernateTemplate(m_sessionFactory).execute(new EstimatedCountCallback(countCrit));
+                if (estimate != null) {
+                    return estimate;
+                }
+                LOG.debug("No row estimate available for {}, counting instead", getDaoClass().getSimpleName());
+                // fall through
+            case EXACT:
+            default:
+                return getDao().countMatching(countCrit);
+        }
+    }
+
     @GET
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.APPLICATION_ATOM_XML})
     public Response get(@Context final UriInfo uriInfo, @Context final SearchContext searchContext) {
+        final MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
+        final TotalCount totalCountMode;
+        try {
+            totalCountMode = TotalCount.fromParameter(params.getFirst(TOTAL_COUNT_PARAM));
+        } catch (final IllegalArgumentException e) {
+            throw getException(Status.BAD_REQUEST, e.getMessage());
+        }
+
         Criteria crit = getCriteria(uriInfo, searchContext);
+
+        if (Boolean.parseBoolean(params.getFirst(STREAM_PARAM))) {
+            // The count has to run before the response is committed
+            final Integer totalCount = getTotalCount(crit, totalCountMode);
+            final Class<?> wrapperClass = createListWrapper(Collections.emptyList()).getClass();
+            return Response.ok(new JsonListStreamingOutput<T,D>(m_transactionManager, m_sessionFactory, crit, this::mapEntityToDTO, wrapperClass, totalCount), MediaType.APPLICATION_JSON_TYPE).build();
+        }
+
         final List<T> coll = getDao().findMatching(crit);
         if (coll == null || coll.size() < 1) {
             return Response.status(Status.NO_CONTENT).build();
         } else {
             Integer offset = crit.getOffset();
-
-            // Remove limit, offset and ordering when fetching count
-            crit.setLimit(null);
-            crit.setOffset(null);
-            crit.setOrders(new ArrayList<Order>());
-            int totalCount = getDao().countMatching(crit);
+            final Integer totalCount = getTotalCount(crit, totalCountMode);
+            final String nextLink = getNextLink(uriInfo, crit, coll);
 
             // Map the entities to the corresponding DTOs
             final List<D> collOfDtos = coll.stream()
@@ -277,7 +443,12 @@ public abstract class AbstractDaoRestServiceWithDTO<T,D,Q,K extends Serializable
 
             // Make sure that offset is set to a numeric value when setting the Content-Range header
             offset = (offset == null ? 0 : offset);
-            return Response.ok(list).header("Content-Range", String.format("items %d-%d/%d", offset, offset + coll.size() - 1, totalCount)).build();
+            final Response.ResponseBuilder response = Response.ok(list)
+                    .header("Content-Range", String.format("items %d-%d/%s", offset, offset + coll.size() - 1, totalCount == null ? "*" : totalCount));
+            if (nextLink != null) {
+                response.header("Link", String.format("<%s>; rel=\"next\"", nextLink));
+            }
+            return response.build();
         }
     }
 
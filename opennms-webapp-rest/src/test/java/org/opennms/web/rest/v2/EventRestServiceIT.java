@@ -30,6 +30,7 @@ package org.opennms.web.rest.v2;
 
 import java.util.Date;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
@@ -125,6 +126,62 @@ public class EventRestServiceIT extends AbstractSpringJerseyRestTestCase {
         Assert.assertEquals(1, object.getInt("totalCount"));
     }
 
+    @Test
+    @JUnitTemporaryDatabase
+    public void testKeysetPagination() throws Exception {
+        String url = "/events";
+
+        JSONObject object = new JSONObject(sendRequest(GET, url, parseParamData("orderBy=id&order=asc&limit=4"), 200));
+        JSONArray events = object.getJSONArray("event");
+        Assert.assertEquals(4, events.length());
+        final int lastId = events.getJSONObject(3).getInt("id");
+
+        object = new JSONObject(sendRequest(GET, url, parseParamData("after=" + lastId + "&limit=4"), 200));
+        events = object.getJSONArray("event");
+        Assert.assertEquals(2, events.length());
+        Assert.assertTrue(events.getJSONObject(0).getInt("id") > lastId);
+        Assert.assertTrue(events.getJSONObject(1).getInt("id") > events.getJSONObject(0).getInt("id"));
+
+        // Walking backwards returns the entries before the cursor
+        object = new JSONObject(sendRequest(GET, url, parseParamData("after=" + lastId + "&order=desc&limit=10"), 200));
+        Assert.assertEquals(3, object.getJSONArray("event").length());
+
+        // The cursor only works when ordering by ID
+        sendRequest(GET, url, parseParamData("after=" + lastId + "&orderBy=eventTime"), 400);
+        sendRequest(GET, url, parseParamData("after=abc"), 400);
+    }
+
+    @Test
+    @JUnitTemporaryDatabase
+    public void testTotalCountModes() throws Exception {
+        String url = "/events";
+
+        JSONObject object = new JSONObject(sendRequest(GET, url, parseParamData("limit=2&totalCount=exact"), 200));
+        Assert.assertEquals(6, object.getInt("totalCount"));
+
+        object = new JSONObject(sendRequest(GET, url, parseParamData("limit=2&totalCount=estimate"), 200));
+        Assert.assertTrue(object.getInt("totalCount") >= 0);
+
+        object = new JSONObject(sendRequest(GET, url, parseParamData("limit=2&totalCount=none"), 200));
+        Assert.assertEquals(2, object.getInt("totalCount"));
+
+        sendRequest(GET, url, parseParamData("totalCount=sometimes"), 400);
+    }
+
+    @Test
+    @JUnitTemporaryDatabase
+    public void testStreaming() throws Exception {
+        String url = "/events";
+
+        JSONObject object = new JSONObject(sendRequest(GET, url, parseParamData("stream=true&limit=0&_s=node.label==server01"), 200));
+        Assert.assertEquals(3, object.getJSONArray("event").length());
+        Assert.assertEquals(3, object.getInt("count"));
+        Assert.assertEquals(3, object.getInt("totalCount"));
+
+        object = new JSONObject(sendRequest(GET, url, parseParamData("stream=true&_s=event.uei==*doesNotExist"), 200));
+        Assert.assertEquals(0, object.getJSONArray("event").length());
+    }
+
     @Test
     @JUnitTemporaryDatabase
     public void testAddEvent() throws Exception {